@@ -0,0 +1,174 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor of a compartment (site), which runs up to the concurrency on the shared delegate, and queues the rest
+ * up to the capacity, so that a stalled compartment cannot occupy all the threads of the delegate.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+@Slf4j
+public class Bulkhead implements Executor {
+
+    @Getter
+    private final String name;
+
+    private final Executor delegate;
+
+    private final int concurrency;
+
+    private final int capacity;
+
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+
+    private int active;
+
+    private long completed;
+
+    private long rejected;
+
+    public Bulkhead(String name, Executor delegate, int concurrency, int capacity) {
+
+        this.name = name;
+
+        this.delegate = delegate;
+
+        this.concurrency = Math.max(concurrency, 1);
+
+        this.capacity = Math.max(capacity, 0);
+
+    }
+
+    @Override
+    public void execute(Runnable command) {
+
+        synchronized (this) {
+
+            if (active >= concurrency) {
+
+                if (queue.size() >= capacity) {
+
+                    rejected++;
+
+                    throw new RejectedExecutionException("Bulkhead full : " + this);
+
+                }
+
+                queue.add(command);
+
+                return;
+
+            }
+
+            active++;
+
+        }
+
+        try {
+
+            delegate.execute(() -> run(command));
+
+        } catch (RejectedExecutionException e) {
+
+            synchronized (this) {
+                rejected++;
+            }
+
+            release();
+
+            throw e;
+
+        }
+
+    }
+
+    private void run(Runnable command) {
+
+        try {
+            command.run();
+        } finally {
+
+            synchronized (this) {
+                completed++;
+            }
+
+            release();
+
+        }
+
+    }
+
+    /**
+     * Hands over the permit to the next queued command, or returns it if none.
+     */
+    private void release() {
+
+        while (true) {
+
+            Runnable next;
+
+            synchronized (this) {
+
+                next = queue.poll();
+
+                if (next == null) {
+
+                    active--;
+
+                    return;
+
+                }
+
+            }
+
+            try {
+
+                delegate.execute(() -> run(next));
+
+                return;
+
+            } catch (RejectedExecutionException e) {
+
+                synchronized (this) {
+                    rejected++;
+                }
+
+                log.debug("Dropped queued command : {} - {}", name, e.toString());
+
+            }
+
+        }
+
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s (active=%d/%d, queued=%d/%d, completed=%d, rejected=%d)",
+                name, active, concurrency, queue.size(), capacity, completed, rejected);
+    }
+
+}
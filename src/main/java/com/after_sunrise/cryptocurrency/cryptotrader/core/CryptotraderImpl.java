@@ -2,6 +2,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.core;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.Cryptotrader;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.*;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
@@ -10,6 +11,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ImmutableConfiguration;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 
 /**
  * @author takanori.takase
@@ -18,6 +27,8 @@ import org.apache.commons.configuration2.ImmutableConfiguration;
 @Slf4j
 public class CryptotraderImpl implements Cryptotrader {
 
+    private static final long CANCEL_TIMEOUT = 30;
+
     @Slf4j
     public static class Module extends AbstractModule {
 
@@ -84,6 +95,8 @@ public class CryptotraderImpl implements Cryptotrader {
 
         closeQuietly(Trader.class);
 
+        cancelQuietly();
+
         closeQuietly(Context.class);
 
         closeQuietly(ExecutorFactory.class);
@@ -92,6 +105,42 @@ public class CryptotraderImpl implements Cryptotrader {
 
     }
 
+    /**
+     * Flattens the active targets in parallel, after the trader has stopped and before the contexts are closed.
+     */
+    private void cancelQuietly() {
+
+        try {
+
+            PropertyManager manager = injector.getInstance(PropertyManager.class);
+
+            Context context = injector.getInstance(Context.class);
+
+            Instant now = manager.getNow();
+
+            List<Composite> targets = manager.getTradingTargets().stream()
+                    .filter(c -> Boolean.TRUE.equals(manager.getTradingActive(c.getSite(), c.getInstrument())))
+                    .collect(Collectors.toList());
+
+            // Factory is still open, and terminates the executor when closed afterwards.
+            ExecutorService executor = injector.getInstance(ExecutorFactory.class).get(getClass(), targets.size());
+
+            List<CompletableFuture<Void>> futures = targets.stream().map(c -> CompletableFuture.runAsync(() -> {
+
+                Key key = Key.builder().site(c.getSite()).instrument(c.getInstrument()).timestamp(now).build();
+
+                log.info("Cancelled all orders : {} ({})", c, context.cancelAllOrders(key));
+
+            }, executor)).collect(Collectors.toList());
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(CANCEL_TIMEOUT, SECONDS);
+
+        } catch (Exception e) {
+            log.warn("Failed to cancel all orders.", e);
+        }
+
+    }
+
     private void closeQuietly(Class<? extends AutoCloseable> clazz) {
 
         try {
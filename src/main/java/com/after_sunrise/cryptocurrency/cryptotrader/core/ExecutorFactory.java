@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.core;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -10,4 +11,11 @@ public interface ExecutorFactory extends AutoCloseable {
 
     ExecutorService get(Class<?> clazz, int size);
 
+    /**
+     * Bulkhead of the site, which runs up to the concurrency on the executor of the class.
+     */
+    Bulkhead get(Class<?> clazz, String site, int concurrency, int capacity);
+
+    List<Bulkhead> getBulkheads();
+
 }
@@ -3,8 +3,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.core;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.IdentityHashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -58,6 +57,8 @@ public class ExecutorFactoryImpl implements UncaughtExceptionHandler, ExecutorFa
 
     private final Map<Class<?>, ScheduledExecutorService> services = new IdentityHashMap<>();
 
+    private final Map<Class<?>, Map<String, Bulkhead>> bulkheads = new IdentityHashMap<>();
+
     private final Lock lock = new ReentrantLock();
 
     @Override
@@ -96,6 +97,54 @@ public class ExecutorFactoryImpl implements UncaughtExceptionHandler, ExecutorFa
 
     }
 
+    @Override
+    public Bulkhead get(Class<?> clazz, String site, int concurrency, int capacity) {
+
+        Class<?> cls = clazz == null ? getClass() : clazz;
+
+        String key = Objects.toString(site, "");
+
+        try {
+
+            lock.lock();
+
+            ExecutorService delegate = get(cls, concurrency);
+
+            return bulkheads.computeIfAbsent(cls, c -> new TreeMap<>()).computeIfAbsent(key, k -> {
+
+                String name = cls.getSimpleName() + "." + k;
+
+                log.debug("Creating bulkhead : {} (concurrency = {}, capacity = {})", name, concurrency, capacity);
+
+                return new Bulkhead(name, delegate, concurrency, capacity);
+
+            });
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    @Override
+    public List<Bulkhead> getBulkheads() {
+
+        try {
+
+            lock.lock();
+
+            List<Bulkhead> values = new ArrayList<>();
+
+            bulkheads.values().forEach(m -> values.addAll(m.values()));
+
+            return values;
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
     @Override
     public void close() throws Exception {
 
@@ -117,6 +166,8 @@ public class ExecutorFactoryImpl implements UncaughtExceptionHandler, ExecutorFa
 
             }
 
+            bulkheads.clear();
+
             log.debug("Terminated {} executors.", count);
 
         } finally {
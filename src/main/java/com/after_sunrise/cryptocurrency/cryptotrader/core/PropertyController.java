@@ -17,6 +17,8 @@ public interface PropertyController extends PropertyManager {
 
     void setTradingThreads(Integer value);
 
+    void setTradingBulkhead(Integer value);
+
     void setTradingTargets(List<Composite> values);
 
     void setTradingActive(String site, String instrument, Boolean value);
@@ -53,6 +55,10 @@ public interface PropertyController extends PropertyManager {
 
     void setTradingDuration(String site, String instrument, Duration value);
 
+    void setTradingRefresh(String site, String instrument, Duration value);
+
+    void setTradingStable(String site, String instrument, Duration value);
+
     void setFundingOffset(String site, String instrument, BigDecimal value);
 
     void setFundingMultiplierProducts(String site, String instrument, List<Composite> values);
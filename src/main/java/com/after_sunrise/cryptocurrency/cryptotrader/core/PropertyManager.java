@@ -22,6 +22,8 @@ public interface PropertyManager {
 
     Integer getTradingThreads();
 
+    Integer getTradingBulkhead();
+
     List<Composite> getTradingTargets();
 
     Boolean getTradingActive(String site, String instrument);
@@ -58,6 +60,10 @@ public interface PropertyManager {
 
     Duration getTradingDuration(String site, String instrument);
 
+    Duration getTradingRefresh(String site, String instrument);
+
+    Duration getTradingStable(String site, String instrument);
+
     BigDecimal getFundingOffset(String site, String instrument);
 
     List<Composite> getFundingMultiplierProducts(String site, String instrument);
@@ -272,6 +272,17 @@ public class PropertyManagerImpl implements PropertyController {
         set(TRADING_THREADS, null, null, value, Integer::valueOf);
     }
 
+    @Override
+    public Integer getTradingBulkhead() {
+        return getDecimal(null, null, TRADING_BULKHEAD,
+                ZERO, BigDecimal.valueOf(Byte.MAX_VALUE), ZERO).intValue();
+    }
+
+    @Override
+    public void setTradingBulkhead(Integer value) {
+        set(TRADING_BULKHEAD, null, null, value, Integer::valueOf);
+    }
+
     @Override
     public List<Composite> getTradingTargets() {
         return getProducts(null, null, TRADING_TARGETS);
@@ -472,6 +483,34 @@ public class PropertyManagerImpl implements PropertyController {
         set(TRADING_DURATION, site, instrument, value, Duration::toMillis);
     }
 
+    @Override
+    public Duration getTradingRefresh(String site, String instrument) {
+
+        BigDecimal value = getDecimal(site, instrument, TRADING_REFRESH, ZERO, null, ZERO);
+
+        return Duration.ofMillis(value.longValue());
+
+    }
+
+    @Override
+    public void setTradingRefresh(String site, String instrument, Duration value) {
+        set(TRADING_REFRESH, site, instrument, value, Duration::toMillis);
+    }
+
+    @Override
+    public Duration getTradingStable(String site, String instrument) {
+
+        BigDecimal value = getDecimal(site, instrument, TRADING_STABLE, ZERO, null, ZERO);
+
+        return Duration.ofMillis(value.longValue());
+
+    }
+
+    @Override
+    public void setTradingStable(String site, String instrument, Duration value) {
+        set(TRADING_STABLE, site, instrument, value, Duration::toMillis);
+    }
+
     @Override
     public BigDecimal getFundingOffset(String site, String instrument) {
         return getDecimal(site, instrument, FUNDING_OFFSET, null, null, ZERO);
@@ -22,6 +22,8 @@ public enum PropertyType {
 
     TRADING_THREADS,
 
+    TRADING_BULKHEAD,
+
     TRADING_SPREAD,
 
     TRADING_SPREAD_ASK,
@@ -52,6 +54,10 @@ public enum PropertyType {
 
     TRADING_DURATION,
 
+    TRADING_REFRESH,
+
+    TRADING_STABLE,
+
     FUNDING_OFFSET,
 
     FUNDING_MULTIPLIER_PRODUCTS,
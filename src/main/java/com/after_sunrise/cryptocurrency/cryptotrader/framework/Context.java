@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import lombok.*;
@@ -11,6 +12,7 @@ import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static lombok.AccessLevel.PRIVATE;
 
@@ -115,6 +117,47 @@ public interface Context extends Service, AutoCloseable {
 
     List<Trade> listTrades(Key key, Instant fromTime);
 
+    /*
+     * Non-blocking variants of the market data, which the implementations backed by an asynchronous transport
+     * override. The defaults adapt the blocking methods, completing the future in the calling thread.
+     */
+
+    default CompletableFuture<BigDecimal> getBestAskPriceAsync(Key key) {
+        return CompletableFuture.completedFuture(getBestAskPrice(key));
+    }
+
+    default CompletableFuture<BigDecimal> getBestBidPriceAsync(Key key) {
+        return CompletableFuture.completedFuture(getBestBidPrice(key));
+    }
+
+    default CompletableFuture<BigDecimal> getBestAskSizeAsync(Key key) {
+        return CompletableFuture.completedFuture(getBestAskSize(key));
+    }
+
+    default CompletableFuture<BigDecimal> getBestBidSizeAsync(Key key) {
+        return CompletableFuture.completedFuture(getBestBidSize(key));
+    }
+
+    default CompletableFuture<BigDecimal> getMidPriceAsync(Key key) {
+        return CompletableFuture.completedFuture(getMidPrice(key));
+    }
+
+    default CompletableFuture<BigDecimal> getLastPriceAsync(Key key) {
+        return CompletableFuture.completedFuture(getLastPrice(key));
+    }
+
+    default CompletableFuture<Map<BigDecimal, BigDecimal>> getAskPricesAsync(Key key) {
+        return CompletableFuture.completedFuture(getAskPrices(key));
+    }
+
+    default CompletableFuture<Map<BigDecimal, BigDecimal>> getBidPricesAsync(Key key) {
+        return CompletableFuture.completedFuture(getBidPrices(key));
+    }
+
+    default CompletableFuture<List<Trade>> listTradesAsync(Key key, Instant fromTime) {
+        return CompletableFuture.completedFuture(listTrades(key, fromTime));
+    }
+
     CurrencyType getInstrumentCurrency(Key key);
 
     CurrencyType getFundingCurrency(Key key);
@@ -139,6 +182,11 @@ public interface Context extends Service, AutoCloseable {
 
     Order findOrder(Key key, String id);
 
+    /**
+     * @return True if the orders are found sooner than the cached queries, such as with the streams.
+     */
+    Boolean isOrderStreamed(Key key);
+
     List<Order> listActiveOrders(Key key);
 
     List<Order.Execution> listExecutions(Key key);
@@ -147,4 +195,16 @@ public interface Context extends Service, AutoCloseable {
 
     Map<CancelInstruction, String> cancelOrders(Key key, Set<CancelInstruction> instructions);
 
+    /**
+     * @return Id of the order after amended, which differs from the original if the order is replaced.
+     */
+    Map<AmendInstruction, String> amendOrders(Key key, Set<AmendInstruction> instructions);
+
+    /**
+     * Cancels all the active orders of the product at once, with the native mass-cancel if available.
+     *
+     * @return True if all accepted, false if any failed, or null if unknown.
+     */
+    Boolean cancelAllOrders(Key key);
+
 }
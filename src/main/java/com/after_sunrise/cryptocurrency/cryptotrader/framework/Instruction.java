@@ -23,6 +23,8 @@ public interface Instruction {
 
         T visit(CancelInstruction instruction);
 
+        T visit(AmendInstruction instruction);
+
     }
 
     abstract class BaseInstruction implements Instruction {
@@ -77,6 +79,34 @@ public interface Instruction {
 
     }
 
+    /**
+     * Moves a live order to the price and the (remaining) size, instead of cancelling and creating another.
+     */
+    @Getter
+    @Builder
+    @ToString
+    @AllArgsConstructor(access = PRIVATE)
+    class AmendInstruction extends BaseInstruction {
+
+        private final String uid = generateUid();
+
+        private final String id;
+
+        private final BigDecimal price;
+
+        private final BigDecimal size;
+
+        private final String strategy;
+
+        private final Duration timeToLive;
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+    }
+
     <T> T accept(Visitor<T> visitor);
 
 }
@@ -12,4 +12,12 @@ public interface Instructor extends Service {
 
     List<Instruction> instruct(Context context, Request request, Advice advice);
 
+    /**
+     * @return True if the current advice would be instructed the same as the previous, hence the orders instructed
+     * for the previous advice can be left as is. False if unknown.
+     */
+    default boolean isEquivalent(Context context, Request request, Advice previous, Advice current) {
+        return false;
+    }
+
 }
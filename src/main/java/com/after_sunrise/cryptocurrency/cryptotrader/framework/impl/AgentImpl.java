@@ -11,6 +11,7 @@ import com.google.inject.Injector;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Collections.emptyMap;
 
@@ -94,4 +95,38 @@ public class AgentImpl extends AbstractService implements Agent {
 
     }
 
+    @Override
+    public CompletableFuture<Map<Instruction, Boolean>> reconcileAsync(
+            Context ctx, Request req, Map<Instruction, String> instructions) {
+
+        Agent manager = managers.get(req.getSite());
+
+        if (manager == null) {
+
+            log.debug("Service not found for site : {}", req.getSite());
+
+            return CompletableFuture.completedFuture(emptyMap());
+
+        }
+
+        CompletableFuture<Map<Instruction, Boolean>> future = manager.reconcileAsync(ctx, req, instructions);
+
+        if (future == null) {
+            return CompletableFuture.completedFuture(emptyMap());
+        }
+
+        return future.thenApply(values -> {
+
+            Map<Instruction, Boolean> results = trimToEmpty(values);
+
+            log.info("Reconcile : [{}.{}] {}", req.getSite(), req.getInstrument(), results.size());
+
+            results.forEach((k, v) -> log.debug("Reconcile=[{}] {}", v, k));
+
+            return results;
+
+        });
+
+    }
+
 }
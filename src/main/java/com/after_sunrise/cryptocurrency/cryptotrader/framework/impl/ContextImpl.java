@@ -1,7 +1,10 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -9,34 +12,73 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.*;
 import java.util.function.Function;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
 public class ContextImpl extends AbstractService implements Context {
 
+    private static final Set<StateType> HALTS = EnumSet.of(StateType.SUSPEND, StateType.TERMINATE);
+
     private final Map<String, Context> contexts;
 
+    private final PropertyManager propertyManager;
+
+    private final Map<Composite, OrderStore> stores = new ConcurrentHashMap<>();
+
+    private final Map<Composite, StateType> states = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService halter;
+
     @Inject
     public ContextImpl(Injector injector) {
 
         contexts = injector.getInstance(ServiceFactory.class).loadMap(Context.class);
 
+        propertyManager = injector.getInstance(PropertyManager.class);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName());
+            return t;
+        });
+
+        // Apart from the refreshes, and per site, so that the time to flat does not queue up.
+        halter = Executors.newCachedThreadPool(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName() + "-halt");
+            return t;
+        });
+
     }
 
     @Override
     public void close() throws Exception {
 
+        scheduler.shutdownNow();
+
+        halter.shutdown();
+
         Exception exception = null;
 
         for (Context context : contexts.values()) {
@@ -85,9 +127,155 @@ public class ContextImpl extends AbstractService implements Context {
 
     }
 
+    @VisibleForTesting
+    <R> CompletableFuture<R> forContextAsync(Key key, Function<Context, CompletableFuture<R>> function) {
+
+        CompletableFuture<R> future = forContext(key, function);
+
+        return future != null ? future : CompletableFuture.completedFuture(null);
+
+    }
+
+    /**
+     * @return Store of the own orders, or null if disabled.
+     */
+    @VisibleForTesting
+    OrderStore getStore(Key key) {
+
+        if (key == null || key.getSite() == null || key.getInstrument() == null) {
+            return null;
+        }
+
+        Duration refresh = propertyManager.getTradingRefresh(key.getSite(), key.getInstrument());
+
+        if (refresh == null || refresh.toMillis() <= 0) {
+            return null;
+        }
+
+        return stores.computeIfAbsent(new Composite(key.getSite(), key.getInstrument()), c -> {
+
+            OrderStore store = new OrderStore();
+
+            schedule(c, store, refresh);
+
+            return store;
+
+        });
+
+    }
+
+    private void schedule(Composite composite, OrderStore store, Duration delay) {
+
+        try {
+
+            scheduler.schedule(() -> refresh(composite, store), delay.toMillis(), MILLISECONDS);
+
+        } catch (RejectedExecutionException e) {
+
+            stores.remove(composite, store);
+
+        }
+
+    }
+
+    /**
+     * Reconciles the store with the snapshot of the site, and schedules the next one with the latest cadence.
+     */
+    @VisibleForTesting
+    void refresh(Composite composite, OrderStore store) {
+
+        Duration refresh = propertyManager.getTradingRefresh(composite.getSite(), composite.getInstrument());
+
+        if (refresh == null || refresh.toMillis() <= 0) {
+
+            stores.remove(composite, store);
+
+            return;
+
+        }
+
+        try {
+
+            Key key = Key.builder().site(composite.getSite()).instrument(composite.getInstrument())
+                    .timestamp(propertyManager.getNow()).build();
+
+            sync(key, store);
+
+        } catch (RuntimeException e) {
+
+            log.warn("Failed to refresh orders : {} - {}", composite, e);
+
+        }
+
+        schedule(composite, store, refresh);
+
+    }
+
+    private List<Order> sync(Key key, OrderStore store) {
+
+        long sequence = store.begin();
+
+        List<Order> values = forContext(key, c -> c.listActiveOrders(key));
+
+        if (values != null) {
+
+            store.sync(sequence, values, key.getTimestamp() != null ? key.getTimestamp() : propertyManager.getNow());
+
+            log.trace("Synchronized orders : [{}.{}] {}", key.getSite(), key.getInstrument(), values.size());
+
+        }
+
+        return values;
+
+    }
+
     @Override
     public StateType getState(Key key) {
-        return forContext(key, c -> c.getState(key));
+
+        StateType state = forContext(key, c -> c.getState(key));
+
+        if (key != null && key.getSite() != null && key.getInstrument() != null && state != null) {
+
+            StateType previous = states.put(new Composite(key.getSite(), key.getInstrument()), state);
+
+            if (HALTS.contains(state) && !HALTS.contains(previous)) {
+                halt(key, state);
+            }
+
+        }
+
+        return state;
+
+    }
+
+    /**
+     * Flattens the product as soon as the site is observed to halt, instead of waiting for the next cycles to cancel
+     * the orders one by one.
+     */
+    private void halt(Key key, StateType state) {
+
+        if (!Boolean.TRUE.equals(propertyManager.getTradingActive(key.getSite(), key.getInstrument()))) {
+            return;
+        }
+
+        log.info("Cancelling all orders : {}:{} ({})", key.getSite(), key.getInstrument(), state);
+
+        try {
+
+            halter.execute(() -> {
+                try {
+                    cancelAllOrders(key);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to cancel all orders : {} - {}", key, e);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            log.warn("Failed to cancel all orders : {} - {}", key, e);
+
+        }
+
     }
 
     @Override
@@ -135,6 +323,51 @@ public class ContextImpl extends AbstractService implements Context {
         return forContext(key, c -> c.listTrades(key, fromTime));
     }
 
+    @Override
+    public CompletableFuture<BigDecimal> getBestAskPriceAsync(Key key) {
+        return forContextAsync(key, c -> c.getBestAskPriceAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getBestBidPriceAsync(Key key) {
+        return forContextAsync(key, c -> c.getBestBidPriceAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getBestAskSizeAsync(Key key) {
+        return forContextAsync(key, c -> c.getBestAskSizeAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getBestBidSizeAsync(Key key) {
+        return forContextAsync(key, c -> c.getBestBidSizeAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getMidPriceAsync(Key key) {
+        return forContextAsync(key, c -> c.getMidPriceAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getLastPriceAsync(Key key) {
+        return forContextAsync(key, c -> c.getLastPriceAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<BigDecimal, BigDecimal>> getAskPricesAsync(Key key) {
+        return forContextAsync(key, c -> c.getAskPricesAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<BigDecimal, BigDecimal>> getBidPricesAsync(Key key) {
+        return forContextAsync(key, c -> c.getBidPricesAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<List<Trade>> listTradesAsync(Key key, Instant fromTime) {
+        return forContextAsync(key, c -> c.listTradesAsync(key, fromTime));
+    }
+
     @Override
     public CurrencyType getInstrumentCurrency(Key key) {
         return forContext(key, c -> c.getInstrumentCurrency(key));
@@ -192,27 +425,113 @@ public class ContextImpl extends AbstractService implements Context {
 
     @Override
     public Order findOrder(Key key, String id) {
-        return forContext(key, c -> c.findOrder(key, id));
+
+        OrderStore store = getStore(key);
+
+        Order order = store == null ? null : store.find(id);
+
+        return order != null ? order : forContext(key, c -> c.findOrder(key, id));
+
+    }
+
+    @Override
+    public Boolean isOrderStreamed(Key key) {
+
+        // Store is updated with the own orders and refreshed in the background.
+        return getStore(key) != null ? Boolean.TRUE : forContext(key, c -> c.isOrderStreamed(key));
+
     }
 
     @Override
     public List<Order> listActiveOrders(Key key) {
-        return forContext(key, c -> c.listActiveOrders(key));
+
+        OrderStore store = getStore(key);
+
+        if (store == null) {
+            return forContext(key, c -> c.listActiveOrders(key));
+        }
+
+        List<Order> orders = store.list();
+
+        return orders != null ? orders : sync(key, store);
+
     }
 
     @Override
     public List<Order.Execution> listExecutions(Key key) {
-        return forContext(key, c -> c.listExecutions(key));
+
+        List<Order.Execution> values = forContext(key, c -> c.listExecutions(key));
+
+        OrderStore store = getStore(key);
+
+        if (store != null) {
+            store.filled(values);
+        }
+
+        return values;
+
     }
 
     @Override
     public Map<CreateInstruction, String> createOrders(Key key, Set<CreateInstruction> instructions) {
-        return forContext(key, c -> c.createOrders(key, instructions));
+
+        Map<CreateInstruction, String> values = forContext(key, c -> c.createOrders(key, instructions));
+
+        OrderStore store = getStore(key);
+
+        if (store != null && values != null) {
+            values.forEach((k, v) -> store.created(v, key.getInstrument(), k));
+        }
+
+        return values;
+
     }
 
     @Override
     public Map<CancelInstruction, String> cancelOrders(Key key, Set<CancelInstruction> instructions) {
-        return forContext(key, c -> c.cancelOrders(key, instructions));
+
+        Map<CancelInstruction, String> values = forContext(key, c -> c.cancelOrders(key, instructions));
+
+        OrderStore store = getStore(key);
+
+        if (store != null && values != null) {
+            values.forEach((k, v) -> store.cancelled(StringUtils.isEmpty(v) || k == null ? null : k.getId()));
+        }
+
+        return values;
+
+    }
+
+    @Override
+    public Map<AmendInstruction, String> amendOrders(Key key, Set<AmendInstruction> instructions) {
+
+        Map<AmendInstruction, String> values = forContext(key, c -> c.amendOrders(key, instructions));
+
+        OrderStore store = getStore(key);
+
+        if (store != null && values != null) {
+            values.forEach((k, v) -> store.amended(v, key.getInstrument(), k));
+        }
+
+        return values;
+
+    }
+
+    @Override
+    public Boolean cancelAllOrders(Key key) {
+
+        Boolean value = forContext(key, c -> c.cancelAllOrders(key));
+
+        OrderStore store = getStore(key);
+
+        List<Order> orders = store == null ? null : store.list();
+
+        if (Boolean.TRUE.equals(value) && orders != null) {
+            orders.forEach(o -> store.cancelled(o.getId()));
+        }
+
+        return value;
+
     }
 
 }
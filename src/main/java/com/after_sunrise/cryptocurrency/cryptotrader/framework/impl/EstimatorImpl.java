@@ -15,6 +15,7 @@ import java.math.BigDecimal;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -29,6 +30,8 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class EstimatorImpl extends AbstractService implements Estimator {
 
+    private final ExecutorFactory executorFactory;
+
     private final ExecutorService executor;
 
     private final PropertyManager manager;
@@ -42,7 +45,9 @@ public class EstimatorImpl extends AbstractService implements Estimator {
 
         this.manager = injector.getInstance(PropertyManager.class);
 
-        this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), estimators.size());
+        this.executorFactory = injector.getInstance(ExecutorFactory.class);
+
+        this.executor = executorFactory.get(getClass(), estimators.size());
 
     }
 
@@ -90,12 +95,17 @@ public class EstimatorImpl extends AbstractService implements Estimator {
 
         Map<Estimator, CompletableFuture<Estimation>> futures = new IdentityHashMap<>();
 
+        int bulkhead = manager.getTradingBulkhead();
+
+        Executor bulkheaded = bulkhead <= 0 ? executor :
+                executorFactory.get(getClass(), request.getSite(), bulkhead, Integer.MAX_VALUE);
+
         estimators.values().stream()
                 .filter(e -> ids != null)
                 .filter(e -> ids.containsKey(WILDCARD) || ids.containsKey(e.get()))
                 .forEach(estimator ->
                         futures.put(estimator,
-                                supplyAsync(() -> estimator.estimate(context, request), executor)
+                                supplyAsync(() -> estimator.estimate(context, request), bulkheaded)
                         )
                 );
 
@@ -56,4 +56,17 @@ public class InstructorImpl extends AbstractService implements Instructor {
 
     }
 
+    @Override
+    public boolean isEquivalent(Context context, Request request, Advice previous, Advice current) {
+
+        Instructor instructor = instructors.get(request.getSite());
+
+        if (instructor == null) {
+            return false;
+        }
+
+        return instructor.isEquivalent(context, request, previous, current);
+
+    }
+
 }
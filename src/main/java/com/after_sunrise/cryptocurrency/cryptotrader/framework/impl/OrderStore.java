@@ -0,0 +1,231 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+import static java.lang.Boolean.TRUE;
+import static java.math.BigDecimal.ZERO;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Own active orders of a (site, instrument), kept in memory in between the snapshots from the site. The orders are
+ * updated optimistically with the acks of the creates and cancels, and with the fills. Since the snapshots of the
+ * site may lag behind the acks, the local changes are replayed onto the snapshots until a snapshot reflects them, or
+ * until two snapshots fetched after the change still disagree, in which case the site is trusted.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class OrderStore {
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    static class LocalOrder implements Order {
+
+        private final String id;
+
+        private final String product;
+
+        private final Boolean active;
+
+        private final BigDecimal orderPrice;
+
+        private final BigDecimal orderQuantity;
+
+        private final BigDecimal filledQuantity;
+
+        private final BigDecimal remainingQuantity;
+
+    }
+
+    private final Map<String, Order> orders = new LinkedHashMap<>();
+
+    private final Set<String> listed = new HashSet<>();
+
+    private final Map<String, Pair<Long, Order>> changes = new HashMap<>();
+
+    private final Set<String> fills = new HashSet<>();
+
+    private long sequence;
+
+    private long previous;
+
+    private Instant synced;
+
+    /**
+     * @return Sequence to be passed to the snapshot, which is fetched after this call.
+     */
+    public synchronized long begin() {
+        return sequence;
+    }
+
+    /**
+     * @param begin  Sequence before the snapshot was fetched.
+     * @param values Active orders of the snapshot.
+     * @param time   Time when the snapshot was fetched.
+     */
+    public synchronized void sync(long begin, List<Order> values, Instant time) {
+
+        Map<String, Order> snapshot = new LinkedHashMap<>();
+
+        values.stream()
+                .filter(Objects::nonNull)
+                .filter(o -> StringUtils.isNotEmpty(o.getId()))
+                .filter(o -> TRUE.equals(o.getActive()))
+                .forEach(o -> snapshot.put(o.getId(), o));
+
+        long expired = previous;
+
+        changes.entrySet().removeIf(e -> e.getValue().getLeft() <= expired
+                || (e.getValue().getRight() == null) != snapshot.containsKey(e.getKey()));
+
+        previous = Math.max(begin, previous);
+
+        orders.clear();
+
+        orders.putAll(snapshot);
+
+        listed.clear();
+
+        listed.addAll(snapshot.keySet());
+
+        // Changes not yet reflected in the snapshot.
+        changes.forEach((id, p) -> {
+            if (p.getRight() == null) {
+                orders.remove(id);
+            } else {
+                orders.put(id, p.getRight());
+            }
+        });
+
+        fills.clear();
+
+        synced = time;
+
+    }
+
+    private void apply(String id, Order order) {
+
+        changes.put(id, Pair.of(++sequence, order));
+
+        if (order == null) {
+            orders.remove(id);
+        } else {
+            orders.put(id, order);
+        }
+
+    }
+
+    public synchronized void created(String id, String product, CreateInstruction instruction) {
+
+        if (StringUtils.isEmpty(id) || instruction == null) {
+            return;
+        }
+
+        BigDecimal size = instruction.getSize();
+
+        apply(id, new LocalOrder(id, product, TRUE, instruction.getPrice(), size, ZERO, size));
+
+    }
+
+    /**
+     * @param id Id of the order after amended, which differs from the original if replaced.
+     */
+    public synchronized void amended(String id, String product, AmendInstruction instruction) {
+
+        if (StringUtils.isEmpty(id) || instruction == null) {
+            return;
+        }
+
+        if (!StringUtils.equals(id, instruction.getId()) && StringUtils.isNotEmpty(instruction.getId())) {
+            apply(instruction.getId(), null);
+        }
+
+        BigDecimal size = instruction.getSize();
+
+        apply(id, new LocalOrder(id, product, TRUE, instruction.getPrice(), size, ZERO, size));
+
+    }
+
+    public synchronized void cancelled(String id) {
+
+        if (StringUtils.isEmpty(id)) {
+            return;
+        }
+
+        apply(id, null);
+
+    }
+
+    /**
+     * Applies the fills after the last snapshot, which are not yet reflected in the snapshot.
+     */
+    public synchronized void filled(List<Order.Execution> executions) {
+
+        if (executions == null || synced == null) {
+            return;
+        }
+
+        for (Order.Execution e : executions) {
+
+            if (e == null || e.getSize() == null || e.getTime() == null || e.getTime().isBefore(synced)) {
+                continue;
+            }
+
+            Order order = orders.get(e.getOrderId());
+
+            if (order == null || order.getOrderQuantity() == null || !fills.add(e.getId())) {
+                continue;
+            }
+
+            // Quantities are signed with the side.
+            BigDecimal quantity = order.getOrderQuantity();
+
+            BigDecimal filled = Optional.ofNullable(order.getFilledQuantity()).orElse(ZERO).abs()
+                    .add(e.getSize().abs());
+
+            BigDecimal remaining = quantity.abs().subtract(filled);
+
+            if (remaining.signum() <= 0) {
+
+                apply(order.getId(), null);
+
+                continue;
+
+            }
+
+            boolean sell = quantity.signum() < 0;
+
+            apply(order.getId(), new LocalOrder(order.getId(), order.getProduct(), TRUE, order.getOrderPrice(),
+                    quantity, sell ? filled.negate() : filled, sell ? remaining.negate() : remaining));
+
+        }
+
+    }
+
+    /**
+     * @return Active orders, or null if no snapshot yet.
+     */
+    public synchronized List<Order> list() {
+        return synced == null ? null : unmodifiableList(new ArrayList<>(orders.values()));
+    }
+
+    /**
+     * @return Order confirmed by the last snapshot and still active, or null if unknown.
+     */
+    public synchronized Order find(String id) {
+        return synced == null || !listed.contains(id) ? null : orders.get(id);
+    }
+
+}
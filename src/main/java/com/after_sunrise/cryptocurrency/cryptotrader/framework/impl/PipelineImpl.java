@@ -3,20 +3,25 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * @author takanori.takase
@@ -25,6 +30,20 @@ import java.util.Optional;
 @Slf4j
 public class PipelineImpl implements Pipeline {
 
+    /**
+     * Advice and own active orders observed in the last cycle of a (site, instrument).
+     */
+    @AllArgsConstructor
+    private static class Snapshot {
+
+        private final Advice advice;
+
+        private final List<List<Object>> orders;
+
+        private final Instant processed;
+
+    }
+
     private final PropertyManager propertyManager;
 
     private final Context context;
@@ -37,6 +56,8 @@ public class PipelineImpl implements Pipeline {
 
     private final Agent manager;
 
+    private final Map<Pair<String, String>, Snapshot> snapshots = new ConcurrentHashMap<>();
+
     @Inject
     public PipelineImpl(Injector injector) {
 
@@ -71,14 +92,35 @@ public class PipelineImpl implements Pipeline {
             Advice advice = adviser.advise(context, request, estimation);
             i = logElapsed(i, request, "Advise");
 
+            if (isUnchanged(request, advice)) {
+
+                log.debug("Skipping unchanged : {}", request);
+
+                logElapsed(s, request, "Total");
+
+                return;
+
+            }
+
             List<Instruction> instructions = instructor.instruct(context, request, advice);
             i = logElapsed(i, request, "Instruct");
 
             Map<Instruction, String> futures = manager.manage(context, request, instructions);
             i = logElapsed(i, request, "Manage");
 
-            Map<Instruction, Boolean> results = manager.reconcile(context, request, futures);
-            i = logElapsed(i, request, "Reconcile");
+            record(request, advice, instructions);
+
+            // Reconciled in the background, releasing the thread.
+            Instant m = i;
+            manager.reconcileAsync(context, request, futures).whenComplete((r, e) -> {
+
+                if (e != null) {
+                    log.warn("Reconcile failed : " + request, e);
+                }
+
+                logElapsed(m, request, "Reconcile");
+
+            });
 
             logElapsed(s, request, "Total");
 
@@ -86,6 +128,91 @@ public class PipelineImpl implements Pipeline {
 
     }
 
+    /**
+     * Checks if the own active orders are the same as the last steady cycle, and the advice is equivalent to the one
+     * of the steady cycle within the thresholds of the instructor, in which case instructing and managing would not
+     * change anything. Fills are reflected in the remaining quantities of the orders. Cycles are skipped up to the
+     * configured duration since the steady cycle.
+     */
+    @VisibleForTesting
+    boolean isUnchanged(Request request, Advice advice) {
+
+        Pair<String, String> target = Pair.of(request.getSite(), request.getInstrument());
+
+        Duration duration = propertyManager.getTradingStable(request.getSite(), request.getInstrument());
+
+        if (duration == null || duration.isZero() || duration.isNegative() || advice == null) {
+
+            snapshots.remove(target);
+
+            return false;
+
+        }
+
+        Snapshot steady = snapshots.get(target);
+
+        if (steady == null || !request.getCurrentTime().isBefore(steady.processed.plus(duration))) {
+            return false;
+        }
+
+        List<List<Object>> fingerprint = fingerprint(request);
+
+        return fingerprint != null && Objects.equals(steady.orders, fingerprint)
+                && instructor.isEquivalent(context, request, steady.advice, advice);
+
+    }
+
+    /**
+     * Keeps the cycle as the steady one, only if nothing was instructed, i.e. the own active orders already reflect
+     * the advice. Otherwise, the next cycle is processed in full, so that the rejected or the timed out instructions
+     * are retried, and the orders created are confirmed by a steady cycle.
+     */
+    @VisibleForTesting
+    void record(Request request, Advice advice, List<Instruction> instructions) {
+
+        Pair<String, String> target = Pair.of(request.getSite(), request.getInstrument());
+
+        Duration duration = propertyManager.getTradingStable(request.getSite(), request.getInstrument());
+
+        if (duration == null || duration.isZero() || duration.isNegative() || advice == null) {
+
+            snapshots.remove(target);
+
+            return;
+
+        }
+
+        List<List<Object>> fingerprint = fingerprint(request);
+
+        if (fingerprint == null || CollectionUtils.isNotEmpty(instructions)) {
+
+            snapshots.remove(target);
+
+            return;
+
+        }
+
+        snapshots.put(target, new Snapshot(advice, fingerprint, request.getCurrentTime()));
+
+    }
+
+    private List<List<Object>> fingerprint(Request request) {
+
+        // Same key as the instructor, hence served from the cache of the context.
+        List<Order> orders = context.listActiveOrders(Key.from(request));
+
+        return orders == null ? null : orders.stream()
+                .filter(Objects::nonNull)
+                .map(o -> Arrays.<Object>asList(o.getId(), strip(o.getOrderPrice()), strip(o.getRemainingQuantity())))
+                .sorted(Comparator.comparing(Object::toString))
+                .collect(toList());
+
+    }
+
+    private BigDecimal strip(BigDecimal value) {
+        return value == null ? null : value.stripTrailingZeros();
+    }
+
     @VisibleForTesting
     Instant logElapsed(Instant start, Request request, String label) {
 
@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Bulkhead;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
@@ -22,6 +23,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 
 /**
@@ -37,12 +39,16 @@ public class TraderImpl implements Trader {
 
     private final Pipeline pipeline;
 
+    private final ExecutorFactory executorFactory;
+
     private final ExecutorService executor;
 
     private final Map<String, Map<String, AtomicLong>> frequencies;
 
     private final Queue<Duration> durations;
 
+    private final Map<Composite, Future<?>> stalls;
+
     @Inject
     public TraderImpl(Injector injector) {
 
@@ -56,9 +62,13 @@ public class TraderImpl implements Trader {
 
         this.durations = new ConcurrentLinkedQueue<>();
 
+        this.stalls = new ConcurrentHashMap<>();
+
         int threads = propertyManager.getTradingThreads();
 
-        this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), threads);
+        this.executorFactory = injector.getInstance(ExecutorFactory.class);
+
+        this.executor = executorFactory.get(getClass(), threads);
 
     }
 
@@ -151,11 +161,19 @@ public class TraderImpl implements Trader {
 
     }
 
+    /**
+     * Processes the targets due in this attempt, and waits for them. With the bulkheads, each target is waited for up
+     * to its own interval, after which it is left running outside of the barrier, and skipped until it completes.
+     */
     @VisibleForTesting
     void processPipeline(Instant now) throws InterruptedException {
 
         Map<Composite, Future<?>> futures = new IdentityHashMap<>();
 
+        Map<Composite, Duration> timeouts = new IdentityHashMap<>();
+
+        int bulkhead = propertyManager.getTradingBulkhead();
+
         for (Composite c : propertyManager.getTradingTargets()) {
 
             String site = trimToEmpty(c.getSite());
@@ -175,26 +193,121 @@ public class TraderImpl implements Trader {
 
                 Instant target = now.plusMillis(Math.abs(interval.toMillis() * frequency));
 
-                futures.put(c, executor.submit(() -> pipeline.process(now, target, site, instrument)));
+                Runnable task = () -> pipeline.process(now, target, site, instrument);
+
+                if (bulkhead > 0) {
+
+                    if (isStalled(c)) {
+                        continue;
+                    }
+
+                    // Queued without limit, since each target is submitted once per attempt.
+                    Executor e = executorFactory.get(getClass(), site, bulkhead, Integer.MAX_VALUE);
+
+                    // Interruptible by cancel, unlike the CompletableFuture.
+                    FutureTask<?> future = new FutureTask<>(task, null);
+
+                    e.execute(future);
+
+                    futures.put(c, future);
+
+                    timeouts.put(c, Duration.between(now, target));
+
+                } else {
+
+                    futures.put(c, executor.submit(task));
+
+                }
 
             }
 
         }
 
+        long start = System.nanoTime();
+
         for (Entry<Composite, Future<?>> entry : futures.entrySet()) {
 
+            Duration timeout = timeouts.get(entry.getKey());
+
             try {
 
-                entry.getValue().get();
+                if (timeout == null) {
+
+                    entry.getValue().get();
+
+                } else {
+
+                    long remaining = timeout.toNanos() - (System.nanoTime() - start);
+
+                    entry.getValue().get(Math.max(remaining, 0), NANOSECONDS);
+
+                }
 
             } catch (ExecutionException e) {
 
                 log.error("Trading failure : " + entry.getKey(), e);
 
+            } catch (TimeoutException e) {
+
+                log.warn("Trading stalled : {} ({} ms)", entry.getKey(), timeout.toMillis());
+
+                stalls.put(entry.getKey(), entry.getValue());
+
+            } catch (InterruptedException e) {
+
+                futures.values().forEach(f -> f.cancel(true));
+
+                throw e;
+
             }
 
         }
 
+        if (bulkhead > 0) {
+            executorFactory.getBulkheads().stream().map(Bulkhead::toString).forEach(b -> log.debug("Bulkhead : {}", b));
+        }
+
+    }
+
+    /**
+     * @return True if the previous process of the target is still running.
+     */
+    private boolean isStalled(Composite composite) {
+
+        Future<?> future = stalls.get(composite);
+
+        if (future == null) {
+            return false;
+        }
+
+        if (!future.isDone()) {
+
+            log.debug("Skipping stalled : {}", composite);
+
+            return true;
+
+        }
+
+        stalls.remove(composite, future);
+
+        try {
+
+            future.get();
+
+            log.info("Trading recovered : {}", composite);
+
+        } catch (ExecutionException | CancellationException e) {
+
+            log.error("Trading failure : " + composite, e);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        }
+
+        return false;
+
     }
 
     @VisibleForTesting
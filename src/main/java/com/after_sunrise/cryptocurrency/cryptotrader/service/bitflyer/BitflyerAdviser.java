@@ -70,37 +70,41 @@ public class BitflyerAdviser extends TemplateAdviser implements BitflyerService
     @VisibleForTesting
     BigDecimal calculateSwapRate(Context context, Request request, BigDecimal dailyRate) {
 
-        if (dailyRate == null) {
-            return ZERO;
-        }
+        return evaluate(request, "swapRate:" + dailyRate, () -> {
 
-        Instant now = request.getCurrentTime();
+            if (dailyRate == null) {
+                return ZERO;
+            }
 
-        if (now == null) {
-            return ZERO;
-        }
+            Instant now = request.getCurrentTime();
 
-        ZonedDateTime expiry = context.getExpiry(Key.from(request));
+            if (now == null) {
+                return ZERO;
+            }
 
-        if (expiry == null) {
-            return ZERO; // Not an expiry product.
-        }
+            ZonedDateTime expiry = context.getExpiry(Key.from(request));
 
-        ZonedDateTime sod = expiry.truncatedTo(ChronoUnit.DAYS);
+            if (expiry == null) {
+                return ZERO; // Not an expiry product.
+            }
 
-        Duration swapFree = Duration.between(sod, expiry);
+            ZonedDateTime sod = expiry.truncatedTo(ChronoUnit.DAYS);
 
-        Duration maturity = Duration.between(request.getCurrentTime(), expiry);
+            Duration swapFree = Duration.between(sod, expiry);
 
-        if (maturity.compareTo(swapFree) < 0) {
-            return ZERO; // Expiring without swap.
-        }
+            Duration maturity = Duration.between(request.getCurrentTime(), expiry);
 
-        long swaps = maturity.toDays();
+            if (maturity.compareTo(swapFree) < 0) {
+                return ZERO; // Expiring without swap.
+            }
+
+            long swaps = maturity.toDays();
+
+            double rate = Math.pow(ONE.add(dailyRate).doubleValue(), swaps) - 1;
 
-        double rate = Math.pow(ONE.add(dailyRate).doubleValue(), swaps) - 1;
+            return BigDecimal.valueOf(rate).setScale(SCALE, UP);
 
-        return BigDecimal.valueOf(rate).setScale(SCALE, UP);
+        });
 
     }
 
@@ -148,59 +152,63 @@ public class BitflyerAdviser extends TemplateAdviser implements BitflyerService
     @VisibleForTesting
     BigDecimal calculateSfdRate(Context context, Request request, boolean buy) {
 
-        if (FX_BTC_JPY != ProductType.find(request.getInstrument())) {
-            return ZERO;
-        }
+        return evaluate(request, "sfdRate:" + buy, () -> {
 
-        BigDecimal sfdPct = getDecimalProperty(KEY_SFD_PCT, ONE);
+            if (FX_BTC_JPY != ProductType.find(request.getInstrument())) {
+                return ZERO;
+            }
 
-        if (sfdPct.signum() == 0) {
-            return ZERO;
-        }
+            BigDecimal sfdPct = getDecimalProperty(KEY_SFD_PCT, ONE);
 
-        Key key = Key.from(request);
+            if (sfdPct.signum() == 0) {
+                return ZERO;
+            }
 
-        BigDecimal fxPrice = buy ? context.getBestAskPrice(key) : context.getBestBidPrice(key);
+            Key key = Key.from(request);
 
-        if (fxPrice == null) {
-            return ZERO;
-        }
+            BigDecimal fxPrice = buy ? context.getBestAskPrice(key) : context.getBestBidPrice(key);
 
-        BigDecimal cashPrice = context.getLastPrice(Key.build(key).instrument(BTC_JPY.name()).build());
+            if (fxPrice == null) {
+                return ZERO;
+            }
 
-        if (cashPrice == null || cashPrice.signum() == 0) {
-            return ZERO;
-        }
+            BigDecimal cashPrice = context.getLastPrice(Key.build(key).instrument(BTC_JPY.name()).build());
 
-        BigDecimal pct = fxPrice.divide(cashPrice, SCALE, HALF_UP).subtract(ONE);
+            if (cashPrice == null || cashPrice.signum() == 0) {
+                return ZERO;
+            }
 
-        BigDecimal adj = buy ? pct : pct.negate();
+            BigDecimal pct = fxPrice.divide(cashPrice, SCALE, HALF_UP).subtract(ONE);
 
-        NavigableMap<BigDecimal, BigDecimal> table = getSfdTable();
+            BigDecimal adj = buy ? pct : pct.negate();
 
-        Entry<BigDecimal, BigDecimal> floor = table.floorEntry(adj);
+            NavigableMap<BigDecimal, BigDecimal> table = getSfdTable();
 
-        if (floor == null) {
-            return ZERO;
-        }
+            Entry<BigDecimal, BigDecimal> floor = table.floorEntry(adj);
 
-        if (sfdPct.signum() > 0) {
-            return floor.getValue().multiply(sfdPct);
-        }
+            if (floor == null) {
+                return ZERO;
+            }
 
-        Entry<BigDecimal, BigDecimal> higher = table.higherEntry(adj);
+            if (sfdPct.signum() > 0) {
+                return floor.getValue().multiply(sfdPct);
+            }
 
-        if (higher == null) {
-            return floor.getValue().multiply(sfdPct.negate());
-        }
+            Entry<BigDecimal, BigDecimal> higher = table.higherEntry(adj);
+
+            if (higher == null) {
+                return floor.getValue().multiply(sfdPct.negate());
+            }
+
+            BigDecimal numerator = adj.subtract(floor.getKey()).multiply(higher.getValue().subtract(floor.getValue()));
 
-        BigDecimal numerator = adj.subtract(floor.getKey()).multiply(higher.getValue().subtract(floor.getValue()));
+            BigDecimal denominator = higher.getKey().subtract(floor.getKey());
 
-        BigDecimal denominator = higher.getKey().subtract(floor.getKey());
+            BigDecimal interpolated = floor.getValue().add(numerator.divide(denominator, SCALE, HALF_UP));
 
-        BigDecimal interpolated = floor.getValue().add(numerator.divide(denominator, SCALE, HALF_UP));
+            return interpolated.multiply(sfdPct.negate());
 
-        return interpolated.multiply(sfdPct.negate());
+        });
 
     }
 
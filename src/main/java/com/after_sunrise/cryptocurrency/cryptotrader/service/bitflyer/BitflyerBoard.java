@@ -4,23 +4,51 @@ import com.after_sunrise.cryptocurrency.bitflyer4j.entity.Board;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
 @Getter
-@ToString
+@ToString(exclude = {"asks", "bids"})
 public class BitflyerBoard {
 
     private final Instant timestamp;
 
     private final Board delegate;
 
+    private final NavigableMap<BigDecimal, BigDecimal> asks;
+
+    private final NavigableMap<BigDecimal, BigDecimal> bids;
+
     public BitflyerBoard(Instant timestamp, Board delegate) {
+        this(timestamp, delegate, convert(delegate, true), convert(delegate, false));
+    }
+
+    public BitflyerBoard(Instant timestamp, Board delegate,
+                         NavigableMap<BigDecimal, BigDecimal> asks, NavigableMap<BigDecimal, BigDecimal> bids) {
         this.timestamp = timestamp;
         this.delegate = delegate;
+        this.asks = Collections.unmodifiableNavigableMap(asks);
+        this.bids = Collections.unmodifiableNavigableMap(bids);
+    }
+
+    private static NavigableMap<BigDecimal, BigDecimal> convert(Board board, boolean ask) {
+
+        Comparator<BigDecimal> comparator = ask ? Comparator.naturalOrder() : Comparator.reverseOrder();
+
+        NavigableMap<BigDecimal, BigDecimal> values = new TreeMap<>(comparator);
+
+        BitflyerBook.apply(board, ask, values::put, values::remove);
+
+        return values;
+
     }
 
 }
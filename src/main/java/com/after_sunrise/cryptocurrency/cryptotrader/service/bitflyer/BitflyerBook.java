@@ -0,0 +1,127 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer;
+
+import com.after_sunrise.cryptocurrency.bitflyer4j.entity.Board;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Live order book of a single product, maintained from the streamed snapshots and diffs.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+@ToString(exclude = {"asks", "bids", "view"})
+public class BitflyerBook {
+
+    private final NavigableMap<BigDecimal, BigDecimal> asks = new TreeMap<>(Comparator.naturalOrder());
+
+    private final NavigableMap<BigDecimal, BigDecimal> bids = new TreeMap<>(Comparator.reverseOrder());
+
+    private Board snapshot;
+
+    private Instant snapshotTime;
+
+    private Instant updateTime;
+
+    private volatile BitflyerBoard view;
+
+    static void apply(Board board, boolean ask, BiConsumer<BigDecimal, BigDecimal> put, Consumer<BigDecimal> remove) {
+
+        if (board == null) {
+            return;
+        }
+
+        Optional.ofNullable(ask ? board.getAsk() : board.getBid()).orElse(Collections.emptyList()).stream()
+                .filter(Objects::nonNull)
+                .filter(q -> q.getPrice() != null)
+                .filter(q -> q.getSize() != null)
+                .forEach(q -> {
+
+                    if (q.getSize().signum() == 0) {
+                        remove.accept(q.getPrice());
+                    } else {
+                        put.accept(q.getPrice(), q.getSize());
+                    }
+
+                });
+
+    }
+
+    public synchronized void snapshot(Instant time, Board board) {
+
+        if (board == null) {
+            return;
+        }
+
+        asks.clear();
+
+        bids.clear();
+
+        apply(board, true, asks::put, asks::remove);
+
+        apply(board, false, bids::put, bids::remove);
+
+        snapshot = board;
+
+        snapshotTime = time;
+
+        updateTime = time;
+
+        view = null;
+
+    }
+
+    public synchronized boolean update(Instant time, Board diff) {
+
+        if (diff == null || snapshotTime == null) {
+            return false; // Wait for the initial snapshot.
+        }
+
+        apply(diff, true, (p, s) -> {
+            asks.put(p, s);
+            bids.headMap(p, true).clear(); // Crossed
+        }, asks::remove);
+
+        apply(diff, false, (p, s) -> {
+            bids.put(p, s);
+            asks.headMap(p, true).clear(); // Crossed
+        }, bids::remove);
+
+        updateTime = time;
+
+        view = null;
+
+        return true;
+
+    }
+
+    public synchronized Instant getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public BitflyerBoard getView() {
+
+        BitflyerBoard current = view;
+
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (this) {
+
+            if (view == null && snapshotTime != null) {
+                view = new BitflyerBoard(updateTime, snapshot, new TreeMap<>(asks), new TreeMap<>(bids));
+            }
+
+            return view;
+
+        }
+
+    }
+
+}
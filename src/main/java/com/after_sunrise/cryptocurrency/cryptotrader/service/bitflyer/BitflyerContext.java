@@ -9,7 +9,9 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Cance
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateCatalog;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateJournal;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -24,14 +26,14 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static com.after_sunrise.cryptocurrency.bitflyer4j.core.ConditionType.*;
 import static com.after_sunrise.cryptocurrency.bitflyer4j.core.ParentType.IFD;
@@ -70,12 +72,22 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     private static final Duration REALTIME_EXPIRY = Duration.ofSeconds(5);
 
+    private static final Duration REALTIME_RESYNC = Duration.ofMinutes(1);
+
     private static final Duration REALTIME_TRADE = Duration.ofDays(3);
 
     private static final int REALTIME_COUNT = 1000;
 
     private static final int REALTIME_QUERIES = 32;
 
+    private static final int REALTIME_PARALLEL = 4;
+
+    private static final Duration BACKFILL_DELAY = Duration.ofMillis(100);
+
+    private static final Duration BACKFILL_BACKOFF = Duration.ofSeconds(10);
+
+    private static final int BACKFILL_RETRY = 32;
+
     private static final Set<StatusType> HALTS = EnumSet.of(
             StatusType.NO_ORDER,
             StatusType.STOP
@@ -100,12 +112,18 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     private final Map<String, Lock> realtimeLocks;
 
-    private final Map<String, Optional<BitflyerBoard>> realtimeBoards;
+    private final Map<String, BitflyerBook> realtimeBooks;
 
     private final Map<String, Optional<Tick>> realtimeTicks;
 
+    private final TemplateCatalog<Product> catalog = new TemplateCatalog<>(p ->
+            StringUtils.isEmpty(p.getProduct()) ? Stream.empty() : Stream.of(p.getProduct(), p.getAlias())
+    );
+
     private final Map<String, NavigableMap<Instant, BitflyerTrade>> realtimeTrades;
 
+    private final ScheduledExecutorService backfiller;
+
     public BitflyerContext() {
 
         this(new Bitflyer4jFactory().createInstance());
@@ -119,12 +137,20 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         realtimeLocks = synchronizedMap(new HashMap<>());
 
-        realtimeBoards = new ConcurrentHashMap<>();
+        realtimeBooks = new ConcurrentHashMap<>();
 
         realtimeTicks = new ConcurrentHashMap<>();
 
         realtimeTrades = new ConcurrentHashMap<>();
 
+        // Retries of the limited backfill windows, off the callback threads of the client.
+        backfiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName() + "-backfill");
+            return t;
+        });
+
         bitflyer4j = api;
 
         accountService = bitflyer4j.getAccountService();
@@ -144,13 +170,27 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
     @Override
     public void close() throws Exception {
 
+        backfiller.shutdownNow();
+
         bitflyer4j.close();
 
     }
 
     @Override
     public void onBoards(String product, Board value) {
-        // TODO
+
+        if (value == null) {
+            return;
+        }
+
+        BitflyerBook book = realtimeBooks.get(StringUtils.trimToEmpty(product));
+
+        if (book == null) {
+            return;
+        }
+
+        book.update(getNow(), value);
+
     }
 
     @Override
@@ -164,7 +204,7 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         Instant timestamp = getNow();
 
-        realtimeBoards.put(key, Optional.of(new BitflyerBoard(timestamp, value)));
+        realtimeBooks.computeIfAbsent(key, k -> new BitflyerBook()).snapshot(timestamp, value);
 
     }
 
@@ -211,6 +251,14 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
             return;
         }
 
+        synchronized (trades) {
+            accumulateExecutions(trades, values);
+        }
+
+    }
+
+    private void accumulateExecutions(NavigableMap<Instant, BitflyerTrade> trades, List<Execution> values) {
+
         values.stream().filter(Objects::nonNull)
                 .filter(exec -> exec.getTimestamp() != null)
                 .filter(exec -> exec.getPrice() != null)
@@ -268,15 +316,9 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
                 extract(marketService.getProducts(), getTimeout())
         );
 
-        return trimToEmpty(products).stream()
-                .filter(Objects::nonNull)
-                .filter(p -> StringUtils.isNotEmpty(p.getProduct()))
-                .filter(p ->
-                        StringUtils.equals(key.getInstrument(), p.getProduct())
-                                || StringUtils.equals(key.getInstrument(), p.getAlias())
-                )
-                .map(Product::getProduct)
-                .findFirst().orElse(null);
+        Product product = catalog.find(products, key.getInstrument());
+
+        return product == null ? null : product.getProduct();
 
     }
 
@@ -287,39 +329,49 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
             String instrument = StringUtils.trimToEmpty(convertProductAlias(key));
 
-            Optional<BitflyerBoard> realtime = realtimeBoards.get(instrument);
+            BitflyerBook book = realtimeBooks.get(instrument);
 
-            if (realtime == null) {
+            if (book == null) {
 
                 // Initiate subscription if nothing is cached.
 
-                realtime = Optional.empty();
-
-                realtimeBoards.put(instrument, realtime);
+                book = realtimeBooks.computeIfAbsent(instrument, k -> new BitflyerBook());
 
                 realtimeService.subscribeBoard(singletonList(instrument));
 
+                realtimeService.subscribeBoardSnapshot(singletonList(instrument));
+
             }
 
-            if (realtime
-                    .filter(board -> board.getTimestamp() != null)
-                    .map(board -> Duration.between(board.getTimestamp(), key.getTimestamp()))
-                    .filter(duration -> duration.compareTo(REALTIME_EXPIRY) <= 0)
-                    .isPresent()) {
+            BitflyerBoard realtime = book.getView();
 
-                // Use cached if the timestamp is not old.
+            Duration resync = Duration.ofMillis(getLongProperty("board.resync", REALTIME_RESYNC.toMillis()));
 
-                return realtime.orElse(null);
+            if (realtime != null && realtime.getTimestamp() != null && book.getSnapshotTime() != null
+                    && Duration.between(realtime.getTimestamp(), key.getTimestamp()).compareTo(REALTIME_EXPIRY) <= 0
+                    && Duration.between(book.getSnapshotTime(), key.getTimestamp()).compareTo(resync) <= 0) {
+
+                // Use the live book if updated recently, and synchronized with a recent snapshot.
+
+                return realtime;
 
             }
 
-            // Fall back to request/response.
+            // Fall back to request/response, and resynchronize the live book.
 
             Board.Request request = Board.Request.builder().product(instrument).build();
 
             Board board = extract(marketService.getBoard(request), getTimeout());
 
-            return board == null ? null : new BitflyerBoard(getNow(), board);
+            if (board == null) {
+                return null;
+            }
+
+            Instant now = getNow();
+
+            book.snapshot(now, board);
+
+            return new BitflyerBoard(now, board);
 
         });
 
@@ -457,20 +509,7 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         BitflyerBoard b = getBoard(key);
 
-        if (b == null) {
-            return super.getAskPrices(key);
-        }
-
-        Map<BigDecimal, BigDecimal> values = new HashMap<>();
-
-        trimToEmpty(b.getDelegate().getAsk()).stream()
-                .filter(Objects::nonNull)
-                .filter(q -> q.getPrice() != null)
-                .filter(q -> q.getSize() != null)
-                .filter(q -> q.getSize().signum() != 0)
-                .forEach(q -> values.put(q.getPrice(), q.getSize()));
-
-        return values;
+        return b == null ? super.getAskPrices(key) : b.getAsks();
 
     }
 
@@ -479,20 +518,7 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         BitflyerBoard b = getBoard(key);
 
-        if (b == null) {
-            return super.getBidPrices(key);
-        }
-
-        Map<BigDecimal, BigDecimal> values = new HashMap<>();
-
-        trimToEmpty(b.getDelegate().getBid()).stream()
-                .filter(Objects::nonNull)
-                .filter(q -> q.getPrice() != null)
-                .filter(q -> q.getSize() != null)
-                .filter(q -> q.getSize().signum() != 0)
-                .forEach(q -> values.put(q.getPrice(), q.getSize()));
-
-        return values;
+        return b == null ? super.getBidPrices(key) : b.getBids();
 
     }
 
@@ -517,37 +543,21 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
                 trades = new ConcurrentSkipListMap<>();
 
-                Execution.Request.RequestBuilder b = Execution.Request.builder().product(id).count(REALTIME_COUNT);
-
-                int queries = getIntProperty("trade.queries", REALTIME_QUERIES);
-
-                Instant cutoff = getNow().minus(REALTIME_TRADE);
-
-                Long minimumId = null;
+                CompletableFuture<Void> backfill = backfillExecutions(id, trades);
 
-                for (int i = 0; i < queries; i++) {
+                // Publish the latest page, and let the older pages fill in the background.
 
-                    Execution.Request r = b.before(minimumId).build();
-
-                    List<Execution> execs = trimToEmpty(extractQuietly(marketService.getExecutions(r), getTimeout()));
-
-                    updateExecutions(trades, execs);
+                realtimeTrades.put(id, trades);
 
-                    minimumId = execs.stream().filter(Objects::nonNull)
-                            .filter(e -> e.getId() != null)
-                            .filter(e -> e.getTimestamp() != null)
-                            .filter(e -> e.getTimestamp().toInstant().isAfter(cutoff))
-                            .min(Comparator.comparing(Execution::getId))
-                            .map(Execution::getId)
-                            .orElse(null);
+                backfill.whenComplete((v, e) -> {
 
-                    if (minimumId == null) {
-                        break;
+                    if (e != null) {
+                        log.warn("Backfill failed : " + id, e);
+                    } else {
+                        log.debug("Backfilled executions : {}", id);
                     }
 
-                }
-
-                realtimeTrades.put(id, trades);
+                });
 
             }
 
@@ -565,6 +575,198 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     }
 
+    @VisibleForTesting
+    CompletableFuture<Void> backfillExecutions(String id, NavigableMap<Instant, BitflyerTrade> trades) {
+
+        Instant cutoff = getNow().minus(REALTIME_TRADE);
+
+        Execution.Request request = Execution.Request.builder().product(id).count(REALTIME_COUNT).build();
+
+        List<Execution> execs = trimToEmpty(extractQuietly(marketService.getExecutions(request), getTimeout()));
+
+        updateExecutions(trades, execs);
+
+        LongSummaryStatistics ids = execs.stream().filter(Objects::nonNull)
+                .filter(e -> e.getId() != null)
+                .filter(e -> e.getTimestamp() != null)
+                .filter(e -> e.getTimestamp().toInstant().isAfter(cutoff))
+                .mapToLong(Execution::getId)
+                .summaryStatistics();
+
+        if (ids.getCount() == 0 || ids.getMin() <= LONG_ONE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Split the older history into windows of the ID range estimated from the latest page.
+
+        Backfill backfill = new Backfill(id, trades, cutoff, ids.getMin(), Math.max(ids.getMax() - ids.getMin(), 1),
+                getIntProperty("trade.queries", REALTIME_QUERIES) - 1
+        );
+
+        int parallel = Math.max(getIntProperty("trade.parallel", REALTIME_PARALLEL), 1);
+
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[parallel];
+
+        for (int i = 0; i < parallel; i++) {
+            workers[i] = backfillWindow(backfill);
+        }
+
+        return CompletableFuture.allOf(workers);
+
+    }
+
+    private static class Backfill {
+
+        private final AtomicInteger windows = new AtomicInteger();
+
+        private final AtomicInteger limit = new AtomicInteger(Integer.MAX_VALUE);
+
+        private final AtomicInteger budget;
+
+        private final String product;
+
+        private final NavigableMap<Instant, BitflyerTrade> trades;
+
+        private final Instant cutoff;
+
+        private final long minimum;
+
+        private final long span;
+
+        private Backfill(String product, NavigableMap<Instant, BitflyerTrade> trades,
+                         Instant cutoff, long minimum, long span, int budget) {
+            this.product = product;
+            this.trades = trades;
+            this.cutoff = cutoff;
+            this.minimum = minimum;
+            this.span = span;
+            this.budget = new AtomicInteger(budget);
+        }
+
+    }
+
+    private CompletableFuture<Void> backfillWindow(Backfill backfill) {
+
+        int index = backfill.windows.getAndIncrement();
+
+        long before = backfill.minimum - backfill.span * index;
+
+        long after = Math.max(before - backfill.span - 1, 0);
+
+        if (index >= backfill.limit.get() || before <= LONG_ONE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return backfillPage(backfill, index, before, after).thenCompose(v -> backfillWindow(backfill));
+
+    }
+
+    private CompletableFuture<Void> backfillPage(Backfill backfill, int index, long before, long after) {
+
+        if (backfill.budget.getAndDecrement() <= 0) {
+
+            backfill.limit.set(0);
+
+            return CompletableFuture.completedFuture(null);
+
+        }
+
+        return requestPage(backfill, index, before, after, 0);
+
+    }
+
+    /**
+     * Sends the page through the rate limiter of the site, since the client bypasses it. A limited page is retried
+     * later on the backfill thread, instead of waiting for the token, which may be in a callback of the client.
+     */
+    private CompletableFuture<Void> requestPage(Backfill backfill, int index, long before, long after, int retry) {
+
+        long wait = tryThrottle(RequestPriority.QUERY);
+
+        if (wait > 0L) {
+
+            if (retry >= BACKFILL_RETRY) {
+
+                log.warn("Backfill abandoned : {} ({} - {})", backfill.product, after, before);
+
+                return CompletableFuture.completedFuture(null);
+
+            }
+
+            log.debug("Backfill limited : {} ({} - {}) #{}", backfill.product, after, before, retry);
+
+            long delay = Math.max(Math.min(wait, BACKFILL_BACKOFF.toNanos()), BACKFILL_DELAY.toNanos());
+
+            CompletableFuture<Void> delayed = new CompletableFuture<>();
+
+            try {
+
+                backfiller.schedule(() -> delayed.complete(null), delay, TimeUnit.NANOSECONDS);
+
+            } catch (RejectedExecutionException e) {
+
+                log.warn("Backfill abandoned : {} ({} - {})", backfill.product, after, before);
+
+                return CompletableFuture.completedFuture(null);
+
+            }
+
+            return delayed.thenCompose(v -> requestPage(backfill, index, before, after, retry + 1));
+
+        }
+
+        Execution.Request request = Execution.Request.builder().product(backfill.product)
+                .count(REALTIME_COUNT).before(before).after(after).build();
+
+        CompletableFuture<List<Execution>> future = marketService.getExecutions(request);
+
+        if (future == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return future.handle((v, e) -> {
+
+            if (e != null) {
+                log.warn("Backfill window failed : {} - {}", request, e);
+            }
+
+            return trimToEmpty(e == null ? v : null);
+
+        }).thenCompose(execs -> {
+
+            updateExecutions(backfill.trades, execs);
+
+            LongSummaryStatistics ids = execs.stream().filter(Objects::nonNull)
+                    .filter(e -> e.getId() != null)
+                    .mapToLong(Execution::getId)
+                    .summaryStatistics();
+
+            if (ids.getCount() != 0 && execs.stream().filter(Objects::nonNull)
+                    .filter(e -> e.getTimestamp() != null)
+                    .noneMatch(e -> e.getTimestamp().toInstant().isAfter(backfill.cutoff))) {
+
+                // Older windows are beyond the cutoff.
+
+                backfill.limit.accumulateAndGet(index, Math::min);
+
+                return CompletableFuture.completedFuture(null);
+
+            }
+
+            if (execs.size() >= REALTIME_COUNT && ids.getMin() > after + 1) {
+
+                // Range under-estimated. Continue below the oldest of the current page.
+
+                return backfillPage(backfill, index, ids.getMin(), after);
+
+            }
+
+            return CompletableFuture.completedFuture(null);
+
+        });
+
+    }
+
     @VisibleForTesting
     CurrencyType getCurrency(Key key, Function<ProductType, CurrencyType> f) {
 
@@ -985,9 +1187,13 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
             TradeExecution.Request request = TradeExecution.Request.builder().product(product).build();
 
-            return unmodifiableList(trimToEmpty(extract(orderService.listExecutions(request), getTimeout()))
+            TemplateJournal<BitflyerExecution> journal = getJournal(BitflyerExecution.class, product);
+
+            journal.append(trimToEmpty(extract(orderService.listExecutions(request), getTimeout()))
                     .stream().filter(Objects::nonNull).map(BitflyerExecution::new).collect(toList()));
 
+            return journal.list();
+
         });
 
         return execs == null ? null : new ArrayList<>(execs);
@@ -1187,4 +1393,39 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     }
 
+    /**
+     * Cancels the child orders with the product cancel, without listing. The parent orders are not covered by the
+     * product cancel, hence cancelled individually in parallel.
+     */
+    @Override
+    public Boolean cancelAllOrders(Key key) {
+
+        String product = convertProductAlias(key);
+
+        if (StringUtils.isEmpty(product)) {
+            return null;
+        }
+
+        CompletableFuture<ProductCancel> children = orderService.cancelProduct(
+                ProductCancel.Request.builder().product(product).build()
+        );
+
+        List<CompletableFuture<ParentCancel>> parents = trimToEmpty(fetchOrder(key)).stream()
+                .filter(BitflyerOrder.Parent.class::isInstance)
+                .filter(o -> TRUE.equals(o.getActive()))
+                .filter(o -> StringUtils.isNotEmpty(o.getId()))
+                .map(o -> orderService.cancelParent(
+                        ParentCancel.Request.builder().product(product).acceptanceId(o.getId()).build()
+                )).collect(toList());
+
+        boolean result = extractQuietly(children, getTimeout()) != null;
+
+        for (CompletableFuture<ParentCancel> parent : parents) {
+            result &= extractQuietly(parent, getTimeout()) != null;
+        }
+
+        return result;
+
+    }
+
 }
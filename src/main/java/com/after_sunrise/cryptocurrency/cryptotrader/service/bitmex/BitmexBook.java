@@ -1,8 +1,11 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
 import lombok.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
 /**
@@ -17,6 +20,18 @@ public class BitmexBook {
 
     public static final String SIDE_BUY = "Buy";
 
+    /**
+     * "XBTUSD"
+     */
+    @SerializedName("symbol")
+    private String symbol;
+
+    /**
+     * Unique identifier of the price level.
+     */
+    @SerializedName("id")
+    private Long id;
+
     /**
      * "Buy", "Sell"
      */
@@ -35,4 +50,43 @@ public class BitmexBook {
     @SerializedName("size")
     private BigDecimal size;
 
+    public static class Adapter extends TemplateAdapter<BitmexBook, BitmexBookBuilder> {
+
+        @Override
+        protected BitmexBookBuilder create() {
+            return builder();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, BitmexBookBuilder builder) throws IOException {
+
+            switch (name) {
+                case "symbol":
+                    builder.symbol(nextString(in));
+                    return true;
+                case "id":
+                    builder.id(nextLong(in));
+                    return true;
+                case "side":
+                    builder.side(nextString(in));
+                    return true;
+                case "price":
+                    builder.price(nextDecimal(in));
+                    return true;
+                case "size":
+                    builder.size(nextDecimal(in));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected BitmexBook build(BitmexBookBuilder builder) {
+            return builder.build();
+        }
+
+    }
+
 }
@@ -1,49 +1,66 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateBatcher;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateCatalog;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateJournal;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonObject;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import javax.websocket.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.net.URI;
 import java.security.GeneralSecurityException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexService.SideType.BUY;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexService.SideType.SELL;
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexRealtime.*;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexTick.UNLISTED;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.HALF_UP;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
-import static org.apache.commons.lang3.math.NumberUtils.INTEGER_ZERO;
 
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
+@ClientEndpoint
 public class BitmexContext extends TemplateContext implements BitmexService {
 
     private static final String URL = "https://www.bitmex.com";
@@ -66,8 +83,18 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     private static final String URL_ORDER_BULK = "/api/v1/order/bulk";
 
+    private static final String URL_ORDER_ALL = "/api/v1/order/all";
+
     private static final String URL_EXECUTION = "/api/v1/execution/tradeHistory";
 
+    private static final String WS_ENDPOINT = "wss://www.bitmex.com/realtime";
+
+    private static final Duration WS_INTERVAL = Duration.ofSeconds(5);
+
+    private static final String WS_PING = "ping";
+
+    private static final String WS_PONG = "pong";
+
     private static final Type TYPE_TICKER = new TypeToken<List<BitmexTick>>() {
     }.getType();
 
@@ -94,7 +121,31 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     private static final Duration BUCKETED = Duration.ofHours(1);
 
-    private final AtomicLong lastNonce = new AtomicLong();
+    private static final int PRIVATE_INFLIGHT = 4;
+
+    private static final int EXECUTION_COUNT = 500;
+
+    private static final int EXECUTION_PAGES = 10;
+
+    private final Object annotatedEndpoint;
+
+    private final Set<String> realtimeTopics = ConcurrentHashMap.newKeySet();
+
+    private final AtomicReference<Session> realtimeSession = new AtomicReference<>();
+
+    private final AtomicReference<Instant> realtimeTime = new AtomicReference<>();
+
+    private final BitmexRealtime realtime;
+
+    private final TemplateCatalog<BitmexTick> catalog = new TemplateCatalog<>(t -> Stream.of(t.getSymbol()));
+
+    private final ExecutorService executor;
+
+    private final TemplateBatcher<CreateInstruction> createBatcher = new TemplateBatcher<>();
+
+    private final TemplateBatcher<CancelInstruction> cancelBatcher = new TemplateBatcher<>();
+
+    private final TemplateBatcher<AmendInstruction> amendBatcher = new TemplateBatcher<>();
 
     private final Gson gson;
 
@@ -108,8 +159,268 @@ public class BitmexContext extends TemplateContext implements BitmexService {
                 (JsonDeserializer<Instant>) (j, t, c) -> Instant.parse(j.getAsString())
         );
 
+        builder.registerTypeAdapter(BitmexTick.class, new BitmexTick.Adapter());
+
+        builder.registerTypeAdapter(BitmexBook.class, new BitmexBook.Adapter());
+
+        builder.registerTypeAdapter(BitmexTrade.class, new BitmexTrade.Adapter());
+
+        builder.registerTypeAdapter(BitmexTrade.Bucketed.class, new BitmexTrade.Bucketed.Adapter());
+
         gson = builder.create();
 
+        annotatedEndpoint = this;
+
+        realtime = new BitmexRealtime(gson, BUCKETED);
+
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName());
+            return t;
+        });
+
+    }
+
+    @Override
+    public void close() throws Exception {
+
+        executor.shutdown();
+
+        IOUtils.closeQuietly(realtimeSession.get());
+
+        super.close();
+
+    }
+
+    /**
+     * Subscribes to the streaming table, starting the socket on the first subscription.
+     *
+     * @return True if the streaming is enabled.
+     */
+    @VisibleForTesting
+    boolean subscribeRealtime(String table, String symbol) {
+
+        String endpoint = getStringProperty("realtime.endpoint", WS_ENDPOINT);
+
+        if (StringUtils.isEmpty(endpoint)) {
+            return false;
+        }
+
+        String topic = symbol == null ? table : table + ":" + symbol;
+
+        if (realtimeTopics.contains(topic)) {
+            return true;
+        }
+
+        synchronized (realtimeTopics) {
+
+            if (realtimeTopics.isEmpty() && !executor.isShutdown()) {
+
+                executor.submit(() -> scheduleSocket(URI.create(endpoint), WS_INTERVAL));
+
+            }
+
+            if (!realtimeTopics.add(topic)) {
+                return true;
+            }
+
+        }
+
+        Session session = realtimeSession.get();
+
+        if (session != null && session.isOpen()) {
+            sendSubscribe(session, singletonList(topic));
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Subscribes to the private streaming table, if the credentials are configured.
+     */
+    @VisibleForTesting
+    boolean subscribePrivate(String table) {
+
+        String apiKey = getStringProperty("api.id", null);
+        String secret = getStringProperty("api.secret", null);
+
+        if (StringUtils.isEmpty(apiKey) || StringUtils.isEmpty(secret)) {
+            return false;
+        }
+
+        return subscribeRealtime(table, null);
+
+    }
+
+    @VisibleForTesting
+    void sendAuthenticate(Session session) {
+
+        String apiKey = getStringProperty("api.id", null);
+        String secret = getStringProperty("api.secret", null);
+
+        if (StringUtils.isEmpty(apiKey) || StringUtils.isEmpty(secret)) {
+            return;
+        }
+
+        try {
+
+            long expires = getNow().plus(WS_INTERVAL).getEpochSecond();
+
+            String path = StringUtils.trimToEmpty(session.getRequestURI().getPath());
+
+            String hash = computeHash(secret, GET.name(), path, String.valueOf(expires), null);
+
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("op", "authKeyExpires");
+            request.put("args", Arrays.asList(apiKey, expires, hash));
+
+            session.getBasicRemote().sendText(gson.toJson(request));
+
+            log.debug("Authenticating socket : {}", session.getId());
+
+        } catch (IOException e) {
+
+            log.debug("Authentication failure : " + session.getId(), e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void sendSubscribe(Session session, List<String> topics) {
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("op", "subscribe");
+        request.put("args", topics);
+
+        try {
+
+            session.getBasicRemote().sendText(gson.toJson(request));
+
+            log.debug("Subscribed topics : {}", topics);
+
+        } catch (IOException e) {
+
+            log.debug("Subscription failure : " + topics, e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    void scheduleSocket(URI uri, Duration interval) {
+
+        Session session = null;
+
+        while (!executor.isShutdown()) {
+
+            try {
+
+                if (session == null || !session.isOpen()) {
+
+                    WebSocketContainer c = ContainerProvider.getWebSocketContainer();
+
+                    session = c.connectToServer(annotatedEndpoint, uri);
+
+                    log.debug("Initialized socket : {}", session.getId());
+
+                } else {
+
+                    Instant time = realtimeTime.get();
+
+                    Duration idle = Duration.between(trim(time, Instant.EPOCH), getNow());
+
+                    if (idle.compareTo(interval.multipliedBy(3)) > 0) {
+
+                        log.debug("Closing idle socket : {} ({})", session.getId(), idle);
+
+                        IOUtils.closeQuietly(session);
+
+                    } else if (idle.compareTo(interval) > 0) {
+
+                        session.getBasicRemote().sendText(WS_PING);
+
+                    }
+
+                }
+
+            } catch (Exception e) {
+                log.debug("Scheduling failure.", e);
+            }
+
+            try {
+                MILLISECONDS.sleep(interval.toMillis());
+            } catch (InterruptedException e) {
+                log.debug("Scheduling interrupted.");
+            }
+
+        }
+
+        IOUtils.closeQuietly(session);
+
+    }
+
+    @OnOpen
+    public void onWebSocketOpen(Session s) {
+
+        log.debug("Socket opened : {}", s.getId());
+
+        realtimeSession.set(s);
+
+        realtimeTime.set(getNow());
+
+        sendAuthenticate(s);
+
+        sendSubscribe(s, new ArrayList<>(realtimeTopics));
+
+    }
+
+    @OnError
+    public void onWebSocketError(Session s, Throwable t) {
+
+        log.debug("Socket error : " + s.getId(), t);
+
+        IOUtils.closeQuietly(s);
+
+    }
+
+    @OnClose
+    public void onWebSocketClose(Session s, CloseReason reason) {
+
+        log.debug("Socket closed : {} - {}", s.getId(), reason);
+
+        realtimeSession.compareAndSet(s, null);
+
+        // Fall back to the REST until re-synchronized.
+        realtime.clear();
+
+    }
+
+    @OnMessage
+    public void onWebSocketMessage(String message) {
+
+        realtimeTime.set(getNow());
+
+        if (StringUtils.isEmpty(message) || WS_PONG.equals(message)) {
+            return;
+        }
+
+        try {
+
+            JsonObject object = gson.fromJson(message, JsonObject.class);
+
+            if (!realtime.apply(object)) {
+                log.trace("Socket message : {}", message);
+            }
+
+        } catch (RuntimeException e) {
+
+            log.debug("Socket message failure : " + message, e);
+
+        }
+
     }
 
     @VisibleForTesting
@@ -175,29 +486,53 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         Key newKey = Key.build(key).instrument(WILDCARD).build();
 
-        List<BitmexTick> ticks = listCached(BitmexTick.class, newKey, () -> {
-
-            String data = request(GET, URL + URL_TICKER, null, null);
+        List<BitmexTick> ticks = subscribeRealtime(TABLE_INSTRUMENT, null) ? realtime.listTicks() : null;
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+        if (ticks == null) {
 
-            return gson.fromJson(data, TYPE_TICKER);
+            ticks = listCached(BitmexTick.class, newKey, () ->
+                    request(GET, URL + URL_TICKER, null, null, r -> gson.fromJson(r, TYPE_TICKER))
+            );
 
-        });
+        }
 
         if (ticks == null) {
             return Optional.empty();
         }
 
+        return selectTick(key, convertAlias(key), ticks);
+
+    }
+
+    /**
+     * Non-blocking variant of the tick query, which is served by the asynchronous client if not streamed.
+     */
+    @VisibleForTesting
+    CompletableFuture<Optional<BitmexTick>> queryTickAsync(Key key) {
+
+        if (key == null || ProductType.XBT == ProductType.findByName(key.getInstrument())) {
+            return CompletableFuture.completedFuture(queryTick(key));
+        }
+
         String instrument = convertAlias(key);
 
-        Optional<BitmexTick> result = ticks.stream()
-                .filter(Objects::nonNull)
-                .filter(t -> StringUtils.isNotBlank(t.getSymbol()))
-                .filter(t -> StringUtils.equals(t.getSymbol(), instrument))
-                .findAny();
+        List<BitmexTick> ticks = subscribeRealtime(TABLE_INSTRUMENT, null) ? realtime.listTicks() : null;
+
+        if (ticks != null) {
+            return CompletableFuture.completedFuture(selectTick(key, instrument, ticks));
+        }
+
+        Key newKey = Key.build(key).instrument(WILDCARD).build();
+
+        return listCachedAsync(BitmexTick.class, newKey, () ->
+                requestAsync(GET, URL + URL_TICKER, null, null, r -> gson.fromJson(r, TYPE_TICKER))
+        ).thenApply(values -> values == null ? Optional.empty() : selectTick(key, instrument, values));
+
+    }
+
+    private Optional<BitmexTick> selectTick(Key key, String instrument, List<BitmexTick> ticks) {
+
+        Optional<BitmexTick> result = Optional.ofNullable(catalog.find(ticks, instrument));
 
         if (ProductType.XBT_FR == ProductType.findByName(key.getInstrument())) {
 
@@ -223,78 +558,138 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return Collections.emptyList();
         }
 
-        List<BitmexBook> books = listCached(BitmexBook.class, key, () -> {
+        String symbol = convertAlias(key);
 
-            Map<String, String> parameters = new LinkedHashMap<>();
-            parameters.put("symbol", convertAlias(key));
-            parameters.put("depth", TEN.toPlainString());
-            String path = URL + URL_BOOK + buildQueryParameter(parameters);
+        List<BitmexBook> books = null;
 
-            String data = request(GET, path, null, null);
+        if (symbol != null && subscribeRealtime(TABLE_BOOK, symbol)) {
+            books = realtime.listBooks(symbol);
+        }
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+        if (books == null) {
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_BOOK));
+            books = listCached(BitmexBook.class, key, () -> {
 
-        });
+                List<BitmexBook> values = request(GET, getBookPath(symbol), null, null, r -> gson.fromJson(r, TYPE_BOOK));
+
+                return values == null ? null : Collections.unmodifiableList(values);
+
+            });
+
+        }
 
         return books != null ? books : Collections.emptyList();
 
     }
 
+    /**
+     * Non-blocking variant of the book query, which is served by the asynchronous client if not streamed.
+     */
+    @VisibleForTesting
+    CompletableFuture<List<BitmexBook>> queryBooksAsync(Key key) {
+
+        if (key == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        String symbol = convertAlias(key);
+
+        List<BitmexBook> books = null;
+
+        if (symbol != null && subscribeRealtime(TABLE_BOOK, symbol)) {
+            books = realtime.listBooks(symbol);
+        }
+
+        if (books != null) {
+            return CompletableFuture.completedFuture(books);
+        }
+
+        return listCachedAsync(BitmexBook.class, key, () -> {
+
+            try {
+                return requestAsync(GET, getBookPath(symbol), null, null, r -> gson.fromJson(r, TYPE_BOOK));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+        }).thenApply(values -> values != null ? values : Collections.emptyList());
+
+    }
+
+    private String getBookPath(String symbol) throws IOException {
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("symbol", symbol);
+        parameters.put("depth", TEN.toPlainString());
+
+        return URL + URL_BOOK + buildQueryParameter(parameters);
+
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return queryTick(key).map(t -> UNLISTED.equals(t.getState()) ? t.getLast() : t.getAsk()).orElse(null);
+        return queryTick(key).map(this::getAsk).orElse(null);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getBestAskPriceAsync(Key key) {
+        return queryTickAsync(key).thenApply(t -> t.map(this::getAsk).orElse(null));
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return queryTick(key).map(t -> UNLISTED.equals(t.getState()) ? t.getLast() : t.getBid()).orElse(null);
+        return queryTick(key).map(this::getBid).orElse(null);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getBestBidPriceAsync(Key key) {
+        return queryTickAsync(key).thenApply(t -> t.map(this::getBid).orElse(null));
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
 
-        if (queryTick(key).filter(t -> UNLISTED.equals(t.getState())).isPresent()) {
+        if (queryTick(key).filter(this::isUnlisted).isPresent()) {
             return ZERO;
         }
 
-        return queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> !BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .min(Comparator.comparing(BitmexBook::getPrice))
-                .map(BitmexBook::getSize)
-                .orElse(null);
+        return getBestSize(queryBooks(key), false);
+
+    }
 
+    @Override
+    public CompletableFuture<BigDecimal> getBestAskSizeAsync(Key key) {
+        return queryTickAsync(key).thenCompose(t -> t.filter(this::isUnlisted).isPresent()
+                ? CompletableFuture.completedFuture(ZERO)
+                : queryBooksAsync(key).thenApply(b -> getBestSize(b, false)));
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
 
-        if (queryTick(key).filter(t -> UNLISTED.equals(t.getState())).isPresent()) {
+        if (queryTick(key).filter(this::isUnlisted).isPresent()) {
             return ZERO;
         }
 
-        return queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .max(Comparator.comparing(BitmexBook::getPrice))
-                .map(BitmexBook::getSize)
-                .orElse(null);
+        return getBestSize(queryBooks(key), true);
 
     }
 
+    @Override
+    public CompletableFuture<BigDecimal> getBestBidSizeAsync(Key key) {
+        return queryTickAsync(key).thenCompose(t -> t.filter(this::isUnlisted).isPresent()
+                ? CompletableFuture.completedFuture(ZERO)
+                : queryBooksAsync(key).thenApply(b -> getBestSize(b, true)));
+    }
+
     @Override
     public BigDecimal getMidPrice(Key key) {
-        return queryTick(key).map(t -> UNLISTED.equals(t.getState()) ? t.getLast() : t.getMid()).orElse(null);
+        return queryTick(key).map(this::getMid).orElse(null);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getMidPriceAsync(Key key) {
+        return queryTickAsync(key).thenApply(t -> t.map(this::getMid).orElse(null));
     }
 
     @Override
@@ -302,43 +697,88 @@ public class BitmexContext extends TemplateContext implements BitmexService {
         return queryTick(key).map(BitmexTick::getLast).orElse(null);
     }
 
+    @Override
+    public CompletableFuture<BigDecimal> getLastPriceAsync(Key key) {
+        return queryTickAsync(key).thenApply(t -> t.map(BitmexTick::getLast).orElse(null));
+    }
+
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
 
-        if (queryTick(key).filter(t -> UNLISTED.equals(t.getState())).isPresent()) {
-            return emptyMap();
-        }
+        if (queryTick(key).filter(this::isUnlisted).isPresent()) {
+            return emptyMap();
+        }
+
+        return getPrices(queryBooks(key), false);
+
+    }
+
+    @Override
+    public CompletableFuture<Map<BigDecimal, BigDecimal>> getAskPricesAsync(Key key) {
+        return queryTickAsync(key).thenCompose(t -> t.filter(this::isUnlisted).isPresent()
+                ? CompletableFuture.completedFuture(emptyMap())
+                : queryBooksAsync(key).thenApply(b -> getPrices(b, false)));
+    }
+
+    @Override
+    public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
+
+        if (queryTick(key).filter(this::isUnlisted).isPresent()) {
+            return emptyMap();
+        }
+
+        return getPrices(queryBooks(key), true);
+
+    }
+
+    @Override
+    public CompletableFuture<Map<BigDecimal, BigDecimal>> getBidPricesAsync(Key key) {
+        return queryTickAsync(key).thenCompose(t -> t.filter(this::isUnlisted).isPresent()
+                ? CompletableFuture.completedFuture(emptyMap())
+                : queryBooksAsync(key).thenApply(b -> getPrices(b, true)));
+    }
+
+    private boolean isUnlisted(BitmexTick tick) {
+        return UNLISTED.equals(tick.getState());
+    }
+
+    private BigDecimal getAsk(BitmexTick tick) {
+        return isUnlisted(tick) ? tick.getLast() : tick.getAsk();
+    }
 
-        Map<BigDecimal, BigDecimal> values = new LinkedHashMap<>();
+    private BigDecimal getBid(BitmexTick tick) {
+        return isUnlisted(tick) ? tick.getLast() : tick.getBid();
+    }
+
+    private BigDecimal getMid(BitmexTick tick) {
+        return isUnlisted(tick) ? tick.getLast() : tick.getMid();
+    }
 
-        queryBooks(key).stream()
+    private Stream<BitmexBook> filterBooks(List<BitmexBook> books, boolean buy) {
+        return books.stream()
                 .filter(Objects::nonNull)
                 .filter(b -> b.getSide() != null)
                 .filter(b -> b.getPrice() != null)
                 .filter(b -> b.getSize() != null)
-                .filter(b -> !BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .forEach(b -> values.put(b.getPrice(), b.getSize()));
+                .filter(b -> buy == BitmexBook.SIDE_BUY.equals(b.getSide()));
+    }
 
-        return values;
+    private BigDecimal getBestSize(List<BitmexBook> books, boolean buy) {
 
-    }
+        Comparator<BitmexBook> comparator = Comparator.comparing(BitmexBook::getPrice);
 
-    @Override
-    public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
+        return filterBooks(books, buy)
+                .min(buy ? comparator.reversed() : comparator)
+                .map(BitmexBook::getSize)
+                .orElse(null);
 
-        if (queryTick(key).filter(t -> UNLISTED.equals(t.getState())).isPresent()) {
-            return emptyMap();
-        }
+    }
+
+    private Map<BigDecimal, BigDecimal> getPrices(List<BitmexBook> books, boolean buy) {
 
         Map<BigDecimal, BigDecimal> values = new LinkedHashMap<>();
 
-        queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .forEach(b -> values.put(b.getPrice(), b.getSize()));
+        filterBooks(books, buy).forEach(b -> values.put(b.getPrice(), b.getSize()));
 
         return values;
 
@@ -369,6 +809,35 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         }
 
+        String symbol = convertAlias(key);
+
+        Instant cutoff = key.getTimestamp().minus(BUCKETED);
+
+        List<? extends Trade> trades = null;
+
+        if (symbol != null && subscribeRealtime(TABLE_TRADE, symbol)) {
+            trades = realtime.listTrades(symbol, fromTime == null || fromTime.isAfter(cutoff) ? cutoff : fromTime);
+        }
+
+        if (trades == null) {
+            trades = queryTrades(key, cutoff);
+        }
+
+        return trimToEmpty(trades).stream()
+                .filter(Objects::nonNull)
+                .filter(t -> t.getPrice() != null)
+                .filter(t -> t.getPrice().signum() != 0)
+                .filter(t -> t.getSize() != null)
+                .filter(t -> t.getSize().signum() != 0)
+                .filter(t -> t.getTimestamp() != null)
+                .filter(t -> fromTime == null || !fromTime.isAfter(t.getTimestamp()))
+                .collect(toList());
+
+    }
+
+    @VisibleForTesting
+    List<? extends Trade> queryTrades(Key key, Instant cutoff) {
+
         List<? extends Trade> trades = listCached(BitmexTrade.class, key, () -> {
 
             Map<String, String> parameters = new LinkedHashMap<>();
@@ -378,18 +847,12 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
             String path = URL + URL_TRADE + buildQueryParameter(parameters);
 
-            String data = request(path);
-
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+            List<BitmexTrade> values = request(GET, path, null, null, r -> gson.fromJson(r, TYPE_TRADE));
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_TRADE));
+            return values == null ? null : Collections.unmodifiableList(values);
 
         });
 
-        Instant cutoff = key.getTimestamp().minus(BUCKETED);
-
         if (trimToEmpty(trades).stream()
                 .filter(Objects::nonNull)
                 .filter(t -> t.getTimestamp() != null)
@@ -406,27 +869,15 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
                 String path = URL + URL_BUCKETED + buildQueryParameter(parameters);
 
-                String data = request(path);
-
-                if (StringUtils.isEmpty(data)) {
-                    return null;
-                }
+                List<BitmexTrade.Bucketed> values = request(GET, path, null, null, r -> gson.fromJson(r, TYPE_BUCKETED));
 
-                return Collections.unmodifiableList(gson.fromJson(data, TYPE_BUCKETED));
+                return values == null ? null : Collections.unmodifiableList(values);
 
             });
 
         }
 
-        return trimToEmpty(trades).stream()
-                .filter(Objects::nonNull)
-                .filter(t -> t.getPrice() != null)
-                .filter(t -> t.getPrice().signum() != 0)
-                .filter(t -> t.getSize() != null)
-                .filter(t -> t.getSize().signum() != 0)
-                .filter(t -> t.getTimestamp() != null)
-                .filter(t -> fromTime == null || !fromTime.isAfter(t.getTimestamp()))
-                .collect(toList());
+        return trades;
 
     }
 
@@ -527,7 +978,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
     }
 
     @VisibleForTesting
-    String computeHash(String secret, String method, String path, String nonce, String data) throws IOException {
+    String computeHash(String secret, String method, String path, String expires, String data) throws IOException {
 
         try {
 
@@ -535,7 +986,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
             mac.init(new SecretKeySpec(secret.getBytes(), "HmacSHA256"));
 
-            String raw = method + path + nonce + StringUtils.trimToEmpty(data);
+            String raw = method + path + expires + StringUtils.trimToEmpty(data);
 
             byte[] hash = mac.doFinal(raw.getBytes());
 
@@ -567,42 +1018,21 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         String suffix = buildQueryParameter(parameters);
 
-        String result;
-
-        synchronized (lastNonce) {
+        // Expiry instead of nonce, so that the requests need not arrive in order.
+        return requestPrivate(PRIVATE_INFLIGHT, nonce -> {
 
-            long millis = 0;
-
-            for (int i = 0; i < Short.MAX_VALUE; i++) {
-
-                millis = getNow().toEpochMilli();
-
-                if (lastNonce.get() < millis) {
-
-                    lastNonce.set(millis);
-
-                    break;
-
-                }
-
-                Thread.yield();
-
-            }
-
-            String nonce = String.valueOf(millis);
-            String hash = computeHash(secret, type.name(), url + suffix, nonce, data);
+            String expires = String.valueOf(getNow().plus(getTimeout()).getEpochSecond());
+            String hash = computeHash(secret, type.name(), url + suffix, expires, data);
 
             Map<String, String> headers = new HashMap<>();
             headers.put("Content-Type", "application/json");
             headers.put("api-key", apiKey);
-            headers.put("api-nonce", nonce);
+            headers.put("api-expires", expires);
             headers.put("api-signature", hash);
 
-            result = request(type, URL + url + suffix, headers, data);
-
-        }
+            return request(type, URL + url + suffix, headers, data);
 
-        return result;
+        });
 
     }
 
@@ -619,17 +1049,23 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         Key newKey = Key.build(key).instrument(WILDCARD).build();
 
-        List<BitmexPosition> positions = listCached(BitmexPosition.class, newKey, () -> {
+        List<BitmexPosition> positions = subscribePrivate(TABLE_POSITION) ? realtime.listPositions() : null;
 
-            String data = executePrivate(GET, URL_POSITION, null, null);
+        if (positions == null) {
 
-            if (StringUtils.isEmpty(data)) {
-                return Collections.emptyList();
-            }
+            positions = listCached(BitmexPosition.class, newKey, () -> {
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_POSITION));
+                String data = executePrivate(GET, URL_POSITION, null, null);
 
-        });
+                if (StringUtils.isEmpty(data)) {
+                    return Collections.emptyList();
+                }
+
+                return Collections.unmodifiableList(gson.fromJson(data, TYPE_POSITION));
+
+            });
+
+        }
 
         if (CollectionUtils.isEmpty(positions)) {
             return null;
@@ -664,19 +1100,25 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         Key newKey = Key.build(key).instrument(WILDCARD).build();
 
-        List<BitmexMargin> margins = listCached(BitmexMargin.class, newKey, () -> {
+        List<BitmexMargin> margins = subscribePrivate(TABLE_MARGIN) ? realtime.listMargins() : null;
 
-            Map<String, String> parameters = singletonMap("currency", "all");
+        if (margins == null) {
 
-            String data = executePrivate(GET, URL_MARGIN, parameters, null);
+            margins = listCached(BitmexMargin.class, newKey, () -> {
 
-            if (StringUtils.isEmpty(data)) {
-                return Collections.emptyList();
-            }
+                Map<String, String> parameters = singletonMap("currency", "all");
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_MARGIN));
+                String data = executePrivate(GET, URL_MARGIN, parameters, null);
 
-        });
+                if (StringUtils.isEmpty(data)) {
+                    return Collections.emptyList();
+                }
+
+                return Collections.unmodifiableList(gson.fromJson(data, TYPE_MARGIN));
+
+            });
+
+        }
 
         if (CollectionUtils.isEmpty(margins)) {
             return null;
@@ -760,13 +1202,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         BigDecimal lotSize = queryTick(key).map(BitmexTick::getLotSize).orElse(null);
 
-        if (lotSize == null || lotSize.signum() == 0) {
-            return null;
-        }
-
-        BigDecimal lots = value.divide(lotSize, INTEGER_ZERO, mode);
-
-        return lots.multiply(lotSize);
+        return round(value, mode, lotSize);
 
     }
 
@@ -779,17 +1215,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         BigDecimal tickSize = queryTick(key).map(BitmexTick::getTickSize).orElse(null);
 
-        if (tickSize == null || tickSize.signum() == 0) {
-            return null;
-        }
-
-        BigDecimal ticks = value.divide(tickSize, INTEGER_ZERO, mode);
-
-        if (ticks == null || ticks.signum() == 0) {
-            return null;
-        }
+        BigDecimal price = round(value, mode, tickSize);
 
-        return ticks.multiply(tickSize);
+        return price == null || price.signum() == 0 ? null : price;
 
     }
 
@@ -830,22 +1258,28 @@ public class BitmexContext extends TemplateContext implements BitmexService {
     @VisibleForTesting
     List<BitmexOrder> findOrders(Key key) {
 
-        List<BitmexOrder> values = listCached(BitmexOrder.class, key, () -> {
+        List<BitmexOrder> values = subscribePrivate(TABLE_ORDER) ? realtime.listOrders(convertAlias(key)) : null;
 
-            Map<String, String> parameters = new LinkedHashMap<>();
-            parameters.put("reverse", "true");
-            parameters.put("count", "500");
-            parameters.put("symbol", convertAlias(key));
+        if (values == null) {
 
-            String data = executePrivate(GET, URL_ORDER, parameters, null);
+            values = listCached(BitmexOrder.class, key, () -> {
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+                Map<String, String> parameters = new LinkedHashMap<>();
+                parameters.put("reverse", "true");
+                parameters.put("count", "500");
+                parameters.put("symbol", convertAlias(key));
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_ORDER));
+                String data = executePrivate(GET, URL_ORDER, parameters, null);
 
-        });
+                if (StringUtils.isEmpty(data)) {
+                    return null;
+                }
+
+                return Collections.unmodifiableList(gson.fromJson(data, TYPE_ORDER));
+
+            });
+
+        }
 
         return trimToEmpty(values);
 
@@ -853,12 +1287,23 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     @Override
     public Order findOrder(Key key, String id) {
+
+        if (subscribePrivate(TABLE_ORDER) && realtime.isSynchronized(TABLE_ORDER)) {
+            return StringUtils.isEmpty(id) ? null : realtime.findOrder(id);
+        }
+
         return findOrders(key).stream()
                 .filter(Objects::nonNull)
                 .filter(o -> StringUtils.isNotEmpty(id))
                 .filter(o -> StringUtils.equalsAny(id, o.getOrderId(), o.getClientId()))
                 .findFirst()
                 .orElse(null);
+
+    }
+
+    @Override
+    public Boolean isOrderStreamed(Key key) {
+        return subscribePrivate(TABLE_ORDER) && realtime.isSynchronized(TABLE_ORDER);
     }
 
     @Override
@@ -873,22 +1318,79 @@ public class BitmexContext extends TemplateContext implements BitmexService {
     @Override
     public List<Order.Execution> listExecutions(Key key) {
 
-        List<BitmexExecution> values = listCached(BitmexExecution.class, key, () -> {
+        List<BitmexExecution> values = null;
 
-            Map<String, String> parameters = new LinkedHashMap<>();
-            parameters.put("count", "500");
-            parameters.put("reverse", "true");
-            parameters.put("symbol", convertAlias(key));
+        if (subscribePrivate(TABLE_EXECUTION)) {
+            values = realtime.listExecutions(convertAlias(key));
+        }
 
-            String data = executePrivate(GET, URL_EXECUTION, parameters, null);
+        if (values == null) {
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+            values = listCached(BitmexExecution.class, key, () -> {
 
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_EXECUTION));
+                String symbol = convertAlias(key);
 
-        });
+                TemplateJournal<BitmexExecution> journal = getJournal(BitmexExecution.class, symbol);
+
+                BitmexExecution latest = journal.getLatest();
+
+                if (latest == null) {
+
+                    // Initial page, from the latest.
+                    Map<String, String> parameters = new LinkedHashMap<>();
+                    parameters.put("count", String.valueOf(EXECUTION_COUNT));
+                    parameters.put("reverse", "true");
+                    parameters.put("symbol", symbol);
+
+                    String data = executePrivate(GET, URL_EXECUTION, parameters, null);
+
+                    if (StringUtils.isEmpty(data)) {
+                        return null;
+                    }
+
+                    journal.append(gson.fromJson(data, TYPE_EXECUTION));
+
+                    return journal.list();
+
+                }
+
+                // Forward from the cursor, until a short page, so that no fill is skipped between the polls.
+                // The rest of the capped pages are fetched by the next poll, from the cursor moved forward.
+                for (int page = 0; page < EXECUTION_PAGES; page++) {
+
+                    Map<String, String> parameters = new LinkedHashMap<>();
+                    parameters.put("count", String.valueOf(EXECUTION_COUNT));
+                    parameters.put("reverse", "false");
+                    parameters.put("symbol", symbol);
+
+                    // Inclusive, of which the duplicates are ignored by the journal.
+                    parameters.put("startTime", latest.getTime().toString());
+
+                    if (page > 0) {
+                        parameters.put("start", String.valueOf(page * EXECUTION_COUNT));
+                    }
+
+                    String data = executePrivate(GET, URL_EXECUTION, parameters, null);
+
+                    if (StringUtils.isEmpty(data)) {
+                        return page == 0 ? null : journal.list();
+                    }
+
+                    List<BitmexExecution> fetched = gson.fromJson(data, TYPE_EXECUTION);
+
+                    journal.append(fetched);
+
+                    if (fetched == null || fetched.size() < EXECUTION_COUNT) {
+                        break;
+                    }
+
+                }
+
+                return journal.list();
+
+            });
+
+        }
 
         return trimToEmpty(values).stream().filter(Objects::nonNull).collect(toList());
 
@@ -901,7 +1403,22 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return Collections.emptyMap();
         }
 
-        List<CreateInstruction> inputs = instructions.stream().filter(Objects::nonNull).collect(toList());
+        return createBatcher.submit(key, instructions, getBatchWindow(), this::executeCreates);
+
+    }
+
+    /**
+     * @return Duration to gather the instructions of the other instruments, to be sent in a single bulk request.
+     */
+    @VisibleForTesting
+    Duration getBatchWindow() {
+        return Duration.ofMillis(getIntProperty("order.batch", 0));
+    }
+
+    @VisibleForTesting
+    Map<CreateInstruction, String> executeCreates(Map<CreateInstruction, Key> instructions) {
+
+        List<CreateInstruction> inputs = new ArrayList<>(instructions.keySet());
 
         Map<CreateInstruction, String> map = new IdentityHashMap<>();
 
@@ -917,7 +1434,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
                     .map(i -> {
                         ids.put(i, getUniqueId());
                         Map<String, Object> params = new TreeMap<>();
-                        params.put("symbol", convertAlias(key));
+                        params.put("symbol", convertAlias(instructions.get(i)));
                         params.put("side", (i.getSize().signum() >= 0 ? BUY : SELL).getId());
                         params.put("orderQty", i.getSize().abs());
                         params.put("price", i.getPrice());
@@ -928,7 +1445,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
                     }).collect(toList())
             ));
 
-            String result = executePrivate(RequestType.POST, URL_ORDER_BULK, emptyMap(), data);
+            String result = prioritize(RequestPriority.CREATE, () ->
+                    executePrivate(RequestType.POST, URL_ORDER_BULK, emptyMap(), data)
+            );
 
             List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
 
@@ -942,9 +1461,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
         } catch (Exception e) {
 
-            log.warn("Order create failure : " + instructions, e);
+            log.warn("Order create failure : " + inputs, e);
 
-            instructions.stream().filter(Objects::nonNull).forEach(i -> map.put(i, null));
+            inputs.forEach(i -> map.put(i, null));
 
         }
 
@@ -959,6 +1478,13 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return Collections.emptyMap();
         }
 
+        return cancelBatcher.submit(key, instructions, getBatchWindow(), m -> executeCancels(m.keySet()));
+
+    }
+
+    @VisibleForTesting
+    Map<CancelInstruction, String> executeCancels(Set<CancelInstruction> instructions) {
+
         Map<CancelInstruction, String> map = new IdentityHashMap<>();
 
         try {
@@ -969,7 +1495,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
                     .collect(toList())
             ));
 
-            String result = executePrivate(RequestType.DELETE, URL_ORDER, emptyMap(), data);
+            String result = prioritize(RequestPriority.CANCEL, () ->
+                    executePrivate(RequestType.DELETE, URL_ORDER, emptyMap(), data)
+            );
 
             List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
 
@@ -998,4 +1526,113 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     }
 
+    @Override
+    public Boolean cancelAllOrders(Key key) {
+
+        String symbol = convertAlias(key);
+
+        if (StringUtils.isEmpty(symbol)) {
+            return null;
+        }
+
+        try {
+
+            String data = gson.toJson(singletonMap("symbol", symbol));
+
+            String result = prioritize(RequestPriority.CANCEL, () ->
+                    executePrivate(RequestType.DELETE, URL_ORDER_ALL, emptyMap(), data)
+            );
+
+            if (result == null) {
+
+                log.debug("Cancel-all not sent : {}", symbol); // No credentials.
+
+                return null;
+
+            }
+
+            List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
+
+            log.debug("Cancelled all orders : {} - {}", symbol, results == null ? null : results.size());
+
+            return Boolean.TRUE;
+
+        } catch (Exception e) {
+
+            log.warn("Order cancel-all failure : " + symbol, e);
+
+            return Boolean.FALSE;
+
+        }
+
+    }
+
+    @Override
+    public Map<AmendInstruction, String> amendOrders(Key key, Set<AmendInstruction> instructions) {
+
+        if (CollectionUtils.isEmpty(instructions)) {
+            return Collections.emptyMap();
+        }
+
+        return amendBatcher.submit(key, instructions, getBatchWindow(), m -> executeAmends(m.keySet()));
+
+    }
+
+    @VisibleForTesting
+    Map<AmendInstruction, String> executeAmends(Set<AmendInstruction> instructions) {
+
+        List<AmendInstruction> inputs = instructions.stream()
+                .filter(Objects::nonNull)
+                .filter(i -> StringUtils.isNotEmpty(i.getId()))
+                .filter(i -> i.getPrice() != null)
+                .filter(i -> i.getPrice().signum() != 0)
+                .filter(i -> i.getSize() != null)
+                .filter(i -> i.getSize().signum() != 0)
+                .collect(toList());
+
+        Map<AmendInstruction, String> map = new IdentityHashMap<>();
+
+        instructions.stream().filter(Objects::nonNull).forEach(i -> map.put(i, null));
+
+        if (inputs.isEmpty()) {
+            return map;
+        }
+
+        try {
+
+            // Remaining quantity is amended, regardless of the quantity already filled.
+            String data = gson.toJson(singletonMap("orders", inputs.stream().map(i -> {
+                Map<String, Object> params = new TreeMap<>();
+                params.put("origClOrdID", i.getId());
+                params.put("price", i.getPrice());
+                params.put("leavesQty", i.getSize().abs());
+                return params;
+            }).collect(toList())));
+
+            String result = prioritize(RequestPriority.CANCEL, () ->
+                    executePrivate(RequestType.PUT, URL_ORDER_BULK, emptyMap(), data)
+            );
+
+            List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
+
+            inputs.forEach(i -> map.put(i, results.stream()
+                    .filter(Objects::nonNull)
+                    .filter(o -> StringUtils.isNotEmpty(o.getClientId()))
+                    .filter(o -> StringUtils.equals(o.getClientId(), i.getId()))
+                    .map(BitmexOrder::getClientId)
+                    .findAny().orElse(null))
+            );
+
+        } catch (Exception e) {
+
+            log.warn("Order amend failure : " + instructions, e);
+
+            inputs.forEach(i -> map.put(i, null));
+
+        }
+
+        return map;
+
+    }
+
 }
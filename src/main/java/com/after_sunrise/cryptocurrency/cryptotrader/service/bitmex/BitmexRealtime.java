@@ -0,0 +1,628 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * In-memory tables of the BitMEX streaming data, maintained from the "partial", "insert",
+ * "update" and "delete" actions. A table answers null until its "partial" has been received.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BitmexRealtime {
+
+    static final String TABLE_INSTRUMENT = "instrument";
+
+    static final String TABLE_BOOK = "orderBookL2_25";
+
+    static final String TABLE_TRADE = "trade";
+
+    static final String TABLE_ORDER = "order";
+
+    static final String TABLE_EXECUTION = "execution";
+
+    static final String TABLE_POSITION = "position";
+
+    static final String TABLE_MARGIN = "margin";
+
+    static final String ACTION_PARTIAL = "partial";
+
+    static final String ACTION_INSERT = "insert";
+
+    static final String ACTION_UPDATE = "update";
+
+    static final String ACTION_DELETE = "delete";
+
+    private static final Comparator<BitmexBook> BOOK_ORDER = Comparator.comparing(
+            BitmexBook::getPrice, Comparator.nullsLast(Comparator.reverseOrder())
+    );
+
+    private static final String EXEC_TRADE = "Trade";
+
+    private static final int ORDER_LIMIT = 1024;
+
+    private static final int EXECUTION_LIMIT = 500;
+
+    private final Gson gson;
+
+    private final Duration tradeExpiry;
+
+    private final Table<BitmexTick> instruments = new Table<>(BitmexTick.class, "symbol", null);
+
+    private final Table<BitmexOrder> orders = new Table<>(BitmexOrder.class, "orderID", o -> {
+        JsonElement working = o.get("workingIndicator");
+        return working != null && working.isJsonPrimitive() && !working.getAsBoolean();
+    });
+
+    private final Map<String, String> orderIds = new HashMap<>();
+
+    private final Table<BitmexPosition> positions = new Table<>(BitmexPosition.class, "symbol", null);
+
+    private final Table<BitmexMargin> margins = new Table<>(BitmexMargin.class, "currency", null);
+
+    private Map<String, Deque<BitmexExecution>> executions;
+
+    private final Map<String, Map<Long, BitmexBook>> books = new HashMap<>();
+
+    private final Map<String, List<BitmexBook>> bookViews = new HashMap<>();
+
+    private final Map<String, Deque<BitmexTrade>> trades = new HashMap<>();
+
+    private final Map<String, Instant> tradeSince = new HashMap<>();
+
+    public BitmexRealtime(Gson gson, Duration tradeExpiry) {
+        this.gson = gson;
+        this.tradeExpiry = tradeExpiry;
+    }
+
+    public synchronized void clear() {
+
+        instruments.clear();
+
+        orders.clear();
+
+        orderIds.clear();
+
+        positions.clear();
+
+        margins.clear();
+
+        executions = null;
+
+        books.clear();
+
+        bookViews.clear();
+
+        trades.clear();
+
+        tradeSince.clear();
+
+    }
+
+    /**
+     * @param message {"table":"...", "action":"...", "data":[...]}
+     * @return True if the message has been applied to one of the tables.
+     */
+    public synchronized boolean apply(JsonObject message) {
+
+        if (message == null) {
+            return false;
+        }
+
+        String table = getString(message, "table");
+
+        String action = getString(message, "action");
+
+        JsonElement data = message.get("data");
+
+        if (table == null || action == null || data == null || !data.isJsonArray()) {
+            return false;
+        }
+
+        if (TABLE_INSTRUMENT.equals(table)) {
+            return applyRows(instruments, action, data.getAsJsonArray());
+        }
+
+        if (TABLE_BOOK.equals(table)) {
+            return applyBooks(action, findSymbol(message), data.getAsJsonArray());
+        }
+
+        if (TABLE_TRADE.equals(table)) {
+            return applyTrades(action, findSymbol(message), data.getAsJsonArray());
+        }
+
+        if (TABLE_ORDER.equals(table)) {
+            return applyOrders(action, data.getAsJsonArray());
+        }
+
+        if (TABLE_EXECUTION.equals(table)) {
+            return applyExecutions(action, data.getAsJsonArray());
+        }
+
+        if (TABLE_POSITION.equals(table)) {
+            return applyRows(positions, action, data.getAsJsonArray());
+        }
+
+        if (TABLE_MARGIN.equals(table)) {
+            return applyRows(margins, action, data.getAsJsonArray());
+        }
+
+        return false;
+
+    }
+
+    private String getString(JsonObject object, String name) {
+
+        JsonElement element = object == null ? null : object.get(name);
+
+        return element == null || !element.isJsonPrimitive() ? null : element.getAsString();
+
+    }
+
+    private String findSymbol(JsonObject message) {
+
+        JsonElement filter = message.get("filter");
+
+        return filter != null && filter.isJsonObject() ? getString(filter.getAsJsonObject(), "symbol") : null;
+
+    }
+
+    private <V> boolean applyRows(Table<V> table, String action, JsonArray data) {
+
+        if (ACTION_PARTIAL.equals(action)) {
+            table.rows = new LinkedHashMap<>();
+        }
+
+        if (table.rows == null) {
+            return false;
+        }
+
+        for (JsonElement element : data) {
+
+            String id = element.isJsonObject() ? getString(element.getAsJsonObject(), table.key) : null;
+
+            if (id == null) {
+                continue;
+            }
+
+            JsonObject values = element.getAsJsonObject();
+
+            switch (action) {
+                case ACTION_PARTIAL:
+                case ACTION_INSERT:
+                    table.rows.put(id, values);
+                    break;
+                case ACTION_UPDATE:
+                    // Updates only carry the key and the changed fields.
+                    Optional.ofNullable(table.rows.get(id)).ifPresent(
+                            o -> values.entrySet().forEach(e -> o.add(e.getKey(), e.getValue()))
+                    );
+                    break;
+                case ACTION_DELETE:
+                    table.rows.remove(id);
+                    break;
+                default:
+                    break;
+            }
+
+            table.views.remove(id);
+
+        }
+
+        if (table.evictable != null && table.rows.size() > ORDER_LIMIT) {
+
+            Iterator<Map.Entry<String, JsonObject>> itr = table.rows.entrySet().iterator();
+
+            while (itr.hasNext() && table.rows.size() > ORDER_LIMIT) {
+
+                Map.Entry<String, JsonObject> entry = itr.next();
+
+                if (table.evictable.test(entry.getValue())) {
+
+                    itr.remove();
+
+                    table.views.remove(entry.getKey());
+
+                }
+
+            }
+
+        }
+
+        table.values = null;
+
+        return true;
+
+    }
+
+    private boolean applyOrders(String action, JsonArray data) {
+
+        if (ACTION_PARTIAL.equals(action)) {
+            orderIds.clear();
+        }
+
+        if (!applyRows(orders, action, data)) {
+            return false;
+        }
+
+        for (JsonElement element : data) {
+
+            JsonObject values = element.isJsonObject() ? element.getAsJsonObject() : null;
+
+            String oid = getString(values, orders.key);
+
+            String cid = getString(values, "clOrdID");
+
+            if (oid != null && cid != null && !cid.isEmpty() && orders.rows.containsKey(oid)) {
+                orderIds.put(cid, oid);
+            }
+
+        }
+
+        // Along with the rows deleted or evicted.
+        orderIds.values().removeIf(oid -> !orders.rows.containsKey(oid));
+
+        return true;
+
+    }
+
+    private boolean applyExecutions(String action, JsonArray data) {
+
+        if (ACTION_PARTIAL.equals(action)) {
+            executions = new HashMap<>();
+        } else if (!ACTION_INSERT.equals(action)) {
+            return false;
+        }
+
+        if (executions == null) {
+            return false;
+        }
+
+        for (JsonElement element : data) {
+
+            JsonObject values = element.isJsonObject() ? element.getAsJsonObject() : null;
+
+            String symbol = getString(values, "symbol");
+
+            // Only the fills, same as the trade history.
+            if (symbol == null || !EXEC_TRADE.equals(getString(values, "execType"))) {
+                continue;
+            }
+
+            Deque<BitmexExecution> deque = executions.computeIfAbsent(symbol, s -> new ArrayDeque<>());
+
+            deque.addFirst(gson.fromJson(values, BitmexExecution.class));
+
+            while (deque.size() > EXECUTION_LIMIT) {
+                deque.removeLast();
+            }
+
+        }
+
+        return true;
+
+    }
+
+    private boolean applyBooks(String action, String filter, JsonArray data) {
+
+        List<BitmexBook> values = new ArrayList<>(data.size());
+
+        data.forEach(e -> values.add(gson.fromJson(e, BitmexBook.class)));
+
+        if (ACTION_PARTIAL.equals(action)) {
+
+            Set<String> symbols = values.stream().map(BitmexBook::getSymbol).filter(Objects::nonNull).collect(toSet());
+
+            Optional.ofNullable(filter).ifPresent(symbols::add);
+
+            symbols.forEach(symbol -> books.put(symbol, new HashMap<>()));
+
+        }
+
+        boolean applied = false;
+
+        for (BitmexBook value : values) {
+
+            Map<Long, BitmexBook> levels = books.get(value.getSymbol());
+
+            if (levels == null || value.getId() == null) {
+                continue;
+            }
+
+            switch (action) {
+                case ACTION_PARTIAL:
+                case ACTION_INSERT:
+                    levels.put(value.getId(), value);
+                    break;
+                case ACTION_UPDATE:
+                    // Updates only carry the size, and the side if changed.
+                    levels.computeIfPresent(value.getId(), (id, current) -> BitmexBook.builder()
+                            .symbol(current.getSymbol())
+                            .id(id)
+                            .side(Optional.ofNullable(value.getSide()).orElse(current.getSide()))
+                            .price(Optional.ofNullable(value.getPrice()).orElse(current.getPrice()))
+                            .size(Optional.ofNullable(value.getSize()).orElse(current.getSize()))
+                            .build()
+                    );
+                    break;
+                case ACTION_DELETE:
+                    levels.remove(value.getId());
+                    break;
+                default:
+                    break;
+            }
+
+            bookViews.remove(value.getSymbol());
+
+            applied = true;
+
+        }
+
+        if (ACTION_PARTIAL.equals(action)) {
+
+            books.keySet().forEach(bookViews::remove);
+
+            applied = true;
+
+        }
+
+        return applied;
+
+    }
+
+    private boolean applyTrades(String action, String filter, JsonArray data) {
+
+        List<BitmexTrade> values = new ArrayList<>(data.size());
+
+        data.forEach(e -> values.add(gson.fromJson(e, BitmexTrade.class)));
+
+        if (ACTION_PARTIAL.equals(action)) {
+
+            Set<String> symbols = values.stream().map(BitmexTrade::getSymbol).filter(Objects::nonNull).collect(toSet());
+
+            Optional.ofNullable(filter).ifPresent(symbols::add);
+
+            symbols.forEach(symbol -> {
+
+                trades.put(symbol, new ArrayDeque<>());
+
+                // Trades are complete from the earliest one in the snapshot.
+                tradeSince.put(symbol, values.stream()
+                        .filter(t -> symbol.equals(t.getSymbol()))
+                        .map(BitmexTrade::getTimestamp)
+                        .filter(Objects::nonNull)
+                        .min(Comparator.naturalOrder())
+                        .orElse(Instant.MAX));
+
+            });
+
+        } else if (!ACTION_INSERT.equals(action)) {
+            return false;
+        }
+
+        boolean applied = false;
+
+        for (BitmexTrade value : values) {
+
+            Deque<BitmexTrade> deque = trades.get(value.getSymbol());
+
+            if (deque == null || value.getTimestamp() == null) {
+                continue;
+            }
+
+            deque.addLast(value);
+
+            Instant cutoff = value.getTimestamp().minus(tradeExpiry);
+
+            while (!deque.isEmpty() && deque.peekFirst().getTimestamp().isBefore(cutoff)) {
+
+                deque.removeFirst();
+
+                tradeSince.merge(value.getSymbol(), cutoff, (t1, t2) -> t1.isAfter(t2) ? t1 : t2);
+
+            }
+
+            tradeSince.merge(value.getSymbol(), value.getTimestamp(), (t1, t2) -> t1.isBefore(t2) ? t1 : t2);
+
+            applied = true;
+
+        }
+
+        return applied || ACTION_PARTIAL.equals(action);
+
+    }
+
+    private <V> List<V> listRows(Table<V> table) {
+
+        if (table.rows == null) {
+            return null;
+        }
+
+        if (table.values == null) {
+            table.values = Collections.unmodifiableList(table.rows.keySet().stream()
+                    .map(id -> findRow(table, id))
+                    .collect(toList()));
+        }
+
+        return table.values;
+
+    }
+
+    private <V> V findRow(Table<V> table, String id) {
+
+        JsonObject row = table.rows == null || id == null ? null : table.rows.get(id);
+
+        return row == null ? null : table.views.computeIfAbsent(id, k -> gson.fromJson(row, table.type));
+
+    }
+
+    public synchronized boolean isSynchronized(String table) {
+
+        switch (table) {
+            case TABLE_INSTRUMENT:
+                return instruments.rows != null;
+            case TABLE_ORDER:
+                return orders.rows != null;
+            case TABLE_EXECUTION:
+                return executions != null;
+            case TABLE_POSITION:
+                return positions.rows != null;
+            case TABLE_MARGIN:
+                return margins.rows != null;
+            default:
+                return false;
+        }
+
+    }
+
+    /**
+     * @return All instruments, or null if not synchronized.
+     */
+    public synchronized List<BitmexTick> listTicks() {
+        return listRows(instruments);
+    }
+
+    /**
+     * @param id Order ID or the client order ID.
+     * @return The order, or null if not found or not synchronized.
+     */
+    public synchronized BitmexOrder findOrder(String id) {
+
+        BitmexOrder order = findRow(orders, id);
+
+        return order != null ? order : findRow(orders, orderIds.get(id));
+
+    }
+
+    /**
+     * @return Number of the client order IDs mapped to the orders retained.
+     */
+    @VisibleForTesting
+    synchronized int countOrderIds() {
+        return orderIds.size();
+    }
+
+    /**
+     * @return Orders of the symbol, or null if not synchronized.
+     */
+    public synchronized List<BitmexOrder> listOrders(String symbol) {
+
+        List<BitmexOrder> values = listRows(orders);
+
+        return values == null ? null : values.stream()
+                .filter(o -> Objects.equals(symbol, o.getProduct()))
+                .collect(toList());
+
+    }
+
+    /**
+     * @return Executions of the symbol in descending order of time, or null if not synchronized.
+     */
+    public synchronized List<BitmexExecution> listExecutions(String symbol) {
+
+        if (executions == null) {
+            return null;
+        }
+
+        return new ArrayList<>(executions.getOrDefault(symbol, new ArrayDeque<>()));
+
+    }
+
+    /**
+     * @return Positions of all symbols, or null if not synchronized.
+     */
+    public synchronized List<BitmexPosition> listPositions() {
+        return listRows(positions);
+    }
+
+    /**
+     * @return Margins of all currencies, or null if not synchronized.
+     */
+    public synchronized List<BitmexMargin> listMargins() {
+        return listRows(margins);
+    }
+
+    /**
+     * @return Price levels in descending order of price, or null if not synchronized.
+     */
+    public synchronized List<BitmexBook> listBooks(String symbol) {
+
+        Map<Long, BitmexBook> levels = books.get(symbol);
+
+        if (levels == null) {
+            return null;
+        }
+
+        return bookViews.computeIfAbsent(symbol, s -> Collections.unmodifiableList(levels.values().stream()
+                .filter(b -> b.getSize() != null && b.getSize().signum() != 0)
+                .sorted(BOOK_ORDER)
+                .collect(toList())));
+
+    }
+
+    /**
+     * @return Trades in descending order of time, or null if the trades since the given time are not available.
+     */
+    public synchronized List<BitmexTrade> listTrades(String symbol, Instant fromTime) {
+
+        Deque<BitmexTrade> deque = trades.get(symbol);
+
+        Instant since = tradeSince.get(symbol);
+
+        if (deque == null || since == null || fromTime == null || fromTime.isBefore(since)) {
+            return null;
+        }
+
+        List<BitmexTrade> values = new ArrayList<>(deque.size());
+
+        deque.descendingIterator().forEachRemaining(t -> {
+            if (!t.getTimestamp().isBefore(fromTime)) {
+                values.add(t);
+            }
+        });
+
+        return values;
+
+    }
+
+    private static class Table<V> {
+
+        private final Class<V> type;
+
+        private final String key;
+
+        private final Predicate<JsonObject> evictable;
+
+        private final Map<String, V> views = new HashMap<>();
+
+        private Map<String, JsonObject> rows;
+
+        private List<V> values;
+
+        private Table(Class<V> type, String key, Predicate<JsonObject> evictable) {
+            this.type = type;
+            this.key = key;
+            this.evictable = evictable;
+        }
+
+        private void clear() {
+            views.clear();
+            rows = null;
+            values = null;
+        }
+
+    }
+
+}
@@ -1,8 +1,11 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
 import lombok.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Instant;
 
@@ -115,4 +118,79 @@ public class BitmexTick {
     @SerializedName("fundingRate")
     private BigDecimal fundingFee;
 
+    /**
+     * Binds the fields above, skipping the rest of the instrument's ~100 fields.
+     */
+    public static class Adapter extends TemplateAdapter<BitmexTick, BitmexTickBuilder> {
+
+        @Override
+        protected BitmexTickBuilder create() {
+            return builder();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, BitmexTickBuilder builder) throws IOException {
+
+            switch (name) {
+                case "symbol":
+                    builder.symbol(nextString(in));
+                    return true;
+                case "settlCurrency":
+                    builder.settleCurrency(nextString(in));
+                    return true;
+                case "state":
+                    builder.state(nextString(in));
+                    return true;
+                case "timestamp":
+                    builder.timestamp(nextInstant(in, Instant::parse));
+                    return true;
+                case "lastPrice":
+                    builder.last(nextDecimal(in));
+                    return true;
+                case "askPrice":
+                    builder.ask(nextDecimal(in));
+                    return true;
+                case "bidPrice":
+                    builder.bid(nextDecimal(in));
+                    return true;
+                case "midPrice":
+                    builder.mid(nextDecimal(in));
+                    return true;
+                case "lotSize":
+                    builder.lotSize(nextDecimal(in));
+                    return true;
+                case "tickSize":
+                    builder.tickSize(nextDecimal(in));
+                    return true;
+                case "expiry":
+                    builder.expiry(nextInstant(in, Instant::parse));
+                    return true;
+                case "referenceSymbol":
+                    builder.reference(nextString(in));
+                    return true;
+                case "makerFee":
+                    builder.makerFee(nextDecimal(in));
+                    return true;
+                case "takerFee":
+                    builder.takerFee(nextDecimal(in));
+                    return true;
+                case "settlementFee":
+                    builder.settleFee(nextDecimal(in));
+                    return true;
+                case "fundingRate":
+                    builder.fundingFee(nextDecimal(in));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected BitmexTick build(BitmexTickBuilder builder) {
+            return builder.build();
+        }
+
+    }
+
 }
@@ -1,9 +1,12 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
 import lombok.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Instant;
 
@@ -23,6 +26,12 @@ public class BitmexTrade implements Trade {
     @SerializedName("trdMatchID")
     private String id;
 
+    /**
+     * "XBTUSD"
+     */
+    @SerializedName("symbol")
+    private String symbol;
+
     /**
      * Time of the trade.
      */
@@ -65,6 +74,78 @@ public class BitmexTrade implements Trade {
         @SerializedName("volume")
         private BigDecimal size;
 
+        public static class Adapter extends TemplateAdapter<Bucketed, BucketedBuilder> {
+
+            @Override
+            protected BucketedBuilder create() {
+                return builder();
+            }
+
+            @Override
+            protected boolean read(JsonReader in, String name, BucketedBuilder builder) throws IOException {
+
+                switch (name) {
+                    case "timestamp":
+                        builder.timestamp(nextInstant(in, Instant::parse));
+                        return true;
+                    case "vwap":
+                        builder.price(nextDecimal(in));
+                        return true;
+                    case "volume":
+                        builder.size(nextDecimal(in));
+                        return true;
+                    default:
+                        return false;
+                }
+
+            }
+
+            @Override
+            protected Bucketed build(BucketedBuilder builder) {
+                return builder.build();
+            }
+
+        }
+
+    }
+
+    public static class Adapter extends TemplateAdapter<BitmexTrade, BitmexTradeBuilder> {
+
+        @Override
+        protected BitmexTradeBuilder create() {
+            return builder();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, BitmexTradeBuilder builder) throws IOException {
+
+            switch (name) {
+                case "trdMatchID":
+                    builder.id(nextString(in));
+                    return true;
+                case "symbol":
+                    builder.symbol(nextString(in));
+                    return true;
+                case "timestamp":
+                    builder.timestamp(nextInstant(in, Instant::parse));
+                    return true;
+                case "price":
+                    builder.price(nextDecimal(in));
+                    return true;
+                case "size":
+                    builder.size(nextDecimal(in));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected BitmexTrade build(BitmexTradeBuilder builder) {
+            return builder.build();
+        }
+
     }
 
 }
@@ -21,7 +21,6 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.POST;
@@ -279,7 +278,7 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
     }
 
     @VisibleForTesting
-    String post(String path, Map<String, String> parameters) throws IOException, InterruptedException {
+    String post(String path, Map<String, String> parameters) throws Exception {
 
         String apiKey = getStringProperty("api.id", null);
         String secret = getStringProperty("api.secret", null);
@@ -288,16 +287,11 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
             return null;
         }
 
-        String result;
-
-        synchronized (ENDPOINT) {
-
-            // Avoid duplicate nonce
-            TimeUnit.MILLISECONDS.sleep(1);
+        return requestPrivate(nonce -> {
 
             Map<String, String> map = new LinkedHashMap<>(trimToEmpty(parameters));
             map.put("key", apiKey);
-            map.put("nonce", String.valueOf(getNow().toEpochMilli()));
+            map.put("nonce", String.valueOf(nonce));
 
             String body = StringUtils.join(
                     map.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue()).toArray(String[]::new),
@@ -310,11 +304,9 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             Map<String, String> headers = singletonMap("Content-Type", "application/x-www-form-urlencoded");
 
-            result = request(POST, ENDPOINT + path, headers, data);
+            return request(POST, ENDPOINT + path, headers, data);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -473,7 +465,7 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             try {
 
-                String data = post("/api/v1/trade_add", parameters);
+                String data = prioritize(RequestPriority.CREATE, () -> post("/api/v1/trade_add", parameters));
 
                 BtcboxResponse response = gson.fromJson(data, BtcboxResponse.class);
 
@@ -518,7 +510,9 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             try {
 
-                String data = post("/api/v1/trade_cancel", singletonMap("id", i.getId()));
+                String data = prioritize(RequestPriority.CANCEL, () ->
+                        post("/api/v1/trade_cancel", singletonMap("id", i.getId()))
+                );
 
                 BtcboxResponse response = gson.fromJson(data, BtcboxResponse.class);
 
@@ -5,6 +5,7 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Creat
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateJournal;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.*;
 import com.google.gson.stream.JsonReader;
@@ -28,8 +29,6 @@ import java.util.*;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.coincheck.CoincheckService.SideType.*;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.*;
@@ -59,7 +58,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
     private static final String URL_ORDER_LIST = "https://coincheck.com/api/exchange/orders/opens";
 
-    private static final String URL_EXECUTION = "https://coincheck.com/api/exchange/orders/transactions";
+    private static final String URL_EXECUTION = "https://coincheck.com/api/exchange/orders/transactions_pagination";
 
     private static final String URL_ORDER_CREATE = "https://coincheck.com/api/exchange/orders";
 
@@ -77,8 +76,6 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
     private final Map<String, NavigableMap<Instant, CoincheckTrade>> trades;
 
-    private final AtomicLong lastNonce;
-
     private final ExecutorService executor;
 
     public CoincheckContext() {
@@ -108,8 +105,6 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
         trades = synchronizedMap(new HashMap<>());
 
-        lastNonce = new AtomicLong();
-
         executor = Executors.newCachedThreadPool(r -> {
             Thread t = new Thread(r);
             t.setDaemon(true);
@@ -469,39 +464,21 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
             return null;
         }
 
-        String result;
-
-        synchronized (lastNonce) {
-
-            long currNonce = 0;
-
-            while (currNonce <= lastNonce.get()) {
-
-                TimeUnit.MILLISECONDS.sleep(1);
-
-                currNonce = getNow().toEpochMilli();
-
-            }
-
-            lastNonce.set(currNonce);
+        return requestPrivate(nonce -> {
 
             String path = url + buildQueryParameter(parameters);
-            String nonce = String.valueOf(currNonce);
             String message = nonce + path + StringUtils.trimToEmpty(data);
             String hash = computeHash("HmacSHA256", secret.getBytes(), message.getBytes());
 
             Map<String, String> headers = new LinkedHashMap<>();
             headers.put("Content-Type", "application/json");
             headers.put("ACCESS-KEY", apiKey);
-            headers.put("ACCESS-NONCE", nonce);
+            headers.put("ACCESS-NONCE", String.valueOf(nonce));
             headers.put("ACCESS-SIGNATURE", hash);
 
-            result = request(type, path, headers, data);
-
+            return request(type, path, headers, data);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -697,7 +674,20 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
         List<CoincheckTransaction> values = listCached(CoincheckTransaction.class, newKey, () -> {
 
-            String data = executePrivate(GET, URL_EXECUTION, null, null);
+            TemplateJournal<CoincheckTransaction> journal = getJournal(CoincheckTransaction.class, null);
+
+            CoincheckTransaction latest = journal.getLatest();
+
+            Map<String, String> parameters = new LinkedHashMap<>();
+            parameters.put("limit", "100");
+            parameters.put("order", "desc");
+
+            if (latest != null) {
+                // Newer ones than the latest, in the descending order.
+                parameters.put("ending_before", latest.getId());
+            }
+
+            String data = executePrivate(GET, URL_EXECUTION, parameters, null);
 
             if (StringUtils.isEmpty(data)) {
                 return null;
@@ -705,7 +695,13 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
             CoincheckTransaction.Container c = gson.fromJson(data, CoincheckTransaction.Container.class);
 
-            return Objects.equals(TRUE, c.getSuccess()) ? c.getTransactions() : null;
+            if (!Objects.equals(TRUE, c.getSuccess())) {
+                return null;
+            }
+
+            journal.append(c.getTransactions());
+
+            return journal.list();
 
         });
 
@@ -755,7 +751,9 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
                     body.put("order_type", (i.getSize().signum() >= 0 ? MARKET_BUY : MARKET_SELL).getId());
                 }
 
-                String result = executePrivate(POST, URL_ORDER_CREATE, null, gson.toJson(body));
+                String result = prioritize(RequestPriority.CREATE, () ->
+                        executePrivate(POST, URL_ORDER_CREATE, null, gson.toJson(body))
+                );
 
                 CoincheckOrder.Response response = gson.fromJson(result, CoincheckOrder.Response.class);
 
@@ -784,7 +782,9 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
             try {
 
-                String data = executePrivate(DELETE, URL_ORDER_CANCEL + i.getId(), null, null);
+                String data = prioritize(RequestPriority.CANCEL, () ->
+                        executePrivate(DELETE, URL_ORDER_CANCEL + i.getId(), null, null)
+                );
 
                 if (StringUtils.isEmpty(data)) {
 
@@ -61,7 +61,10 @@ public class CoincheckTransaction implements Order.Execution {
         @SerializedName("success")
         private Boolean success;
 
-        @SerializedName("transactions")
+        @SerializedName("pagination")
+        private CoincheckPagination pagination;
+
+        @SerializedName("data")
         private List<CoincheckTransaction> transactions;
 
     }
@@ -6,6 +6,9 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.AbstractService;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import static java.math.BigDecimal.ZERO;
 
 /**
@@ -20,4 +23,35 @@ public abstract class AbstractEstimator extends AbstractService implements Estim
         return Key.from(request);
     }
 
+    /**
+     * Waits for the lookup which has been started along with the others.
+     *
+     * @return Null if not available.
+     */
+    protected <T> T join(CompletableFuture<T> future) {
+
+        if (future == null) {
+            return null;
+        }
+
+        try {
+
+            return future.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            return null;
+
+        } catch (ExecutionException e) {
+
+            log.warn("Failed to lookup : {}", e.getCause().toString());
+
+            return null;
+
+        }
+
+    }
+
 }
@@ -11,8 +11,10 @@ import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.HALF_UP;
@@ -40,7 +42,14 @@ public class DepthEstimator extends AbstractEstimator {
 
         Context.Key key = getKey(context, request);
 
-        BigDecimal mid = context.getMidPrice(key);
+        // Looked up concurrently.
+        CompletableFuture<BigDecimal> midFuture = context.getMidPriceAsync(key);
+
+        CompletableFuture<Map<BigDecimal, BigDecimal>> askFuture = context.getAskPricesAsync(key);
+
+        CompletableFuture<Map<BigDecimal, BigDecimal>> bidFuture = context.getBidPricesAsync(key);
+
+        BigDecimal mid = join(midFuture);
 
         if (mid == null) {
             return BAIL;
@@ -56,7 +65,7 @@ public class DepthEstimator extends AbstractEstimator {
 
         BigDecimal ceiling = mid.multiply(ONE.add(deviation));
 
-        trimToEmpty(context.getAskPrices(key)).entrySet().stream()
+        trimToEmpty(join(askFuture)).entrySet().stream()
                 .filter(e -> e.getValue() != null)
                 .filter(e -> e.getKey() != null)
                 .filter(e -> e.getKey().compareTo(ceiling) <= 0)
@@ -68,7 +77,7 @@ public class DepthEstimator extends AbstractEstimator {
 
         BigDecimal floor = mid.multiply(ONE.subtract(deviation));
 
-        trimToEmpty(context.getBidPrices(key)).entrySet().stream()
+        trimToEmpty(join(bidFuture)).entrySet().stream()
                 .filter(e -> e.getValue() != null)
                 .filter(e -> e.getKey() != null)
                 .filter(e -> e.getKey().compareTo(floor) >= 0)
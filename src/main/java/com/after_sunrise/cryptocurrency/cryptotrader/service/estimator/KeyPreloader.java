@@ -1,26 +1,36 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Bulkhead;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static java.math.BigDecimal.ONE;
+import static java.math.RoundingMode.DOWN;
+
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
 public class KeyPreloader extends AbstractEstimator {
 
+    private static final int BULKHEAD_CONCURRENCY = 16;
+
+    private static final int BULKHEAD_CAPACITY = Byte.MAX_VALUE;
+
     private final ExecutorService executor;
 
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
     public KeyPreloader() {
 
         executor = Executors.newFixedThreadPool(Byte.MAX_VALUE, new ThreadFactory() {
@@ -51,6 +61,8 @@ public class KeyPreloader extends AbstractEstimator {
 
         Key key = getKey(context, request);
 
+        Executor executor = getBulkhead(request.getSite());
+
         schedule(cutoff, executor, () -> context.getState(key));
 
         schedule(cutoff, executor, () -> context.getBestAskPrice(key));
@@ -83,9 +95,10 @@ public class KeyPreloader extends AbstractEstimator {
 
         schedule(cutoff, executor, () -> context.getFundingPosition(key));
 
-        schedule(cutoff, executor, () -> context.roundLotSize(key, null, null));
+        // Rounds a value, so that the product metadata is refreshed.
+        schedule(cutoff, executor, () -> context.roundLotSize(key, ONE, DOWN));
 
-        schedule(cutoff, executor, () -> context.roundTickSize(key, null, null));
+        schedule(cutoff, executor, () -> context.roundTickSize(key, ONE, DOWN));
 
         schedule(cutoff, executor, () -> context.getCommissionRate(key));
 
@@ -103,22 +116,45 @@ public class KeyPreloader extends AbstractEstimator {
 
     }
 
+    /**
+     * Shares the threads among the sites, up to "bulkhead.concurrency" threads per site, and "bulkhead.capacity"
+     * preloads queued. Excess preloads are dropped.
+     */
     @VisibleForTesting
-    void schedule(Instant cutoff, ExecutorService executor, Runnable runnable) {
+    Bulkhead getBulkhead(String site) {
+
+        return bulkheads.computeIfAbsent(StringUtils.trimToEmpty(site), s -> new Bulkhead(
+                getClass().getSimpleName() + "." + s, executor,
+                getIntProperty("bulkhead.concurrency", BULKHEAD_CONCURRENCY),
+                getIntProperty("bulkhead.capacity", BULKHEAD_CAPACITY)
+        ));
+
+    }
+
+    @VisibleForTesting
+    void schedule(Instant cutoff, Executor executor, Runnable runnable) {
 
         if (cutoff == null) {
             return;
         }
 
-        executor.execute(() -> {
+        try {
 
-            if (cutoff.isBefore(Instant.now())) {
-                return;
-            }
+            executor.execute(() -> {
 
-            runnable.run();
+                if (cutoff.isBefore(Instant.now())) {
+                    return;
+                }
 
-        });
+                runnable.run();
+
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            log.trace("Dropped preload : {}", e.getMessage());
+
+        }
 
     }
 
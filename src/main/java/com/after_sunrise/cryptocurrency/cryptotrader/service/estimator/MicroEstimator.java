@@ -5,6 +5,7 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
@@ -27,9 +28,18 @@ public class MicroEstimator extends AbstractEstimator {
 
     protected Estimation estimate(Context context, Key key) {
 
-        BigDecimal askSize = context.getBestAskSize(key);
+        // Looked up concurrently.
+        CompletableFuture<BigDecimal> askSizeFuture = context.getBestAskSizeAsync(key);
 
-        BigDecimal bidSize = context.getBestBidSize(key);
+        CompletableFuture<BigDecimal> bidSizeFuture = context.getBestBidSizeAsync(key);
+
+        CompletableFuture<BigDecimal> askFuture = context.getBestAskPriceAsync(key);
+
+        CompletableFuture<BigDecimal> bidFuture = context.getBestBidPriceAsync(key);
+
+        BigDecimal askSize = join(askSizeFuture);
+
+        BigDecimal bidSize = join(bidSizeFuture);
 
         if (askSize == null || bidSize == null) {
             return BAIL;
@@ -41,9 +51,9 @@ public class MicroEstimator extends AbstractEstimator {
             return BAIL;
         }
 
-        BigDecimal ask = context.getBestAskPrice(key);
+        BigDecimal ask = join(askFuture);
 
-        BigDecimal bid = context.getBestBidPrice(key);
+        BigDecimal bid = join(bidFuture);
 
         if (ask == null || bid == null) {
             return BAIL;
@@ -5,6 +5,7 @@ import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateCo
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
 import org.apache.commons.lang3.StringUtils;
 
 import java.lang.reflect.Type;
@@ -17,6 +18,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
 import static java.time.format.DateTimeFormatter.ofPattern;
 import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toList;
@@ -31,9 +33,6 @@ public class PoloniexContext extends TemplateContext implements PoloniexService
 
     static final String URL_TRADE = "https://poloniex.com/public?command=returnTradeHistory&currencyPair=";
 
-    private static final Type TYPE_TICKER = new TypeToken<Map<String, PoloniexTick>>() {
-    }.getType();
-
     private static final Type TYPE_TRADE = new TypeToken<List<PoloniexTrade>>() {
     }.getType();
 
@@ -60,6 +59,8 @@ public class PoloniexContext extends TemplateContext implements PoloniexService
 
         });
 
+        builder.registerTypeAdapter(PoloniexTick.class, new PoloniexTick.Adapter());
+
         gson = builder.create();
 
     }
@@ -67,19 +68,34 @@ public class PoloniexContext extends TemplateContext implements PoloniexService
     @VisibleForTesting
     Optional<PoloniexTick> queryTick(Key key) {
 
-        PoloniexTick tick = findCached(PoloniexTick.class, key, () -> {
+        PoloniexTick tick = findCached(PoloniexTick.class, key, () -> request(GET, URL_TICKER, null, null, r -> {
 
-            String data = request(URL_TICKER);
+            TypeAdapter<PoloniexTick> adapter = gson.getAdapter(PoloniexTick.class);
+
+            JsonReader reader = gson.newJsonReader(r);
+
+            PoloniexTick value = null;
+
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+
+                String name = reader.nextName();
+
+                // Skip the other pairs without materializing.
+                if (value == null && StringUtils.equals(name, key.getInstrument())) {
+                    value = adapter.read(reader);
+                } else {
+                    reader.skipValue();
+                }
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
             }
 
-            Map<String, PoloniexTick> ticks = gson.fromJson(data, TYPE_TICKER);
+            reader.endObject();
 
-            return ticks.get(key.getInstrument());
+            return value;
 
-        });
+        }));
 
         return Optional.ofNullable(tick);
 
@@ -1,8 +1,11 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.poloniex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
 import lombok.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
 /**
@@ -24,4 +27,37 @@ public class PoloniexTick {
     @SerializedName("highestBid")
     private BigDecimal bid;
 
+    public static class Adapter extends TemplateAdapter<PoloniexTick, PoloniexTickBuilder> {
+
+        @Override
+        protected PoloniexTickBuilder create() {
+            return builder();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, PoloniexTickBuilder builder) throws IOException {
+
+            switch (name) {
+                case "last":
+                    builder.last(nextDecimal(in));
+                    return true;
+                case "lowestAsk":
+                    builder.ask(nextDecimal(in));
+                    return true;
+                case "highestBid":
+                    builder.bid(nextDecimal(in));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected PoloniexTick build(PoloniexTickBuilder builder) {
+            return builder.build();
+        }
+
+    }
+
 }
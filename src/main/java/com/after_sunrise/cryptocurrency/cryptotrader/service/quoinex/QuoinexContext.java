@@ -4,6 +4,7 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Cance
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateCatalog;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.reflect.TypeToken;
@@ -21,7 +22,6 @@ import java.time.Instant;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -48,6 +48,10 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
     private static final Type TYPE_ACCOUNT = new TypeToken<List<QuoinexAccount>>() {
     }.getType();
 
+    private final TemplateCatalog<QuoinexProduct> catalog = new TemplateCatalog<>(p ->
+            StringUtils.isEmpty(p.getId()) ? Stream.empty() : Stream.of(p.getCode())
+    );
+
     private final Gson gson;
 
     private final String jwtHead;
@@ -95,12 +99,7 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
 
         });
 
-        return trimToEmpty(value).stream()
-                .filter(Objects::nonNull)
-                .filter(p -> StringUtils.isNotEmpty(p.getId()))
-                .filter(p -> StringUtils.isNotEmpty(p.getCode()))
-                .filter(p -> StringUtils.equals(p.getCode(), product.getCode()))
-                .findFirst();
+        return Optional.ofNullable(catalog.find(value, product.getCode()));
 
     }
 
@@ -270,14 +269,12 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
             return null;
         }
 
-        String result;
-
-        synchronized (ENDPOINT) {
+        return requestPrivate(nonce -> {
 
             String parameter = buildQueryParameter(parameters);
 
             Map<String, String> jwt = new TreeMap<>();
-            jwt.put("nonce", String.valueOf(getNow().toEpochMilli()));
+            jwt.put("nonce", String.valueOf(nonce));
             jwt.put("path", path + parameter);
             jwt.put("token_id", key);
             String jwtLoad = Base64.getUrlEncoder().encodeToString(gson.toJson(jwt).getBytes());
@@ -294,13 +291,9 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
 
             String json = data != null ? gson.toJson(data) : null;
 
-            result = request(type, ENDPOINT + path + parameter, headers, json);
-
-            TimeUnit.MILLISECONDS.sleep(1L); // Avoid duplicate nonce
+            return request(type, ENDPOINT + path + parameter, headers, json);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -487,7 +480,7 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
                 parameters.put("side", i.getSize().signum() > 0 ? "buy" : "sell");
                 parameters.put("quantity", i.getSize().abs().toPlainString());
 
-                String data = fetchPrivate(POST, "/orders", null, parameters);
+                String data = prioritize(RequestPriority.CREATE, () -> fetchPrivate(POST, "/orders", null, parameters));
 
                 QuoinexOrder order = gson.fromJson(data, QuoinexOrder.class);
 
@@ -524,7 +517,9 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
 
             try {
 
-                String data = fetchPrivate(PUT, "/orders/" + i.getId() + "/cancel", null, null);
+                String data = prioritize(RequestPriority.CANCEL, () ->
+                        fetchPrivate(PUT, "/orders/" + i.getId() + "/cancel", null, null)
+                );
 
                 QuoinexOrder order = gson.fromJson(data, QuoinexOrder.class);
 
@@ -0,0 +1,145 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Decode-only adapter, which binds the fields of a json object through a builder without reflection.
+ * Unknown fields are skipped without being materialized.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public abstract class TemplateAdapter<T, B> extends TypeAdapter<T> {
+
+    protected abstract B create();
+
+    /**
+     * @return False if the field is not consumed, and should be skipped.
+     */
+    protected abstract boolean read(JsonReader in, String name, B builder) throws IOException;
+
+    protected abstract T build(B builder);
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        throw new UnsupportedOperationException("Decode only : " + getClass().getName());
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+
+            in.nextNull();
+
+            return null;
+
+        }
+
+        B builder = create();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+
+            String name = in.nextName();
+
+            if (!read(in, name, builder)) {
+                in.skipValue();
+            }
+
+        }
+
+        in.endObject();
+
+        return build(builder);
+
+    }
+
+    public static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter, Predicate<? super T> filter)
+            throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+
+            in.nextNull();
+
+            return null;
+
+        }
+
+        List<T> values = new ArrayList<>();
+
+        in.beginArray();
+
+        while (in.hasNext()) {
+
+            T value = adapter.read(in);
+
+            if (filter == null || filter.test(value)) {
+                values.add(value);
+            }
+
+        }
+
+        in.endArray();
+
+        return values;
+
+    }
+
+    public static String nextString(JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+
+            in.nextNull();
+
+            return null;
+
+        }
+
+        return in.nextString();
+
+    }
+
+    public static BigDecimal nextDecimal(JsonReader in) throws IOException {
+
+        String value = nextString(in);
+
+        return value == null ? null : new BigDecimal(value);
+
+    }
+
+    public static Long nextLong(JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+
+            in.nextNull();
+
+            return null;
+
+        }
+
+        return in.nextLong();
+
+    }
+
+    public static Instant nextInstant(JsonReader in, Function<String, Instant> parser) throws IOException {
+
+        String value = nextString(in);
+
+        return value == null ? null : parser.apply(value);
+
+    }
+
+}
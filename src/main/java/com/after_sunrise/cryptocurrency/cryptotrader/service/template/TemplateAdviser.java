@@ -15,6 +15,7 @@ import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType.ACTIVE;
@@ -45,6 +46,8 @@ public class TemplateAdviser extends AbstractService implements Adviser {
 
     static final int SAMPLES = 5;
 
+    private final Map<Request, TemplateGraph> graphs = Collections.synchronizedMap(new IdentityHashMap<>());
+
     private final String id;
 
     public TemplateAdviser(String id) {
@@ -59,6 +62,22 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @Override
     public Advice advise(Context context, Request request, Estimation estimation) {
 
+        TemplateGraph graph = new TemplateGraph();
+
+        graphs.put(request, graph);
+
+        try {
+            return advise(context, request, estimation, graph);
+        } finally {
+            graphs.remove(request);
+        }
+
+    }
+
+    private Advice advise(Context context, Request request, Estimation estimation, TemplateGraph graph) {
+
+        prefetch(context, request);
+
         BigDecimal weighedPrice = calculateWeighedPrice(context, request, estimation);
 
         BigDecimal basis = calculateBasis(context, request, estimation);
@@ -80,87 +99,132 @@ public class TemplateAdviser extends AbstractService implements Adviser {
 
         log.trace("Advice : {} - {}", advice, request);
 
+        log.debug("Advice timings : {} - {}", graph.getTimings(), request);
+
         return advice;
 
     }
 
+    /**
+     * Looks up the named intermediate value of the request being advised, so that the value is computed once and
+     * shared by both of the sides, and by the subclasses. Computed on each call, outside of the advice.
+     *
+     * @param name Name of the value, including the arguments other than the context and the request.
+     */
+    protected <V> V evaluate(Request request, String name, Supplier<V> supplier) {
+
+        TemplateGraph graph = graphs.get(request);
+
+        return graph == null ? supplier.get() : graph.evaluate(name, supplier);
+
+    }
+
+    /**
+     * Starts the market data lookups concurrently, so that the subsequent lookups are served from the cache, or
+     * join the requests in flight, instead of making a round trip each.
+     */
+    @VisibleForTesting
+    void prefetch(Context context, Request request) {
+
+        Key key = Key.from(request);
+
+        if (key.getSite() == null || key.getInstrument() == null) {
+            return;
+        }
+
+        context.getBestAskPriceAsync(key);
+
+        context.getBestBidPriceAsync(key);
+
+        context.getMidPriceAsync(key);
+
+    }
+
     @VisibleForTesting
     BigDecimal calculateWeighedPrice(Context context, Request request, Estimation estimation) {
 
-        BigDecimal confidence = estimation.getConfidence();
+        return evaluate(request, "weighedPrice", () -> {
 
-        if (estimation.getPrice() == null || confidence == null
-                || confidence.signum() <= 0 || confidence.compareTo(ONE) > 0) {
+            BigDecimal confidence = estimation.getConfidence();
 
-            log.trace("Invalid estimation : {}", estimation);
+            if (estimation.getPrice() == null || confidence == null
+                    || confidence.signum() <= 0 || confidence.compareTo(ONE) > 0) {
 
-            return null;
+                log.trace("Invalid estimation : {}", estimation);
 
-        }
+                return null;
 
-        Key key = Key.from(request);
+            }
 
-        BigDecimal mid = context.getMidPrice(key);
+            Key key = Key.from(request);
 
-        if (mid == null) {
+            BigDecimal mid = context.getMidPrice(key);
 
-            log.trace("Weighed price not available. No mid.");
+            if (mid == null) {
 
-            return null;
+                log.trace("Weighed price not available. No mid.");
 
-        }
+                return null;
+
+            }
+
+            BigDecimal estimate = estimation.getPrice();
 
-        BigDecimal estimate = estimation.getPrice();
+            BigDecimal weighed = mid.multiply(ONE.subtract(confidence)).add(estimate.multiply(confidence));
 
-        BigDecimal weighed = mid.multiply(ONE.subtract(confidence)).add(estimate.multiply(confidence));
+            log.trace("Weighed price : {} (mid=[[]] [{}])", weighed, mid, estimation);
 
-        log.trace("Weighed price : {} (mid=[[]] [{}])", weighed, mid, estimation);
+            return weighed;
 
-        return weighed;
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateBasis(Context context, Request request, Estimation estimation) {
 
-        Key key = Key.from(request);
+        return evaluate(request, "basis", () -> {
 
-        BigDecimal commission = context.getCommissionRate(key);
+            Key key = Key.from(request);
 
-        if (commission == null) {
+            BigDecimal commission = context.getCommissionRate(key);
 
-            log.trace("Basis not available. Null commission.");
+            if (commission == null) {
 
-            return null;
-        }
+                log.trace("Basis not available. Null commission.");
 
-        BigDecimal staticBasis = request.getTradingSpread();
+                return null;
+            }
 
-        if (staticBasis == null) {
+            BigDecimal staticBasis = request.getTradingSpread();
 
-            log.trace("Basis not available. Null spread.");
+            if (staticBasis == null) {
 
-            return null;
-        }
+                log.trace("Basis not available. Null spread.");
+
+                return null;
+            }
 
-        BigDecimal dynamicBasis = trim(calculateDeviation(context, request), staticBasis);
+            BigDecimal dynamicBasis = trim(calculateDeviation(context, request), staticBasis);
 
-        BigDecimal basis = staticBasis.max(dynamicBasis).add(commission);
+            BigDecimal basis = staticBasis.max(dynamicBasis).add(commission);
 
-        BigDecimal confidence = trimToZero(estimation.getConfidence()).min(ONE).max(ZERO);
+            BigDecimal confidence = trimToZero(estimation.getConfidence()).min(ONE).max(ZERO);
 
-        BigDecimal aversion = trimToZero(request.getEstimationAversion());
+            BigDecimal aversion = trimToZero(request.getEstimationAversion());
 
-        BigDecimal adjustment = ONE.subtract(confidence).multiply(aversion);
+            BigDecimal adjustment = ONE.subtract(confidence).multiply(aversion);
 
-        BigDecimal confidenceBasis = basis.multiply(ONE.add(adjustment));
+            BigDecimal confidenceBasis = basis.multiply(ONE.add(adjustment));
 
-        BigDecimal adjustedBasis = adjustBasis(context, request, confidenceBasis);
+            BigDecimal adjustedBasis = adjustBasis(context, request, confidenceBasis);
 
-        log.trace("Basis : {} (static=[{}] dynamic=[{}] commission=[{}] confidence=[{}] aversion=[{}])",
-                adjustedBasis, staticBasis, dynamicBasis, commission, confidence, aversion);
+            log.trace("Basis : {} (static=[{}] dynamic=[{}] commission=[{}] confidence=[{}] aversion=[{}])",
+                    adjustedBasis, staticBasis, dynamicBasis, commission, confidence, aversion);
 
-        return adjustedBasis;
+            return adjustedBasis;
+
+        });
 
     }
 
@@ -171,255 +235,273 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateDeviation(Context context, Request request) {
 
-        BigDecimal sigma = request.getTradingSigma();
+        return evaluate(request, "deviation", () -> {
 
-        if (sigma.signum() <= 0) {
-            return ZERO;
-        }
+            BigDecimal sigma = request.getTradingSigma();
+
+            if (sigma.signum() <= 0) {
+                return ZERO;
+            }
+
+            double highest = 0.0;
 
-        double highest = 0.0;
+            Set<Key> keys = trimToEmpty(request.getDeviationProducts()).stream()
+                    .filter(Objects::nonNull)
+                    .filter(c -> StringUtils.isNotEmpty(c.getSite()))
+                    .filter(c -> StringUtils.isNotEmpty(c.getInstrument()))
+                    .map(c -> Key.build(Key.from(request)).site(c.getSite()).instrument(c.getInstrument()).build())
+                    .collect(Collectors.toSet());
 
-        Set<Key> keys = trimToEmpty(request.getDeviationProducts()).stream()
-                .filter(Objects::nonNull)
-                .filter(c -> StringUtils.isNotEmpty(c.getSite()))
-                .filter(c -> StringUtils.isNotEmpty(c.getInstrument()))
-                .map(c -> Key.build(Key.from(request)).site(c.getSite()).instrument(c.getInstrument()).build())
-                .collect(Collectors.toSet());
+            for (Key key : keys.isEmpty() ? singleton(Key.from(request)) : keys) {
 
-        for (Key key : keys.isEmpty() ? singleton(Key.from(request)) : keys) {
+                Integer samples = trim(request.getTradingSamples(), 0);
 
-            Integer samples = trim(request.getTradingSamples(), 0);
+                while (samples >= SAMPLES) {
 
-            while (samples >= SAMPLES) {
+                    Duration interval = Duration.between(request.getCurrentTime(), request.getTargetTime());
 
-                Duration interval = Duration.between(request.getCurrentTime(), request.getTargetTime());
+                    Instant to = request.getCurrentTime();
 
-                Instant to = request.getCurrentTime();
+                    Instant from = to.minus(interval.toMillis() * samples, MILLIS);
 
-                Instant from = to.minus(interval.toMillis() * samples, MILLIS);
+                    List<Trade> trades = context.listTrades(key, from.minus(interval));
 
-                List<Trade> trades = context.listTrades(key, from.minus(interval));
+                    NavigableMap<Instant, BigDecimal> prices = collapsePrices(trades, interval, from, to, false);
 
-                NavigableMap<Instant, BigDecimal> prices = collapsePrices(trades, interval, from, to, false);
+                    NavigableMap<Instant, BigDecimal> returns = calculateReturns(prices);
 
-                NavigableMap<Instant, BigDecimal> returns = calculateReturns(prices);
+                    SummaryStatistics stats = new SummaryStatistics();
 
-                SummaryStatistics stats = new SummaryStatistics();
+                    returns.values().stream().filter(Objects::nonNull).forEach(r -> stats.addValue(r.doubleValue()));
 
-                returns.values().stream().filter(Objects::nonNull).forEach(r -> stats.addValue(r.doubleValue()));
+                    double average = stats.getMean();
 
-                double average = stats.getMean();
+                    double deviation = stats.getStandardDeviation() * sigma.doubleValue() + Math.abs(average);
 
-                double deviation = stats.getStandardDeviation() * sigma.doubleValue() + Math.abs(average);
+                    log.trace("Deviation Candidate : [{}.{}] {} (Samples=[{}] Sigma=[{}])",
+                            key.getSite(), key.getInstrument(), deviation, samples, sigma);
 
-                log.trace("Deviation Candidate : [{}.{}] {} (Samples=[{}] Sigma=[{}])",
-                        key.getSite(), key.getInstrument(), deviation, samples, sigma);
+                    highest = Double.isFinite(deviation) ? Math.max(highest, deviation) : highest;
 
-                highest = Double.isFinite(deviation) ? Math.max(highest, deviation) : highest;
+                    samples = samples / 2;
 
-                samples = samples / 2;
+                }
 
             }
 
-        }
+            BigDecimal result = BigDecimal.valueOf(highest).setScale(SCALE, HALF_UP);
 
-        BigDecimal result = BigDecimal.valueOf(highest).setScale(SCALE, HALF_UP);
+            log.trace("Deviation : {}", result);
 
-        log.trace("Deviation : {}", result);
+            return result;
 
-        return result;
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculatePositionRatio(Context context, Request request) {
 
-        BigDecimal resistance = trim(request.getTradingResistance(), ONE);
+        return evaluate(request, "positionRatio", () -> {
 
-        if (resistance.signum() == 0) {
-            return ZERO;
-        }
+            BigDecimal resistance = trim(request.getTradingResistance(), ONE);
 
-        Key key = Key.from(request);
+            if (resistance.signum() == 0) {
+                return ZERO;
+            }
 
-        BigDecimal mid = context.getMidPrice(key);
+            Key key = Key.from(request);
 
-        BigDecimal funding = context.getFundingPosition(key);
+            BigDecimal mid = context.getMidPrice(key);
 
-        BigDecimal structure = calculateInstrumentPosition(context, request);
+            BigDecimal funding = context.getFundingPosition(key);
 
-        if (mid == null || funding == null || structure == null) {
+            BigDecimal structure = calculateInstrumentPosition(context, request);
 
-            log.trace("Position ratio unavailable : price=[{}] funding=[{}] structure=[{}]", mid, funding, structure);
+            if (mid == null || funding == null || structure == null) {
 
-            return null;
+                log.trace("Position ratio unavailable : price=[{}] funding=[{}] structure=[{}]",
+                        mid, funding, structure);
 
-        }
+                return null;
 
-        BigDecimal offset = calculateFundingOffset(context, request);
+            }
 
-        BigDecimal adjFunding = funding.multiply(ONE.add(trimToZero(offset))).max(ZERO);
+            BigDecimal offset = calculateFundingOffset(context, request);
 
-        BigDecimal equivalent = structure.multiply(mid);
+            BigDecimal adjFunding = funding.multiply(ONE.add(trimToZero(offset))).max(ZERO);
 
-        BigDecimal ratio;
+            BigDecimal equivalent = structure.multiply(mid);
 
-        if (Objects.equals(TRUE, context.isMarginable(key))) {
+            BigDecimal ratio;
 
-            // = Equivalent / (Funding / 2)
-            // = 2 * Equivalent / Funding
-            // (Funding / 2 = Funding for single side)
+            if (Objects.equals(TRUE, context.isMarginable(key))) {
 
-            if (adjFunding.signum() == 0) {
-                return ZERO;
-            }
+                // = Equivalent / (Funding / 2)
+                // = 2 * Equivalent / Funding
+                // (Funding / 2 = Funding for single side)
 
-            // Leveraged short can be larger than the funding.
-            ratio = equivalent.add(equivalent).divide(adjFunding, SCALE, HALF_UP);
+                if (adjFunding.signum() == 0) {
+                    return ZERO;
+                }
 
-        } else {
+                // Leveraged short can be larger than the funding.
+                ratio = equivalent.add(equivalent).divide(adjFunding, SCALE, HALF_UP);
 
-            // = Diff / Average
-            // = (X - Y) / [(X + Y) / 2]
-            // = 2 * (X - Y) / (X + Y)
+            } else {
 
-            BigDecimal sum = equivalent.max(ZERO).add(adjFunding);
+                // = Diff / Average
+                // = (X - Y) / [(X + Y) / 2]
+                // = 2 * (X - Y) / (X + Y)
 
-            if (sum.signum() == 0) {
-                return ZERO;
-            }
+                BigDecimal sum = equivalent.max(ZERO).add(adjFunding);
 
-            BigDecimal diff = equivalent.max(ZERO).subtract(adjFunding);
+                if (sum.signum() == 0) {
+                    return ZERO;
+                }
 
-            ratio = diff.add(diff).divide(sum, SCALE, HALF_UP);
+                BigDecimal diff = equivalent.max(ZERO).subtract(adjFunding);
 
-        }
+                ratio = diff.add(diff).divide(sum, SCALE, HALF_UP);
 
-        BigDecimal resistanceRatio = ratio.multiply(resistance).setScale(SCALE, HALF_UP);
+            }
 
-        log.trace("Position ratio: {} (ratio=[{}], fund=[{}], structure=[{}] price=[{}])",
-                resistanceRatio, ratio, adjFunding, structure, mid);
+            BigDecimal resistanceRatio = ratio.multiply(resistance).setScale(SCALE, HALF_UP);
 
-        return resistanceRatio;
+            log.trace("Position ratio: {} (ratio=[{}], fund=[{}], structure=[{}] price=[{}])",
+                    resistanceRatio, ratio, adjFunding, structure, mid);
+
+            return resistanceRatio;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateInstrumentPosition(Context context, Request request) {
 
-        Key key = Key.from(request);
+        return evaluate(request, "instrumentPosition", () -> {
 
-        CurrencyType currency = context.getInstrumentCurrency(key);
+            Key key = Key.from(request);
 
-        List<Composite> hedgeProducts = ofNullable(request.getHedgeProducts())
-                .filter(CollectionUtils::isNotEmpty)
-                .orElseGet(() -> singletonList(new Composite(request.getSite(), request.getInstrument())));
+            CurrencyType currency = context.getInstrumentCurrency(key);
 
-        BigDecimal position = ZERO;
+            List<Composite> hedgeProducts = ofNullable(request.getHedgeProducts())
+                    .filter(CollectionUtils::isNotEmpty)
+                    .orElseGet(() -> singletonList(new Composite(request.getSite(), request.getInstrument())));
 
-        for (Composite composite : hedgeProducts) {
+            BigDecimal position = ZERO;
 
-            String site = composite.getSite();
+            for (Composite composite : hedgeProducts) {
 
-            String[] instruments = trimToEmpty(split(composite.getInstrument(), ":", 2));
+                String site = composite.getSite();
 
-            String instrument = instruments.length == 0 ? null : instruments[0];
+                String[] instruments = trimToEmpty(split(composite.getInstrument(), ":", 2));
 
-            BigDecimal multiplier = instruments.length != 2 ? ONE : parseDecimal(instruments[1], ONE);
+                String instrument = instruments.length == 0 ? null : instruments[0];
 
-            Key instrumentKey = Key.build(key).site(site).instrument(instrument).build();
+                BigDecimal multiplier = instruments.length != 2 ? ONE : parseDecimal(instruments[1], ONE);
 
-            BigDecimal conversionPrice = context.getConversionPrice(instrumentKey, currency);
+                Key instrumentKey = Key.build(key).site(site).instrument(instrument).build();
 
-            if (conversionPrice == null || conversionPrice.signum() == 0) {
+                BigDecimal conversionPrice = context.getConversionPrice(instrumentKey, currency);
 
-                log.trace("No conversion price for {}:{}:{}", site, instrument, currency);
+                if (conversionPrice == null || conversionPrice.signum() == 0) {
 
-                return null;
+                    log.trace("No conversion price for {}:{}:{}", site, instrument, currency);
 
-            }
+                    return null;
 
-            BigDecimal conversionPosition = context.getInstrumentPosition(instrumentKey);
+                }
 
-            if (conversionPosition == null) {
+                BigDecimal conversionPosition = context.getInstrumentPosition(instrumentKey);
 
-                log.trace("No conversion position for {}:{}", site, instrument);
+                if (conversionPosition == null) {
 
-                return null;
+                    log.trace("No conversion position for {}:{}", site, instrument);
 
-            }
+                    return null;
 
-            BigDecimal basePosition = conversionPosition.multiply(multiplier).divide(conversionPrice, SCALE, HALF_UP);
+                }
 
-            position = position.add(basePosition);
+                BigDecimal basePosition = conversionPosition.multiply(multiplier)
+                        .divide(conversionPrice, SCALE, HALF_UP);
 
-            log.trace("Instrument position element : [{}.{}] {} (position=[{}] price=[{}])",
-                    site, instrument, basePosition, conversionPosition, conversionPrice);
+                position = position.add(basePosition);
 
-        }
+                log.trace("Instrument position element : [{}.{}] {} (position=[{}] price=[{}])",
+                        site, instrument, basePosition, conversionPosition, conversionPrice);
+
+            }
 
-        log.trace("Instrument position : {}", position);
+            log.trace("Instrument position : {}", position);
 
-        return position;
+            return position;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateFundingOffset(Context context, Request request) {
 
-        BigDecimal offset = request.getFundingOffset();
+        return evaluate(request, "fundingOffset", () -> {
 
-        Key key = Key.from(request);
+            BigDecimal offset = request.getFundingOffset();
 
-        BigDecimal basePrice = context.getMidPrice(key);
+            Key key = Key.from(request);
 
-        if (basePrice == null || basePrice.signum() == 0) {
-            return offset;
-        }
+            BigDecimal basePrice = context.getMidPrice(key);
 
-        List<Composite> offsetProducts = request.getFundingMultiplierProducts();
+            if (basePrice == null || basePrice.signum() == 0) {
+                return offset;
+            }
 
-        BigDecimal compositePrice = calculateComposite(offsetProducts, (site, product) -> {
+            List<Composite> offsetProducts = request.getFundingMultiplierProducts();
 
-            Key offsetKey = Key.build(key).site(site).instrument(product).build();
+            BigDecimal compositePrice = calculateComposite(offsetProducts, (site, product) -> {
 
-            return context.getMidPrice(offsetKey);
+                Key offsetKey = Key.build(key).site(site).instrument(product).build();
 
-        });
+                return context.getMidPrice(offsetKey);
 
-        if (compositePrice == null || compositePrice.signum() == 0) {
-            return offset;
-        }
+            });
 
-        BigDecimal adjustment = compositePrice.divide(basePrice, SCALE, HALF_UP).subtract(ONE);
+            if (compositePrice == null || compositePrice.signum() == 0) {
+                return offset;
+            }
 
-        BigDecimal multiplier;
+            BigDecimal adjustment = compositePrice.divide(basePrice, SCALE, HALF_UP).subtract(ONE);
 
-        if (adjustment.signum() > 0) {
-            multiplier = request.getFundingPositiveMultiplier();
-        } else {
-            multiplier = request.getFundingNegativeMultiplier();
-        }
+            BigDecimal multiplier;
 
-        BigDecimal basis = adjustment.multiply(multiplier);
+            if (adjustment.signum() > 0) {
+                multiplier = request.getFundingPositiveMultiplier();
+            } else {
+                multiplier = request.getFundingNegativeMultiplier();
+            }
 
-        BigDecimal result = offset.add(basis.setScale(SCALE, HALF_UP));
+            BigDecimal basis = adjustment.multiply(multiplier);
 
-        BigDecimal max = request.getFundingPositiveThreshold();
+            BigDecimal result = offset.add(basis.setScale(SCALE, HALF_UP));
 
-        if (max != null && max.signum() != 0) {
-            result = result.min(max);
-        }
+            BigDecimal max = request.getFundingPositiveThreshold();
 
-        BigDecimal min = request.getFundingNegativeThreshold();
+            if (max != null && max.signum() != 0) {
+                result = result.min(max);
+            }
 
-        if (min != null && min.signum() != 0) {
-            result = result.max(min);
-        }
+            BigDecimal min = request.getFundingNegativeThreshold();
 
-        log.trace("Funding offset : {} (basis=[{}])", result, basis);
+            if (min != null && min.signum() != 0) {
+                result = result.max(min);
+            }
+
+            log.trace("Funding offset : {} (basis=[{}])", result, basis);
 
-        return result;
+            return result;
+
+        });
 
     }
 
@@ -431,113 +513,125 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateRecentPrice(Context context, Request request, int signum, List<Composite> products) {
 
-        Duration duration = request.getTradingDuration();
+        return evaluate(request, "recentPrice:" + signum + ":" + products, () -> {
 
-        if (duration.isZero()) {
-            return null;
-        }
+            Duration duration = request.getTradingDuration();
 
-        List<Order.Execution> executions = new ArrayList<>();
+            if (duration.isZero()) {
+                return null;
+            }
 
-        Key key = Key.from(request);
+            List<Order.Execution> executions = new ArrayList<>();
 
-        ofNullable(products)
-                .filter(CollectionUtils::isNotEmpty)
-                .orElseGet(() -> singletonList(new Composite(key.getSite(), key.getInstrument())))
-                .forEach(c -> {
+            Key key = Key.from(request);
 
-                    Key k = Key.build(key).site(c.getSite()).instrument(c.getInstrument()).build();
+            ofNullable(products)
+                    .filter(CollectionUtils::isNotEmpty)
+                    .orElseGet(() -> singletonList(new Composite(key.getSite(), key.getInstrument())))
+                    .forEach(c -> {
 
-                    Instant cutoff = key.getTimestamp().minus(duration.abs());
+                        Key k = Key.build(key).site(c.getSite()).instrument(c.getInstrument()).build();
 
-                    List<Order.Execution> values = context.listExecutions(k);
+                        Instant cutoff = key.getTimestamp().minus(duration.abs());
 
-                    trimToEmpty(values).stream()
-                            .filter(Objects::nonNull)
-                            .filter(t -> t.getTime() != null)
-                            .filter(t -> t.getTime().isAfter(cutoff))
-                            .filter(t -> t.getPrice() != null)
-                            .filter(t -> t.getPrice().signum() != 0)
-                            .filter(t -> t.getSize() != null)
-                            .filter(t -> t.getSize().signum() == signum)
-                            .forEach(executions::add);
+                        List<Order.Execution> values = context.listExecutions(k);
 
-                });
+                        trimToEmpty(values).stream()
+                                .filter(Objects::nonNull)
+                                .filter(t -> t.getTime() != null)
+                                .filter(t -> t.getTime().isAfter(cutoff))
+                                .filter(t -> t.getPrice() != null)
+                                .filter(t -> t.getPrice().signum() != 0)
+                                .filter(t -> t.getSize() != null)
+                                .filter(t -> t.getSize().signum() == signum)
+                                .forEach(executions::add);
 
-        BigDecimal price;
+                    });
 
-        if (duration.isNegative()) {
+            BigDecimal price;
 
-            double[] average = {0.0, 0.0, 0.0};
+            if (duration.isNegative()) {
 
-            executions.forEach(t -> {
-                average[0] += t.getSize().multiply(t.getPrice()).doubleValue();
-                average[1] += t.getSize().doubleValue();
-                average[2] += 1;
-            });
+                double[] average = {0.0, 0.0, 0.0};
 
-            price = average[2] > 0 ? BigDecimal.valueOf(average[0] / average[1]).setScale(SCALE, HALF_UP) : null;
+                executions.forEach(t -> {
+                    average[0] += t.getSize().multiply(t.getPrice()).doubleValue();
+                    average[1] += t.getSize().doubleValue();
+                    average[2] += 1;
+                });
 
-        } else {
+                price = average[2] > 0 ? BigDecimal.valueOf(average[0] / average[1]).setScale(SCALE, HALF_UP) : null;
 
-            Comparator<BigDecimal> comparator = signum == SIGNUM_BUY ? reverseOrder() : naturalOrder();
+            } else {
 
-            price = executions.stream().map(Order.Execution::getPrice).min(comparator).orElse(null);
+                Comparator<BigDecimal> comparator = signum == SIGNUM_BUY ? reverseOrder() : naturalOrder();
 
-        }
+                price = executions.stream().map(Order.Execution::getPrice).min(comparator).orElse(null);
+
+            }
 
-        log.trace("Recent price : {} (Duration=[{}] Signum=[{}])", price, duration, signum);
+            log.trace("Recent price : {} (Duration=[{}] Signum=[{}])", price, duration, signum);
 
-        return price;
+            return price;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateBuyLossBasis(Context context, Request request) {
 
-        BigDecimal market = context.getBestBidPrice(Key.from(request));
+        return evaluate(request, "buyLossBasis", () -> {
 
-        if (market == null) {
-            return ZERO;
-        }
+            BigDecimal market = context.getBestBidPrice(Key.from(request));
 
-        BigDecimal latest = calculateRecentPrice(context, request, SIGNUM_BUY);
+            if (market == null) {
+                return ZERO;
+            }
 
-        if (latest == null || latest.signum() == 0) {
-            return ZERO;
-        }
+            BigDecimal latest = calculateRecentPrice(context, request, SIGNUM_BUY);
 
-        BigDecimal lossPrice = latest.subtract(market).max(ZERO);
+            if (latest == null || latest.signum() == 0) {
+                return ZERO;
+            }
+
+            BigDecimal lossPrice = latest.subtract(market).max(ZERO);
 
-        BigDecimal lossBasis = lossPrice.divide(latest, SCALE, ROUND_UP);
+            BigDecimal lossBasis = lossPrice.divide(latest, SCALE, ROUND_UP);
 
-        BigDecimal aversion = trim(request.getTradingAversion(), ONE);
+            BigDecimal aversion = trim(request.getTradingAversion(), ONE);
 
-        return lossBasis.multiply(aversion).max(ZERO);
+            return lossBasis.multiply(aversion).max(ZERO);
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateBuyBasis(Context context, Request request, BigDecimal base) {
 
-        if (base == null) {
-            return null;
-        }
+        return evaluate(request, "buyBasis:" + base, () -> {
+
+            if (base == null) {
+                return null;
+            }
+
+            BigDecimal additional = trimToZero(request.getTradingSpreadBid());
 
-        BigDecimal additional = trimToZero(request.getTradingSpreadBid());
+            BigDecimal positionRatio = trimToZero(calculatePositionRatio(context, request)).max(ZERO);
 
-        BigDecimal positionRatio = trimToZero(calculatePositionRatio(context, request)).max(ZERO);
+            BigDecimal positionBase = base.add(additional).multiply(ONE.add(positionRatio));
 
-        BigDecimal positionBase = base.add(additional).multiply(ONE.add(positionRatio));
+            BigDecimal lossBasis = trimToZero(calculateBuyLossBasis(context, request));
 
-        BigDecimal lossBasis = trimToZero(calculateBuyLossBasis(context, request));
+            BigDecimal adjusted = adjustBuyBasis(context, request, positionBase.add(lossBasis));
 
-        BigDecimal adjusted = adjustBuyBasis(context, request, positionBase.add(lossBasis));
+            log.trace("Buy Basis : {} (additional=[{}] position=[{}] loss=[{}])",
+                    adjusted, additional, positionRatio, lossBasis);
 
-        log.trace("Buy Basis : {} (additional=[{}] position=[{}] loss=[{}])",
-                adjusted, additional, positionRatio, lossBasis);
+            return adjusted.setScale(SCALE, HALF_UP);
 
-        return adjusted.setScale(SCALE, HALF_UP);
+        });
 
     }
 
@@ -548,49 +642,57 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateSellLossBasis(Context context, Request request) {
 
-        BigDecimal market = context.getBestAskPrice(Key.from(request));
+        return evaluate(request, "sellLossBasis", () -> {
 
-        if (market == null) {
-            return ZERO;
-        }
+            BigDecimal market = context.getBestAskPrice(Key.from(request));
 
-        BigDecimal latest = calculateRecentPrice(context, request, SIGNUM_SELL);
+            if (market == null) {
+                return ZERO;
+            }
 
-        if (latest == null || latest.signum() == 0) {
-            return ZERO;
-        }
+            BigDecimal latest = calculateRecentPrice(context, request, SIGNUM_SELL);
 
-        BigDecimal lossPrice = market.subtract(latest).max(ZERO);
+            if (latest == null || latest.signum() == 0) {
+                return ZERO;
+            }
+
+            BigDecimal lossPrice = market.subtract(latest).max(ZERO);
 
-        BigDecimal lossBasis = lossPrice.divide(latest, SCALE, ROUND_UP);
+            BigDecimal lossBasis = lossPrice.divide(latest, SCALE, ROUND_UP);
 
-        BigDecimal aversion = trim(request.getTradingAversion(), ONE);
+            BigDecimal aversion = trim(request.getTradingAversion(), ONE);
 
-        return lossBasis.multiply(aversion).max(ZERO);
+            return lossBasis.multiply(aversion).max(ZERO);
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateSellBasis(Context context, Request request, BigDecimal base) {
 
-        if (base == null) {
-            return null;
-        }
+        return evaluate(request, "sellBasis:" + base, () -> {
 
-        BigDecimal additional = trimToZero(request.getTradingSpreadAsk());
+            if (base == null) {
+                return null;
+            }
 
-        BigDecimal positionRatio = trimToZero(calculatePositionRatio(context, request)).min(ZERO).abs();
+            BigDecimal additional = trimToZero(request.getTradingSpreadAsk());
 
-        BigDecimal positionBase = base.add(additional).multiply(ONE.add(positionRatio));
+            BigDecimal positionRatio = trimToZero(calculatePositionRatio(context, request)).min(ZERO).abs();
 
-        BigDecimal lossBasis = trimToZero(calculateSellLossBasis(context, request));
+            BigDecimal positionBase = base.add(additional).multiply(ONE.add(positionRatio));
 
-        BigDecimal adjusted = adjustSellBasis(context, request, positionBase.add(lossBasis));
+            BigDecimal lossBasis = trimToZero(calculateSellLossBasis(context, request));
 
-        log.trace("Sell Basis : {} (additional=[{}] position=[{}] loss=[{}])",
-                adjusted, additional, positionRatio, lossBasis);
+            BigDecimal adjusted = adjustSellBasis(context, request, positionBase.add(lossBasis));
 
-        return adjusted.setScale(SCALE, HALF_UP);
+            log.trace("Sell Basis : {} (additional=[{}] position=[{}] loss=[{}])",
+                    adjusted, additional, positionRatio, lossBasis);
+
+            return adjusted.setScale(SCALE, HALF_UP);
+
+        });
 
     }
 
@@ -601,42 +703,48 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateBuyBoundaryPrice(Context context, Request request, BigDecimal basis) {
 
-        Key key = Key.from(request);
+        return evaluate(request, "buyBoundaryPrice:" + basis, () -> {
 
-        BigDecimal ask0 = context.getBestAskPrice(key);
+            Key key = Key.from(request);
 
-        if (ask0 == null) {
-            return null;
-        }
+            BigDecimal ask0 = context.getBestAskPrice(key);
 
-        BigDecimal ask1 = ask0.subtract(EPSILON);
+            if (ask0 == null) {
+                return null;
+            }
 
-        BigDecimal recent = ofNullable(calculateRecentPrice(context, request, SIGNUM_SELL, request.getAversionProducts()))
-                .map(r -> r.multiply(ONE.subtract(trimToZero(basis)))).orElse(ask0);
+            BigDecimal ask1 = ask0.subtract(EPSILON);
 
-        BigDecimal bid0 = trim(context.getBestBidPrice(key), ask0);
+            List<Composite> products = request.getAversionProducts();
 
-        BigDecimal bid1 = bid0;
+            BigDecimal recent = ofNullable(calculateRecentPrice(context, request, SIGNUM_SELL, products))
+                    .map(r -> r.multiply(ONE.subtract(trimToZero(basis)))).orElse(ask0);
 
-        if (trimToEmpty(context.listActiveOrders(key)).stream()
-                .filter(Objects::nonNull)
-                .filter(o -> o.getOrderQuantity() != null)
-                .filter(o -> o.getOrderQuantity().signum() == SIGNUM_BUY)
-                .filter(o -> o.getOrderPrice() != null)
-                .filter(o -> o.getOrderPrice().compareTo(bid0) == 0)
-                .count() == 0) {
+            BigDecimal bid0 = trim(context.getBestBidPrice(key), ask0);
 
-            bid1 = ofNullable(context.roundTickSize(key, bid0.add(EPSILON), UP)).orElse(bid0);
+            BigDecimal bid1 = bid0;
 
-        }
+            if (trimToEmpty(context.listActiveOrders(key)).stream()
+                    .filter(Objects::nonNull)
+                    .filter(o -> o.getOrderQuantity() != null)
+                    .filter(o -> o.getOrderQuantity().signum() == SIGNUM_BUY)
+                    .filter(o -> o.getOrderPrice() != null)
+                    .filter(o -> o.getOrderPrice().compareTo(bid0) == 0)
+                    .count() == 0) {
+
+                bid1 = ofNullable(context.roundTickSize(key, bid0.add(EPSILON), UP)).orElse(bid0);
+
+            }
+
+            BigDecimal price = ask1.min(bid1).min(recent);
 
-        BigDecimal price = ask1.min(bid1).min(recent);
+            BigDecimal result = adjustBuyBoundaryPrice(context, request, context.roundTickSize(key, price, DOWN));
 
-        BigDecimal result = adjustBuyBoundaryPrice(context, request, context.roundTickSize(key, price, DOWN));
+            log.trace("Buy boundary : {} (Ask=[{}] Bid=[{}] Recent=[{}])", result, ask0, bid1, recent);
 
-        log.trace("Buy boundary : {} (Ask=[{}] Bid=[{}] Recent=[{}])", result, ask0, bid1, recent);
+            return result;
 
-        return result;
+        });
 
     }
 
@@ -647,42 +755,48 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateSellBoundaryPrice(Context context, Request request, BigDecimal basis) {
 
-        Key key = Key.from(request);
+        return evaluate(request, "sellBoundaryPrice:" + basis, () -> {
 
-        BigDecimal bid0 = context.getBestBidPrice(key);
+            Key key = Key.from(request);
 
-        if (bid0 == null) {
-            return null;
-        }
+            BigDecimal bid0 = context.getBestBidPrice(key);
 
-        BigDecimal bid1 = bid0.add(EPSILON);
+            if (bid0 == null) {
+                return null;
+            }
 
-        BigDecimal recent = ofNullable(calculateRecentPrice(context, request, SIGNUM_BUY, request.getAversionProducts()))
-                .map(r -> r.multiply(ONE.add(trimToZero(basis)))).orElse(bid0);
+            BigDecimal bid1 = bid0.add(EPSILON);
 
-        BigDecimal ask0 = trim(context.getBestAskPrice(key), bid0);
+            List<Composite> products = request.getAversionProducts();
 
-        BigDecimal ask1 = ask0;
+            BigDecimal recent = ofNullable(calculateRecentPrice(context, request, SIGNUM_BUY, products))
+                    .map(r -> r.multiply(ONE.add(trimToZero(basis)))).orElse(bid0);
 
-        if (trimToEmpty(context.listActiveOrders(key)).stream()
-                .filter(Objects::nonNull)
-                .filter(o -> o.getOrderQuantity() != null)
-                .filter(o -> o.getOrderQuantity().signum() == SIGNUM_SELL)
-                .filter(o -> o.getOrderPrice() != null)
-                .filter(o -> o.getOrderPrice().compareTo(ask0) == 0)
-                .count() == 0) {
+            BigDecimal ask0 = trim(context.getBestAskPrice(key), bid0);
 
-            ask1 = trim(context.roundTickSize(key, ask0.subtract(EPSILON), DOWN), ask0);
+            BigDecimal ask1 = ask0;
 
-        }
+            if (trimToEmpty(context.listActiveOrders(key)).stream()
+                    .filter(Objects::nonNull)
+                    .filter(o -> o.getOrderQuantity() != null)
+                    .filter(o -> o.getOrderQuantity().signum() == SIGNUM_SELL)
+                    .filter(o -> o.getOrderPrice() != null)
+                    .filter(o -> o.getOrderPrice().compareTo(ask0) == 0)
+                    .count() == 0) {
 
-        BigDecimal price = bid1.max(ask1).max(recent);
+                ask1 = trim(context.roundTickSize(key, ask0.subtract(EPSILON), DOWN), ask0);
 
-        BigDecimal result = adjustSellBoundaryPrice(context, request, context.roundTickSize(key, price, UP));
+            }
+
+            BigDecimal price = bid1.max(ask1).max(recent);
 
-        log.trace("Sell boundary : {} (Ask=[{}] Bid=[{}] Recent=[{}])", result, ask1, bid0, recent);
+            BigDecimal result = adjustSellBoundaryPrice(context, request, context.roundTickSize(key, price, UP));
 
-        return result;
+            log.trace("Sell boundary : {} (Ask=[{}] Bid=[{}] Recent=[{}])", result, ask1, bid0, recent);
+
+            return result;
+
+        });
 
     }
 
@@ -693,276 +807,304 @@ public class TemplateAdviser extends AbstractService implements Adviser {
     @VisibleForTesting
     BigDecimal calculateBuyLimitPrice(Context context, Request request, BigDecimal weighedPrice, BigDecimal basis) {
 
-        if (weighedPrice == null || basis == null) {
+        return evaluate(request, "buyLimitPrice:" + weighedPrice + ":" + basis, () -> {
 
-            log.trace("Buy price not available : weighed=[{}] basis=[{}]", weighedPrice, basis);
+            if (weighedPrice == null || basis == null) {
 
-            return null;
+                log.trace("Buy price not available : weighed=[{}] basis=[{}]", weighedPrice, basis);
 
-        }
+                return null;
 
-        Key key = Key.from(request);
+            }
 
-        BigDecimal bound = calculateBuyBoundaryPrice(context, request, basis);
+            Key key = Key.from(request);
 
-        if (bound == null) {
+            BigDecimal bound = calculateBuyBoundaryPrice(context, request, basis);
 
-            log.trace("Buy price not available : No bound price.");
+            if (bound == null) {
 
-            return null;
+                log.trace("Buy price not available : No bound price.");
 
-        }
+                return null;
+
+            }
+
+            BigDecimal basisPrice = weighedPrice.multiply(ONE.subtract(basis));
 
-        BigDecimal basisPrice = weighedPrice.multiply(ONE.subtract(basis));
+            BigDecimal boundPrice = basisPrice.min(bound);
 
-        BigDecimal boundPrice = basisPrice.min(bound);
+            BigDecimal rounded = context.roundTickSize(key, boundPrice, DOWN);
 
-        BigDecimal rounded = context.roundTickSize(key, boundPrice, DOWN);
+            log.trace("Buy price : {} (target=[{}] basis=[{}])", rounded, boundPrice, basisPrice);
 
-        log.trace("Buy price : {} (target=[{}] basis=[{}])", rounded, boundPrice, basisPrice);
+            return rounded;
 
-        return rounded;
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateSellLimitPrice(Context context, Request request, BigDecimal weighedPrice, BigDecimal basis) {
 
-        if (weighedPrice == null || basis == null) {
+        return evaluate(request, "sellLimitPrice:" + weighedPrice + ":" + basis, () -> {
 
-            log.trace("Sell price not available : weighed=[{}] basis=[{}]", weighedPrice, basis);
+            if (weighedPrice == null || basis == null) {
 
-            return null;
+                log.trace("Sell price not available : weighed=[{}] basis=[{}]", weighedPrice, basis);
 
-        }
+                return null;
 
-        Key key = Key.from(request);
+            }
 
-        BigDecimal bound = calculateSellBoundaryPrice(context, request, basis);
+            Key key = Key.from(request);
 
-        if (bound == null) {
+            BigDecimal bound = calculateSellBoundaryPrice(context, request, basis);
 
-            log.trace("Sell price not available : No bound price.");
+            if (bound == null) {
 
-            return null;
+                log.trace("Sell price not available : No bound price.");
 
-        }
+                return null;
 
-        BigDecimal basisPrice = weighedPrice.multiply(ONE.add(basis));
+            }
+
+            BigDecimal basisPrice = weighedPrice.multiply(ONE.add(basis));
 
-        BigDecimal boundPrice = basisPrice.max(bound);
+            BigDecimal boundPrice = basisPrice.max(bound);
 
-        BigDecimal rounded = context.roundTickSize(key, boundPrice, UP);
+            BigDecimal rounded = context.roundTickSize(key, boundPrice, UP);
 
-        log.trace("Sell price : {} (target=[{}] basis=[{}])", rounded, boundPrice, basisPrice);
+            log.trace("Sell price : {} (target=[{}] basis=[{}])", rounded, boundPrice, basisPrice);
 
-        return rounded;
+            return rounded;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateTradingExposure(Context context, Request request) {
 
-        StateType state = context.getState(Key.from(request));
+        return evaluate(request, "tradingExposure", () -> {
 
-        if (state != ACTIVE) {
-            return ZERO;
-        }
+            StateType state = context.getState(Key.from(request));
 
-        BigDecimal exposure = trimToZero(request.getTradingExposure());
+            if (state != ACTIVE) {
+                return ZERO;
+            }
 
-        BigDecimal offset = calculateFundingOffset(context, request);
+            BigDecimal exposure = trimToZero(request.getTradingExposure());
 
-        if (offset == null) {
-            return null;
-        }
+            BigDecimal offset = calculateFundingOffset(context, request);
 
-        BigDecimal adjustment = ONE.add(offset);
+            if (offset == null) {
+                return null;
+            }
 
-        if (adjustment.signum() <= 0) {
-            return ONE;
-        }
+            BigDecimal adjustment = ONE.add(offset);
 
-        BigDecimal root = BigDecimal.valueOf(Math.sqrt(adjustment.doubleValue()));
+            if (adjustment.signum() <= 0) {
+                return ONE;
+            }
 
-        BigDecimal result = exposure.divide(root, SCALE, HALF_UP).min(ONE);
+            BigDecimal root = BigDecimal.valueOf(Math.sqrt(adjustment.doubleValue()));
 
-        log.trace("Trading exposure : {} (Offset=[{}])", result, offset);
+            BigDecimal result = exposure.divide(root, SCALE, HALF_UP).min(ONE);
 
-        return result;
+            log.trace("Trading exposure : {} (Offset=[{}])", result, offset);
+
+            return result;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateFundingExposureSize(Context context, Request request, BigDecimal price) {
 
-        if (price == null || price.signum() == 0) {
+        return evaluate(request, "fundingExposureSize:" + price, () -> {
 
-            log.trace("No funding exposure size. Price : {}", price);
+            if (price == null || price.signum() == 0) {
 
-            return null;
+                log.trace("No funding exposure size. Price : {}", price);
 
-        }
+                return null;
 
-        Key key = Key.from(request);
+            }
 
-        BigDecimal fund = context.getFundingPosition(key);
+            Key key = Key.from(request);
 
-        if (fund == null) {
+            BigDecimal fund = context.getFundingPosition(key);
 
-            log.trace("No funding exposure size. Null funding position.");
+            if (fund == null) {
 
-            return null;
+                log.trace("No funding exposure size. Null funding position.");
 
-        }
+                return null;
+
+            }
+
+            BigDecimal offset = calculateFundingOffset(context, request);
 
-        BigDecimal offset = calculateFundingOffset(context, request);
+            BigDecimal adjFund = fund.multiply(ONE.add(trimToZero(offset))).max(ZERO);
 
-        BigDecimal adjFund = fund.multiply(ONE.add(trimToZero(offset))).max(ZERO);
+            BigDecimal product = adjFund.divide(price, SCALE, HALF_UP);
 
-        BigDecimal product = adjFund.divide(price, SCALE, HALF_UP);
+            BigDecimal exposure = trimToZero(calculateTradingExposure(context, request));
 
-        BigDecimal exposure = trimToZero(calculateTradingExposure(context, request));
+            BigDecimal commission = trimToZero(context.getCommissionRate(key)).max(ZERO).min(ONE);
 
-        BigDecimal commission = trimToZero(context.getCommissionRate(key)).max(ZERO).min(ONE);
+            BigDecimal available = fund.multiply(ONE.subtract(commission)).divide(price, SCALE, DOWN);
 
-        BigDecimal available = fund.multiply(ONE.subtract(commission)).divide(price, SCALE, DOWN);
+            BigDecimal exposed = product.multiply(exposure).min(available);
 
-        BigDecimal exposed = product.multiply(exposure).min(available);
+            log.trace("Funding exposure size : {} (fund=[{}] price=[{}])", exposed, adjFund, price);
 
-        log.trace("Funding exposure size : {} (fund=[{}] price=[{}])", exposed, adjFund, price);
+            return exposed;
 
-        return exposed;
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateInstrumentExposureSize(Context context, Request request) {
 
-        Key key = Key.from(request);
+        return evaluate(request, "instrumentExposureSize", () -> {
 
-        CurrencyType currency = context.getInstrumentCurrency(key);
+            Key key = Key.from(request);
 
-        BigDecimal basePrice = context.getConversionPrice(key, currency);
+            CurrencyType currency = context.getInstrumentCurrency(key);
 
-        if (basePrice == null) {
+            BigDecimal basePrice = context.getConversionPrice(key, currency);
 
-            log.trace("No base price for {}:{}:{}", key.getSite(), key.getInstrument(), currency);
+            if (basePrice == null) {
 
-            return null;
+                log.trace("No base price for {}:{}:{}", key.getSite(), key.getInstrument(), currency);
 
-        }
+                return null;
 
-        BigDecimal position = calculateInstrumentPosition(context, request);
+            }
 
-        if (position == null) {
+            BigDecimal position = calculateInstrumentPosition(context, request);
 
-            log.trace("No instrument position for {}:{}", key.getSite(), key.getInstrument());
+            if (position == null) {
 
-            return null;
+                log.trace("No instrument position for {}:{}", key.getSite(), key.getInstrument());
 
-        }
+                return null;
+
+            }
 
-        BigDecimal exposure = CollectionUtils.isNotEmpty(request.getHedgeProducts()) ? ONE :
-                trimToZero(calculateTradingExposure(context, request));
+            BigDecimal exposure = CollectionUtils.isNotEmpty(request.getHedgeProducts()) ? ONE :
+                    trimToZero(calculateTradingExposure(context, request));
 
-        BigDecimal exposed = position.multiply(basePrice).multiply(exposure);
+            BigDecimal exposed = position.multiply(basePrice).multiply(exposure);
 
-        log.trace("Instrument exposure size : {} (position=[{}])", exposed, position);
+            log.trace("Instrument exposure size : {} (position=[{}])", exposed, position);
 
-        return exposed;
+            return exposed;
+
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateBuyLimitSize(Context context, Request request, BigDecimal price) {
 
-        BigDecimal fundingSize = calculateFundingExposureSize(context, request, price);
+        return evaluate(request, "buyLimitSize:" + price, () -> {
 
-        BigDecimal instrumentSize = calculateInstrumentExposureSize(context, request);
+            BigDecimal fundingSize = calculateFundingExposureSize(context, request, price);
 
-        if (instrumentSize == null || fundingSize == null) {
-            return ZERO;
-        }
+            BigDecimal instrumentSize = calculateInstrumentExposureSize(context, request);
 
-        Key key = Key.from(request);
+            if (instrumentSize == null || fundingSize == null) {
+                return ZERO;
+            }
 
-        BigDecimal size;
+            Key key = Key.from(request);
 
-        if (Objects.equals(TRUE, context.isMarginable(key))) {
+            BigDecimal size;
 
-            size = fundingSize.subtract(instrumentSize).max(ZERO).multiply(HALF);
+            if (Objects.equals(TRUE, context.isMarginable(key))) {
 
-        } else {
+                size = fundingSize.subtract(instrumentSize).max(ZERO).multiply(HALF);
 
-            BigDecimal excess = instrumentSize.subtract(fundingSize).max(ZERO).movePointLeft(INTEGER_ONE);
+            } else {
 
-            size = fundingSize.subtract(excess).max(ZERO);
+                BigDecimal excess = instrumentSize.subtract(fundingSize).max(ZERO).movePointLeft(INTEGER_ONE);
 
-        }
+                size = fundingSize.subtract(excess).max(ZERO);
 
-        BigDecimal rounded = trimToZero(context.roundLotSize(key, size, HALF_UP));
+            }
 
-        BigDecimal minimum = request.getTradingThreshold();
+            BigDecimal rounded = trimToZero(context.roundLotSize(key, size, HALF_UP));
 
-        if (minimum != null && rounded.compareTo(minimum) < 0) {
-            rounded = ZERO;
-        }
+            BigDecimal minimum = request.getTradingThreshold();
+
+            if (minimum != null && rounded.compareTo(minimum) < 0) {
+                rounded = ZERO;
+            }
+
+            StateType state = context.getState(key);
 
-        StateType state = context.getState(key);
+            log.trace("Buy size : {} (state=[{}] funding=[{}] instrument[{}])",
+                    rounded, state, fundingSize, instrumentSize);
 
-        log.trace("Buy size : {} (state=[{}] funding=[{}] instrument[{}])",
-                rounded, state, fundingSize, instrumentSize);
+            return TRADE_ALLOWED.contains(state) ? rounded : ZERO;
 
-        return TRADE_ALLOWED.contains(state) ? rounded : ZERO;
+        });
 
     }
 
     @VisibleForTesting
     BigDecimal calculateSellLimitSize(Context context, Request request, BigDecimal price) {
 
-        BigDecimal instrumentSize = calculateInstrumentExposureSize(context, request);
+        return evaluate(request, "sellLimitSize:" + price, () -> {
 
-        BigDecimal fundingSize = calculateFundingExposureSize(context, request, price);
+            BigDecimal instrumentSize = calculateInstrumentExposureSize(context, request);
 
-        if (instrumentSize == null || fundingSize == null) {
-            return ZERO;
-        }
+            BigDecimal fundingSize = calculateFundingExposureSize(context, request, price);
 
-        Key key = Key.from(request);
+            if (instrumentSize == null || fundingSize == null) {
+                return ZERO;
+            }
 
-        BigDecimal size;
+            Key key = Key.from(request);
 
-        if (Objects.equals(TRUE, context.isMarginable(key))) {
+            BigDecimal size;
 
-            size = fundingSize.add(instrumentSize).max(ZERO).multiply(HALF);
+            if (Objects.equals(TRUE, context.isMarginable(key))) {
 
-        } else {
+                size = fundingSize.add(instrumentSize).max(ZERO).multiply(HALF);
 
-            BigDecimal excess = fundingSize.subtract(instrumentSize).max(ZERO).movePointLeft(INTEGER_ONE);
+            } else {
 
-            size = instrumentSize.subtract(excess).max(ZERO);
+                BigDecimal excess = fundingSize.subtract(instrumentSize).max(ZERO).movePointLeft(INTEGER_ONE);
 
-            BigDecimal available = context.getInstrumentPosition(key);
+                size = instrumentSize.subtract(excess).max(ZERO);
 
-            size = size.min(trimToZero(available));
+                BigDecimal available = context.getInstrumentPosition(key);
 
-        }
+                size = size.min(trimToZero(available));
 
-        BigDecimal rounded = trimToZero(context.roundLotSize(key, size, DOWN));
+            }
 
-        BigDecimal minimum = request.getTradingThreshold();
+            BigDecimal rounded = trimToZero(context.roundLotSize(key, size, DOWN));
 
-        if (minimum != null && rounded.compareTo(minimum) < 0) {
-            rounded = ZERO;
-        }
+            BigDecimal minimum = request.getTradingThreshold();
 
-        StateType state = context.getState(key);
+            if (minimum != null && rounded.compareTo(minimum) < 0) {
+                rounded = ZERO;
+            }
 
-        log.trace("Sell size : {} (state=[{}] funding=[{}] instrument[{}])",
-                rounded, state, fundingSize, instrumentSize);
+            StateType state = context.getState(key);
 
-        return TRADE_ALLOWED.contains(state) ? rounded : ZERO;
+            log.trace("Sell size : {} (state=[{}] funding=[{}] instrument[{}])",
+                    rounded, state, fundingSize, instrumentSize);
+
+            return TRADE_ALLOWED.contains(state) ? rounded : ZERO;
+
+        });
 
     }
 
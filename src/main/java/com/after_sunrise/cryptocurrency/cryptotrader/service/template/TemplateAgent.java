@@ -3,6 +3,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Visitor;
@@ -11,14 +12,20 @@ import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 
+import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.math.BigDecimal.ZERO;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author takanori.takase
@@ -28,10 +35,54 @@ public class TemplateAgent extends AbstractService implements Agent {
 
     private static final Duration INTERVAL = Duration.ofSeconds(5);
 
+    private static final Duration BACKOFF = Duration.ofMillis(100);
+
+    private static final String KEY_OVERLAP = "overlap";
+
+    private static final String KEY_EXPIRY = "expiry";
+
+    private static final Duration TICK = Duration.ofMillis(100);
+
+    private static final int WHEEL = 512;
+
     private final String id;
 
+    private final ScheduledExecutorService scheduler;
+
+    private final ScheduledExecutorService ticker;
+
+    private final ExecutorService executor;
+
+    private final TemplateWheel<Pair<String, String>, Expiry> wheel = new TemplateWheel<>(TICK, WHEEL);
+
+    private final AtomicBoolean ticking = new AtomicBoolean();
+
     public TemplateAgent(String id) {
+
         this.id = id;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName());
+            return t;
+        });
+
+        // Apart from the reconciliation, so that the expiry keeps its own cadence.
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName() + "-expiry");
+            return t;
+        });
+
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(getClass().getSimpleName() + "-submit");
+            return t;
+        });
+
     }
 
     @Override
@@ -52,6 +103,7 @@ public class TemplateAgent extends AbstractService implements Agent {
 
         Set<CreateInstruction> creates = new HashSet<>();
         Set<CancelInstruction> cancels = new HashSet<>();
+        Set<AmendInstruction> amends = new HashSet<>();
 
         Instruction.Visitor<Boolean> visitor = new Visitor<Boolean>() {
             @Override
@@ -63,17 +115,33 @@ public class TemplateAgent extends AbstractService implements Agent {
             public Boolean visit(CancelInstruction instruction) {
                 return cancels.add(instruction);
             }
+
+            @Override
+            public Boolean visit(AmendInstruction instruction) {
+                return amends.add(instruction);
+            }
         };
 
         instructions.stream().filter(Objects::nonNull).forEach(i -> i.accept(visitor));
 
         Key key = Key.from(request);
 
+        if (!creates.isEmpty() && !cancels.isEmpty() && Boolean.valueOf(getStringProperty(KEY_OVERLAP, "false"))) {
+            return track(context, key, manageOverlapped(context, request, creates, cancels, amends));
+        }
+
         Map<Instruction, String> results = new IdentityHashMap<>();
 
         results.putAll(context.cancelOrders(key, cancels));
 
-        if (results.values().stream().anyMatch(StringUtils::isEmpty)) {
+        boolean cancelled = results.values().stream().noneMatch(StringUtils::isEmpty);
+
+        // Amended orders are moved, not added, hence not blocked by the failed cancels.
+        if (!amends.isEmpty()) {
+            results.putAll(trimToEmpty(context.amendOrders(key, amends)));
+        }
+
+        if (!cancelled) {
 
             log.trace("Skipping create instructions : {}", creates.size());
 
@@ -83,23 +151,375 @@ public class TemplateAgent extends AbstractService implements Agent {
 
         }
 
+        return track(context, key, results);
+
+    }
+
+    private static class Expiry {
+
+        private final Context context;
+
+        private final Key key;
+
+        private final String id;
+
+        private Expiry(Context context, Key key, String id) {
+            this.context = context;
+            this.key = key;
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * Tracks the time-to-live of the acknowledged orders, if enforced, so that the orders are cancelled as soon as
+     * expired, regardless of when the next cycle of the instrument comes.
+     */
+    @VisibleForTesting
+    Map<Instruction, String> track(Context context, Key key, Map<Instruction, String> results) {
+
+        if (MapUtils.isEmpty(results) || !Boolean.valueOf(getStringProperty(KEY_EXPIRY, "false"))) {
+            return results;
+        }
+
+        long now = getNanoTime();
+
+        results.forEach((instruction, id) -> {
+
+            if (instruction == null || StringUtils.isEmpty(id)) {
+                return;
+            }
+
+            instruction.accept(new Visitor<Void>() {
+                @Override
+                public Void visit(CreateInstruction i) {
+                    schedule(context, key, id, i.getTimeToLive(), now);
+                    return null;
+                }
+
+                @Override
+                public Void visit(CancelInstruction i) {
+                    wheel.remove(Pair.of(key.getSite(), id));
+                    return null;
+                }
+
+                @Override
+                public Void visit(AmendInstruction i) {
+                    wheel.remove(Pair.of(key.getSite(), i.getId()));
+                    schedule(context, key, id, i.getTimeToLive(), now);
+                    return null;
+                }
+            });
+
+        });
+
+        if (wheel.size() > 0 && ticking.compareAndSet(false, true)) {
+            startExpiry();
+        }
+
         return results;
 
     }
 
+    @VisibleForTesting
+    void startExpiry() {
+        ticker.scheduleWithFixedDelay(this::expire, TICK.toNanos(), TICK.toNanos(), NANOSECONDS);
+    }
+
+    private void schedule(Context context, Key key, String id, Duration ttl, long now) {
+
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+
+        wheel.put(Pair.of(key.getSite(), id), new Expiry(context, key, id), now, ttl);
+
+    }
+
+    /**
+     * Cancels the expired orders, batched per (site, instrument), off the expiry thread.
+     */
+    @VisibleForTesting
+    void expire() {
+
+        List<Expiry> expired;
+
+        try {
+            expired = wheel.expire(getNanoTime());
+        } catch (RuntimeException e) {
+            log.warn("Expiry failed.", e);
+            return;
+        }
+
+        Map<Context, Map<Key, Set<CancelInstruction>>> groups = new IdentityHashMap<>();
+
+        Instant now = Instant.now();
+
+        expired.forEach(e -> groups.computeIfAbsent(e.context, c -> new HashMap<>())
+                .computeIfAbsent(Key.build(e.key).timestamp(now).build(), k -> new HashSet<>())
+                .add(CancelInstruction.builder().id(e.id).build()));
+
+        groups.forEach((context, cancels) -> cancels.forEach((key, instructions) -> executor.execute(() -> {
+
+            log.debug("Cancelling expired orders : {} - {}", key, instructions.size());
+
+            try {
+                context.cancelOrders(key, instructions);
+            } catch (RuntimeException e) {
+                log.warn("Expiry cancel failed : {} - {}", key, e);
+            }
+
+        })));
+
+    }
+
+    /**
+     * Submits the creates at the same time as the cancels, for the sides where the creates do not depend on the
+     * cancels : either no cancel on the side, or the resting orders (including the ones being cancelled) and the
+     * creates together stay within the trading exposure. Creates of the other sides wait for the cancels, and are
+     * skipped if a cancel of the same side (or of an unknown side) is not accepted.
+     */
+    @VisibleForTesting
+    Map<Instruction, String> manageOverlapped(Context context, Request request, Set<CreateInstruction> creates,
+                                              Set<CancelInstruction> cancels, Set<AmendInstruction> amends) {
+
+        Key key = Key.from(request);
+
+        Map<String, Order> orders = new HashMap<>();
+
+        trimToEmpty(context.listActiveOrders(key)).stream()
+                .filter(Objects::nonNull)
+                .filter(o -> StringUtils.isNotEmpty(o.getId()))
+                .forEach(o -> orders.put(o.getId(), o));
+
+        Map<CancelInstruction, Integer> sides = new IdentityHashMap<>();
+
+        cancels.forEach(c -> sides.put(c, getSide(orders.get(c.getId()))));
+
+        Set<CreateInstruction> overlapped = new HashSet<>();
+
+        for (int side : new int[]{1, -1}) {
+
+            Set<CreateInstruction> sideCreates = new HashSet<>();
+
+            creates.stream().filter(c -> c.getSize() != null && c.getSize().signum() == side).forEach(sideCreates::add);
+
+            boolean dependent = sides.values().stream().anyMatch(v -> v == 0 || v == side);
+
+            List<Order> sideOrders = new ArrayList<>();
+
+            orders.values().stream().filter(o -> getSide(o) == side).forEach(sideOrders::add);
+
+            if (!dependent || isOverlappable(context, request, sideCreates, sideOrders, side > 0)) {
+                overlapped.addAll(sideCreates);
+            }
+
+        }
+
+        log.trace("Overlapping create instructions : {}/{}", overlapped.size(), creates.size());
+
+        Future<Map<Instruction, String>> future = executor.submit(() -> {
+
+            Map<Instruction, String> values = new IdentityHashMap<>();
+
+            values.putAll(trimToEmpty(context.cancelOrders(key, cancels)));
+
+            if (!amends.isEmpty()) {
+                values.putAll(trimToEmpty(context.amendOrders(key, amends)));
+            }
+
+            return values;
+
+        });
+
+        Map<Instruction, String> results = new IdentityHashMap<>();
+
+        if (!overlapped.isEmpty()) {
+            results.putAll(trimToEmpty(context.createOrders(key, overlapped)));
+        }
+
+        // Cancels without the results are considered failed, keeping the dependent creates gated.
+
+        try {
+
+            results.putAll(future.get());
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            log.warn("Interrupted while cancelling : {}", key);
+
+        } catch (ExecutionException e) {
+
+            log.warn("Failed to cancel : " + key, e.getCause());
+
+        }
+
+        Set<Integer> failures = new HashSet<>();
+
+        sides.forEach((c, side) -> {
+            if (StringUtils.isEmpty(results.get(c))) {
+                failures.add(side);
+            }
+        });
+
+        Set<CreateInstruction> gated = new HashSet<>();
+
+        creates.stream().filter(c -> !overlapped.contains(c)).forEach(gated::add);
+
+        gated.removeIf(c -> failures.contains(0)
+                || failures.contains(c.getSize() == null ? 0 : c.getSize().signum()));
+
+        log.trace("Gated create instructions : {}/{}", gated.size(), creates.size() - overlapped.size());
+
+        if (!gated.isEmpty()) {
+            results.putAll(trimToEmpty(context.createOrders(key, gated)));
+        }
+
+        return results;
+
+    }
+
+    /**
+     * @return 1 for buy, -1 for sell, and 0 if unknown.
+     */
+    private int getSide(Order order) {
+
+        if (order == null || order.getRemainingQuantity() == null) {
+            return 0;
+        }
+
+        return order.getRemainingQuantity().signum();
+
+    }
+
+    /**
+     * Checks if the orders of a side fit in the trading exposure, even if all of them are resting at the same time.
+     * The funding (buy) and the instrument (sell) exposure are computed as in the adviser.
+     */
+    @VisibleForTesting
+    boolean isOverlappable(Context context, Request request,
+                           Collection<CreateInstruction> creates, Collection<Order> orders, boolean buy) {
+
+        Key key = Key.from(request);
+
+        BigDecimal exposure = trimToZero(request.getTradingExposure());
+
+        BigDecimal limit;
+
+        BigDecimal total = ZERO;
+
+        if (buy) {
+
+            BigDecimal fund = context.getFundingPosition(key);
+
+            if (fund == null) {
+                return false;
+            }
+
+            limit = fund.multiply(exposure);
+
+            for (CreateInstruction c : creates) {
+
+                if (c.getPrice() == null || c.getSize() == null) {
+                    return false;
+                }
+
+                total = total.add(c.getPrice().multiply(c.getSize()).abs());
+
+            }
+
+            for (Order o : orders) {
+
+                if (o.getOrderPrice() == null) {
+                    return false;
+                }
+
+                total = total.add(o.getOrderPrice().multiply(o.getRemainingQuantity()).abs());
+
+            }
+
+        } else {
+
+            BigDecimal position = context.getInstrumentPosition(key);
+
+            BigDecimal basePrice = context.getConversionPrice(key, context.getInstrumentCurrency(key));
+
+            if (position == null || basePrice == null) {
+                return false;
+            }
+
+            limit = position.multiply(basePrice).multiply(exposure);
+
+            for (CreateInstruction c : creates) {
+
+                if (c.getSize() == null) {
+                    return false;
+                }
+
+                total = total.add(c.getSize().abs());
+
+            }
+
+            for (Order o : orders) {
+                total = total.add(o.getRemainingQuantity().abs());
+            }
+
+        }
+
+        boolean result = total.compareTo(limit) <= 0;
+
+        log.trace("Overlappable {} : {} (total=[{}] limit=[{}])", buy ? "buy" : "sell", result, total, limit);
+
+        return result;
+
+    }
+
     @Override
     public Map<Instruction, Boolean> reconcile(Context context, Request request, Map<Instruction, String> instructions) {
 
+        try {
+
+            return reconcileAsync(context, request, instructions).get();
+
+        } catch (InterruptedException e) {
+
+            log.trace("Reconcile interrupted.");
+
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException e) {
+
+            log.warn("Reconcile failed.", e.getCause());
+
+        }
+
+        return Collections.emptyMap();
+
+    }
+
+    /**
+     * Tracks the orders in the background, which completes as soon as all the orders are confirmed, or with the
+     * unconfirmed ones as false when the cycle is over. The orders are checked once immediately, since the streamed
+     * acks may already be available, then polled once per interval. Only the sites with the orders streamed are
+     * polled with the backoff in between, doubling up to the interval, since the others answer from the caches.
+     */
+    @Override
+    public CompletableFuture<Map<Instruction, Boolean>> reconcileAsync(
+            Context context, Request request, Map<Instruction, String> instructions) {
+
         if (MapUtils.isEmpty(instructions)) {
 
             log.trace("Nothing to reconcile.");
 
-            return Collections.emptyMap();
+            return CompletableFuture.completedFuture(Collections.emptyMap());
 
         }
 
         Map<String, CreateInstruction> creates = new HashMap<>();
         Map<String, CancelInstruction> cancels = new HashMap<>();
+        Map<String, AmendInstruction> amends = new HashMap<>();
 
         trimToEmpty(instructions).entrySet().stream()
                 .filter(entry -> Objects.nonNull(entry.getKey()))
@@ -114,116 +534,221 @@ public class TemplateAgent extends AbstractService implements Agent {
                             public Instruction visit(CancelInstruction instruction) {
                                 return cancels.put(entry.getValue(), instruction);
                             }
+
+                            @Override
+                            public Instruction visit(AmendInstruction instruction) {
+                                return amends.put(entry.getValue(), instruction);
+                            }
                         })
                 );
 
-        Map<String, Instruction> remaining = new HashMap<>();
-        remaining.putAll(creates);
-        remaining.putAll(cancels);
+        Duration budget = getInterval();
 
-        Map<Instruction, Boolean> results = new IdentityHashMap<>();
+        if (request.getCurrentTime() != null && request.getTargetTime() != null) {
 
-        Key key = Key.from(request);
+            Duration cycle = Duration.between(request.getCurrentTime(), request.getTargetTime());
 
-        long retry = Math.max(Duration.between(
-                request.getCurrentTime(), request.getTargetTime()
-        ).toMillis() / getInterval().toMillis(), 1);
+            budget = cycle.compareTo(budget) > 0 ? cycle : budget;
 
-        for (long i = 0; i < retry; i++) {
+        }
 
-            if (remaining.isEmpty()) {
-                break;
-            }
+        Tracker tracker = new Tracker(context, Key.from(request), creates, cancels, amends, budget);
 
-            if (context.getState(key) == StateType.TERMINATE) {
-                break;
-            }
+        tracker.submit(0L);
 
-            key = nextKey(key, getInterval());
+        return tracker.future;
 
-            if (key == null) {
-                break;
-            }
+    }
 
-            for (Entry<String, Instruction> entry : new HashMap<>(remaining).entrySet()) {
+    @VisibleForTesting
+    Duration getInterval() {
+        return INTERVAL;
+    }
+
+    @VisibleForTesting
+    Duration getBackoff() {
+        return BACKOFF;
+    }
 
-                if (context.getState(key) != StateType.TERMINATE) {
+    @VisibleForTesting
+    long getNanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Confirms the orders of an instruction set, one step at a time. Steps are run in the pool, so that a slow site
+     * does not hold back the steps of the others, while the scheduler only times the steps.
+     */
+    private class Tracker implements Runnable {
+
+        private final CompletableFuture<Map<Instruction, Boolean>> future = new CompletableFuture<>();
+
+        private final Map<Instruction, Boolean> results = new IdentityHashMap<>();
 
-                    Order order = context.findOrder(key, entry.getKey());
+        private final Map<String, Instruction> remaining = new HashMap<>();
 
-                    if (creates.containsKey(entry.getKey())) {
+        private final Context context;
 
-                        if (order != null) {
+        private final Key key;
 
-                            remaining.remove(entry.getKey());
+        private final Map<String, CreateInstruction> creates;
 
-                            results.put(entry.getValue(), TRUE);
+        private final Map<String, CancelInstruction> cancels;
 
-                        } else {
+        private final Map<String, AmendInstruction> amends;
 
-                            results.put(entry.getValue(), FALSE);
+        private final long budget;
 
-                        }
+        private final long started;
 
-                        continue;
+        private long delay;
 
-                    }
+        private Tracker(Context context, Key key, Map<String, CreateInstruction> creates,
+                        Map<String, CancelInstruction> cancels, Map<String, AmendInstruction> amends,
+                        Duration budget) {
 
-                    if (cancels.containsKey(entry.getKey())) {
+            this.context = context;
 
-                        if (order == null || !TRUE.equals(order.getActive())) {
+            this.key = key;
 
-                            remaining.remove(entry.getKey());
+            this.creates = creates;
 
-                            results.put(entry.getValue(), TRUE);
+            this.cancels = cancels;
 
-                        } else {
+            this.amends = amends;
 
-                            results.put(entry.getValue(), FALSE);
+            this.budget = budget.toNanos();
 
-                        }
+            this.started = getNanoTime();
 
-                        continue;
+            this.remaining.putAll(creates);
+
+            this.remaining.putAll(cancels);
+
+            this.remaining.putAll(amends);
+
+        }
 
-                    }
+        @Override
+        public void run() {
+
+            try {
+
+                long elapsed = getNanoTime() - started;
+
+                if (step(elapsed) || elapsed >= budget) {
+
+                    finish();
+
+                    return;
 
                 }
 
-                remaining.remove(entry.getKey());
+                if (TRUE.equals(context.isOrderStreamed(key))) {
+                    delay = Math.min(delay == 0 ? getBackoff().toNanos() : delay * 2, getInterval().toNanos());
+                } else {
+                    delay = getInterval().toNanos();
+                }
+
+                submit(Math.min(delay, budget - elapsed));
+
+            } catch (RuntimeException e) {
+
+                log.warn("Reconcile failed : {} - {}", key, e);
 
-                results.put(entry.getValue(), FALSE);
+                finish();
 
             }
 
         }
 
-        return results;
+        private void submit(long nanos) {
 
-    }
+            try {
 
-    @VisibleForTesting
-    Duration getInterval() {
-        return INTERVAL;
-    }
+                if (nanos <= 0) {
+                    executor.execute(this);
+                } else {
+                    scheduler.schedule(() -> submit(0L), nanos, NANOSECONDS);
+                }
 
-    @VisibleForTesting
-    Key nextKey(Key current, Duration interval) {
+            } catch (RejectedExecutionException e) {
 
-        Key next = null;
+                finish();
 
-        try {
+            }
 
-            MILLISECONDS.sleep(interval.toMillis());
+        }
 
-            next = Key.build(current).timestamp(current.getTimestamp().plus(interval)).build();
+        /**
+         * @return True if nothing to track any further.
+         */
+        private boolean step(long elapsed) {
 
-        } catch (InterruptedException e) {
+            if (remaining.isEmpty()) {
+                return true;
+            }
+
+            // Caches of the context are keyed with the time. Aligned to the interval, so that the site is queried
+            // once per interval, while the backoff polls in between are served from the streams.
+            long interval = Math.max(getInterval().toNanos(), 1L);
+
+            long aligned = elapsed / interval * interval;
+
+            Instant time = key.getTimestamp() == null ? null : key.getTimestamp().plusNanos(aligned);
+
+            Key current = Key.build(key).timestamp(time).build();
+
+            if (context.getState(current) == StateType.TERMINATE) {
+                return true;
+            }
+
+            for (Entry<String, Instruction> entry : new HashMap<>(remaining).entrySet()) {
+
+                Order order = context.findOrder(current, entry.getKey());
+
+                boolean confirmed;
+
+                if (creates.containsKey(entry.getKey())) {
+                    confirmed = order != null;
+                } else if (amends.containsKey(entry.getKey())) {
+                    confirmed = order != null && isAmended(order, amends.get(entry.getKey()));
+                } else {
+                    confirmed = order == null || !TRUE.equals(order.getActive());
+                }
+
+                if (confirmed) {
+                    remaining.remove(entry.getKey());
+                }
 
-            log.trace("Reconciling cancel interrupted.");
+                results.put(entry.getValue(), confirmed);
+
+            }
+
+            return remaining.isEmpty();
 
         }
 
-        return next;
+        private boolean isAmended(Order order, AmendInstruction instruction) {
+
+            // Amended in-place keeps the id, hence the new price tells if reflected.
+            if (order.getOrderPrice() == null || instruction.getPrice() == null) {
+                return true;
+            }
+
+            return order.getOrderPrice().compareTo(instruction.getPrice()) == 0;
+
+        }
+
+        private void finish() {
+
+            remaining.values().forEach(i -> results.put(i, FALSE));
+
+            remaining.clear();
+
+            future.complete(results);
+
+        }
 
     }
 
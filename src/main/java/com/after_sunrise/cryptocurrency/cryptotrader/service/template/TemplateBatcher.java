@@ -0,0 +1,116 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Gathers the instructions of a site submitted from multiple pipelines (instruments), and flushes them together as a
+ * single bulk request. The first submitter of a batch waits for the window, then flushes on behalf of the others,
+ * while the instructions submitted during the flush are gathered into the next batch. The results are fanned back to
+ * each submitter.
+ *
+ * @param <I> Instruction type, compared by the identity.
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateBatcher<I> {
+
+    private static class Batch<I> {
+
+        private final Map<I, Key> values = new IdentityHashMap<>();
+
+        private final CompletableFuture<Map<I, String>> future = new CompletableFuture<>();
+
+    }
+
+    private final Object flushLock = new Object();
+
+    private Batch<I> pending;
+
+    /**
+     * Blocks until the batch which the instructions are gathered into is flushed.
+     *
+     * @param window  Duration to wait for the other submitters, before flushing.
+     * @param flusher Executes the bulk request, with the key of each instruction, and returns the results.
+     * @return Results of the instructions submitted, with null for the ones not included in the flushed results.
+     */
+    public Map<I, String> submit(Key key, Collection<I> instructions,
+                                 Duration window, Function<Map<I, Key>, Map<I, String>> flusher) {
+
+        Batch<I> batch;
+
+        boolean leader;
+
+        synchronized (this) {
+
+            leader = pending == null;
+
+            if (leader) {
+                pending = new Batch<>();
+            }
+
+            batch = pending;
+
+            instructions.stream().filter(Objects::nonNull).forEach(i -> batch.values.put(i, key));
+
+        }
+
+        if (leader) {
+            flush(batch, window, flusher);
+        }
+
+        Map<I, String> results = batch.future.join();
+
+        Map<I, String> values = new IdentityHashMap<>();
+
+        instructions.stream().filter(Objects::nonNull).forEach(i -> values.put(i, results.get(i)));
+
+        return values;
+
+    }
+
+    private void flush(Batch<I> batch, Duration window, Function<Map<I, Key>, Map<I, String>> flusher) {
+
+        long millis = window == null ? 0 : Math.max(window.toMillis(), 0);
+
+        if (millis > 0) {
+
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Flush anyway, for the others waiting.
+            }
+
+        }
+
+        // One flush at a time, while the next batch is gathered.
+        synchronized (flushLock) {
+
+            synchronized (this) {
+                pending = pending == batch ? null : pending;
+            }
+
+            try {
+
+                Map<I, String> results = flusher.apply(batch.values);
+
+                batch.future.complete(results == null ? new IdentityHashMap<>() : results);
+
+            } catch (RuntimeException e) {
+
+                batch.future.completeExceptionally(e);
+
+            }
+
+        }
+
+    }
+
+}
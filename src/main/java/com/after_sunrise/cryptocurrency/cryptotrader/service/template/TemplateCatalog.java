@@ -0,0 +1,90 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Registry of the product metadata of a site, indexed by the product codes and the aliases. The index keeps the
+ * position of each product in the snapshot, so that a refreshed snapshot of the same products (such as the
+ * instruments updated by a stream) is looked up without being indexed again. The index is rebuilt only when a
+ * product is not found at its position, which is when the products have been added, removed or moved.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateCatalog<T> {
+
+    private final Function<T, Stream<String>> identifiers;
+
+    private volatile Pair<List<T>, Map<String, Integer>> snapshot = Pair.of(null, Collections.emptyMap());
+
+    /**
+     * @param identifiers Codes and aliases of a product, of which the blanks are ignored.
+     */
+    public TemplateCatalog(Function<T, Stream<String>> identifiers) {
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * @param products Snapshot of the products, in the order of precedence.
+     * @param id       Code or alias of the product.
+     * @return Product found, or null if none.
+     */
+    public T find(List<T> products, String id) {
+
+        if (products == null || StringUtils.isBlank(id)) {
+            return null;
+        }
+
+        Pair<List<T>, Map<String, Integer>> current = snapshot;
+
+        T product = lookup(current.getRight(), products, id);
+
+        if (product != null || current.getLeft() == products) {
+            return product;
+        }
+
+        Map<String, Integer> index = new HashMap<>();
+
+        for (int i = 0; i < products.size(); i++) {
+
+            T p = products.get(i);
+
+            if (p == null) {
+                continue;
+            }
+
+            Integer position = i;
+
+            identifiers.apply(p).filter(StringUtils::isNotBlank).forEach(v -> index.putIfAbsent(v, position));
+
+        }
+
+        snapshot = Pair.of(products, index);
+
+        return lookup(index, products, id);
+
+    }
+
+    private T lookup(Map<String, Integer> index, List<T> products, String id) {
+
+        Integer position = index.get(id);
+
+        if (position == null || position >= products.size()) {
+            return null;
+        }
+
+        T product = products.get(position);
+
+        return product != null && identifiers.apply(product).anyMatch(id::equals) ? product : null;
+
+    }
+
+}
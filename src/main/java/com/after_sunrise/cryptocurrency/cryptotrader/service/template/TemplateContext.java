@@ -2,6 +2,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -9,36 +10,49 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.AbstractService;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.http.HttpEntityEnclosingRequest;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.StatusLine;
+import org.apache.commons.configuration2.ImmutableConfiguration;
+import org.apache.http.*;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.*;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Mac;
+import javax.inject.Inject;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.time.Duration;
 import java.time.Instant;
@@ -46,13 +60,18 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.*;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static org.apache.commons.lang3.math.NumberUtils.INTEGER_ZERO;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author takanori.takase
@@ -101,6 +120,52 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     }
 
+    /**
+     * Response other than 200 (OK.)
+     */
+    public static class StatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public StatusException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+    }
+
+    /**
+     * Lanes of the rate limiter, in the order of precedence.
+     */
+    public enum RequestPriority {
+
+        CANCEL,
+
+        CREATE,
+
+        QUERY
+
+    }
+
+    /**
+     * Request shed by the rate limiter, before being sent.
+     */
+    public static class LimitException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public LimitException(String message) {
+            super(message);
+        }
+
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RequestType.class);
 
     private static final long CACHE_SIZE = Byte.MAX_VALUE;
@@ -115,6 +180,132 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     private static final Duration FUTURE_MINIMUM = Duration.ofMillis(100);
 
+    private static final int PRIVATE_INFLIGHT = 1;
+
+    private static final int HTTP_ROUTE = 8;
+
+    private static final int HTTP_TOTAL = 32;
+
+    private static final Duration HTTP_KEEPALIVE = Duration.ofSeconds(30);
+
+    private static final Duration HTTP_IDLE = Duration.ofSeconds(10);
+
+    private static final double LIMIT_RESERVE_CREATE = 0.1;
+
+    private static final double LIMIT_RESERVE_QUERY = 0.5;
+
+    private static final int HEDGE_SAMPLES = 128;
+
+    private static final Duration HEALTH_LATENCY = Duration.ofSeconds(5);
+
+    private static final double HEALTH_WARNING = 0.2;
+
+    private static final Duration HEALTH_COOLDOWN = Duration.ofSeconds(30);
+
+    private static final int HEALTH_PROBES = 3;
+
+    private static final int HEALTH_SAMPLES = 32;
+
+    private static final int HEALTH_MINIMUM = 8;
+
+    private static final int HEDGE_MINIMUM = 16;
+
+    private static final int JOURNAL_CAPACITY = 1024;
+
+    /**
+     * Pooled HTTP clients of a site, sharing the request config and the idle connection eviction.
+     */
+    private static class Transport implements Closeable {
+
+        private final RequestConfig config;
+
+        private final PoolingHttpClientConnectionManager pool;
+
+        private final PoolingNHttpClientConnectionManager asyncPool;
+
+        private final CloseableHttpClient client;
+
+        private final CloseableHttpAsyncClient asyncClient;
+
+        private final ScheduledExecutorService evictor;
+
+        private Transport(String id, RequestConfig config, int route, int total,
+                          Duration keepAlive, Duration idle) throws IOException {
+
+            this.config = config;
+
+            ConnectionKeepAliveStrategy strategy = (response, context) -> {
+
+                // Server hint, capped by the configured maximum.
+                long hint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+                return hint > 0 ? Math.min(hint, keepAlive.toMillis()) : keepAlive.toMillis();
+
+            };
+
+            this.pool = new PoolingHttpClientConnectionManager();
+            this.pool.setDefaultMaxPerRoute(route);
+            this.pool.setMaxTotal(total);
+
+            this.asyncPool = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(
+                    IOReactorConfig.custom().setConnectTimeout(config.getConnectTimeout()).build()
+            ));
+            this.asyncPool.setDefaultMaxPerRoute(route);
+            this.asyncPool.setMaxTotal(total);
+
+            // Content compression (gzip/deflate) is enabled by default for the blocking client.
+            this.client = HttpClients.custom()
+                    .setConnectionManager(pool)
+                    .setDefaultRequestConfig(config)
+                    .setKeepAliveStrategy(strategy)
+                    .build();
+
+            // Responses are decompressed on completion, since the buffered entity replaces the intercepted one.
+            this.asyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncPool)
+                    .setDefaultRequestConfig(config)
+                    .setKeepAliveStrategy(strategy)
+                    .addInterceptorLast(new RequestAcceptEncoding())
+                    .build();
+
+            this.asyncClient.start();
+
+            this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName(TemplateContext.class.getSimpleName() + "-" + id);
+                return t;
+            });
+
+            long millis = Math.max(idle.toMillis(), 1);
+
+            this.evictor.scheduleWithFixedDelay(() -> {
+
+                pool.closeExpiredConnections();
+
+                pool.closeIdleConnections(millis, MILLISECONDS);
+
+                asyncPool.closeExpiredConnections();
+
+                asyncPool.closeIdleConnections(millis, MILLISECONDS);
+
+            }, millis, millis, MILLISECONDS);
+
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            evictor.shutdownNow();
+
+            asyncClient.close();
+
+            client.close();
+
+        }
+
+    }
+
     private final Map<Class<?>, Cache<Key, Optional<?>>> singleCache = synchronizedMap(new HashMap<>());
 
     private final Map<Class<?>, Cache<Key, Optional<List<?>>>> listCache = synchronizedMap(new HashMap<>());
@@ -123,25 +314,48 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     private final Map<Pair<Class<?>, Key>, Optional<List<?>>> listLast = new ConcurrentHashMap<>();
 
+    private final Map<BigDecimal, TemplateGrid> grids = new ConcurrentHashMap<>();
+
+    private final Map<Pair<Class<?>, String>, TemplateJournal<?>> journals = new ConcurrentHashMap<>();
+
     private final String id;
 
-    private final CloseableHttpClient client;
+    private final AtomicReference<Transport> transport = new AtomicReference<>();
+
+    private final Map<Pair<String, Map<String, String>>, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AtomicReference<Optional<TemplateLimiter>> limiter = new AtomicReference<>();
+
+    private final AtomicReference<Optional<TemplateHedger>> hedger = new AtomicReference<>();
+
+    private final AtomicReference<Optional<TemplateHealth>> health = new AtomicReference<>();
 
-    private final CloseableHttpAsyncClient asyncClient;
+    private final ThreadLocal<RequestPriority> priority = ThreadLocal.withInitial(() -> RequestPriority.QUERY);
+
+    private final ThreadLocal<Boolean> signing = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
     private final AtomicReference<StateType> state;
 
+    private final AtomicLong lastNonce = new AtomicLong();
+
+    private final AtomicReference<Semaphore> privatePermits = new AtomicReference<>();
+
     protected TemplateContext(String id) {
 
         this.id = id;
 
         this.state = new AtomicReference<>(StateType.ACTIVE);
 
-        this.client = HttpClients.createDefault();
+    }
+
+    @Inject
+    @Override
+    @VisibleForTesting
+    public void setConfiguration(ImmutableConfiguration configuration) {
 
-        this.asyncClient = HttpAsyncClients.createDefault();
+        super.setConfiguration(configuration);
 
-        this.asyncClient.start();
+        prewarm();
 
     }
 
@@ -155,9 +369,122 @@ public abstract class TemplateContext extends AbstractService implements Context
 
         state.set(StateType.TERMINATE);
 
-        asyncClient.close();
+        synchronized (transport) {
+
+            Transport t = transport.getAndSet(null);
+
+            if (t != null) {
+                t.close();
+            }
+
+        }
+
+    }
+
+    /**
+     * Pooled transport, created on demand with the site's configuration : "http.route" and "http.total"
+     * connections, "http.keepalive" millis to reuse a connection, and "http.idle" millis to evict one.
+     */
+    private Transport getTransport() throws IOException {
 
-        client.close();
+        synchronized (transport) {
+
+            Transport t = transport.get();
+
+            if (t == null) {
+
+                if (state.get() == StateType.TERMINATE) {
+                    throw new IOException("Context terminated : " + get());
+                }
+
+                int timeout = (int) getTimeout().toMillis();
+
+                RequestConfig config = RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .build();
+
+                // Non-positive values fall back to the defaults.
+                int route = getIntProperty("http.route", HTTP_ROUTE);
+                route = route > 0 ? route : HTTP_ROUTE;
+
+                int total = Math.max(getIntProperty("http.total", HTTP_TOTAL), route);
+
+                long keepAliveMillis = getLongProperty("http.keepalive", HTTP_KEEPALIVE.toMillis());
+                Duration keepAlive = keepAliveMillis > 0 ? Duration.ofMillis(keepAliveMillis) : HTTP_KEEPALIVE;
+
+                long idleMillis = getLongProperty("http.idle", HTTP_IDLE.toMillis());
+                Duration idle = idleMillis > 0 ? Duration.ofMillis(idleMillis) : HTTP_IDLE;
+
+                t = new Transport(get(), config, route, total, keepAlive, idle);
+
+                log.debug("Created transport : route={}, total={}, keepalive={}, idle={}", route, total, keepAlive, idle);
+
+                transport.set(t);
+
+            }
+
+            return t;
+
+        }
+
+    }
+
+    /**
+     * Opens the connections (and TLS sessions) of the comma-separated "http.prewarm" urls in background,
+     * so that the first requests do not pay for the handshakes.
+     */
+    @VisibleForTesting
+    void prewarm() {
+
+        String[] urls = StringUtils.split(getStringProperty("http.prewarm", null), ',');
+
+        if (urls == null || urls.length == 0) {
+            return;
+        }
+
+        Transport t;
+
+        try {
+            t = getTransport();
+        } catch (IOException e) {
+            log.warn("Skipped prewarm : {}", e.toString());
+            return;
+        }
+
+        Stream.of(urls).map(StringUtils::trimToNull).filter(Objects::nonNull).forEach(url -> {
+
+            t.asyncClient.execute(new HttpHead(url), new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse result) {
+                    log.debug("Prewarmed async : {} - {}", url, result.getStatusLine());
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    log.debug("Failed async prewarm : {} - {}", url, ex.toString());
+                }
+
+                @Override
+                public void cancelled() {
+                    log.debug("Cancelled async prewarm : {}", url);
+                }
+            });
+
+            t.evictor.execute(() -> {
+                try {
+
+                    StatusLine status = t.client.execute(new HttpHead(url), HttpResponse::getStatusLine);
+
+                    log.debug("Prewarmed : {} - {}", url, status);
+
+                } catch (IOException e) {
+                    log.debug("Failed prewarm : {} - {}", url, e.toString());
+                }
+            });
+
+        });
 
     }
 
@@ -171,6 +498,276 @@ public abstract class TemplateContext extends AbstractService implements Context
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * Strictly increasing nonce, which is no less than the current epoch millis.
+     */
+    @VisibleForTesting
+    public long getNonce() {
+
+        long millis = getNow().toEpochMilli();
+
+        return lastNonce.accumulateAndGet(millis, (last, now) -> Math.max(last + 1, now));
+
+    }
+
+    @VisibleForTesting
+    public <T> T requestPrivate(Converter<Long, T> request) throws Exception {
+        return requestPrivate(PRIVATE_INFLIGHT, request);
+    }
+
+    /**
+     * Signs and dispatches a private request with a new nonce, allowing up to "private.inflight" dispatches
+     * to overlap. The permits are granted in arrival order, so the default of one keeps the nonces in order
+     * for the exchanges which reject a smaller nonce. Asynchronous requests hold the permit until submitted.
+     * The requests sent from within are never hedged, since a duplicate of a signed request may be rejected.
+     */
+    @VisibleForTesting
+    public <T> T requestPrivate(int inflight, Converter<Long, T> request) throws Exception {
+
+        Semaphore permits = privatePermits.updateAndGet(p -> p != null ? p :
+                new Semaphore(Math.max(getIntProperty("private.inflight", inflight), 1), true)
+        );
+
+        permits.acquire();
+
+        Boolean previous = signing.get();
+
+        signing.set(Boolean.TRUE);
+
+        try {
+            return request.convert(getNonce());
+        } finally {
+            signing.set(previous);
+            permits.release();
+        }
+
+    }
+
+    /**
+     * Rate limiter configured with "limit.rate" tokens per second, and "limit.burst" capacity. Absent if not configured.
+     * "limit.reserve.create" and "limit.reserve.query" are the ratio of the capacity left for the higher priorities.
+     */
+    @VisibleForTesting
+    Optional<TemplateLimiter> getLimiter() {
+
+        return limiter.updateAndGet(l -> l != null ? l : Optional.ofNullable(
+                getDecimalProperty("limit.rate", null)).filter(r -> r.signum() > 0).map(rate -> {
+
+            BigDecimal burst = trim(getDecimalProperty("limit.burst", null), rate);
+
+            Map<RequestPriority, Double> reserves = new EnumMap<>(RequestPriority.class);
+
+            reserves.put(RequestPriority.CREATE, trim(getDecimalProperty("limit.reserve.create", null),
+                    BigDecimal.valueOf(LIMIT_RESERVE_CREATE)).doubleValue());
+
+            reserves.put(RequestPriority.QUERY, trim(getDecimalProperty("limit.reserve.query", null),
+                    BigDecimal.valueOf(LIMIT_RESERVE_QUERY)).doubleValue());
+
+            log.debug("Created limiter : rate={}, burst={}, reserves={}", rate, burst, reserves);
+
+            return new TemplateLimiter(rate.doubleValue(), burst.doubleValue(), reserves);
+
+        }));
+
+    }
+
+    /**
+     * Hedging of the public GET requests, configured with "hedge.ratio" of the requests which may be hedged, accrued up to
+     * "hedge.burst", and "hedge.minimum" of the recent "hedge.samples" latencies required. Absent if not configured.
+     */
+    @VisibleForTesting
+    Optional<TemplateHedger> getHedger() {
+
+        return hedger.updateAndGet(h -> h != null ? h : Optional.ofNullable(
+                getDecimalProperty("hedge.ratio", null)).filter(r -> r.signum() > 0).map(ratio -> {
+
+            BigDecimal burst = trim(getDecimalProperty("hedge.burst", null), BigDecimal.ONE);
+
+            int samples = getIntProperty("hedge.samples", HEDGE_SAMPLES);
+
+            int minimum = getIntProperty("hedge.minimum", HEDGE_MINIMUM);
+
+            // Non-positive values fall back to the defaults.
+            samples = samples > 0 ? samples : HEDGE_SAMPLES;
+
+            minimum = minimum > 0 ? minimum : HEDGE_MINIMUM;
+
+            log.debug("Created hedger : ratio={}, burst={}, samples={}, minimum={}", ratio, burst, samples, minimum);
+
+            return new TemplateHedger(ratio.doubleValue(), burst.doubleValue(), samples, minimum);
+
+        }));
+
+    }
+
+    /**
+     * Circuit breaker of the site, configured with "health.suspend" ratio of the recent "health.samples" requests
+     * (after "health.minimum") which are slower than "health.latency" millis or failed, "health.warning" ratio to warn,
+     * "health.cooldown" millis to stay suspended, and "health.probes" to recover. Absent if not configured.
+     */
+    @VisibleForTesting
+    Optional<TemplateHealth> getHealth() {
+
+        return health.updateAndGet(h -> h != null ? h : Optional.ofNullable(
+                getDecimalProperty("health.suspend", null)).filter(r -> r.signum() > 0).map(this::createHealth));
+
+    }
+
+    private TemplateHealth createHealth(BigDecimal suspend) {
+
+        // Non-positive values fall back to the defaults.
+        long latency = getLongProperty("health.latency", HEALTH_LATENCY.toMillis());
+        latency = latency > 0 ? latency : HEALTH_LATENCY.toMillis();
+
+        BigDecimal warning = getDecimalProperty("health.warning", null);
+        warning = warning != null && warning.signum() > 0 ? warning : BigDecimal.valueOf(HEALTH_WARNING);
+
+        long cooldown = getLongProperty("health.cooldown", HEALTH_COOLDOWN.toMillis());
+        cooldown = cooldown > 0 ? cooldown : HEALTH_COOLDOWN.toMillis();
+
+        int probes = getIntProperty("health.probes", HEALTH_PROBES);
+        probes = probes > 0 ? probes : HEALTH_PROBES;
+
+        int samples = getIntProperty("health.samples", HEALTH_SAMPLES);
+        samples = samples > 0 ? samples : HEALTH_SAMPLES;
+
+        int minimum = getIntProperty("health.minimum", HEALTH_MINIMUM);
+        minimum = minimum > 0 ? minimum : HEALTH_MINIMUM;
+
+        log.debug("Created health : latency={}, warning={}, suspend={}, cooldown={}, probes={}, samples={}, minimum={}",
+                latency, warning, suspend, cooldown, probes, samples, minimum);
+
+        return new TemplateHealth(Duration.ofMillis(latency), warning.doubleValue(), suspend.doubleValue(),
+                Duration.ofMillis(cooldown), probes, samples, minimum);
+
+    }
+
+    /**
+     * Records the outcome of a request sent to the site. Shed and cancelled requests are not accounted, and the
+     * responses other than the server errors are considered successful, since the site has answered.
+     */
+    private void observe(Instant start, Throwable e) {
+
+        TemplateHealth h = getHealth().orElse(null);
+
+        if (h == null) {
+            return;
+        }
+
+        List<Throwable> chain = e == null ? emptyList() : Throwables.getCausalChain(e);
+
+        if (chain.stream().anyMatch(t -> t instanceof LimitException || t instanceof CancellationException)) {
+            return;
+        }
+
+        TemplateHealth.Outcome outcome = TemplateHealth.Outcome.SUCCESS;
+
+        if (chain.stream().anyMatch(t -> t instanceof SocketTimeoutException
+                || t instanceof ConnectTimeoutException || t instanceof TimeoutException)) {
+
+            outcome = TemplateHealth.Outcome.TIMEOUT;
+
+        } else if (e != null && chain.stream().filter(StatusException.class::isInstance)
+                .map(StatusException.class::cast).noneMatch(t -> t.getStatus() < HttpStatus.SC_INTERNAL_SERVER_ERROR)) {
+
+            outcome = TemplateHealth.Outcome.ERROR;
+
+        }
+
+        StateType before = h.getState();
+
+        h.record(Duration.between(start, Instant.now()), outcome);
+
+        StateType after = h.getState();
+
+        if (before != after) {
+            log.info("Health : {} -> {} ({})", before, after, outcome);
+        }
+
+    }
+
+    private <T> T execute(HttpRequestBase request, ResponseHandler<? extends T> handler) throws IOException {
+
+        Instant start = Instant.now();
+
+        try {
+
+            T value = getTransport().client.execute(request, handler);
+
+            observe(start, null);
+
+            return value;
+
+        } catch (IOException | RuntimeException e) {
+
+            observe(start, e);
+
+            throw e;
+
+        }
+
+    }
+
+    /**
+     * Sends the requests of the callable in the given lane of the rate limiter, unless already in a higher one.
+     */
+    protected <T> T prioritize(RequestPriority lane, Callable<T> callable) throws Exception {
+
+        RequestPriority previous = priority.get();
+
+        priority.set(lane.compareTo(previous) < 0 ? lane : previous);
+
+        try {
+            return callable.call();
+        } finally {
+            priority.set(previous);
+        }
+
+    }
+
+    /**
+     * Takes a token of the rate limiter without waiting, for the requests sent by other clients of the site.
+     *
+     * @return Nanos to wait until the lane may take a token, or zero if taken (or not limited).
+     */
+    protected long tryThrottle(RequestPriority lane) {
+
+        TemplateLimiter l = getLimiter().orElse(null);
+
+        return l == null ? 0L : l.tryAcquire(lane);
+
+    }
+
+    private void throttle(RequestType type, String path) throws IOException {
+
+        TemplateLimiter l = getLimiter().orElse(null);
+
+        if (l == null) {
+            return;
+        }
+
+        RequestPriority lane = priority.get();
+
+        try {
+
+            if (l.acquire(lane, getTimeout())) {
+                return;
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while throttling : " + path);
+
+        }
+
+        LOG.debug("[SHED][{}][{}][{}]", lane, type, path);
+
+        throw new LimitException(lane + " request limited : " + type + " " + path);
+
+    }
+
     @VisibleForTesting
     public String computeHash(String algorithm, byte[] key, byte[] data) throws IOException {
 
@@ -178,128 +775,511 @@ public abstract class TemplateContext extends AbstractService implements Context
 
             Mac mac = Mac.getInstance(algorithm);
 
-            mac.init(new SecretKeySpec(key, algorithm));
+            mac.init(new SecretKeySpec(key, algorithm));
+
+            byte[] hash = mac.doFinal(data);
+
+            StringBuilder sb = new StringBuilder(hash.length);
+
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+
+            return sb.toString();
+
+        } catch (GeneralSecurityException e) {
+
+            throw new IOException("Failed to compute hash.", e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    public String buildQueryParameter(Map<String, String> parameters) throws IOException {
+        return buildQueryParameter(parameters, "?");
+    }
+
+    @VisibleForTesting
+    public String buildQueryParameter(Map<String, String> parameters, String prefix) throws IOException {
+
+        StringBuilder sb = new StringBuilder();
+
+        if (MapUtils.isNotEmpty(parameters)) {
+
+            for (Entry<String, String> entry : parameters.entrySet()) {
+
+                if (StringUtils.isEmpty(entry.getKey())) {
+                    continue;
+                }
+
+                if (StringUtils.isEmpty(entry.getValue())) {
+                    continue;
+                }
+
+                sb.append(sb.length() == 0 ? StringUtils.trimToEmpty(prefix) : "&");
+                sb.append(URLEncoder.encode(entry.getKey(), UTF_8.name()));
+                sb.append('=');
+                sb.append(URLEncoder.encode(entry.getValue(), UTF_8.name()));
+
+            }
+
+        }
+
+        return sb.toString();
+
+    }
+
+    @VisibleForTesting
+    public String request(String path) throws IOException {
+        return request(RequestType.GET, path, null, null);
+    }
+
+    /**
+     * Copies the bytes read, for the callers which join the flight.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        private TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            int b = super.read();
+
+            if (b != -1) {
+                copy.write(b);
+            }
+
+            return b;
+
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            int n = super.read(b, off, len);
+
+            if (n > 0) {
+                copy.write(b, off, n);
+            }
+
+            return n;
+
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return read(new byte[(int) Math.min(n, Short.MAX_VALUE)]);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Identical GET requests in flight, shared by the callers until completed, or for "coalesce.window" millis after.
+     */
+    private static class Flight {
+
+        private final Pair<String, Map<String, String>> key;
+
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private volatile long expiry = Long.MAX_VALUE;
+
+        private Flight(Pair<String, Map<String, String>> key) {
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * @return Pair of the flight and true if the caller leads (sends) it. Null if the request is not to be shared.
+     */
+    private Pair<Flight, Boolean> board(RequestType type, String path, Map<String, String> headers, String data) {
+
+        if (type != RequestType.GET || StringUtils.isNotEmpty(data) || path == null) {
+            return null;
+        }
+
+        Pair<String, Map<String, String>> key = Pair.of(path, new HashMap<>(trimToEmpty(headers)));
+
+        while (true) {
+
+            Flight flight = flights.get(key);
+
+            if (flight == null) {
+
+                Flight created = new Flight(key);
+
+                if (flights.putIfAbsent(key, created) == null) {
+                    return Pair.of(created, Boolean.TRUE);
+                }
+
+                continue;
+
+            }
+
+            if (flight.future.isDone() && flight.expiry < System.nanoTime()) {
+
+                flights.remove(key, flight);
+
+                continue;
+
+            }
+
+            LOG.trace("[JOIN][{}][{}]", type, path);
+
+            return Pair.of(flight, Boolean.FALSE);
+
+        }
+
+    }
+
+    private void land(Pair<Flight, Boolean> boarded, String body, Throwable e) {
+
+        if (boarded == null || !boarded.getRight()) {
+            return;
+        }
+
+        Flight flight = boarded.getLeft();
+
+        long window = e == null ? getLongProperty("coalesce.window", 0L) : 0L;
+
+        if (window > 0) {
+            flight.expiry = System.nanoTime() + MILLISECONDS.toNanos(window);
+        } else {
+            flights.remove(flight.key, flight);
+        }
+
+        if (e == null) {
+            flight.future.complete(body);
+        } else {
+            flight.future.completeExceptionally(e);
+        }
+
+    }
+
+    private <V> V await(Future<V> future, Object label) throws IOException {
+
+        long timeout = getTimeout().toMillis();
+
+        try {
+
+            return timeout > 0 ? future.get(timeout, MILLISECONDS) : future.get();
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting : " + label);
+
+        } catch (TimeoutException e) {
+
+            throw new IOException("Timed out while waiting : " + label, e);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    public String request(RequestType type, String path, Map<String, String> headers, String data) throws IOException {
+
+        Pair<Flight, Boolean> boarded = board(type, path, headers, data);
+
+        if (boarded != null && !boarded.getRight()) {
+            return await(boarded.getLeft().future, path);
+        }
+
+        try {
+
+            throttle(type, path);
+
+            TemplateHedger h = type == RequestType.GET && !signing.get() ? getHedger().orElse(null) : null;
+
+            if (h != null) {
+
+                String value = hedge(h, type, path, headers, data);
+
+                land(boarded, value, null);
+
+                return value;
+
+            }
+
+            LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
+
+            Instant start = Instant.now();
+
+            HttpRequestBase request = type.create(path, headers, data);
+
+            String value = execute(request, response -> {
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                response.getEntity().writeTo(out);
+
+                String body = new String(out.toByteArray(), UTF_8);
+
+                StatusLine statusLine = response.getStatusLine();
+
+                Duration elapsed = Duration.between(start, Instant.now());
+
+                LOG.trace("[RECV][{}][{}][{}ms][{}] {}",
+                        path, statusLine, elapsed.toMillis(), response.getAllHeaders(), body);
+
+                if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+
+                    String trimmed = body.replaceAll("[\r\n]", "");
+
+                    throw new StatusException(statusLine.getStatusCode(), statusLine + " : " + trimmed);
+
+                }
+
+                return body;
+
+            });
+
+            land(boarded, value, null);
+
+            return value;
+
+        } catch (IOException | RuntimeException e) {
+
+            land(boarded, null, e);
+
+            throw e;
+
+        }
+
+    }
+
+    /**
+     * Decodes the response entity as a stream, instead of buffering the whole body as a string.
+     * The decoder is not invoked for an empty body, which results in null. The body of a shared (GET) request is
+     * copied while streamed, for the callers which join the flight.
+     */
+    @VisibleForTesting
+    public <T> T request(RequestType type, String path, Map<String, String> headers, String data,
+                         Converter<Reader, T> decoder) throws IOException {
+
+        Pair<Flight, Boolean> boarded = board(type, path, headers, data);
+
+        if (boarded != null && !boarded.getRight()) {
+            String body = await(boarded.getLeft().future, path);
+
+            return decode(new StringReader(StringUtils.defaultString(body)), decoder, path);
+        }
+
+        try {
+
+            throttle(type, path);
+
+            TemplateHedger h = type == RequestType.GET && !signing.get() ? getHedger().orElse(null) : null;
+
+            if (h != null) {
+
+                // Buffered, since either of the attempts may answer.
+                String value = hedge(h, type, path, headers, data);
+
+                land(boarded, value, null);
+
+                return decode(new StringReader(value), decoder, path);
+
+            }
+
+            LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
+
+            Instant start = Instant.now();
+
+            HttpRequestBase request = type.create(path, headers, data);
+
+            return execute(request, response -> {
+
+                HttpEntity entity = response.getEntity();
+
+                Charset charset = Optional.ofNullable(entity)
+                        .map(ContentType::get).map(ContentType::getCharset).orElse(UTF_8);
+
+                StatusLine statusLine = response.getStatusLine();
+
+                if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+
+                    String body = entity == null ? "" : EntityUtils.toString(entity, charset);
+
+                    String trimmed = body.replaceAll("[\r\n]", "");
+
+                    throw new StatusException(statusLine.getStatusCode(), statusLine + " : " + trimmed);
+
+                }
+
+                ByteArrayOutputStream copy = boarded == null ? null : new ByteArrayOutputStream();
+
+                T value = null;
+
+                Exception failure = null;
+
+                if (entity != null) {
+
+                    InputStream in = copy == null ? entity.getContent() : new TeeInputStream(entity.getContent(), copy);
+
+                    try (Reader reader = new InputStreamReader(in, charset)) {
+
+                        try {
+                            value = decode(reader, decoder, path);
+                        } catch (IOException | RuntimeException e) {
+                            failure = e;
+                        }
+
+                        if (copy != null) {
+                            ByteStreams.copy(in, ByteStreams.nullOutputStream());
+                        }
 
-            byte[] hash = mac.doFinal(data);
+                    }
 
-            StringBuilder sb = new StringBuilder(hash.length);
+                }
 
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
+                Duration elapsed = Duration.between(start, Instant.now());
 
-            return sb.toString();
+                LOG.trace("[RECV][{}][{}][{}ms][{}] (decoded) {}",
+                        path, statusLine, elapsed.toMillis(), response.getAllHeaders(), value);
 
-        } catch (GeneralSecurityException e) {
+                land(boarded, copy == null ? null : new String(copy.toByteArray(), charset), null);
 
-            throw new IOException("Failed to compute hash.", e);
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
 
-        }
+                if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
 
-    }
+                return value;
 
-    @VisibleForTesting
-    public String buildQueryParameter(Map<String, String> parameters) throws IOException {
-        return buildQueryParameter(parameters, "?");
-    }
+            });
 
-    @VisibleForTesting
-    public String buildQueryParameter(Map<String, String> parameters, String prefix) throws IOException {
+        } catch (IOException | RuntimeException e) {
 
-        StringBuilder sb = new StringBuilder();
+            land(boarded, null, e);
 
-        if (MapUtils.isNotEmpty(parameters)) {
+            throw e;
 
-            for (Entry<String, String> entry : parameters.entrySet()) {
+        }
 
-                if (StringUtils.isEmpty(entry.getKey())) {
-                    continue;
-                }
+    }
 
-                if (StringUtils.isEmpty(entry.getValue())) {
-                    continue;
-                }
+    private <T> T decode(Reader source, Converter<Reader, T> decoder, String path) throws IOException {
 
-                sb.append(sb.length() == 0 ? StringUtils.trimToEmpty(prefix) : "&");
-                sb.append(URLEncoder.encode(entry.getKey(), UTF_8.name()));
-                sb.append('=');
-                sb.append(URLEncoder.encode(entry.getValue(), UTF_8.name()));
+        PushbackReader reader = new PushbackReader(source);
 
-            }
+        int head = reader.read();
 
+        if (head == -1) {
+            return null;
         }
 
-        return sb.toString();
+        reader.unread(head);
 
-    }
+        try {
+            return decoder.convert(reader);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to decode : " + path, e);
+        }
 
-    @VisibleForTesting
-    public String request(String path) throws IOException {
-        return request(RequestType.GET, path, null, null);
     }
 
     @VisibleForTesting
-    public String request(RequestType type, String path, Map<String, String> headers, String data) throws IOException {
+    public CompletableFuture<String> requestAsync(RequestType type, String path, Map<String, String> headers,
+                                                  String data) {
 
-        LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
+        Pair<Flight, Boolean> boarded = board(type, path, headers, data);
 
-        Instant start = Instant.now();
+        if (boarded != null && !boarded.getRight()) {
+            return boarded.getLeft().future.thenApply(Function.identity());
+        }
 
-        HttpRequestBase request = type.create(path, headers, data);
+        CompletableFuture<String> future;
 
-        int t = (int) getTimeout().toMillis();
+        try {
 
-        request.setConfig(RequestConfig.custom()
-                .setConnectTimeout(t).setConnectionRequestTimeout(t).setSocketTimeout(t).build()
-        );
+            throttle(type, path);
 
-        return client.execute(request, response -> {
+            future = dispatch(type, path, headers, data);
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+        } catch (IOException e) {
 
-            response.getEntity().writeTo(out);
+            future = new CompletableFuture<>();
 
-            String body = new String(out.toByteArray(), UTF_8);
+            future.completeExceptionally(e);
 
-            StatusLine statusLine = response.getStatusLine();
+        }
 
-            Duration elapsed = Duration.between(start, Instant.now());
+        future.whenComplete((v, e) -> land(boarded, v, e));
 
-            LOG.trace("[RECV][{}][{}][{}ms][{}] {}",
-                    path, statusLine, elapsed.toMillis(), response.getAllHeaders(), body);
+        // Completed once landed, so that the subsequent requests do not join the finished flight.
+        return boarded == null ? future : boarded.getLeft().future.thenApply(Function.identity());
 
-            if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+    }
 
-                String trimmed = body.replaceAll("[\r\n]", "");
+    /**
+     * Non-blocking variant of the decoding request, of which the decoder is invoked in the completing thread.
+     */
+    @VisibleForTesting
+    public <T> CompletableFuture<T> requestAsync(RequestType type, String path, Map<String, String> headers,
+                                                 String data, Converter<Reader, T> decoder) {
 
-                throw new IOException(statusLine + " : " + trimmed);
+        return requestAsync(type, path, headers, data).thenApply(body -> {
 
+            try {
+                return decode(new StringReader(StringUtils.defaultString(body)), decoder, path);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
 
-            return body;
-
         });
 
     }
 
-    @VisibleForTesting
-    public Future<String> requestAsync(RequestType type, String path, Map<String, String> headers, String data) {
+    /**
+     * Sends the request with the asynchronous client. Cancelling the future aborts the exchange.
+     */
+    private CompletableFuture<String> dispatch(RequestType type, String path, Map<String, String> headers, String data) {
 
-        LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
+        CompletableFuture<String> future = new CompletableFuture<>();
 
-        Instant start = Instant.now();
+        CloseableHttpAsyncClient asyncClient;
 
-        HttpRequestBase request = type.create(path, headers, data);
+        try {
+            asyncClient = getTransport().asyncClient;
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
 
-        int t = (int) getTimeout().toMillis();
+        LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
 
-        request.setConfig(RequestConfig.custom()
-                .setConnectTimeout(t).setConnectionRequestTimeout(t).setSocketTimeout(t).build()
-        );
+        Instant start = Instant.now();
 
-        CompletableFuture<String> future = new CompletableFuture<>();
+        HttpRequestBase request = type.create(path, headers, data);
 
-        Future<?> call = asyncClient.execute(request, new FutureCallback<HttpResponse>() {
+        Future<HttpResponse> exchange = asyncClient.execute(request, new FutureCallback<HttpResponse>() {
             @Override
             public void completed(HttpResponse result) {
 
@@ -307,7 +1287,7 @@ public abstract class TemplateContext extends AbstractService implements Context
 
                 try {
 
-                    result.getEntity().writeTo(out);
+                    decode(result).writeTo(out);
 
                     String body = new String(out.toByteArray(), UTF_8);
 
@@ -322,21 +1302,31 @@ public abstract class TemplateContext extends AbstractService implements Context
 
                         String trimmed = body.replaceAll("[\r\n]", "");
 
-                        throw new IOException(statusLine + " : " + trimmed);
+                        throw new StatusException(statusLine.getStatusCode(), statusLine + " : " + trimmed);
 
                     }
 
+                    observe(start, null);
+
                     future.complete(body);
 
                 } catch (IOException e) {
+
+                    observe(start, e);
+
                     future.completeExceptionally(e);
+
                 }
 
             }
 
             @Override
             public void failed(Exception e) {
+
+                observe(start, e);
+
                 future.completeExceptionally(e);
+
             }
 
             @Override
@@ -345,10 +1335,153 @@ public abstract class TemplateContext extends AbstractService implements Context
             }
         });
 
+        future.whenComplete((v, e) -> {
+
+            if (future.isCancelled()) {
+                exchange.cancel(true);
+            }
+
+        });
+
         return future;
 
     }
 
+    /**
+     * Sends the request, and once more on another connection if not answered within the recent percentile latency
+     * and the budget allows. The first successful answer is taken, and the other attempt is cancelled.
+     */
+    private String hedge(TemplateHedger h, RequestType type, String path, Map<String, String> headers, String data)
+            throws IOException {
+
+        h.accrue();
+
+        Instant start = Instant.now();
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        List<Future<String>> attempts = new CopyOnWriteArrayList<>();
+
+        AtomicInteger pending = new AtomicInteger();
+
+        result.whenComplete((v, e) -> attempts.forEach(f -> f.cancel(true)));
+
+        Runnable attempt = () -> {
+
+            pending.incrementAndGet();
+
+            CompletableFuture<String> f = dispatch(type, path, headers, data);
+
+            attempts.add(f);
+
+            f.whenComplete((v, e) -> {
+
+                if (e == null) {
+
+                    // Recorded before the caller resumes.
+                    if (!result.isDone()) {
+                        h.record(Duration.between(start, Instant.now()));
+                    }
+
+                    result.complete(v);
+
+                } else if (pending.decrementAndGet() == 0) {
+
+                    result.completeExceptionally(e);
+
+                }
+
+            });
+
+            if (result.isDone()) {
+                f.cancel(true);
+            }
+
+        };
+
+        try {
+
+            attempt.run();
+
+            Duration delay = h.getDelay();
+
+            if (delay != null) {
+
+                try {
+
+                    return result.get(delay.toNanos(), NANOSECONDS);
+
+                } catch (TimeoutException e) {
+
+                    if (h.tryHedge()) {
+
+                        throttle(type, path);
+
+                        LOG.trace("[HEDGE][{}][{}][{}ms]", type, path, delay.toMillis());
+
+                        attempt.run();
+
+                    }
+
+                } catch (ExecutionException e) {
+
+                    // Failed before hedging, rethrown below.
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+
+                }
+
+            }
+
+            return await(result, path);
+
+        } catch (LimitException e) {
+
+            // Hedge shed, keep waiting for the first.
+            return await(result, path);
+
+        } finally {
+
+            result.cancel(true);
+
+        }
+
+    }
+
+    /**
+     * Wraps the response entity with a streaming decompression, as per the "Content-Encoding" header.
+     */
+    @VisibleForTesting
+    static HttpEntity decode(HttpResponse response) {
+
+        HttpEntity entity = response.getEntity();
+
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+
+        if (entity == null || header == null) {
+            return entity;
+        }
+
+        for (HeaderElement element : header.getElements()) {
+
+            String encoding = StringUtils.lowerCase(element.getName());
+
+            if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+                return new GzipDecompressingEntity(entity);
+            }
+
+            if ("deflate".equals(encoding)) {
+                return new DeflateDecompressingEntity(entity);
+            }
+
+        }
+
+        return entity;
+
+    }
+
     @VisibleForTesting
     public void clear() {
 
@@ -362,6 +1495,17 @@ public abstract class TemplateContext extends AbstractService implements Context
 
         listLast.clear();
 
+        journals.clear();
+
+    }
+
+    /**
+     * @param product Product of the executions, or null if the executions of all the products are queried at once.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T extends Order.Execution> TemplateJournal<T> getJournal(Class<T> type, String product) {
+        return (TemplateJournal<T>) journals.computeIfAbsent(Pair.of(type, product),
+                k -> new TemplateJournal<T>(getIntProperty("journal.capacity", JOURNAL_CAPACITY)));
     }
 
     protected <T> T findCached(Class<T> type, Key key, Callable<T> c) {
@@ -406,6 +1550,14 @@ public abstract class TemplateContext extends AbstractService implements Context
 
                     } catch (Exception e) {
 
+                        if (isLimited(e)) {
+
+                            log.debug("Limited to cache : {}", type);
+
+                            break;
+
+                        }
+
                         if (CACHE_RETRY < ++retry) {
 
                             log.warn("Failed to cache : {} - {}", type, e);
@@ -477,6 +1629,14 @@ public abstract class TemplateContext extends AbstractService implements Context
 
                     } catch (Exception e) {
 
+                        if (isLimited(e)) {
+
+                            log.debug("Limited to cache list : {}", type);
+
+                            break;
+
+                        }
+
                         if (CACHE_RETRY < ++retry) {
 
                             log.warn("Failed to cache list : {} - {}", type, e);
@@ -506,6 +1666,85 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     }
 
+    /**
+     * Non-blocking variant of the list cache, which shares the cached and the last values with the blocking one.
+     * Failed requests are not retried, but served with the last cached value, so that no thread waits in between.
+     */
+    protected <T> CompletableFuture<List<T>> listCachedAsync(Class<T> type, Key key,
+                                                            Supplier<CompletableFuture<List<T>>> s) {
+
+        if (type == null || key == null || s == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Pair<Class<?>, Key> lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
+
+        Cache<Key, Optional<List<?>>> cache = listCache.computeIfAbsent(type, this::createCache);
+
+        Optional<List<?>> cached = cache.getIfPresent(key);
+
+        if (cached != null) {
+
+            listLast.put(lastKey, cached);
+
+            @SuppressWarnings("unchecked")
+            List<T> result = (List<T>) cached.orElse(null);
+
+            return CompletableFuture.completedFuture(result);
+
+        }
+
+        CompletableFuture<List<T>> future;
+
+        try {
+            future = s.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.handle((values, e) -> {
+
+            Optional<List<?>> value;
+
+            if (e == null) {
+
+                log.trace("Cached list : {} ({})", key, values == null ? null : values.size());
+
+                value = Optional.ofNullable(values).map(Collections::unmodifiableList);
+
+                cache.put(key, value);
+
+                listLast.put(lastKey, value);
+
+            } else {
+
+                if (isLimited(e)) {
+                    log.debug("Limited to cache list : {}", type);
+                } else {
+                    log.warn("Failed to cache list : {} - {}", type, e);
+                }
+
+                value = listLast.getOrDefault(lastKey, Optional.empty());
+
+            }
+
+            @SuppressWarnings("unchecked")
+            List<T> result = (List<T>) value.orElse(null);
+
+            return result;
+
+        });
+
+    }
+
+    /**
+     * Shed requests are not retried, but served with the last cached value instead.
+     */
+    private boolean isLimited(Throwable e) {
+        return Throwables.getCausalChain(e).stream().anyMatch(LimitException.class::isInstance);
+    }
+
     private <K0, K1 extends K0, V0, V1 extends V0> Cache<K1, V1> createCache(Class<?> type) {
 
         log.trace("Creating cache : {}", type);
@@ -523,9 +1762,8 @@ public abstract class TemplateContext extends AbstractService implements Context
             return null;
         }
 
-        BigDecimal units = value.divide(unit, INTEGER_ZERO, mode);
-
-        return units.multiply(unit);
+        // Units are the tick and lot sizes of the products, which are only a few.
+        return grids.computeIfAbsent(unit, TemplateGrid::new).round(value, mode);
 
     }
 
@@ -579,7 +1817,11 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     @Override
     public StateType getState(Key key) {
-        return state.get();
+
+        StateType value = state.get();
+
+        return value == StateType.ACTIVE ? getHealth().map(TemplateHealth::getState).orElse(value) : value;
+
     }
 
     @Override
@@ -709,6 +1951,11 @@ public abstract class TemplateContext extends AbstractService implements Context
         return null;
     }
 
+    @Override
+    public Boolean isOrderStreamed(Key key) {
+        return null;
+    }
+
     @Override
     public List<Order> listActiveOrders(Key key) {
         return null;
@@ -743,7 +1990,7 @@ public abstract class TemplateContext extends AbstractService implements Context
 
             try {
 
-                futures.put(i, execute.convert(i));
+                futures.put(i, prioritize(RequestPriority.CREATE, () -> execute.convert(i)));
 
             } catch (Exception e) {
 
@@ -794,6 +2041,79 @@ public abstract class TemplateContext extends AbstractService implements Context
         return null;
     }
 
+    /**
+     * Replaces the orders by cancelling and creating, for the sites without the native amendment. The order is not
+     * created if the cancel is not accepted, so that the exposure is not doubled.
+     */
+    @Override
+    public Map<AmendInstruction, String> amendOrders(Key key, Set<AmendInstruction> instructions) {
+
+        if (CollectionUtils.isEmpty(instructions)) {
+            return emptyMap();
+        }
+
+        Map<CancelInstruction, AmendInstruction> cancels = new IdentityHashMap<>();
+
+        instructions.stream().filter(Objects::nonNull).forEach(i ->
+                cancels.put(CancelInstruction.builder().id(i.getId()).build(), i)
+        );
+
+        Map<CancelInstruction, String> cancelled = trimToEmpty(cancelOrders(key, cancels.keySet()));
+
+        Map<CreateInstruction, AmendInstruction> creates = new IdentityHashMap<>();
+
+        cancels.forEach((c, a) -> {
+
+            if (StringUtils.isEmpty(cancelled.get(c))) {
+                return;
+            }
+
+            creates.put(CreateInstruction.builder().price(a.getPrice()).size(a.getSize())
+                    .strategy(a.getStrategy()).timeToLive(a.getTimeToLive()).build(), a);
+
+        });
+
+        Map<CreateInstruction, String> created = creates.isEmpty() ? emptyMap()
+                : trimToEmpty(createOrders(key, creates.keySet()));
+
+        Map<AmendInstruction, String> results = new IdentityHashMap<>();
+
+        cancels.values().forEach(a -> results.put(a, null));
+
+        creates.forEach((c, a) -> results.put(a, created.get(c)));
+
+        return results;
+
+    }
+
+    /**
+     * Cancels the active orders in parallel, for the sites without the native mass-cancel.
+     */
+    @Override
+    public Boolean cancelAllOrders(Key key) {
+
+        List<Order> orders = listActiveOrders(key);
+
+        if (orders == null) {
+            return null;
+        }
+
+        Set<CancelInstruction> cancels = orders.stream()
+                .filter(Objects::nonNull)
+                .filter(o -> StringUtils.isNotEmpty(o.getId()))
+                .map(o -> CancelInstruction.builder().id(o.getId()).build())
+                .collect(Collectors.toSet());
+
+        if (cancels.isEmpty()) {
+            return Boolean.TRUE;
+        }
+
+        Map<CancelInstruction, String> results = trimToEmpty(cancelOrders(key, cancels));
+
+        return cancels.stream().map(results::get).allMatch(StringUtils::isNotEmpty);
+
+    }
+
     protected Map<CancelInstruction, String> handleCancels(Set<CancelInstruction> instructions,
                                                            Converter<CancelInstruction, Future<String>> execute,
                                                            Converter<String, String> extract) {
@@ -812,7 +2132,7 @@ public abstract class TemplateContext extends AbstractService implements Context
 
             try {
 
-                futures.put(i, execute.convert(i));
+                futures.put(i, prioritize(RequestPriority.CANCEL, () -> execute.convert(i)));
 
             } catch (Exception e) {
 
@@ -0,0 +1,59 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Named intermediate values of a single request, each computed once on the first lookup and shared by the following
+ * lookups. The time taken for each computation, including the nodes looked up from within, is kept for profiling.
+ * Not thread-safe, since a request is evaluated by a single thread.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateGraph {
+
+    private static final Object NULL = new Object();
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    private final Map<String, Duration> timings = new LinkedHashMap<>();
+
+    /**
+     * @param name     Name of the node, including the arguments which the value depends on.
+     * @param supplier Computes the value, if not yet computed.
+     * @return Value computed, which may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V evaluate(String name, Supplier<V> supplier) {
+
+        Object value = values.get(name);
+
+        if (value != null) {
+            return value == NULL ? null : (V) value;
+        }
+
+        long start = System.nanoTime();
+
+        V computed = supplier.get();
+
+        timings.put(name, Duration.ofNanos(System.nanoTime() - start));
+
+        values.put(name, computed == null ? NULL : computed);
+
+        return computed;
+
+    }
+
+    /**
+     * @return Time taken for each node, in the order of the completion.
+     */
+    public Map<String, Duration> getTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.apache.commons.lang3.math.NumberUtils.INTEGER_ZERO;
+
+/**
+ * Grid of a tick or a lot size, precomputed as a scaled integer step, so that a value is rounded with the long
+ * arithmetic instead of dividing the decimals. Values which do not fit in a long fall back to the decimals.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateGrid {
+
+    private static final int LONG_BITS = 62;
+
+    private static final long[] POWERS = new long[19];
+
+    static {
+
+        POWERS[0] = 1L;
+
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10L;
+        }
+
+    }
+
+    private final BigDecimal unit;
+
+    private final int scale;
+
+    private final long step;
+
+    /**
+     * @param unit Positive tick or lot size.
+     */
+    public TemplateGrid(BigDecimal unit) {
+
+        this.unit = unit;
+
+        this.scale = unit.scale();
+
+        this.step = scale >= 0 && unit.unscaledValue().bitLength() <= LONG_BITS ? unit.unscaledValue().longValue() : 0L;
+
+    }
+
+    public BigDecimal getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return Multiple of the unit, in the scale of the unit.
+     */
+    public BigDecimal round(BigDecimal value, RoundingMode mode) {
+
+        int common = Math.max(scale, value.scale());
+
+        int shift = common - scale;
+
+        int lift = common - value.scale();
+
+        if (step <= 0L || shift >= POWERS.length || lift >= POWERS.length
+                || value.unscaledValue().bitLength() > LONG_BITS) {
+            return value.divide(unit, INTEGER_ZERO, mode).multiply(unit);
+        }
+
+        long units;
+
+        long divisor;
+
+        try {
+
+            units = Math.multiplyExact(value.unscaledValue().longValue(), POWERS[lift]);
+
+            divisor = Math.multiplyExact(step, POWERS[shift]);
+
+        } catch (ArithmeticException e) {
+            return value.divide(unit, INTEGER_ZERO, mode).multiply(unit);
+        }
+
+        // Within the value plus a step, which does not overflow.
+        return BigDecimal.valueOf(divide(units, divisor, mode) * step, scale);
+
+    }
+
+    private static long divide(long dividend, long divisor, RoundingMode mode) {
+
+        long quotient = dividend / divisor;
+
+        long remainder = dividend % divisor;
+
+        if (remainder == 0L) {
+            return quotient;
+        }
+
+        int signum = dividend < 0L ? -1 : 1;
+
+        boolean increment;
+
+        switch (mode) {
+            case UP:
+                increment = true;
+                break;
+            case DOWN:
+                increment = false;
+                break;
+            case CEILING:
+                increment = signum > 0;
+                break;
+            case FLOOR:
+                increment = signum < 0;
+                break;
+            case HALF_UP:
+            case HALF_DOWN:
+            case HALF_EVEN:
+
+                // Compared without doubling the remainder, which could overflow.
+                long half = divisor - Math.abs(remainder);
+
+                int compared = Long.compare(Math.abs(remainder), half);
+
+                if (compared != 0) {
+                    increment = compared > 0;
+                } else if (mode == RoundingMode.HALF_UP) {
+                    increment = true;
+                } else if (mode == RoundingMode.HALF_DOWN) {
+                    increment = false;
+                } else {
+                    increment = (quotient & 1L) != 0L;
+                }
+
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary.");
+        }
+
+        return increment ? quotient + signum : quotient;
+
+    }
+
+}
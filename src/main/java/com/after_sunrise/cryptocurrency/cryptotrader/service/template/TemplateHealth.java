@@ -0,0 +1,251 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of a site, built from the outcomes of the recent requests. The circuit degrades when the ratio of
+ * the failed or slow requests reaches the warning threshold, and opens when the ratio of the failed requests reaches
+ * the suspension threshold (or the timed out ones reach the warning threshold.) An open circuit is half-opened after
+ * the cool down, and closed again only if the subsequent probes all succeed in time.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateHealth {
+
+    public enum Outcome {
+
+        SUCCESS,
+
+        SLOW,
+
+        ERROR,
+
+        TIMEOUT
+
+    }
+
+    @VisibleForTesting
+    enum Circuit {
+
+        CLOSED(StateType.ACTIVE),
+
+        DEGRADED(StateType.WARNING),
+
+        OPEN(StateType.SUSPEND),
+
+        HALF_OPEN(StateType.WARNING);
+
+        private final StateType state;
+
+        Circuit(StateType state) {
+            this.state = state;
+        }
+
+    }
+
+    private final LongSupplier clock;
+
+    private final long latency;
+
+    private final double warning;
+
+    private final double suspend;
+
+    private final long cooldown;
+
+    private final int probes;
+
+    private final int minimum;
+
+    private final Outcome[] window;
+
+    private int count;
+
+    private int next;
+
+    private Circuit circuit = Circuit.CLOSED;
+
+    private long opened;
+
+    private int probed;
+
+    /**
+     * @param latency  Latency from which a successful request is considered slow.
+     * @param warning  Ratio of the failed or slow requests to degrade.
+     * @param suspend  Ratio of the failed requests to open.
+     * @param cooldown Duration to stay open before probing.
+     * @param probes   Number of the successful probes to close.
+     * @param samples  Number of the recent requests to evaluate.
+     * @param minimum  Number of the requests required before evaluating.
+     */
+    public TemplateHealth(Duration latency, double warning, double suspend,
+                          Duration cooldown, int probes, int samples, int minimum) {
+        this(System::nanoTime, latency, warning, suspend, cooldown, probes, samples, minimum);
+    }
+
+    @VisibleForTesting
+    TemplateHealth(LongSupplier clock, Duration latency, double warning, double suspend,
+                   Duration cooldown, int probes, int samples, int minimum) {
+
+        this.clock = clock;
+
+        this.latency = latency.toNanos();
+
+        this.warning = warning;
+
+        this.suspend = suspend;
+
+        this.cooldown = cooldown.toNanos();
+
+        this.probes = Math.max(probes, 1);
+
+        this.window = new Outcome[Math.max(samples, 1)];
+
+        this.minimum = Math.max(Math.min(minimum, window.length), 1);
+
+    }
+
+    public synchronized void record(Duration elapsed, Outcome outcome) {
+
+        refresh();
+
+        Outcome o = outcome == Outcome.SUCCESS && elapsed.toNanos() >= latency ? Outcome.SLOW : outcome;
+
+        switch (circuit) {
+
+            case OPEN:
+
+                // Requests sent before opened.
+                return;
+
+            case HALF_OPEN:
+
+                if (o != Outcome.SUCCESS) {
+                    open();
+                } else if (++probed >= probes) {
+                    transit(Circuit.CLOSED);
+                }
+
+                return;
+
+            default:
+
+                window[next] = o;
+
+                next = (next + 1) % window.length;
+
+                count = Math.min(count + 1, window.length);
+
+                evaluate();
+
+        }
+
+    }
+
+    private void evaluate() {
+
+        if (count < minimum) {
+            return;
+        }
+
+        int slows = 0;
+
+        int errors = 0;
+
+        int timeouts = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            switch (window[i]) {
+                case SLOW:
+                    slows++;
+                    break;
+                case ERROR:
+                    errors++;
+                    break;
+                case TIMEOUT:
+                    timeouts++;
+                    break;
+                default:
+                    break;
+            }
+
+        }
+
+        int failures = errors + timeouts;
+
+        if (failures >= suspend * count || timeouts >= warning * count) {
+
+            open();
+
+            return;
+
+        }
+
+        transit(failures + slows >= warning * count ? Circuit.DEGRADED : Circuit.CLOSED);
+
+    }
+
+    private void open() {
+
+        transit(Circuit.OPEN);
+
+        opened = clock.getAsLong();
+
+    }
+
+    private void transit(Circuit value) {
+
+        if (circuit == value) {
+            return;
+        }
+
+        if (value == Circuit.OPEN || circuit == Circuit.HALF_OPEN) {
+
+            // Starts over with the new outcomes.
+            Arrays.fill(window, null);
+
+            count = 0;
+
+            next = 0;
+
+        }
+
+        circuit = value;
+
+        probed = 0;
+
+    }
+
+    private void refresh() {
+
+        if (circuit == Circuit.OPEN && clock.getAsLong() - opened >= cooldown) {
+            transit(Circuit.HALF_OPEN);
+        }
+
+    }
+
+    public synchronized StateType getState() {
+
+        refresh();
+
+        return circuit.state;
+
+    }
+
+    @VisibleForTesting
+    synchronized Circuit getCircuit() {
+
+        refresh();
+
+        return circuit;
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Latency tracker and budget of the hedged requests of a site. A request is hedged (sent once more) when the
+ * response has not arrived within the recent percentile latency, and only while the budget, which accrues by the
+ * ratio for each request, allows so that the hedges are bounded to the ratio of the requests.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateHedger {
+
+    private static final double PERCENTILE = 0.95;
+
+    private final double ratio;
+
+    private final double burst;
+
+    private final long[] samples;
+
+    private final int minimum;
+
+    private int count;
+
+    private double credits;
+
+    /**
+     * @param ratio   Ratio of the requests which may be hedged.
+     * @param burst   Maximum hedges accrued in the budget.
+     * @param samples Number of the recent latencies to compute the percentile.
+     * @param minimum Number of the latencies required before hedging.
+     */
+    public TemplateHedger(double ratio, double burst, int samples, int minimum) {
+
+        this.ratio = Math.max(ratio, 0.0);
+
+        this.burst = Math.max(burst, 1.0);
+
+        this.samples = new long[Math.max(samples, 1)];
+
+        this.minimum = Math.max(Math.min(minimum, this.samples.length), 1);
+
+    }
+
+    /**
+     * Records the latency of a completed request.
+     */
+    public synchronized void record(Duration latency) {
+
+        samples[count % samples.length] = latency.toNanos();
+
+        count = count + 1 < 0 ? samples.length : count + 1;
+
+    }
+
+    /**
+     * @return Percentile of the recent latencies, or null if not enough samples yet.
+     */
+    public Duration getDelay() {
+
+        long[] values;
+
+        synchronized (this) {
+
+            if (count < minimum) {
+                return null;
+            }
+
+            values = Arrays.copyOf(samples, Math.min(count, samples.length));
+
+        }
+
+        Arrays.sort(values);
+
+        int index = (int) Math.ceil(values.length * PERCENTILE) - 1;
+
+        return Duration.ofNanos(values[Math.max(index, 0)]);
+
+    }
+
+    /**
+     * Accrues the budget for a request sent.
+     */
+    public synchronized void accrue() {
+        credits = Math.min(credits + ratio, burst);
+    }
+
+    /**
+     * @return True if the budget allows a hedge, which is consumed.
+     */
+    public synchronized boolean tryHedge() {
+
+        if (credits < 1.0) {
+            return false;
+        }
+
+        credits -= 1.0;
+
+        return true;
+
+    }
+
+    @VisibleForTesting
+    synchronized double getCredits() {
+        return credits;
+    }
+
+}
@@ -3,6 +3,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.AbstractService;
@@ -32,6 +33,8 @@ public class TemplateInstructor extends AbstractService implements Instructor {
 
     private static final String KEY_EXPIRY = "expiry";
 
+    private static final String KEY_AMEND = "amend";
+
     private final String id;
 
     public TemplateInstructor(String id) {
@@ -56,6 +59,80 @@ public class TemplateInstructor extends AbstractService implements Instructor {
 
     }
 
+    /**
+     * Advices are equivalent if the orders instructed for the previous advice would be netted against the creates of
+     * the current advice, within the price and size thresholds of the merge. Since the ladder levels move with the
+     * spread up to the number of the splits, the spread is compared within the price threshold divided by the splits.
+     */
+    @Override
+    public boolean isEquivalent(Context context, Request request, Advice previous, Advice current) {
+
+        if (previous == null || current == null) {
+            return false;
+        }
+
+        BigDecimal priceThreshold = getDecimalProperty("threshold.price", ZERO);
+
+        BigDecimal sizeThreshold = getDecimalProperty("threshold.size", ZERO);
+
+        int splits = Math.max(trim(request.getTradingSplit(), INTEGER_ONE), INTEGER_ONE);
+
+        BigDecimal spreadThreshold = priceThreshold.divide(valueOf(splits), SCALE, DOWN);
+
+        return isPriceEquivalent(previous.getBuyLimitPrice(), current.getBuyLimitPrice(), priceThreshold)
+                && isPriceEquivalent(previous.getSellLimitPrice(), current.getSellLimitPrice(), priceThreshold)
+                && isSizeEquivalent(previous.getBuyLimitSize(), current.getBuyLimitSize(), sizeThreshold)
+                && isSizeEquivalent(previous.getSellLimitSize(), current.getSellLimitSize(), sizeThreshold)
+                && isSpreadEquivalent(previous.getBuySpread(), current.getBuySpread(), spreadThreshold)
+                && isSpreadEquivalent(previous.getSellSpread(), current.getSellSpread(), spreadThreshold);
+
+    }
+
+    private boolean isPriceEquivalent(BigDecimal previous, BigDecimal current, BigDecimal threshold) {
+
+        if (previous == null || current == null) {
+            return previous == null && current == null;
+        }
+
+        if (previous.compareTo(current) == 0) {
+            return true;
+        }
+
+        if (current.signum() == 0) {
+            return false;
+        }
+
+        BigDecimal pricePcnt = previous.subtract(current).divide(current, SCALE, ROUND_CEILING).abs();
+
+        return pricePcnt.compareTo(threshold) <= 0;
+
+    }
+
+    private boolean isSizeEquivalent(BigDecimal previous, BigDecimal current, BigDecimal threshold) {
+
+        BigDecimal p = trimToZero(previous);
+
+        BigDecimal c = trimToZero(current);
+
+        if (p.compareTo(c) == 0) {
+            return true;
+        }
+
+        if (p.signum() == 0 || c.signum() == 0) {
+            return false;
+        }
+
+        // Same as the netting : the resting size may fall short of the new size, up to the threshold.
+        BigDecimal sizePcnt = c.subtract(p).divide(c, SCALE, ROUND_CEILING);
+
+        return sizePcnt.signum() >= 0 && sizePcnt.compareTo(threshold) <= 0;
+
+    }
+
+    private boolean isSpreadEquivalent(BigDecimal previous, BigDecimal current, BigDecimal threshold) {
+        return trimToZero(previous).subtract(trimToZero(current)).abs().compareTo(threshold) <= 0;
+    }
+
     @VisibleForTesting
     Map<CancelInstruction, Order> createCancels(Context context, Request request) {
 
@@ -268,6 +345,68 @@ public class TemplateInstructor extends AbstractService implements Instructor {
 
     }
 
+    /**
+     * Live orders to be cancelled, indexed by the side and the price level, so that the candidates of a create are
+     * looked up within its price threshold, instead of scanning all of the remaining cancels.
+     */
+    private static class OrderIndex {
+
+        private final Map<CancelInstruction, Order> cancels;
+
+        private final Map<Integer, NavigableMap<BigDecimal, List<CancelInstruction>>> sides = new HashMap<>();
+
+        private OrderIndex(Map<CancelInstruction, Order> cancels) {
+
+            this.cancels = cancels;
+
+            cancels.forEach((cancel, order) -> {
+
+                if (order == null) {
+                    return;
+                }
+
+                if (order.getOrderPrice() == null || order.getOrderPrice().signum() == 0) {
+                    return; // Skip market.
+                }
+
+                if (order.getRemainingQuantity() == null || order.getRemainingQuantity().signum() == 0) {
+                    return; // Skip invalid.
+                }
+
+                sides.computeIfAbsent(order.getRemainingQuantity().signum(), s -> new TreeMap<>())
+                        .computeIfAbsent(order.getOrderPrice(), p -> new ArrayList<>()).add(cancel);
+
+            });
+
+        }
+
+        private NavigableMap<BigDecimal, List<CancelInstruction>> levels(BigDecimal size) {
+            return sides.getOrDefault(size.signum(), Collections.emptyNavigableMap());
+        }
+
+        private void remove(CancelInstruction cancel) {
+
+            Order order = cancels.remove(cancel);
+
+            NavigableMap<BigDecimal, List<CancelInstruction>> levels = levels(order.getRemainingQuantity());
+
+            List<CancelInstruction> level = levels.get(order.getOrderPrice());
+
+            level.remove(cancel);
+
+            if (level.isEmpty()) {
+                levels.remove(order.getOrderPrice());
+            }
+
+        }
+
+    }
+
+    /**
+     * Nets the creates against the live orders, then optionally amends the rest, so that only the differences are
+     * sent. Each create is netted with the nearest price order which meets the thresholds, looked up from the orders
+     * indexed by the side and the price level.
+     */
     @VisibleForTesting
     List<Instruction> merge(List<CreateInstruction> creates, Map<CancelInstruction, Order> cancels) {
 
@@ -275,6 +414,8 @@ public class TemplateInstructor extends AbstractService implements Instructor {
 
         List<CreateInstruction> remainingCreates = new ArrayList<>(creates);
 
+        OrderIndex index = new OrderIndex(remainingCancels);
+
         Iterator<CreateInstruction> createItr = remainingCreates.iterator();
 
         BigDecimal priceThreshold = getDecimalProperty("threshold.price", ZERO);
@@ -293,60 +434,54 @@ public class TemplateInstructor extends AbstractService implements Instructor {
                 continue; // Skip market orders.
             }
 
-            Iterator<Map.Entry<CancelInstruction, Order>> cancelItr = remainingCancels.entrySet().iterator();
+            // Slightly wider than the threshold, for the rounding of the percentage.
+            BigDecimal range = create.getPrice().multiply(priceThreshold.abs().add(EPSILON)).abs();
 
-            while (cancelItr.hasNext()) {
+            NavigableMap<BigDecimal, List<CancelInstruction>> levels = index.levels(create.getSize()).subMap(
+                    create.getPrice().subtract(range), true, create.getPrice().add(range), true);
 
-                Map.Entry<CancelInstruction, Order> entry = cancelItr.next();
+            CancelInstruction nearest = null;
 
-                Order order = entry.getValue();
+            BigDecimal distance = null;
 
-                if (order == null) {
-                    continue;
-                }
+            for (Map.Entry<BigDecimal, List<CancelInstruction>> level : levels.entrySet()) {
 
-                if (order.getOrderPrice() == null || order.getOrderPrice().signum() == 0) {
-                    continue; // Skip market.
-                }
-
-                if (order.getRemainingQuantity() == null || order.getRemainingQuantity().signum() == 0) {
-                    continue; // Skip invalid.
-                }
-
-                if (order.getRemainingQuantity().signum() != create.getSize().signum()) {
-                    continue; // Different side.
-                }
-
-                BigDecimal sizeDiff = create.getSize().subtract(order.getRemainingQuantity());
-
-                BigDecimal sizePcnt = sizeDiff.divide(create.getSize(), SCALE, ROUND_CEILING);
+                BigDecimal diff = level.getKey().subtract(create.getPrice()).abs();
 
-                if (sizePcnt.signum() < 0 || sizePcnt.compareTo(sizeThreshold) > 0) {
+                if (distance != null && diff.compareTo(distance) >= 0) {
                     continue;
                 }
 
-                BigDecimal priceDiff = order.getOrderPrice().subtract(create.getPrice());
+                for (CancelInstruction cancel : level.getValue()) {
 
-                BigDecimal pricePcnt = priceDiff.divide(create.getPrice(), SCALE, ROUND_CEILING).abs();
+                    if (isNettable(create, remainingCancels.get(cancel), priceThreshold, sizeThreshold)) {
+                        nearest = cancel;
+                        distance = diff;
+                        break;
+                    }
 
-                if (pricePcnt.compareTo(priceThreshold) > 0) {
-                    continue;
                 }
 
-                log.trace("Netting cancel/create : {} - {}", create, entry.getKey());
+            }
 
-                cancelItr.remove();
+            if (nearest == null) {
+                continue;
+            }
 
-                createItr.remove();
+            log.trace("Netting cancel/create : {} - {}", create, nearest);
 
-                break;
+            index.remove(nearest);
 
-            }
+            createItr.remove();
 
         }
 
         List<Instruction> instructions = new ArrayList<>();
 
+        if (Boolean.valueOf(getStringProperty(KEY_AMEND, "false"))) {
+            instructions.addAll(amend(remainingCreates, index));
+        }
+
         instructions.addAll(remainingCancels.keySet());
 
         instructions.addAll(remainingCreates);
@@ -357,4 +492,106 @@ public class TemplateInstructor extends AbstractService implements Instructor {
 
     }
 
+    private boolean isNettable(CreateInstruction create, Order order,
+                               BigDecimal priceThreshold, BigDecimal sizeThreshold) {
+
+        BigDecimal sizeDiff = create.getSize().subtract(order.getRemainingQuantity());
+
+        BigDecimal sizePcnt = sizeDiff.divide(create.getSize(), SCALE, ROUND_CEILING);
+
+        if (sizePcnt.signum() < 0 || sizePcnt.compareTo(sizeThreshold) > 0) {
+            return false;
+        }
+
+        BigDecimal priceDiff = order.getOrderPrice().subtract(create.getPrice());
+
+        BigDecimal pricePcnt = priceDiff.divide(create.getPrice(), SCALE, ROUND_CEILING).abs();
+
+        return pricePcnt.compareTo(priceThreshold) <= 0;
+
+    }
+
+    /**
+     * Pairs the remaining limit creates with the remaining cancels of the same side, nearest price first, so that the
+     * existing orders are moved to the new price/size instead of cancelled and re-created.
+     */
+    private List<AmendInstruction> amend(List<CreateInstruction> creates, OrderIndex index) {
+
+        List<AmendInstruction> amends = new ArrayList<>();
+
+        Iterator<CreateInstruction> createItr = creates.iterator();
+
+        while (createItr.hasNext()) {
+
+            CreateInstruction create = createItr.next();
+
+            if (create.getPrice() == null || create.getSize() == null || create.getSize().signum() == 0) {
+                continue; // Skip invalid.
+            }
+
+            if (create.getPrice().signum() == 0) {
+                continue; // Skip market orders.
+            }
+
+            NavigableMap<BigDecimal, List<CancelInstruction>> levels = index.levels(create.getSize());
+
+            CancelInstruction lower = find(levels.headMap(create.getPrice(), true).descendingMap());
+
+            CancelInstruction upper = find(levels.tailMap(create.getPrice(), false));
+
+            CancelInstruction nearest = lower;
+
+            if (nearest == null || (upper != null && distance(index, upper, create)
+                    .compareTo(distance(index, lower, create)) < 0)) {
+                nearest = upper;
+            }
+
+            if (nearest == null) {
+                continue;
+            }
+
+            AmendInstruction amend = AmendInstruction.builder()
+                    .id(nearest.getId())
+                    .price(create.getPrice())
+                    .size(create.getSize())
+                    .strategy(create.getStrategy())
+                    .timeToLive(create.getTimeToLive())
+                    .build();
+
+            log.trace("Amending cancel/create : {} - {} - {}", amend, create, nearest);
+
+            index.remove(nearest);
+
+            createItr.remove();
+
+            amends.add(amend);
+
+        }
+
+        return amends;
+
+    }
+
+    private CancelInstruction find(NavigableMap<BigDecimal, List<CancelInstruction>> levels) {
+
+        for (List<CancelInstruction> level : levels.values()) {
+
+            for (CancelInstruction cancel : level) {
+
+                if (StringUtils.isNotEmpty(cancel.getId())) {
+                    return cancel;
+                }
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    private BigDecimal distance(OrderIndex index, CancelInstruction cancel, CreateInstruction create) {
+        return index.cancels.get(cancel).getOrderPrice().subtract(create.getPrice()).abs();
+    }
+
 }
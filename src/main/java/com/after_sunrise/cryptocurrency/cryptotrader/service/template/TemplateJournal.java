@@ -0,0 +1,130 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Instant;
+import java.util.*;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Journal of the own executions of a site, which keeps the recent window indexed by the time. The site is queried
+ * for the executions after the latest one journaled (cursor), so that only the new fills are fetched and merged,
+ * instead of downloading the whole page on every cycle.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateJournal<T extends Order.Execution> {
+
+    private final NavigableMap<Instant, Map<String, T>> index = new TreeMap<>();
+
+    private final Map<String, T> entries = new HashMap<>();
+
+    private final int capacity;
+
+    private List<T> snapshot = Collections.emptyList();
+
+    /**
+     * @param capacity Maximum number of the executions to keep, from the latest.
+     */
+    public TemplateJournal(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    /**
+     * @return Latest execution journaled, to be used as the cursor. Null if none yet.
+     */
+    public synchronized T getLatest() {
+
+        Map.Entry<Instant, Map<String, T>> entry = index.lastEntry();
+
+        return entry == null ? null : entry.getValue().values().iterator().next();
+
+    }
+
+    /**
+     * Merges the fetched executions, ignoring the ones already journaled or without the id nor the time.
+     *
+     * @return Number of the new executions.
+     */
+    public synchronized int append(Collection<T> values) {
+
+        if (values == null) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (T value : values) {
+
+            if (value == null || StringUtils.isEmpty(value.getId()) || value.getTime() == null) {
+                continue;
+            }
+
+            if (entries.putIfAbsent(value.getId(), value) != null) {
+                continue;
+            }
+
+            index.computeIfAbsent(value.getTime(), t -> new LinkedHashMap<>()).put(value.getId(), value);
+
+            count++;
+
+        }
+
+        while (entries.size() > capacity) {
+
+            Map.Entry<Instant, Map<String, T>> oldest = index.firstEntry();
+
+            Iterator<T> itr = oldest.getValue().values().iterator();
+
+            entries.remove(itr.next().getId());
+
+            itr.remove();
+
+            if (oldest.getValue().isEmpty()) {
+                index.remove(oldest.getKey());
+            }
+
+        }
+
+        if (count > 0) {
+            snapshot = null;
+        }
+
+        return count;
+
+    }
+
+    /**
+     * @return Executions from the latest, in the order merged within the same time.
+     */
+    public synchronized List<T> list() {
+
+        if (snapshot == null) {
+            snapshot = unmodifiableList(collect(index));
+        }
+
+        return snapshot;
+
+    }
+
+    /**
+     * @return Executions after the time (exclusive), from the latest.
+     */
+    public synchronized List<T> list(Instant cutoff) {
+        return collect(index.tailMap(cutoff, false));
+    }
+
+    private List<T> collect(NavigableMap<Instant, Map<String, T>> map) {
+
+        List<T> values = new ArrayList<>();
+
+        map.descendingMap().values().forEach(m -> values.addAll(m.values()));
+
+        return values;
+
+    }
+
+}
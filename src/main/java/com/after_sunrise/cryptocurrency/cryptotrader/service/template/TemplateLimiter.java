@@ -0,0 +1,135 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestPriority;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Token bucket shared by the requests of a site. Each priority may only take a token while the bucket holds more
+ * than the tokens reserved for the higher priorities, so that the refilled tokens go to the cancels first, then
+ * to the creates, and the queries are shed instead of waiting.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateLimiter {
+
+    private static final double NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final LongSupplier clock;
+
+    private final double rate;
+
+    private final double burst;
+
+    private final Map<RequestPriority, Double> thresholds;
+
+    private double tokens;
+
+    private long refilled;
+
+    /**
+     * @param rate     Tokens refilled per second.
+     * @param burst    Capacity of the bucket.
+     * @param reserves Ratio of the capacity which the priority leaves for the higher priorities.
+     */
+    public TemplateLimiter(double rate, double burst, Map<RequestPriority, Double> reserves) {
+        this(System::nanoTime, rate, burst, reserves);
+    }
+
+    @VisibleForTesting
+    TemplateLimiter(LongSupplier clock, double rate, double burst, Map<RequestPriority, Double> reserves) {
+
+        this.clock = clock;
+
+        this.rate = rate / NANOS;
+
+        this.burst = Math.max(burst, 1.0);
+
+        this.thresholds = new EnumMap<>(RequestPriority.class);
+
+        for (RequestPriority p : RequestPriority.values()) {
+
+            double reserve = Math.max(reserves.getOrDefault(p, 0.0), 0.0) * this.burst;
+
+            thresholds.put(p, Math.min(1.0 + reserve, this.burst));
+
+        }
+
+        this.tokens = this.burst;
+
+        this.refilled = clock.getAsLong();
+
+    }
+
+    /**
+     * @return Nanos to wait until the priority may take a token, or zero if taken.
+     */
+    @VisibleForTesting
+    synchronized long tryAcquire(RequestPriority priority) {
+
+        long now = clock.getAsLong();
+
+        tokens = Math.min(burst, tokens + (now - refilled) * rate);
+
+        refilled = now;
+
+        double threshold = thresholds.get(priority);
+
+        if (tokens >= threshold) {
+
+            tokens -= 1.0;
+
+            return 0L;
+
+        }
+
+        return rate > 0 ? (long) Math.ceil((threshold - tokens) / rate) : Long.MAX_VALUE;
+
+    }
+
+    /**
+     * Takes a token, waiting up to the timeout except for the lowest priority, which is shed immediately.
+     *
+     * @return False if shed or timed out.
+     */
+    public boolean acquire(RequestPriority priority, Duration timeout) throws InterruptedException {
+
+        long deadline = clock.getAsLong() + timeout.toNanos();
+
+        while (true) {
+
+            long wait = tryAcquire(priority);
+
+            if (wait == 0L) {
+                return true;
+            }
+
+            if (priority == RequestPriority.QUERY) {
+                return false;
+            }
+
+            long remaining = deadline - clock.getAsLong();
+
+            if (remaining <= 0L) {
+                return false;
+            }
+
+            NANOSECONDS.sleep(Math.min(wait, remaining));
+
+        }
+
+    }
+
+    @VisibleForTesting
+    synchronized double getTokens() {
+        return tokens;
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Hashed timing wheel, which keeps the entries in the slots of the deadline ticks, so that adding, removing and
+ * expiring an entry are constant in time, regardless of the number of the entries being tracked. Deadlines are
+ * rounded up to the tick, and the entries farther than a round of the wheel stay in the slot until the round comes.
+ *
+ * @param <K> Key to identify the entry, for the removal.
+ * @param <V> Value to be returned when expired.
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateWheel<K, V> {
+
+    private static class Entry<V> {
+
+        private final long deadline;
+
+        private final V value;
+
+        private Entry(long deadline, V value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+
+    }
+
+    private final long tick;
+
+    private final List<Map<K, Entry<V>>> slots;
+
+    private final Map<K, Integer> index = new HashMap<>();
+
+    private Long origin;
+
+    private long current;
+
+    /**
+     * @param tick Resolution of the deadlines.
+     * @param size Number of the slots in a round.
+     */
+    public TemplateWheel(Duration tick, int size) {
+
+        this.tick = Math.max(tick.toNanos(), 1);
+
+        this.slots = new ArrayList<>(Math.max(size, 1));
+
+        for (int i = 0; i < Math.max(size, 1); i++) {
+            slots.add(new LinkedHashMap<>());
+        }
+
+    }
+
+    private long toTick(long nanos) {
+        return (nanos - origin) / tick;
+    }
+
+    /**
+     * @return Number of the entries being tracked.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Adds the entry, replacing the one with the same key.
+     *
+     * @param nanos    Current time in nanos.
+     * @param duration Duration until the entry expires.
+     */
+    public synchronized void put(K key, V value, long nanos, Duration duration) {
+
+        remove(key);
+
+        origin = origin == null ? nanos : origin;
+
+        long deadline = toTick(nanos + duration.toNanos() + tick - 1);
+
+        deadline = Math.max(deadline, current + 1);
+
+        int slot = (int) (deadline % slots.size());
+
+        slots.get(slot).put(key, new Entry<>(deadline, value));
+
+        index.put(key, slot);
+
+    }
+
+    /**
+     * @return Value removed, or null if not tracked.
+     */
+    public synchronized V remove(K key) {
+
+        Integer slot = index.remove(key);
+
+        if (slot == null) {
+            return null;
+        }
+
+        Entry<V> entry = slots.get(slot).remove(key);
+
+        return entry == null ? null : entry.value;
+
+    }
+
+    /**
+     * Advances the wheel up to the current time.
+     *
+     * @param nanos Current time in nanos.
+     * @return Values expired.
+     */
+    public synchronized List<V> expire(long nanos) {
+
+        if (origin == null) {
+            return Collections.emptyList();
+        }
+
+        long target = toTick(nanos);
+
+        if (target <= current) {
+            return Collections.emptyList();
+        }
+
+        List<V> values = new ArrayList<>();
+
+        // Visit each slot at most once, even if the wheel has not been advanced for more than a round.
+        long from = Math.max(current + 1, target - slots.size() + 1);
+
+        for (long t = from; t <= target; t++) {
+
+            int slot = (int) (t % slots.size());
+
+            Iterator<Map.Entry<K, Entry<V>>> itr = slots.get(slot).entrySet().iterator();
+
+            while (itr.hasNext()) {
+
+                Map.Entry<K, Entry<V>> entry = itr.next();
+
+                if (entry.getValue().deadline > target) {
+                    continue;
+                }
+
+                itr.remove();
+
+                index.remove(entry.getKey());
+
+                values.add(entry.getValue().value);
+
+            }
+
+        }
+
+        current = target;
+
+        return values;
+
+    }
+
+}
@@ -6,12 +6,14 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order.Execution;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateJournal;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
@@ -23,13 +25,13 @@ import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.POST;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
 import static java.util.Collections.*;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -47,6 +49,10 @@ public class ZaifContext extends TemplateContext implements ZaifService {
     private static final Type TYPE_TRADE = new TypeToken<List<ZaifTrade>>() {
     }.getType();
 
+    private static final int EXECUTION_COUNT = 100;
+
+    private static final int EXECUTION_PAGES = 10;
+
     private final Gson gson;
 
     public ZaifContext() {
@@ -65,6 +71,8 @@ public class ZaifContext extends TemplateContext implements ZaifService {
 
         });
 
+        builder.registerTypeAdapter(ZaifDepth.class, new ZaifDepth.Adapter());
+
         gson = builder.create();
 
     }
@@ -78,13 +86,9 @@ public class ZaifContext extends TemplateContext implements ZaifService {
             return null;
         }
 
-        ZaifDepth value = findCached(ZaifDepth.class, key, () -> {
-
-            String data = request(URL_DEPTH + product.getId());
-
-            return gson.fromJson(data, ZaifDepth.class);
-
-        });
+        ZaifDepth value = findCached(ZaifDepth.class, key, () ->
+                request(GET, URL_DEPTH + product.getId(), null, null, r -> gson.fromJson(r, ZaifDepth.class))
+        );
 
         return Optional.ofNullable(value);
 
@@ -244,15 +248,10 @@ public class ZaifContext extends TemplateContext implements ZaifService {
             return null;
         }
 
-        Future<String> result;
-
-        synchronized (URL_POST) {
-
-            // Avoid duplicate nonce
-            MILLISECONDS.sleep(5);
+        return requestPrivate(nonce -> {
 
             Map<String, String> map = new LinkedHashMap<>(trimToEmpty(parameters));
-            map.put("nonce", BigDecimal.valueOf(getNow().toEpochMilli()).movePointLeft(3).toPlainString());
+            map.put("nonce", BigDecimal.valueOf(nonce).movePointLeft(3).toPlainString());
             map.put("method", method);
             String data = buildQueryParameter(map, "");
 
@@ -261,11 +260,9 @@ public class ZaifContext extends TemplateContext implements ZaifService {
             headers.put("key", apiKey);
             headers.put("sign", computeHash("HmacSHA512", secret.getBytes(), data.getBytes()));
 
-            result = requestAsync(POST, URL_POST, headers, data);
+            return requestAsync(POST, URL_POST, headers, data);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -421,21 +418,50 @@ public class ZaifContext extends TemplateContext implements ZaifService {
 
         List<ZaifExecution> executions = listCached(ZaifExecution.class, key, () -> {
 
-            Map<String, String> parameters = new LinkedHashMap<>();
-            parameters.put("currency_pair", product.getId());
-            parameters.put("count", "100");
+            TemplateJournal<ZaifExecution> journal = getJournal(ZaifExecution.class, product.getId());
 
-            String data = extract(postAsync("trade_history", parameters));
+            ZaifExecution latest = journal.getLatest();
 
-            ZaifExecution.Container c = gson.fromJson(data, ZaifExecution.Container.class);
+            if (latest == null) {
+
+                // Initial page, from the latest.
+                Map<String, String> parameters = new LinkedHashMap<>();
+                parameters.put("currency_pair", product.getId());
+                parameters.put("count", String.valueOf(EXECUTION_COUNT));
+
+                journal.append(fetchExecutions(parameters).values());
+
+                return journal.list();
 
-            if (!c.isSuccess()) {
-                throw new IOException("Invalid executions : " + c);
             }
 
-            return unmodifiableList(trimToEmpty(c.getExecutions()).entrySet().stream()
-                    .map(e -> ZaifExecution.builder().id(e.getKey()).data(e.getValue()).build())
-                    .collect(toList()));
+            // Forward from the cursor, until a short page, so that no fill is skipped between the polls.
+            // The rest of the capped pages are fetched by the next poll, from the cursor moved forward.
+            String cursor = latest.getId();
+
+            for (int page = 0; page < EXECUTION_PAGES; page++) {
+
+                Map<String, String> parameters = new LinkedHashMap<>();
+                parameters.put("currency_pair", product.getId());
+                parameters.put("count", String.valueOf(EXECUTION_COUNT));
+                parameters.put("order", "ASC");
+
+                // Inclusive, of which the duplicate is ignored by the journal.
+                parameters.put("from_id", cursor);
+
+                Map<String, ZaifExecution> fetched = fetchExecutions(parameters);
+
+                journal.append(fetched.values());
+
+                if (fetched.size() < EXECUTION_COUNT) {
+                    break;
+                }
+
+                cursor = fetched.keySet().stream().max(Comparator.comparingLong(NumberUtils::toLong)).orElse(cursor);
+
+            }
+
+            return journal.list();
 
         });
 
@@ -447,6 +473,24 @@ public class ZaifContext extends TemplateContext implements ZaifService {
 
     }
 
+    private Map<String, ZaifExecution> fetchExecutions(Map<String, String> parameters) throws Exception {
+
+        String data = extract(postAsync("trade_history", parameters));
+
+        ZaifExecution.Container c = gson.fromJson(data, ZaifExecution.Container.class);
+
+        if (!c.isSuccess()) {
+            throw new IOException("Invalid executions : " + c);
+        }
+
+        Map<String, ZaifExecution> values = new LinkedHashMap<>();
+
+        trimToEmpty(c.getExecutions()).forEach((k, v) -> values.put(k, ZaifExecution.builder().id(k).data(v).build()));
+
+        return values;
+
+    }
+
     @Override
     public Map<CreateInstruction, String> createOrders(Key key, Set<CreateInstruction> instructions) {
 
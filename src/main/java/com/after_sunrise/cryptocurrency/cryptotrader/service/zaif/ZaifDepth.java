@@ -1,15 +1,16 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.zaif;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAdapter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import lombok.*;
 import org.apache.commons.lang3.ArrayUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.*;
 import java.util.stream.Stream;
 
 /**
@@ -61,4 +62,82 @@ public class ZaifDepth {
         return convert(bids, REVERSE);
     }
 
+    public static class Adapter extends TemplateAdapter<ZaifDepth, ZaifDepthBuilder> {
+
+        @Override
+        protected ZaifDepthBuilder create() {
+            return builder();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, ZaifDepthBuilder builder) throws IOException {
+
+            switch (name) {
+                case "asks":
+                    builder.asks(readLevels(in));
+                    return true;
+                case "bids":
+                    builder.bids(readLevels(in));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected ZaifDepth build(ZaifDepthBuilder builder) {
+            return builder.build();
+        }
+
+        /**
+         * [[price, size], ...]
+         */
+        @VisibleForTesting
+        BigDecimal[][] readLevels(JsonReader in) throws IOException {
+
+            if (in.peek() == JsonToken.NULL) {
+
+                in.nextNull();
+
+                return null;
+
+            }
+
+            List<BigDecimal[]> levels = new ArrayList<>();
+
+            in.beginArray();
+
+            while (in.hasNext()) {
+
+                if (in.peek() != JsonToken.BEGIN_ARRAY) {
+
+                    in.skipValue();
+
+                    continue;
+
+                }
+
+                List<BigDecimal> level = new ArrayList<>(2);
+
+                in.beginArray();
+
+                while (in.hasNext()) {
+                    level.add(nextDecimal(in));
+                }
+
+                in.endArray();
+
+                levels.add(level.toArray(new BigDecimal[level.size()]));
+
+            }
+
+            in.endArray();
+
+            return levels.toArray(new BigDecimal[levels.size()][]);
+
+        }
+
+    }
+
 }
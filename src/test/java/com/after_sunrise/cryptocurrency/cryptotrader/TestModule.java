@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Bulkhead;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.inject.Guice;
@@ -43,6 +44,11 @@ public class TestModule {
 
         when(getMock(ExecutorFactory.class).get(any(Class.class), anyInt())).thenReturn(service);
 
+        when(getMock(ExecutorFactory.class).get(any(Class.class), anyString(), anyInt(), anyInt())).thenAnswer(i ->
+                new Bulkhead(i.getArgumentAt(1, String.class), service,
+                        i.getArgumentAt(2, Integer.class), i.getArgumentAt(3, Integer.class))
+        );
+
         Configuration configuration = spy(new Configurations().properties(getResource(CONFIGURATION)));
 
         setMock(Configuration.class, configuration);
@@ -0,0 +1,103 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.core;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.*;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BulkheadTest {
+
+    private ExecutorService delegate;
+
+    private Bulkhead target;
+
+    @BeforeMethod
+    public void setUp() {
+
+        delegate = Executors.newFixedThreadPool(4);
+
+        target = new Bulkhead("test", delegate, 2, 1);
+
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        delegate.shutdownNow();
+    }
+
+    @Test(timeOut = 5000L)
+    public void testExecute() throws Exception {
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        CountDownLatch started = new CountDownLatch(2);
+
+        Callable<String> blocking = () -> {
+            started.countDown();
+            latch.await();
+            return Thread.currentThread().getName();
+        };
+
+        CompletableFuture<String> f1 = CompletableFuture.supplyAsync(() -> call(blocking), target);
+        CompletableFuture<String> f2 = CompletableFuture.supplyAsync(() -> call(blocking), target);
+        assertTrue(started.await(1, SECONDS));
+        assertEquals(target.getActive(), 2);
+
+        // Queued
+        CompletableFuture<String> f3 = CompletableFuture.supplyAsync(() -> "queued", target);
+        assertEquals(target.getQueued(), 1);
+
+        // Rejected
+        try {
+            CompletableFuture.runAsync(() -> fail("Should be rejected."), target);
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals(target.getRejected(), 1L);
+        }
+
+        // Other threads of the delegate are still available.
+        assertEquals(delegate.submit(() -> "free").get(1, SECONDS), "free");
+
+        latch.countDown();
+        assertNotNull(f1.get());
+        assertNotNull(f2.get());
+        assertEquals(f3.get(), "queued");
+
+        // Released
+        for (int i = 0; i < 100 && target.getActive() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(target.getActive(), 0);
+        assertEquals(target.getQueued(), 0);
+        assertEquals(target.getCompleted(), 3L);
+        assertEquals(target.toString(), "test (active=0/2, queued=0/1, completed=3, rejected=1)");
+
+        // Rejected by the delegate.
+        delegate.shutdown();
+        try {
+            target.execute(() -> fail("Should be rejected."));
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals(target.getActive(), 0);
+            assertEquals(target.getRejected(), 2L);
+        }
+
+    }
+
+    private static <V> V call(Callable<V> c) {
+        try {
+            return c.call();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
 import static java.lang.Thread.currentThread;
@@ -74,6 +75,31 @@ public class ExecutorFactoryImplTest {
 
     }
 
+    @Test(timeOut = 5000L)
+    public void testGet_Bulkhead() throws Exception {
+
+        Bulkhead b1 = target.get(String.class, "s1", 2, 3);
+        assertSame(target.get(String.class, "s1", 4, 5), b1);
+        assertEquals(b1.getName(), "String.s1");
+
+        Bulkhead b2 = target.get(String.class, "s2", 2, 3);
+        assertNotSame(b2, b1);
+
+        Bulkhead b3 = target.get(null, null, 2, 3);
+        assertEquals(b3.getName(), "ExecutorFactoryImpl.");
+
+        assertEquals(target.getBulkheads().size(), 3);
+        assertTrue(target.getBulkheads().containsAll(Arrays.asList(b1, b2, b3)));
+
+        // Runs on the shared executor.
+        CompletableFuture<String> f = CompletableFuture.supplyAsync(() -> currentThread().getName(), b1);
+        assertEquals(f.get(), "String_001");
+
+        target.close();
+        assertEquals(target.getBulkheads().size(), 0);
+
+    }
+
     @Test
     public void testUncaughtException() {
         target.uncaughtException(currentThread(), new IOException("test"));
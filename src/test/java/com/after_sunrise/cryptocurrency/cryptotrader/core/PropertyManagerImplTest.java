@@ -228,6 +228,39 @@ public class PropertyManagerImplTest {
 
     }
 
+    @Test
+    public void testGetTradingBulkhead() throws Exception {
+
+        // Default
+        assertEquals(target.getTradingBulkhead(), (Integer) 0);
+
+        // Mocked
+        doReturn(valueOf(8)).when(conf).getBigDecimal(TRADING_BULKHEAD.getKey());
+        assertEquals(target.getTradingBulkhead(), (Integer) 8);
+
+        // Ceiling
+        doReturn(valueOf(Integer.MAX_VALUE)).when(conf).getBigDecimal(TRADING_BULKHEAD.getKey());
+        assertEquals(target.getTradingBulkhead(), Integer.valueOf(Byte.MAX_VALUE));
+
+        // Floor
+        doReturn(valueOf(Integer.MIN_VALUE)).when(conf).getBigDecimal(TRADING_BULKHEAD.getKey());
+        assertEquals(target.getTradingBulkhead(), (Integer) 0);
+
+        // Error
+        doThrow(new RuntimeException("test")).when(conf).getBigDecimal(TRADING_BULKHEAD.getKey());
+        assertEquals(target.getTradingBulkhead(), (Integer) 0);
+        reset(conf);
+
+        // Override
+        target.setTradingBulkhead(3);
+        assertEquals(target.getTradingBulkhead(), (Integer) 3);
+
+        // Clear
+        target.setTradingBulkhead(null);
+        assertEquals(target.getTradingBulkhead(), (Integer) 0);
+
+    }
+
     @Test
     public void testGetTradingTargets() throws Exception {
 
@@ -824,6 +857,70 @@ public class PropertyManagerImplTest {
 
     }
 
+    @Test
+    public void testGetTradingRefresh() throws Exception {
+
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ofMillis(0));
+
+        // Specific
+        doReturn(valueOf(30000L)).when(conf).getBigDecimal(TRADING_REFRESH.getKey());
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ofMillis(30000));
+
+        // Ceiling
+        doReturn(valueOf(Long.MAX_VALUE)).when(conf).getBigDecimal(TRADING_REFRESH.getKey());
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ofMillis(Long.MAX_VALUE));
+
+        // Floor
+        doReturn(valueOf(Long.MIN_VALUE)).when(conf).getBigDecimal(TRADING_REFRESH.getKey());
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ZERO);
+
+        // Error
+        doThrow(new RuntimeException("test")).when(conf).getBigDecimal(TRADING_REFRESH.getKey());
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ZERO);
+        reset(conf);
+
+        // Override
+        target.setTradingRefresh(site, inst, Duration.ofMillis(1));
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ofMillis(1));
+
+        // Clear
+        target.setTradingRefresh(site, inst, null);
+        assertEquals(target.getTradingRefresh(site, inst), Duration.ofMillis(0));
+
+    }
+
+    @Test
+    public void testGetTradingStable() throws Exception {
+
+        assertEquals(target.getTradingStable(site, inst), Duration.ofMillis(0));
+
+        // Specific
+        doReturn(valueOf(60000L)).when(conf).getBigDecimal(TRADING_STABLE.getKey());
+        assertEquals(target.getTradingStable(site, inst), Duration.ofMillis(60000));
+
+        // Ceiling
+        doReturn(valueOf(Long.MAX_VALUE)).when(conf).getBigDecimal(TRADING_STABLE.getKey());
+        assertEquals(target.getTradingStable(site, inst), Duration.ofMillis(Long.MAX_VALUE));
+
+        // Floor
+        doReturn(valueOf(Long.MIN_VALUE)).when(conf).getBigDecimal(TRADING_STABLE.getKey());
+        assertEquals(target.getTradingStable(site, inst), Duration.ZERO);
+
+        // Error
+        doThrow(new RuntimeException("test")).when(conf).getBigDecimal(TRADING_STABLE.getKey());
+        assertEquals(target.getTradingStable(site, inst), Duration.ZERO);
+        reset(conf);
+
+        // Override
+        target.setTradingStable(site, inst, Duration.ofMillis(1));
+        assertEquals(target.getTradingStable(site, inst), Duration.ofMillis(1));
+
+        // Clear
+        target.setTradingStable(site, inst, null);
+        assertEquals(target.getTradingStable(site, inst), Duration.ofMillis(0));
+
+    }
+
     @Test
     public void testGetFundingOffset() throws Exception {
 
@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Visitor;
@@ -34,6 +35,9 @@ public class InstructionTest {
         when(visitor.visit(any(CancelInstruction.class)))
                 .thenAnswer(i -> i.getArgumentAt(0, CancelInstruction.class).getUid());
 
+        when(visitor.visit(any(AmendInstruction.class)))
+                .thenAnswer(i -> i.getArgumentAt(0, AmendInstruction.class).getUid());
+
     }
 
     @Test
@@ -65,4 +69,24 @@ public class InstructionTest {
 
     }
 
+    @Test
+    public void testAmend() throws Exception {
+
+        AmendInstruction i = AmendInstruction.builder().id("foo").price(TEN).size(ONE)
+                .strategy("bar").timeToLive(Duration.ofMillis(123)).build();
+
+        assertEquals(i.getId(), "foo");
+
+        assertEquals(i.getPrice(), TEN);
+
+        assertEquals(i.getSize(), ONE);
+
+        assertEquals(i.getStrategy(), "bar");
+
+        assertEquals(i.getTimeToLive(), Duration.ofMillis(123));
+
+        assertEquals(i.accept(visitor), i.getUid());
+
+    }
+
 }
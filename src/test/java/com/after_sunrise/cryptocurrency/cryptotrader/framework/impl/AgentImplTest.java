@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 
 import static java.util.Collections.*;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -102,4 +103,29 @@ public class AgentImplTest {
 
     }
 
+    @Test
+    public void testReconcileAsync() throws Exception {
+
+        Request.RequestBuilder builder = module.createRequestBuilder();
+        Request request = builder.site("s").instrument("i").build();
+        Map<Instruction, String> values = emptyMap();
+        Map<Instruction, Boolean> results = new HashMap<>();
+        doReturn(completedFuture(results)).when(service).reconcileAsync(context, request, values);
+
+        // Found
+        assertSame(target.reconcileAsync(context, request, values).get(), results);
+        verify(service).reconcileAsync(context, request, values);
+
+        // Null future
+        doReturn(null).when(service).reconcileAsync(context, request, values);
+        assertEquals(target.reconcileAsync(context, request, values).get(), emptyMap());
+
+        // Site not found
+        request = builder.site(null).build();
+        assertEquals(target.reconcileAsync(context, request, values).get(), emptyMap());
+        verify(service, times(2)).reconcileAsync(any(), any(), any());
+        verifyNoMoreInteractions(service);
+
+    }
+
 }
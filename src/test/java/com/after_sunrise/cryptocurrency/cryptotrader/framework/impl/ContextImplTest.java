@@ -1,9 +1,12 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -14,18 +17,26 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
+import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ONE;
 import static java.math.RoundingMode.DOWN;
 import static java.util.Collections.*;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 
 /**
  * @author takanori.takase
@@ -112,6 +123,55 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testForContextAsync() throws Exception {
+
+        // Found
+        CompletableFuture<String> future = CompletableFuture.completedFuture("hoge");
+        assertSame(target.forContextAsync(Key.builder().site("c2").build(), c -> future), future);
+
+        // Null future
+        assertNull(target.forContextAsync(Key.builder().site("c2").build(), c -> null).get());
+
+        // Not found
+        assertNull(target.forContextAsync(Key.builder().build(), c -> future).get());
+
+        // Null Key
+        assertNull(target.forContextAsync(null, c -> future).get());
+
+    }
+
+    @Test
+    public void testMarketDataAsync() throws Exception {
+
+        Context c = contexts.get("c1");
+        BigDecimal value = new BigDecimal(Math.random());
+        Map<BigDecimal, BigDecimal> values = singletonMap(value, value);
+        List<Trade> trades = singletonList(mock(Trade.class));
+        Instant time = Instant.now();
+
+        when(c.getBestAskPriceAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getBestBidPriceAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getBestAskSizeAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getBestBidSizeAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getMidPriceAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getLastPriceAsync(key)).thenReturn(CompletableFuture.completedFuture(value));
+        when(c.getAskPricesAsync(key)).thenReturn(CompletableFuture.completedFuture(values));
+        when(c.getBidPricesAsync(key)).thenReturn(CompletableFuture.completedFuture(values));
+        when(c.listTradesAsync(key, time)).thenReturn(CompletableFuture.completedFuture(trades));
+
+        assertEquals(target.getBestAskPriceAsync(key).get(), value);
+        assertEquals(target.getBestBidPriceAsync(key).get(), value);
+        assertEquals(target.getBestAskSizeAsync(key).get(), value);
+        assertEquals(target.getBestBidSizeAsync(key).get(), value);
+        assertEquals(target.getMidPriceAsync(key).get(), value);
+        assertEquals(target.getLastPriceAsync(key).get(), value);
+        assertEquals(target.getAskPricesAsync(key).get(), values);
+        assertEquals(target.getBidPricesAsync(key).get(), values);
+        assertEquals(target.listTradesAsync(key, time).get(), trades);
+
+    }
+
     @Test
     public void testGetState() {
 
@@ -123,6 +183,44 @@ public class ContextImplTest {
 
     }
 
+    @Test(timeOut = 5000L)
+    public void testGetState_Halt() throws Exception {
+
+        Key key = Key.builder().site("c1").instrument("i").timestamp(Instant.ofEpochMilli(1000)).build();
+        Context context = contexts.get("c1");
+        PropertyManager manager = module.getMock(PropertyManager.class);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(context.cancelAllOrders(key)).thenAnswer(i -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+            return true;
+        });
+
+        // Dry-run
+        when(context.getState(key)).thenReturn(Context.StateType.SUSPEND);
+        assertEquals(target.getState(key), Context.StateType.SUSPEND);
+
+        // Active, but already halted.
+        when(manager.getTradingActive("c1", "i")).thenReturn(true);
+        when(context.getState(key)).thenReturn(Context.StateType.TERMINATE);
+        assertEquals(target.getState(key), Context.StateType.TERMINATE);
+
+        // Transition
+        when(context.getState(key)).thenReturn(Context.StateType.ACTIVE);
+        assertEquals(target.getState(key), Context.StateType.ACTIVE);
+        when(context.getState(key)).thenReturn(Context.StateType.SUSPEND);
+        assertEquals(target.getState(key), Context.StateType.SUSPEND);
+        latch.await();
+        assertEquals(target.getState(key), Context.StateType.SUSPEND);
+
+        target.close();
+        verify(context, times(1)).cancelAllOrders(key);
+        assertEquals(threads, singletonList("ContextImpl-halt")); // Not behind the refreshes.
+
+    }
+
     @Test
     public void testGetBestAskPrice() {
 
@@ -326,6 +424,15 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testIsOrderStreamed() {
+
+        when(contexts.get("c1").isOrderStreamed(key)).thenReturn(TRUE);
+
+        assertEquals(target.isOrderStreamed(key), TRUE);
+
+    }
+
     @Test
     public void testListActiveOrders() {
 
@@ -378,4 +485,98 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testAmendOrder() {
+
+        AmendInstruction instruction = AmendInstruction.builder().build();
+
+        String value = "testid";
+
+        Map<AmendInstruction, String> results = singletonMap(instruction, value);
+
+        when(contexts.get("c1").amendOrders(key, singleton(instruction))).thenReturn(results);
+
+        assertEquals(target.amendOrders(key, singleton(instruction)), results);
+
+    }
+
+    @Test
+    public void testCancelAllOrders() {
+
+        when(contexts.get("c1").cancelAllOrders(key)).thenReturn(true);
+
+        assertEquals(target.cancelAllOrders(key), Boolean.TRUE);
+
+    }
+
+    @Test
+    public void testOrderStore() {
+
+        Key key = Key.builder().site("c1").instrument("i").timestamp(Instant.ofEpochMilli(1000)).build();
+        Context context = contexts.get("c1");
+        PropertyManager manager = module.getMock(PropertyManager.class);
+
+        // Disabled
+        assertNull(target.getStore(key));
+        target.listActiveOrders(key);
+        target.listActiveOrders(key);
+        verify(context, times(2)).listActiveOrders(key);
+
+        // Enabled, fetched on the first read only.
+        when(manager.getTradingRefresh("c1", "i")).thenReturn(Duration.ofMinutes(1));
+        when(manager.getNow()).thenReturn(Instant.ofEpochMilli(2000));
+        Order o1 = mock(Order.class);
+        when(o1.getId()).thenReturn("o1");
+        when(o1.getActive()).thenReturn(TRUE);
+        when(context.listActiveOrders(key)).thenReturn(singletonList(o1));
+        assertEquals(target.listActiveOrders(key), singletonList(o1));
+        assertEquals(target.listActiveOrders(key), singletonList(o1));
+        verify(context, times(3)).listActiveOrders(key);
+        assertNull(target.getStore(Key.builder().site("c1").build()));
+
+        // Found in memory
+        assertEquals(target.isOrderStreamed(key), TRUE);
+        assertSame(target.findOrder(key, "o1"), o1);
+        verify(context, never()).findOrder(any(), any());
+
+        // Created
+        CreateInstruction create = CreateInstruction.builder().price(ONE).size(ONE).build();
+        when(context.createOrders(key, singleton(create))).thenReturn(singletonMap(create, "o2"));
+        target.createOrders(key, singleton(create));
+        List<Order> orders = target.listActiveOrders(key);
+        assertEquals(orders.size(), 2);
+        assertEquals(orders.get(1).getId(), "o2");
+        assertEquals(orders.get(1).getRemainingQuantity(), ONE);
+
+        // Not yet listed by the site.
+        assertNull(target.findOrder(key, "o2"));
+        verify(context).findOrder(key, "o2");
+
+        // Cancelled
+        CancelInstruction cancel = CancelInstruction.builder().id("o1").build();
+        when(context.cancelOrders(key, singleton(cancel))).thenReturn(singletonMap(cancel, "o1"));
+        target.cancelOrders(key, singleton(cancel));
+        orders = target.listActiveOrders(key);
+        assertEquals(orders.size(), 1);
+        assertEquals(orders.get(0).getId(), "o2");
+
+        // Refreshed in the background, keeping the local changes.
+        Composite composite = new Composite("c1", "i");
+        Key next = Key.builder().site("c1").instrument("i").timestamp(Instant.ofEpochMilli(2000)).build();
+        when(context.listActiveOrders(next)).thenReturn(singletonList(o1));
+        target.refresh(composite, target.getStore(key));
+        orders = target.listActiveOrders(key);
+        assertEquals(orders.size(), 1);
+        assertEquals(orders.get(0).getId(), "o2");
+
+        // Disabled afterwards
+        OrderStore store = target.getStore(key);
+        when(manager.getTradingRefresh("c1", "i")).thenReturn(Duration.ZERO);
+        target.refresh(composite, store);
+        when(manager.getTradingRefresh("c1", "i")).thenReturn(Duration.ofMinutes(1));
+        assertNotNull(target.getStore(key));
+        assertNotSame(target.getStore(key), store);
+
+    }
+
 }
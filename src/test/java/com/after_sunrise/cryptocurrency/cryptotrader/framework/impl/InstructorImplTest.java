@@ -17,7 +17,7 @@ import java.util.Map;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.mockito.Mockito.*;
-import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.*;
 
 /**
  * @author takanori.takase
@@ -85,4 +85,26 @@ public class InstructorImplTest {
 
     }
 
+    @Test
+    public void testIsEquivalent() throws Exception {
+
+        Request.RequestBuilder builder = module.createRequestBuilder();
+
+        Request request = builder.site("test").build();
+
+        Advice a1 = Advice.builder().build();
+
+        Advice a2 = Advice.builder().build();
+
+        when(service.isEquivalent(context, request, a1, a2)).thenReturn(true);
+        assertTrue(target.isEquivalent(context, request, a1, a2));
+        assertFalse(target.isEquivalent(context, request, a2, a1));
+
+        // Site not found
+        request = builder.site(null).build();
+        assertFalse(target.isEquivalent(context, request, a1, a2));
+        verify(service, times(2)).isEquivalent(any(), any(), any(), any());
+
+    }
+
 }
@@ -0,0 +1,184 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
+import static java.math.BigDecimal.valueOf;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class OrderStoreTest {
+
+    private OrderStore target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new OrderStore();
+    }
+
+    private Order order(String id, Boolean active, BigDecimal quantity) {
+        Order order = mock(Order.class);
+        when(order.getId()).thenReturn(id);
+        when(order.getActive()).thenReturn(active);
+        when(order.getOrderQuantity()).thenReturn(quantity);
+        return order;
+    }
+
+    private Order.Execution execution(String id, String orderId, Instant time, BigDecimal size) {
+        Order.Execution execution = mock(Order.Execution.class);
+        when(execution.getId()).thenReturn(id);
+        when(execution.getOrderId()).thenReturn(orderId);
+        when(execution.getTime()).thenReturn(time);
+        when(execution.getSize()).thenReturn(size);
+        return execution;
+    }
+
+    @Test
+    public void testSync() {
+
+        Order o1 = order("o1", TRUE, valueOf(1));
+        Order o2 = order("o2", FALSE, valueOf(1));
+        Order o3 = order(null, TRUE, valueOf(1));
+
+        // No snapshot
+        assertNull(target.list());
+        assertNull(target.find("o1"));
+
+        target.sync(target.begin(), asList(o1, o2, o3, null), Instant.ofEpochMilli(1));
+        assertEquals(target.list(), singletonList(o1));
+        assertSame(target.find("o1"), o1);
+        assertNull(target.find("o2"));
+        assertNull(target.find(null));
+
+    }
+
+    @Test
+    public void testCreatedAndCancelled() {
+
+        Order o1 = order("o1", TRUE, valueOf(1));
+        target.sync(target.begin(), singletonList(o1), Instant.ofEpochMilli(1));
+
+        CreateInstruction create = CreateInstruction.builder().price(valueOf(10)).size(valueOf(-2)).build();
+        target.created("o2", "p", create);
+        target.created(null, "p", create);
+        target.created("o3", "p", null);
+        target.cancelled("o1");
+        target.cancelled(null);
+
+        List<Order> orders = target.list();
+        assertEquals(orders.size(), 1);
+        assertEquals(orders.get(0).getId(), "o2");
+        assertEquals(orders.get(0).getProduct(), "p");
+        assertEquals(orders.get(0).getActive(), TRUE);
+        assertEquals(orders.get(0).getOrderPrice(), valueOf(10));
+        assertEquals(orders.get(0).getOrderQuantity(), valueOf(-2));
+        assertEquals(orders.get(0).getFilledQuantity(), BigDecimal.ZERO);
+        assertEquals(orders.get(0).getRemainingQuantity(), valueOf(-2));
+
+        // Not yet confirmed by the site.
+        assertNull(target.find("o2"));
+        assertNull(target.find("o1"));
+
+        // Stale snapshot, keeping the changes.
+        target.sync(target.begin(), singletonList(o1), Instant.ofEpochMilli(2));
+        assertEquals(target.list().size(), 1);
+        assertEquals(target.list().get(0).getId(), "o2");
+
+        // Another stale snapshot, trusting the site.
+        target.sync(target.begin(), singletonList(o1), Instant.ofEpochMilli(3));
+        assertEquals(target.list(), singletonList(o1));
+
+        // Reflected
+        Order o2 = order("o2", TRUE, valueOf(-2));
+        target.cancelled("o1");
+        target.sync(target.begin(), singletonList(o2), Instant.ofEpochMilli(4));
+        assertEquals(target.list(), singletonList(o2));
+        assertSame(target.find("o2"), o2);
+        target.sync(target.begin(), asList(o1, o2), Instant.ofEpochMilli(5));
+        assertEquals(target.list(), asList(o1, o2));
+
+    }
+
+    @Test
+    public void testAmended() {
+
+        Order o1 = order("o1", TRUE, valueOf(1));
+        Order o2 = order("o2", TRUE, valueOf(1));
+        target.sync(target.begin(), asList(o1, o2), Instant.ofEpochMilli(1));
+
+        // In-place
+        AmendInstruction a1 = AmendInstruction.builder().id("o1").price(valueOf(10)).size(valueOf(3)).build();
+        target.amended("o1", "p", a1);
+
+        // Replaced
+        AmendInstruction a2 = AmendInstruction.builder().id("o2").price(valueOf(20)).size(valueOf(-4)).build();
+        target.amended("o3", "p", a2);
+
+        // Invalid
+        target.amended(null, "p", a1);
+        target.amended("o4", "p", null);
+
+        List<Order> orders = target.list();
+        assertEquals(orders.size(), 2);
+        assertEquals(orders.get(0).getId(), "o1");
+        assertEquals(orders.get(0).getOrderPrice(), valueOf(10));
+        assertEquals(orders.get(0).getRemainingQuantity(), valueOf(3));
+        assertEquals(orders.get(1).getId(), "o3");
+        assertEquals(orders.get(1).getOrderPrice(), valueOf(20));
+        assertEquals(orders.get(1).getRemainingQuantity(), valueOf(-4));
+
+    }
+
+    @Test
+    public void testFilled() {
+
+        Instant time = Instant.ofEpochMilli(1000);
+
+        // No snapshot
+        target.filled(singletonList(execution("e0", "o1", time, valueOf(1))));
+        assertNull(target.list());
+
+        Order o1 = order("o1", TRUE, valueOf(-3));
+        Order o2 = order("o2", TRUE, valueOf(2));
+        target.sync(target.begin(), asList(o1, o2), time);
+
+        target.filled(asList(
+                execution("e1", "o1", time, valueOf(-1)),
+                execution("e1", "o1", time, valueOf(-1)), // Duplicate
+                execution("e2", "o1", time.minusMillis(1), valueOf(-1)), // Before snapshot
+                execution("e3", "o9", time, valueOf(-1)), // Unknown
+                execution("e4", "o2", time, null), // Invalid
+                execution("e5", "o2", null, valueOf(1)), // Invalid
+                execution("e6", "o2", time, valueOf(2)), // Fully filled
+                null
+        ));
+
+        List<Order> orders = target.list();
+        assertEquals(orders.size(), 1);
+        assertEquals(orders.get(0).getId(), "o1");
+        assertEquals(orders.get(0).getOrderQuantity(), valueOf(-3));
+        assertEquals(orders.get(0).getFilledQuantity(), valueOf(-1));
+        assertEquals(orders.get(0).getRemainingQuantity(), valueOf(-2));
+
+        target.filled(null);
+        assertEquals(target.list().size(), 1);
+
+    }
+
+}
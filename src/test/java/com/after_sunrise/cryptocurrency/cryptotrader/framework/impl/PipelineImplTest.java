@@ -5,17 +5,24 @@ import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.valueOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static org.mockito.Mockito.*;
@@ -65,7 +72,7 @@ public class PipelineImplTest {
         when(module.getMock(Adviser.class).advise(context, request, estimation)).thenReturn(advice);
         when(module.getMock(Instructor.class).instruct(context, request, advice)).thenReturn(instructions);
         when(module.getMock(Agent.class).manage(context, request, instructions)).thenReturn(results);
-        when(module.getMock(Agent.class).reconcile(context, request, results)).thenReturn(reconcile);
+        when(module.getMock(Agent.class).reconcileAsync(context, request, results)).thenReturn(completedFuture(reconcile));
 
         target.process(now, future, site, instrument);
 
@@ -73,7 +80,117 @@ public class PipelineImplTest {
         verify(module.getMock(Adviser.class)).advise(context, request, estimation);
         verify(module.getMock(Instructor.class)).instruct(context, request, advice);
         verify(module.getMock(Agent.class)).manage(context, request, instructions);
-        verify(module.getMock(Agent.class)).reconcile(context, request, results);
+        verify(module.getMock(Agent.class)).reconcileAsync(context, request, results);
+        verify(module.getMock(Agent.class), never()).reconcile(any(), any(), any());
+        verify(target).logElapsed(any(), eq(request), eq("Reconcile"));
+
+        // Reconcile failure
+        CompletableFuture<Map<Instruction, Boolean>> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("test"));
+        when(module.getMock(Agent.class).reconcileAsync(context, request, results)).thenReturn(failure);
+        target.process(now, future, site, instrument);
+        verify(target, times(2)).logElapsed(any(), eq(request), eq("Reconcile"));
+
+    }
+
+    @Test
+    public void testProcess_Unchanged() throws Exception {
+
+        Request request = module.createRequestBuilder().build();
+        String site = request.getSite();
+        String instrument = request.getInstrument();
+        Instant now = request.getCurrentTime();
+        Instant future = now.plusSeconds(30);
+        Estimation estimation = Estimation.builder().build();
+        Advice advice = Advice.builder().buyLimitPrice(valueOf(10)).build();
+        List<Instruction> instructions = Collections.emptyList();
+        Map<Instruction, String> results = emptyMap();
+
+        doReturn(request).when(target).createRequest(now, future, site, instrument);
+        when(module.getMock(PropertyManager.class).getTradingStable(site, instrument)).thenReturn(Duration.ofMinutes(1));
+        when(module.getMock(Estimator.class).estimate(context, request)).thenReturn(estimation);
+        when(module.getMock(Adviser.class).advise(context, request, estimation)).thenReturn(advice);
+        when(module.getMock(Instructor.class).instruct(context, request, advice)).thenReturn(instructions);
+        when(module.getMock(Agent.class).manage(context, request, instructions)).thenReturn(results);
+        when(module.getMock(Agent.class).reconcileAsync(context, request, results)).thenReturn(completedFuture(emptyMap()));
+        when(context.listActiveOrders(Key.from(request))).thenReturn(emptyList());
+        when(module.getMock(Instructor.class).isEquivalent(context, request, advice, advice)).thenReturn(true);
+
+        target.process(now, future, site, instrument);
+        target.process(now, future, site, instrument);
+        target.process(now, future, site, instrument);
+
+        verify(module.getMock(Adviser.class), times(3)).advise(context, request, estimation);
+        verify(module.getMock(Instructor.class), times(1)).instruct(context, request, advice);
+        verify(module.getMock(Agent.class), times(1)).manage(context, request, instructions);
+
+    }
+
+    @Test
+    public void testIsUnchanged() throws Exception {
+
+        Request request = module.createRequestBuilder().build();
+        Instant now = request.getCurrentTime();
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        Instructor instructor = module.getMock(Instructor.class);
+        Advice a1 = Advice.builder().buyLimitPrice(new BigDecimal("10")).sellLimitSize(ONE).build();
+        Advice a2 = Advice.builder().buyLimitPrice(new BigDecimal("10.1")).sellLimitSize(ONE).build();
+        List<Instruction> none = emptyList();
+        List<Instruction> some = singletonList(CreateInstruction.builder().build());
+        Order o1 = mock(Order.class);
+        Order o2 = mock(Order.class);
+        when(o1.getId()).thenReturn("o1");
+        when(o1.getOrderPrice()).thenReturn(valueOf(10));
+        when(o1.getRemainingQuantity()).thenReturn(valueOf(2));
+        when(o2.getId()).thenReturn("o1");
+        when(o2.getOrderPrice()).thenReturn(new BigDecimal("10.0"));
+        when(o2.getRemainingQuantity()).thenReturn(valueOf(1)); // Partially filled
+        when(context.listActiveOrders(any())).thenReturn(singletonList(o1));
+        when(instructor.isEquivalent(context, request, a1, a1)).thenReturn(true);
+        when(instructor.isEquivalent(context, request, a1, a2)).thenReturn(true);
+
+        // Disabled
+        target.record(request, a1, none);
+        assertFalse(target.isUnchanged(request, a1));
+
+        // Not yet steady
+        when(manager.getTradingStable(request.getSite(), request.getInstrument())).thenReturn(Duration.ofSeconds(10));
+        assertFalse(target.isUnchanged(request, a1));
+
+        // Instructed, not to be skipped until confirmed by a steady cycle.
+        target.record(request, a1, some);
+        assertFalse(target.isUnchanged(request, a1));
+
+        // Steady
+        target.record(request, a1, none);
+        assertTrue(target.isUnchanged(request, a1));
+        assertTrue(target.isUnchanged(request, a2));
+        verify(instructor).isEquivalent(context, request, a1, a2);
+
+        // Advice not equivalent.
+        assertFalse(target.isUnchanged(request, Advice.builder().build()));
+
+        // Orders changed
+        when(context.listActiveOrders(any())).thenReturn(singletonList(o2));
+        assertFalse(target.isUnchanged(request, a1));
+        target.record(request, a1, none);
+        assertTrue(target.isUnchanged(request, a1));
+
+        // Orders unknown
+        when(context.listActiveOrders(any())).thenReturn(null);
+        assertFalse(target.isUnchanged(request, a1));
+        target.record(request, a1, none);
+        when(context.listActiveOrders(any())).thenReturn(singletonList(o2));
+        assertFalse(target.isUnchanged(request, a1));
+
+        // Expired since the steady cycle.
+        target.record(request, a1, none);
+        Request later = Request.build(request).currentTime(now.plusSeconds(9)).build();
+        when(instructor.isEquivalent(context, later, a1, a1)).thenReturn(true);
+        assertTrue(target.isUnchanged(later, a1));
+        later = Request.build(request).currentTime(now.plusSeconds(10)).build();
+        when(instructor.isEquivalent(context, later, a1, a1)).thenReturn(true);
+        assertFalse(target.isUnchanged(later, a1));
 
     }
 
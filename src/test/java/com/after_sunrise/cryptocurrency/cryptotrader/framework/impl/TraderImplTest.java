@@ -1,7 +1,9 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Bulkhead;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Pipeline;
 import org.testng.annotations.BeforeMethod;
@@ -12,6 +14,9 @@ import java.time.Instant;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.singletonList;
@@ -228,4 +233,78 @@ public class TraderImplTest {
 
     }
 
+    @Test(timeOut = 5000)
+    public void testProcessPipeline_Bulkhead() throws InterruptedException {
+
+        Instant now = Instant.now();
+        String site = "s";
+        String instrument = "i";
+
+        List<Composite> targets = singletonList(new Composite(site, instrument));
+        when(module.getMock(PropertyManager.class).getTradingTargets()).thenReturn(targets);
+        when(module.getMock(PropertyManager.class).getTradingInterval()).thenReturn(Duration.ofMillis(123));
+        when(module.getMock(PropertyManager.class).getTradingFrequency(site, instrument)).thenReturn(1);
+        when(module.getMock(PropertyManager.class).getTradingBulkhead()).thenReturn(2);
+
+        target.processPipeline(now);
+        verify(pipeline).process(now, now.plusMillis(123), site, instrument);
+        verify(module.getMock(ExecutorFactory.class)).get(any(Class.class), eq(site), eq(2), eq(Integer.MAX_VALUE));
+
+        // Failure
+        doThrow(new RuntimeException("test")).when(pipeline).process(any(), any(), any(), any());
+        target.processPipeline(now);
+        verify(pipeline, times(2)).process(now, now.plusMillis(123), site, instrument);
+
+    }
+
+    @Test(timeOut = 5000)
+    public void testProcessPipeline_Stalled() throws Exception {
+
+        Instant now = Instant.now();
+        String site = "s";
+        String instrument = "i";
+
+        List<Composite> targets = singletonList(new Composite(site, instrument));
+        when(module.getMock(PropertyManager.class).getTradingTargets()).thenReturn(targets);
+        when(module.getMock(PropertyManager.class).getTradingInterval()).thenReturn(Duration.ofMillis(50));
+        when(module.getMock(PropertyManager.class).getTradingFrequency(site, instrument)).thenReturn(1);
+        when(module.getMock(PropertyManager.class).getTradingBulkhead()).thenReturn(2);
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        when(module.getMock(ExecutorFactory.class).get(any(Class.class), anyString(), anyInt(), anyInt()))
+                .thenReturn(new Bulkhead(site, executor, 2, Integer.MAX_VALUE));
+
+        CountDownLatch stall = new CountDownLatch(1);
+
+        doAnswer(i -> {
+            stall.await();
+            return null;
+        }).doNothing().when(pipeline).process(any(), any(), any(), any());
+
+        try {
+
+            // Left running after the interval.
+            long millis = System.currentTimeMillis();
+            target.processPipeline(now);
+            assertTrue(System.currentTimeMillis() - millis < 3000);
+            verify(pipeline).process(now, now.plusMillis(50), site, instrument);
+
+            // Skipped while stalled.
+            target.processPipeline(now);
+            verify(pipeline).process(now, now.plusMillis(50), site, instrument);
+
+            // Resumed once completed.
+            stall.countDown();
+            while (executor.getActiveCount() > 0) {
+                Thread.sleep(10);
+            }
+            target.processPipeline(now);
+            verify(pipeline, times(2)).process(now, now.plusMillis(50), site, instrument);
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
 }
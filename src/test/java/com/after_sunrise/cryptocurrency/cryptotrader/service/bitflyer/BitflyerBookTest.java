@@ -0,0 +1,113 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer;
+
+import com.after_sunrise.cryptocurrency.bitflyer4j.entity.Board;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.math.BigDecimal.ZERO;
+import static java.math.BigDecimal.valueOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BitflyerBookTest {
+
+    private BitflyerBook target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new BitflyerBook();
+    }
+
+    private Board createBoard(BigDecimal[][] asks, BigDecimal[][] bids) {
+
+        Board board = mock(Board.class);
+
+        List<Board.Quote> askQuotes = new ArrayList<>();
+
+        for (BigDecimal[] values : asks) {
+            Board.Quote quote = mock(Board.Quote.class);
+            when(quote.getPrice()).thenReturn(values[0]);
+            when(quote.getSize()).thenReturn(values[1]);
+            askQuotes.add(quote);
+        }
+
+        List<Board.Quote> bidQuotes = new ArrayList<>();
+
+        for (BigDecimal[] values : bids) {
+            Board.Quote quote = mock(Board.Quote.class);
+            when(quote.getPrice()).thenReturn(values[0]);
+            when(quote.getSize()).thenReturn(values[1]);
+            bidQuotes.add(quote);
+        }
+
+        when(board.getAsk()).thenReturn(askQuotes);
+        when(board.getBid()).thenReturn(bidQuotes);
+
+        return board;
+
+    }
+
+    @Test
+    public void testBook() throws Exception {
+
+        Instant t1 = Instant.ofEpochSecond(1234567890);
+        Instant t2 = t1.plusSeconds(1);
+        Instant t3 = t2.plusSeconds(1);
+
+        Board snapshot = createBoard(
+                new BigDecimal[][]{{valueOf(101), valueOf(1)}, {valueOf(102), valueOf(2)}, {null, valueOf(9)}},
+                new BigDecimal[][]{{valueOf(99), valueOf(3)}, {valueOf(98), valueOf(4)}, {valueOf(97), null}}
+        );
+
+        Board diff = createBoard(
+                new BigDecimal[][]{{valueOf(102), ZERO}, {valueOf(98), valueOf(5)}},
+                new BigDecimal[][]{{valueOf(97), valueOf(6)}}
+        );
+
+        // Not initialized
+        assertFalse(target.update(t1, diff));
+        assertNull(target.getView());
+        assertNull(target.getSnapshotTime());
+
+        // Snapshot
+        target.snapshot(t1, snapshot);
+        target.snapshot(t3, null);
+        BitflyerBoard view = target.getView();
+        assertSame(target.getView(), view);
+        assertSame(view.getDelegate(), snapshot);
+        assertEquals(view.getTimestamp(), t1);
+        assertEquals(view.getAsks().toString(), "{101=1, 102=2}");
+        assertEquals(view.getBids().toString(), "{99=3, 98=4}");
+        assertEquals(target.getSnapshotTime(), t1);
+
+        // Diff (Crossing ask removes the bids.)
+        assertTrue(target.update(t2, diff));
+        assertFalse(target.update(t3, null));
+        assertNotSame(target.getView(), view);
+        assertEquals(view.getAsks().toString(), "{101=1, 102=2}");
+        assertEquals(view.getBids().toString(), "{99=3, 98=4}");
+        assertEquals(target.getView().getTimestamp(), t2);
+        assertEquals(target.getView().getAsks().toString(), "{98=5, 101=1}");
+        assertEquals(target.getView().getBids().toString(), "{97=6}");
+        assertEquals(target.getSnapshotTime(), t1);
+
+        // Resync
+        target.snapshot(t3, snapshot);
+        assertEquals(target.getView().getTimestamp(), t3);
+        assertEquals(target.getView().getAsks().toString(), "{101=1, 102=2}");
+        assertEquals(target.getView().getBids().toString(), "{99=3, 98=4}");
+        assertEquals(target.getSnapshotTime(), t3);
+
+    }
+
+}
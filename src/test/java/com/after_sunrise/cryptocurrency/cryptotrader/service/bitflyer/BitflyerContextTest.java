@@ -23,6 +23,7 @@ import java.math.BigDecimal;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
@@ -43,6 +44,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toSet;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
@@ -201,16 +203,17 @@ public class BitflyerContextTest {
         assertSame(target.getBoard(key).getDelegate(), board);
         verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
+        verify(realtimeService, times(1)).subscribeBoardSnapshot(singletonList("a"));
 
         // Cached
         assertSame(target.getBoard(key).getDelegate(), board);
         verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
-        // Not found
+        // Resynchronized
         target.clear();
-        assertSame(target.getBoard(key), null);
-        verify(marketService, times(2)).getBoard(any());
+        assertSame(target.getBoard(key).getDelegate(), board);
+        verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Realtime found, but no time.
@@ -218,7 +221,7 @@ public class BitflyerContextTest {
         target.clear();
         target.onBoardsSnapshot("a", board);
         assertSame(target.getBoard(key), null);
-        verify(marketService, times(3)).getBoard(any());
+        verify(marketService, times(2)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Realtime found, but old.
@@ -226,6 +229,14 @@ public class BitflyerContextTest {
         target.clear();
         target.onBoardsSnapshot("a", board);
         assertSame(target.getBoard(key), null);
+        verify(marketService, times(3)).getBoard(any());
+        verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
+
+        // Realtime updated, but snapshot is old.
+        doReturn(now.toInstant()).when(target).getNow();
+        target.clear();
+        target.onBoards("a", board);
+        assertSame(target.getBoard(key), null);
         verify(marketService, times(4)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
@@ -239,6 +250,64 @@ public class BitflyerContextTest {
 
     }
 
+    @Test
+    public void testOnBoards() throws Exception {
+
+        Function<Object[], Board.Quote> f = values -> {
+            Board.Quote q = mock(Board.Quote.class);
+            when(q.getPrice()).thenReturn((BigDecimal) values[0]);
+            when(q.getSize()).thenReturn((BigDecimal) values[1]);
+            return q;
+        };
+
+        List<Board.Quote> snapshotAsks = asList(
+                f.apply(new Object[]{valueOf(102), valueOf(2)}),
+                f.apply(new Object[]{valueOf(101), valueOf(1)})
+        );
+        List<Board.Quote> snapshotBids = asList(
+                f.apply(new Object[]{valueOf(99), valueOf(3)}),
+                f.apply(new Object[]{valueOf(98), valueOf(4)})
+        );
+        Board snapshot = mock(Board.class);
+        when(snapshot.getAsk()).thenReturn(snapshotAsks);
+        when(snapshot.getBid()).thenReturn(snapshotBids);
+
+        List<Board.Quote> diffAsks = asList(
+                f.apply(new Object[]{valueOf(101), ZERO}),
+                f.apply(new Object[]{valueOf(103), valueOf(5)})
+        );
+        List<Board.Quote> diffBids = singletonList(
+                f.apply(new Object[]{valueOf(97), valueOf(6)})
+        );
+        Board diff = mock(Board.class);
+        when(diff.getAsk()).thenReturn(diffAsks);
+        when(diff.getBid()).thenReturn(diffBids);
+
+        Instant now = Instant.now();
+        Key key = Key.builder().instrument("i").timestamp(now).build();
+        doReturn("a").when(target).convertProductAlias(key);
+        doReturn(now).when(target).getNow();
+
+        // Diff before subscription.
+        target.onBoards("a", diff);
+        target.onBoards("a", null);
+
+        // Snapshot
+        target.onBoardsSnapshot("a", snapshot);
+        target.onBoardsSnapshot("a", null);
+        assertEquals(target.getAskPrices(key).toString(), "{101=1, 102=2}");
+        assertEquals(target.getBidPrices(key).toString(), "{99=3, 98=4}");
+        verifyZeroInteractions(marketService);
+
+        // Diff
+        target.clear();
+        target.onBoards("a", diff);
+        assertEquals(target.getAskPrices(key).toString(), "{102=2, 103=5}");
+        assertEquals(target.getBidPrices(key).toString(), "{99=3, 98=4, 97=6}");
+        verifyZeroInteractions(marketService);
+
+    }
+
     @Test
     public void testGetTick() throws Exception {
 
@@ -394,17 +463,172 @@ public class BitflyerContextTest {
         Key key = Key.from(Request.builder().instrument("inst").build());
         List<Trade> results = target.listTrades(key, null);
         assertEquals(results.size(), 6);
-        verify(marketService, times(2)).getExecutions(any());
+        verify(marketService, times(1)).getExecutions(any());
         verify(realtimeService).subscribeExecution(singletonList("id"));
 
         // Filtered by time (cached)
         List<Trade> filtered = target.listTrades(key, time.toInstant().plusSeconds(2));
         assertEquals(filtered.size(), 5);
-        verify(marketService, times(2)).getExecutions(any());
+        verify(marketService, times(1)).getExecutions(any());
         verify(realtimeService, times(1)).subscribeExecution(any());
 
     }
 
+    @Test
+    public void testBackfillExecutions() {
+
+        ZonedDateTime time = ZonedDateTime.now();
+        doReturn(time.toInstant()).when(target).getNow();
+        doReturn(4).when(module.getMock(Configuration.class)).getInt(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer.BitflyerContext.trade.queries", 32
+        );
+
+        Function<Long, Execution> f = id -> {
+            Execution exec = mock(Execution.class);
+            when(exec.getId()).thenReturn(id);
+            when(exec.getTimestamp()).thenReturn(time.minusSeconds(10001 - id));
+            when(exec.getPrice()).thenReturn(BigDecimal.valueOf(100));
+            when(exec.getSize()).thenReturn(BigDecimal.valueOf(id));
+            return exec;
+        };
+
+        List<Execution.Request> requests = new ArrayList<>();
+
+        when(marketService.getExecutions(any())).thenAnswer(i -> {
+
+            Execution.Request r = i.getArgumentAt(0, Execution.Request.class);
+
+            requests.add(r);
+
+            if (r.getBefore() == null) {
+                return completedFuture(asList(f.apply(10010L), f.apply(10002L)));
+            }
+
+            return completedFuture(asList(f.apply(r.getBefore() - 1), f.apply(r.getAfter() + 1)));
+
+        });
+
+        NavigableMap<Instant, BitflyerTrade> trades = new TreeMap<>();
+        assertTrue(target.backfillExecutions("id", trades).isDone());
+        assertEquals(trades.size(), 8);
+
+        assertEquals(requests.size(), 4);
+        assertEquals(requests.get(0).getProduct(), "id");
+        assertEquals(requests.get(0).getCount(), (Integer) 1000);
+        assertNull(requests.get(0).getBefore());
+        assertNull(requests.get(0).getAfter());
+        assertEquals(requests.get(1).getBefore(), (Long) 10002L);
+        assertEquals(requests.get(1).getAfter(), (Long) 9993L);
+        assertEquals(requests.get(2).getBefore(), (Long) 9994L);
+        assertEquals(requests.get(2).getAfter(), (Long) 9985L);
+        assertEquals(requests.get(3).getBefore(), (Long) 9986L);
+        assertEquals(requests.get(3).getAfter(), (Long) 9977L);
+
+        // Stop at cutoff
+        requests.clear();
+        trades.clear();
+        doReturn(time.toInstant().plus(Duration.ofDays(3)).plusSeconds(5)).when(target).getNow();
+        doAnswer(i -> {
+
+            Execution.Request r = i.getArgumentAt(0, Execution.Request.class);
+
+            requests.add(r);
+
+            if (r.getBefore() == null) {
+                return completedFuture(asList(f.apply(10010L), f.apply(10007L)));
+            }
+
+            return completedFuture(asList(f.apply(r.getBefore() - 1), f.apply(r.getAfter() + 1)));
+
+        }).when(marketService).getExecutions(any());
+        assertTrue(target.backfillExecutions("id", trades).isDone());
+        assertEquals(requests.size(), 2);
+
+        // Failed windows
+        requests.clear();
+        trades.clear();
+        doReturn(time.toInstant()).when(target).getNow();
+        doAnswer(i -> {
+
+            Execution.Request r = i.getArgumentAt(0, Execution.Request.class);
+
+            requests.add(r);
+
+            if (r.getBefore() == null) {
+                return completedFuture(asList(f.apply(10010L), f.apply(10002L)));
+            }
+
+            CompletableFuture<List<Execution>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("test"));
+            return failed;
+
+        }).when(marketService).getExecutions(any());
+        assertTrue(target.backfillExecutions("id", trades).isDone());
+        assertEquals(trades.size(), 2);
+        assertEquals(requests.size(), 4);
+
+        // Nothing to backfill
+        requests.clear();
+        doReturn(null).when(marketService).getExecutions(any());
+        assertTrue(target.backfillExecutions("id", trades).isDone());
+        assertEquals(requests.size(), 0);
+        verify(marketService, times(11)).getExecutions(any());
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testBackfillExecutions_Limited() throws Exception {
+
+        ZonedDateTime time = ZonedDateTime.now();
+        doReturn(time.toInstant()).when(target).getNow();
+        doReturn(4).when(module.getMock(Configuration.class)).getInt(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer.BitflyerContext.trade.queries", 32
+        );
+        doReturn(new BigDecimal("20")).when(module.getMock(Configuration.class)).getBigDecimal(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer.BitflyerContext.limit.rate", null
+        );
+        doReturn(BigDecimal.ONE).when(module.getMock(Configuration.class)).getBigDecimal(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer.BitflyerContext.limit.burst", null
+        );
+
+        Function<Long, Execution> f = id -> {
+            Execution exec = mock(Execution.class);
+            when(exec.getId()).thenReturn(id);
+            when(exec.getTimestamp()).thenReturn(time.minusSeconds(10001 - id));
+            return exec;
+        };
+
+        List<Execution.Request> requests = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+
+        when(marketService.getExecutions(any())).thenAnswer(i -> {
+
+            Execution.Request r = i.getArgumentAt(0, Execution.Request.class);
+
+            requests.add(r);
+
+            threads.add(Thread.currentThread().getName());
+
+            if (r.getBefore() == null) {
+                return completedFuture(asList(f.apply(10010L), f.apply(10002L)));
+            }
+
+            return completedFuture(asList(f.apply(r.getBefore() - 1), f.apply(r.getAfter() + 1)));
+
+        });
+
+        // Windows limited after the first token, and retried later instead of dropped.
+        CompletableFuture<Void> future = target.backfillExecutions("id", new TreeMap<>());
+        assertFalse(future.isDone());
+        future.get();
+        assertEquals(requests.size(), 4);
+        assertNull(requests.get(0).getBefore());
+        assertEquals(requests.stream().skip(1).map(Execution.Request::getBefore).collect(toSet()),
+                Sets.newHashSet(10002L, 9994L, 9986L));
+        assertTrue(threads.contains("BitflyerContext-backfill"));
+
+    }
+
     @Test
     public void testListTrades_Empty() {
 
@@ -1170,6 +1394,11 @@ public class BitflyerContextTest {
 
         TradeExecution r1 = mock(TradeExecution.class);
         TradeExecution r2 = mock(TradeExecution.class);
+        when(r1.getId()).thenReturn(1L);
+        when(r2.getId()).thenReturn(2L);
+        ZonedDateTime time = ZonedDateTime.now();
+        when(r1.getExecDate()).thenReturn(time);
+        when(r2.getExecDate()).thenReturn(time);
         when(r1.getPrice()).thenReturn(ONE);
         when(r2.getPrice()).thenReturn(TEN);
         when(orderService.listExecutions(any())).thenAnswer(i -> {
@@ -1276,6 +1505,50 @@ public class BitflyerContextTest {
 
     }
 
+    @Test
+    public void testCancelAllOrders() throws Exception {
+
+        Key key = Key.from(Request.builder().instrument("inst").build());
+        doReturn("prod").when(target).convertProductAlias(key);
+
+        BitflyerOrder.Child oc1 = mock(BitflyerOrder.Child.class);
+        BitflyerOrder.Parent op1 = mock(BitflyerOrder.Parent.class);
+        BitflyerOrder.Parent op2 = mock(BitflyerOrder.Parent.class);
+        when(oc1.getId()).thenReturn("cid1");
+        when(op1.getId()).thenReturn("pid1");
+        when(op2.getId()).thenReturn("pid2");
+        when(oc1.getActive()).thenReturn(true);
+        when(op1.getActive()).thenReturn(true);
+        when(op2.getActive()).thenReturn(false);
+        doReturn(Arrays.asList(oc1, op1, null, op2)).when(target).fetchOrder(key);
+
+        doAnswer(i -> {
+            assertEquals(i.getArgumentAt(0, ProductCancel.Request.class).getProduct(), "prod");
+            return completedFuture(mock(ProductCancel.class));
+        }).when(orderService).cancelProduct(any());
+        doAnswer(i -> {
+            assertEquals(i.getArgumentAt(0, ParentCancel.Request.class).getProduct(), "prod");
+            assertEquals(i.getArgumentAt(0, ParentCancel.Request.class).getAcceptanceId(), "pid1");
+            return completedFuture(mock(ParentCancel.class));
+        }).when(orderService).cancelParent(any());
+
+        // Children with the product, and the active parents individually.
+        assertEquals(target.cancelAllOrders(key), Boolean.TRUE);
+        verify(orderService).cancelProduct(any());
+        verify(orderService).cancelParent(any());
+        verifyNoMoreInteractions(orderService);
+
+        // Parent failure
+        doReturn(completedFuture(null)).when(orderService).cancelParent(any());
+        assertEquals(target.cancelAllOrders(key), Boolean.FALSE);
+
+        // Unknown product
+        doReturn(null).when(target).convertProductAlias(key);
+        assertNull(target.cancelAllOrders(key));
+        verify(orderService, times(2)).cancelProduct(any());
+
+    }
+
     @Test
     public void testCancelOrder() throws Exception {
 
@@ -1,6 +1,8 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -11,18 +13,35 @@ import com.google.common.collect.Sets;
 import com.google.common.io.Resources;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -35,8 +54,10 @@ import static java.math.BigDecimal.valueOf;
 import static java.math.RoundingMode.DOWN;
 import static java.math.RoundingMode.UP;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.Collections.*;
 import static java.util.Optional.of;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
@@ -62,6 +83,12 @@ public class BitmexContextTest {
 
         doReturn(null).when(target).request(any(), any(), any(), any());
 
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+
+        doReturn(completedFuture(null)).when(target).requestAsync(any(), any(), any(), any(), any());
+
+        doNothing().when(target).scheduleSocket(any(), any());
+
     }
 
     @AfterMethod
@@ -77,6 +104,8 @@ public class BitmexContextTest {
 
         doCallRealMethod().when(target).request(any(), any(), any(), any());
 
+        doCallRealMethod().when(target).request(any(), any(), any(), any(), any());
+
         Key key = Key.builder().instrument("XBT_QT").timestamp(Instant.now()).build();
 
         // Tick
@@ -115,6 +144,8 @@ public class BitmexContextTest {
 
         doCallRealMethod().when(target).request(any(), any(), any(), any());
 
+        doCallRealMethod().when(target).request(any(), any(), any(), any(), any());
+
         Key key = Key.builder().instrument("XBJ_QT").timestamp(Instant.now()).build();
 
         Map<CreateInstruction, String> ids = target.createOrders(
@@ -201,10 +232,12 @@ public class BitmexContextTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testQueryTick() throws Exception {
 
-        doReturn(Resources.toString(getResource("json/bitmex_ticker.json"), UTF_8)).when(target)
-                .request(GET, "https://www.bitmex.com/api/v1/instrument/activeAndIndices", null, null);
+        String data = Resources.toString(getResource("json/bitmex_ticker.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data))).when(target)
+                .request(eq(GET), eq("https://www.bitmex.com/api/v1/instrument/activeAndIndices"), eq(null), eq(null), any());
 
         Key key1 = Key.builder().instrument("XBTUSD").build();
         Key key2 = Key.builder().instrument("BXBT").build();
@@ -294,12 +327,12 @@ public class BitmexContextTest {
 
         // Empty
         target.clear();
-        doReturn(null).when(target).request(any(), any(), any(), any());
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
         assertFalse(target.queryTick(key1).isPresent());
 
         // Exception
         target.clear();
-        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any());
+        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any(), any());
         assertFalse(target.queryTick(key1).isPresent());
 
         // XBT
@@ -326,10 +359,12 @@ public class BitmexContextTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testQueryBooks() throws Exception {
 
-        doReturn(Resources.toString(getResource("json/bitmex_book.json"), UTF_8)).when(target)
-                .request(GET, "https://www.bitmex.com/api/v1/orderBook/L2?symbol=XBTUSD&depth=10", null, null);
+        String data = Resources.toString(getResource("json/bitmex_book.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data))).when(target)
+                .request(eq(GET), eq("https://www.bitmex.com/api/v1/orderBook/L2?symbol=XBTUSD&depth=10"), eq(null), eq(null), any());
 
         Key key = Key.builder().instrument("XBT???").build();
         doReturn("XBTUSD").when(target).convertAlias(key);
@@ -351,16 +386,131 @@ public class BitmexContextTest {
 
         // Empty
         target.clear();
-        doReturn(null).when(target).request(any(), any(), any(), any());
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
         assertEquals(target.queryBooks(key).size(), 0);
 
         // Exception
         target.clear();
-        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any());
+        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any(), any());
         assertEquals(target.queryBooks(key).size(), 0);
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testQueryTickAsync() throws Exception {
+
+        String data = Resources.toString(getResource("json/bitmex_ticker.json"), UTF_8);
+        doAnswer(i -> completedFuture(i.getArgumentAt(4, Converter.class).convert(new StringReader(data)))).when(target)
+                .requestAsync(eq(GET), eq("https://www.bitmex.com/api/v1/instrument/activeAndIndices"), eq(null), eq(null), any());
+
+        Key key1 = Key.builder().instrument("XBTUSD").build();
+        Key key2 = Key.builder().instrument("XBT_FR").build();
+        Key key3 = Key.builder().instrument("XBT").timestamp(Instant.ofEpochMilli(123)).build();
+        doReturn("XBTUSD").when(target).convertAlias(key1);
+        doReturn("XBTUSD").when(target).convertAlias(key2);
+
+        Optional<BitmexTick> result = target.queryTickAsync(key1).get();
+        assertEquals(result.get().getSymbol(), "XBTUSD");
+        assertEquals(result.get().getAsk(), new BigDecimal("6593.9"));
+        assertEquals(result.get().getBid(), new BigDecimal("6593.8"));
+
+        result = target.queryTickAsync(key2).get();
+        assertEquals(result.get().getSymbol(), "XBT_FR");
+        assertEquals(result.get().getLast(), new BigDecimal("0.998787"));
+
+        result = target.queryTickAsync(key3).get();
+        assertEquals(result.get().getSymbol(), "XBT");
+        assertEquals(result.get().getLast(), ONE);
+
+        // Cached, and shared with the blocking variant.
+        assertEquals(target.queryTick(key1).get().getSymbol(), "XBTUSD");
+        verify(target).requestAsync(any(), any(), any(), any(), any());
+        verify(target, never()).request(any(), any(), any(), any(), any());
+
+        // Failure
+        target.clear();
+        CompletableFuture<?> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("test"));
+        doReturn(failed).when(target).requestAsync(any(), any(), any(), any(), any());
+        assertFalse(target.queryTickAsync(key1).get().isPresent());
+
+        // Null key
+        assertFalse(target.queryTickAsync(null).get().isPresent());
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testQueryBooksAsync() throws Exception {
+
+        String data = Resources.toString(getResource("json/bitmex_book.json"), UTF_8);
+        doAnswer(i -> completedFuture(i.getArgumentAt(4, Converter.class).convert(new StringReader(data)))).when(target)
+                .requestAsync(eq(GET), eq("https://www.bitmex.com/api/v1/orderBook/L2?symbol=XBTUSD&depth=10"), eq(null), eq(null), any());
+
+        Key key = Key.builder().instrument("XBT???").build();
+        doReturn("XBTUSD").when(target).convertAlias(key);
+
+        List<BitmexBook> result = target.queryBooksAsync(key).get();
+        assertEquals(result.size(), 4);
+        assertEquals(result.get(0).getPrice(), new BigDecimal("6573.5"));
+        assertEquals(result.get(3).getPrice(), new BigDecimal("6571.5"));
+
+        // Empty
+        target.clear();
+        doReturn(completedFuture(null)).when(target).requestAsync(any(), any(), any(), any(), any());
+        assertEquals(target.queryBooksAsync(key).get().size(), 0);
+
+        // Null key
+        assertEquals(target.queryBooksAsync(null).get().size(), 0);
+
+    }
+
+    @Test
+    public void testMarketDataAsync() throws Exception {
+
+        Key key = Key.builder().build();
+
+        List<BitmexBook> books = new ArrayList<>();
+        books.add(BitmexBook.builder().side("Sell").price(valueOf(9)).size(valueOf(19)).build());
+        books.add(BitmexBook.builder().side("Sell").price(valueOf(7)).size(valueOf(17)).build());
+        books.add(BitmexBook.builder().side("Buy").price(valueOf(3)).size(valueOf(27)).build());
+        books.add(BitmexBook.builder().side("Buy").price(valueOf(1)).size(valueOf(29)).build());
+        doReturn(completedFuture(books)).when(target).queryBooksAsync(key);
+
+        // Listed
+        BitmexTick tick = BitmexTick.builder().ask(TEN).bid(ONE).mid(valueOf(5)).last(valueOf(6)).build();
+        doReturn(completedFuture(of(tick))).when(target).queryTickAsync(key);
+        assertEquals(target.getBestAskPriceAsync(key).get(), TEN);
+        assertEquals(target.getBestBidPriceAsync(key).get(), ONE);
+        assertEquals(target.getMidPriceAsync(key).get(), valueOf(5));
+        assertEquals(target.getLastPriceAsync(key).get(), valueOf(6));
+        assertEquals(target.getBestAskSizeAsync(key).get(), valueOf(17));
+        assertEquals(target.getBestBidSizeAsync(key).get(), valueOf(27));
+        assertEquals(target.getAskPricesAsync(key).get().keySet(), Sets.newHashSet(valueOf(9), valueOf(7)));
+        assertEquals(target.getBidPricesAsync(key).get().keySet(), Sets.newHashSet(valueOf(3), valueOf(1)));
+
+        // Unlisted
+        tick = BitmexTick.builder().ask(TEN).bid(ONE).mid(valueOf(5)).last(valueOf(6)).state("Unlisted").build();
+        doReturn(completedFuture(of(tick))).when(target).queryTickAsync(key);
+        assertEquals(target.getBestAskPriceAsync(key).get(), valueOf(6));
+        assertEquals(target.getBestBidPriceAsync(key).get(), valueOf(6));
+        assertEquals(target.getMidPriceAsync(key).get(), valueOf(6));
+        assertEquals(target.getBestAskSizeAsync(key).get(), ZERO);
+        assertEquals(target.getBestBidSizeAsync(key).get(), ZERO);
+        assertEquals(target.getAskPricesAsync(key).get().size(), 0);
+        assertEquals(target.getBidPricesAsync(key).get().size(), 0);
+
+        // No data
+        doReturn(completedFuture(Optional.empty())).when(target).queryTickAsync(key);
+        doReturn(completedFuture(Collections.emptyList())).when(target).queryBooksAsync(key);
+        assertEquals(target.getBestAskPriceAsync(key).get(), null);
+        assertEquals(target.getLastPriceAsync(key).get(), null);
+        assertEquals(target.getBestAskSizeAsync(key).get(), null);
+        assertEquals(target.getBidPricesAsync(key).get().size(), 0);
+
+    }
+
     @Test
     public void testGetBestAskPrice() throws Exception {
 
@@ -467,16 +617,19 @@ public class BitmexContextTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testListTrades() throws Exception {
 
-        doReturn(Resources.toString(getResource("json/bitmex_trade.json"), UTF_8))
-                .when(target).request(GET,
-                "https://www.bitmex.com/api/v1/trade?count=500&reverse=true&symbol=XBTZ17",
-                null, null);
-        doReturn(Resources.toString(getResource("json/bitmex_bucket.json"), UTF_8))
-                .when(target).request(GET,
-                "https://www.bitmex.com/api/v1/trade/bucketed?binSize=1m&partial=true&count=500&reverse=true&symbol=XBJZ17",
-                null, null);
+        String trade = Resources.toString(getResource("json/bitmex_trade.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(trade)))
+                .when(target).request(eq(GET),
+                eq("https://www.bitmex.com/api/v1/trade?count=500&reverse=true&symbol=XBTZ17"),
+                eq(null), eq(null), any());
+        String bucket = Resources.toString(getResource("json/bitmex_bucket.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(bucket)))
+                .when(target).request(eq(GET),
+                eq("https://www.bitmex.com/api/v1/trade/bucketed?binSize=1m&partial=true&count=500&reverse=true&symbol=XBJZ17"),
+                eq(null), eq(null), any());
 
         Key key = Key.builder().instrument("XBT_QT").timestamp(Instant.parse("2017-11-01T23:15:48.000Z")).build();
         BitmexTick tick = spy(BitmexTick.builder().timestamp(Instant.now()).last(TEN).build());
@@ -551,6 +704,178 @@ public class BitmexContextTest {
 
     }
 
+    @Test(timeOut = 60000)
+    public void testRealtime() throws Exception {
+
+        Map<String, List<String>> responses = new HashMap<>();
+        responses.put("instrument", singletonList("{\"table\":\"instrument\",\"action\":\"partial\",\"data\":["
+                + "{\"symbol\":\"XBTUSD\",\"state\":\"Open\",\"timestamp\":\"2017-11-01T22:15:47.000Z\","
+                + "\"lastPrice\":6601.7,\"askPrice\":6602,\"bidPrice\":6601.5,\"midPrice\":6601.75}]}"));
+        responses.put("orderBookL2_25:XBTUSD", asList(
+                "{\"table\":\"orderBookL2_25\",\"action\":\"partial\",\"filter\":{\"symbol\":\"XBTUSD\"},\"data\":["
+                        + "{\"symbol\":\"XBTUSD\",\"id\":1,\"side\":\"Sell\",\"size\":10,\"price\":6602},"
+                        + "{\"symbol\":\"XBTUSD\",\"id\":2,\"side\":\"Buy\",\"size\":20,\"price\":6601.5}]}",
+                "{\"table\":\"orderBookL2_25\",\"action\":\"update\",\"data\":["
+                        + "{\"symbol\":\"XBTUSD\",\"id\":1,\"side\":\"Sell\",\"size\":30}]}"
+        ));
+        responses.put("trade:XBTUSD", singletonList(
+                "{\"table\":\"trade\",\"action\":\"partial\",\"filter\":{\"symbol\":\"XBTUSD\"},\"data\":["
+                        + "{\"symbol\":\"XBTUSD\",\"timestamp\":\"2017-11-01T20:15:47.000Z\",\"size\":5,\"price\":6600},"
+                        + "{\"symbol\":\"XBTUSD\",\"timestamp\":\"2017-11-01T22:15:47.000Z\",\"size\":7,\"price\":6601.7}]}"
+        ));
+
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        Undertow server = Undertow.builder().addHttpListener(port, "localhost").setHandler(
+                Handlers.websocket((exchange, channel) -> {
+                    channel.getReceiveSetter().set(new AbstractReceiveListener() {
+                        @Override
+                        protected void onFullTextMessage(WebSocketChannel c, BufferedTextMessage m) {
+                            Map<?, ?> request = new Gson().fromJson(m.getData(), Map.class);
+                            ((List<?>) request.get("args")).forEach(topic -> responses.getOrDefault(
+                                    topic, emptyList()).forEach(text -> WebSockets.sendText(text, c, null))
+                            );
+                        }
+                    });
+                    channel.resumeReceives();
+                })
+        ).build();
+
+        server.start();
+
+        try {
+
+            configuration.setProperty(BitmexContext.class.getName() + ".realtime.endpoint", "ws://localhost:" + port);
+            doCallRealMethod().when(target).scheduleSocket(any(), any());
+
+            Key key = Key.builder().instrument("XBT???").timestamp(Instant.parse("2017-11-01T22:16:00.000Z")).build();
+            doReturn("XBTUSD").when(target).convertAlias(key);
+
+            // Tick
+            while (target.getBestAskPrice(key) == null) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(target.getBestAskPrice(key), new BigDecimal("6602"));
+            assertEquals(target.getBestBidPrice(key), new BigDecimal("6601.5"));
+            assertEquals(target.getLastPrice(key), new BigDecimal("6601.7"));
+
+            // Book
+            while (target.getBestBidSize(key) == null) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            while (!new BigDecimal("30").equals(target.getBestAskSize(key))) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(target.getBestBidSize(key), new BigDecimal("20"));
+            assertEquals(target.getAskPrices(key), singletonMap(new BigDecimal("6602"), new BigDecimal("30")));
+            assertEquals(target.getBidPrices(key), singletonMap(new BigDecimal("6601.5"), new BigDecimal("20")));
+
+            // Trade (Older than the retention are trimmed.)
+            List<Trade> trades = target.listTrades(key, null);
+            while (trades.isEmpty()) {
+                TimeUnit.MILLISECONDS.sleep(10);
+                trades = target.listTrades(key, null);
+            }
+            assertEquals(trades.size(), 1);
+            assertEquals(trades.get(0).getPrice(), new BigDecimal("6601.7"));
+            assertEquals(trades.get(0).getSize(), new BigDecimal("7"));
+
+        } finally {
+            server.stop();
+        }
+
+        // Fall back to REST after disconnect.
+        Key key = Key.builder().instrument("XBT???").timestamp(Instant.now()).build();
+        doReturn("XBTUSD").when(target).convertAlias(key);
+
+        while (target.getBestAskPrice(key) != null) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertNull(target.getBestAskSize(key));
+        assertEquals(target.listTrades(key, null).size(), 0);
+        verify(target, atLeastOnce()).queryTrades(key, key.getTimestamp().minus(Duration.ofHours(1)));
+
+    }
+
+    @Test
+    public void testRealtime_Private() throws Exception {
+
+        Key key = Key.builder().instrument("XBT???").timestamp(Instant.now()).build();
+        doReturn("XBTUSD").when(target).convertAlias(key);
+
+        // Not synchronized (REST)
+        assertFalse(target.isOrderStreamed(key));
+        assertNull(target.findOrder(key, "c1"));
+        assertEquals(target.listActiveOrders(key).size(), 0);
+        assertEquals(target.listExecutions(key).size(), 0);
+        assertNull(target.getInstrumentPosition(key));
+        verify(target, times(3)).executePrivate(any(), any(), any(), any());
+
+        target.onWebSocketMessage("{\"table\":\"order\",\"action\":\"partial\",\"data\":["
+                + "{\"orderID\":\"o1\",\"clOrdID\":\"c1\",\"symbol\":\"XBTUSD\",\"workingIndicator\":true},"
+                + "{\"orderID\":\"o2\",\"clOrdID\":\"c2\",\"symbol\":\"XBTZ17\",\"workingIndicator\":true}]}");
+        target.onWebSocketMessage("{\"table\":\"execution\",\"action\":\"partial\",\"data\":["
+                + "{\"execID\":\"e1\",\"symbol\":\"XBTUSD\",\"execType\":\"Trade\"}]}");
+        target.onWebSocketMessage("{\"table\":\"position\",\"action\":\"partial\",\"data\":["
+                + "{\"symbol\":\"XBTUSD\",\"currentQty\":12}]}");
+        target.onWebSocketMessage("pong");
+        target.onWebSocketMessage("{\"info\":\"Welcome\"}");
+        target.onWebSocketMessage("[invalid");
+
+        // Synchronized (Stream)
+        assertTrue(target.isOrderStreamed(key));
+        assertEquals(target.findOrder(key, "c1").getId(), "c1");
+        assertEquals(target.findOrder(key, "o2").getId(), "c2");
+        assertNull(target.findOrder(key, "c3"));
+        assertNull(target.findOrder(key, null));
+        assertEquals(target.listActiveOrders(key).size(), 1);
+        assertEquals(target.listExecutions(key).size(), 1);
+        assertEquals(target.getInstrumentPosition(key), new BigDecimal("12"));
+        verify(target, times(3)).executePrivate(any(), any(), any(), any());
+
+        // Ack
+        target.onWebSocketMessage("{\"table\":\"order\",\"action\":\"insert\",\"data\":["
+                + "{\"orderID\":\"o3\",\"clOrdID\":\"c3\",\"symbol\":\"XBTUSD\",\"workingIndicator\":true}]}");
+        assertEquals(target.findOrder(key, "c3").getId(), "c3");
+        assertEquals(target.listActiveOrders(key).size(), 2);
+
+        // Disconnected (REST)
+        Session session = mock(Session.class);
+        target.onWebSocketClose(session, null);
+        target.clear();
+        assertNull(target.findOrder(key, "c1"));
+        verify(target, times(4)).executePrivate(any(), any(), any(), any());
+
+        // No credentials
+        configuration.clearProperty(BitmexContext.class.getName() + ".api.id");
+        assertFalse(target.subscribePrivate("order"));
+
+    }
+
+    @Test
+    public void testSendAuthenticate() throws Exception {
+
+        Session session = mock(Session.class);
+        RemoteEndpoint.Basic remote = mock(RemoteEndpoint.Basic.class);
+        when(session.getBasicRemote()).thenReturn(remote);
+        when(session.getRequestURI()).thenReturn(new URI("wss://www.bitmex.com/realtime"));
+        doReturn(Instant.ofEpochSecond(1234567890)).when(target).getNow();
+
+        target.sendAuthenticate(session);
+        verify(remote).sendText("{\"op\":\"authKeyExpires\",\"args\":[\"MY_ID_HERE\",1234567895,\""
+                + target.computeHash("MY_SECRET_HERE", "GET", "/realtime", "1234567895", null) + "\"]}");
+
+        // No credentials
+        configuration.clearProperty(BitmexContext.class.getName() + ".api.secret");
+        target.sendAuthenticate(session);
+        verifyNoMoreInteractions(remote);
+
+    }
+
     @Test
     public void testGetInstrumentCurrency() {
 
@@ -693,10 +1018,10 @@ public class BitmexContextTest {
 
             Map<?, ?> headers = i.getArgumentAt(2, Map.class);
             assertEquals(headers.remove("Content-Type"), "application/json");
-            assertEquals(headers.remove("api-nonce"), "12345");
+            assertEquals(headers.remove("api-expires"), "42");
             assertEquals(headers.remove("api-key"), "my_id");
             assertEquals(headers.remove("api-signature"),
-                    "6ef0c2129a11f4dcd8d92ddfa35481a923767e98bbcdd075718dde54e600017a");
+                    "79dc17c48136f54933ce832427cc145bebf40f1d801903da11377a9eda2edb47");
             assertEquals(headers.size(), 0, headers.toString());
 
             return body;
@@ -1066,6 +1391,35 @@ public class BitmexContextTest {
         assertEquals(executions.get(1).getPrice(), new BigDecimal("6150"));
         assertEquals(executions.get(1).getSize(), new BigDecimal("-1"));
 
+        // Incremental, forward from the latest journaled.
+        Map<String, String> incremental = new HashMap<>(parameters);
+        incremental.put("reverse", "false");
+        incremental.put("startTime", "2017-11-01T12:42:39.566Z");
+        doReturn("[]").when(target).executePrivate(GET, "/api/v1/execution/tradeHistory", incremental, null);
+        Key next = Key.builder().instrument("XBT_QT").timestamp(Instant.now()).build();
+        doReturn("XBTZ17").when(target).convertAlias(next);
+        assertEquals(target.listExecutions(next), executions);
+        verify(target).executePrivate(GET, "/api/v1/execution/tradeHistory", incremental, null);
+
+        // Full page, followed by the next page.
+        StringBuilder full = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            full.append(i == 0 ? "" : ",").append("{\"execID\":\"e").append(i)
+                    .append("\",\"transactTime\":\"2017-11-01T12:43:00.000Z\"}");
+        }
+        doReturn(full.append("]").toString())
+                .when(target).executePrivate(GET, "/api/v1/execution/tradeHistory", incremental, null);
+        Map<String, String> paged = new HashMap<>(incremental);
+        paged.put("start", "500");
+        doReturn("[{\"execID\":\"e500\",\"transactTime\":\"2017-11-01T12:43:01.000Z\"}]")
+                .when(target).executePrivate(GET, "/api/v1/execution/tradeHistory", paged, null);
+        Key last = Key.builder().instrument("XBT_QT").timestamp(Instant.now().plusSeconds(1)).build();
+        doReturn("XBTZ17").when(target).convertAlias(last);
+        List<Order.Execution> values = target.listExecutions(last);
+        assertEquals(values.size(), 2 + 501);
+        assertEquals(values.get(0).getId(), "e500");
+        verify(target).executePrivate(GET, "/api/v1/execution/tradeHistory", paged, null);
+
         doReturn(null).when(target).executePrivate(any(), any(), any(), any());
         target.clear();
         assertEquals(target.listExecutions(Key.builder().instrument("XBTZ17").build()).size(), 0);
@@ -1123,6 +1477,55 @@ public class BitmexContextTest {
 
     }
 
+    @Test(timeOut = 5000L)
+    public void testCreateOrders_Batched() throws Exception {
+
+        Key k1 = Key.builder().instrument("XBT_QT").build();
+        Key k2 = Key.builder().instrument("ETH_QT").build();
+        doReturn("XBTZ17").when(target).convertAlias(k1);
+        doReturn("ETHZ17").when(target).convertAlias(k2);
+        doReturn("uid1").doReturn("uid2").when(target).getUniqueId();
+        doReturn(Duration.ofMillis(500)).when(target).getBatchWindow();
+
+        doAnswer(i -> {
+
+            Map<String, List<Map<String, String>>> map = new Gson().fromJson(i.getArgumentAt(3, String.class),
+                    new TypeToken<Map<String, List<Map<String, String>>>>() {
+                    }.getType());
+
+            List<Map<String, String>> orders = map.get("orders");
+            assertEquals(orders.stream().map(m -> m.get("symbol")).collect(Collectors.toSet()),
+                    Sets.newHashSet("XBTZ17", "ETHZ17"));
+
+            return new Gson().toJson(orders.stream()
+                    .map(m -> singletonMap("clOrdID", m.get("clOrdID"))).collect(Collectors.toList()));
+
+        }).when(target).executePrivate(any(), any(), any(), any());
+
+        CreateInstruction i1 = CreateInstruction.builder().price(ONE).size(TEN).build();
+        CreateInstruction i2 = CreateInstruction.builder().price(TEN).size(ONE).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+
+            Future<Map<CreateInstruction, String>> f1 = executor.submit(() -> target.createOrders(k1, singleton(i1)));
+            Thread.sleep(100);
+            Future<Map<CreateInstruction, String>> f2 = executor.submit(() -> target.createOrders(k2, singleton(i2)));
+
+            assertEquals(f1.get().size(), 1);
+            assertEquals(f2.get().size(), 1);
+            assertNotNull(f1.get().get(i1));
+            assertNotNull(f2.get().get(i2));
+            assertNotEquals(f1.get().get(i1), f2.get().get(i2));
+            verify(target, times(1)).executePrivate(any(), any(), any(), any());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
     @Test
     public void testCreateOrders_Sell() throws Exception {
 
@@ -1203,4 +1606,86 @@ public class BitmexContextTest {
 
     }
 
+    @Test
+    public void testCancelAllOrders() throws Exception {
+
+        Key key = Key.builder().instrument("XBT_QT").build();
+        doReturn("XBTZ17").when(target).convertAlias(key);
+
+        doAnswer(i -> {
+
+            assertEquals(i.getArgumentAt(0, RequestType.class), DELETE);
+            assertEquals(i.getArgumentAt(1, String.class), "/api/v1/order/all");
+            assertEquals(i.getArgumentAt(2, Map.class), emptyMap());
+            assertEquals(i.getArgumentAt(3, String.class), "{\"symbol\":\"XBTZ17\"}");
+
+            return new Gson().toJson(singleton(singletonMap("clOrdID", "uid1")));
+
+        }).when(target).executePrivate(any(), any(), any(), any());
+
+        assertEquals(target.cancelAllOrders(key), Boolean.TRUE);
+
+        // Failure
+        doThrow(new IOException("test")).when(target).executePrivate(any(), any(), any(), any());
+        assertEquals(target.cancelAllOrders(key), Boolean.FALSE);
+
+        // Not sent (no credentials)
+        doReturn(null).when(target).executePrivate(any(), any(), any(), any());
+        assertNull(target.cancelAllOrders(key));
+
+        // Unknown
+        doReturn(null).when(target).convertAlias(key);
+        assertNull(target.cancelAllOrders(key));
+        verify(target, times(3)).executePrivate(any(), any(), any(), any());
+
+    }
+
+    @Test
+    public void testAmendOrders() throws Exception {
+
+        doAnswer(i -> {
+
+            assertEquals(i.getArgumentAt(0, RequestType.class), PUT);
+            assertEquals(i.getArgumentAt(1, String.class), "/api/v1/order/bulk");
+            assertEquals(i.getArgumentAt(2, Map.class), emptyMap());
+            String data = i.getArgumentAt(3, String.class);
+
+            Map<String, List<Map<String, String>>> map = new Gson().fromJson(data,
+                    new TypeToken<Map<String, List<Map<String, String>>>>() {
+                    }.getType());
+            List<Map<String, String>> orders = map.remove("orders");
+            assertEquals(orders.size(), 1);
+            assertEquals(orders.get(0).remove("origClOrdID"), "uid1");
+            assertEquals(orders.get(0).remove("price"), "123.45");
+            assertEquals(orders.get(0).remove("leavesQty"), "2");
+            assertEquals(orders.get(0), emptyMap());
+            assertEquals(map, emptyMap());
+
+            return new Gson().toJson(singleton(singletonMap("clOrdID", "uid1")));
+
+        }).when(target).executePrivate(any(), any(), any(), any());
+
+        AmendInstruction i1 = AmendInstruction.builder().id(null).price(ONE).size(ONE).build();
+        AmendInstruction i2 = AmendInstruction.builder().id("uid1").price(new BigDecimal("123.45")).size(valueOf(-2)).build();
+        AmendInstruction i3 = AmendInstruction.builder().id("uid2").price(ZERO).size(ONE).build();
+
+        Key key = Key.builder().instrument("XBTZ17").build();
+        Map<AmendInstruction, String> result = target.amendOrders(key, Sets.newHashSet(i1, null, i2, i3));
+        assertEquals(result.size(), 3);
+        assertEquals(result.get(i1), null);
+        assertEquals(result.get(i2), "uid1");
+        assertEquals(result.get(i3), null);
+
+        // Failure
+        doThrow(new IOException("test")).when(target).executePrivate(any(), any(), any(), any());
+        result = target.amendOrders(key, singleton(i2));
+        assertEquals(result.size(), 1);
+        assertEquals(result.get(i2), null);
+
+        // Empty
+        assertEquals(target.amendOrders(key, emptySet()), emptyMap());
+        verify(target, times(2)).executePrivate(any(), any(), any(), any());
+
+    }
+
 }
@@ -0,0 +1,284 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonObject;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BitmexRealtimeTest {
+
+    private BitmexRealtime target;
+
+    private Gson gson;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        gson = new GsonBuilder().registerTypeAdapter(Instant.class,
+                (JsonDeserializer<Instant>) (j, t, c) -> Instant.parse(j.getAsString())
+        ).create();
+
+        target = new BitmexRealtime(gson, Duration.ofHours(1));
+
+    }
+
+    private boolean apply(String message) {
+        return target.apply(gson.fromJson(message.replace('\'', '"'), JsonObject.class));
+    }
+
+    @Test
+    public void testInstruments() throws Exception {
+
+        // Not synchronized
+        assertFalse(apply("{'table':'instrument','action':'update','data':[{'symbol':'XBTUSD','lastPrice':1}]}"));
+        assertNull(target.listTicks());
+
+        // Partial
+        assertTrue(apply("{'table':'instrument','action':'partial','data':["
+                + "{'symbol':'XBTUSD','lastPrice':1,'askPrice':2},{'symbol':'XBTZ17','lastPrice':3},{'lastPrice':4}]}"));
+        List<BitmexTick> ticks = target.listTicks();
+        assertEquals(ticks.size(), 2);
+        assertSame(target.listTicks(), ticks);
+
+        // Update (Merged)
+        assertTrue(apply("{'table':'instrument','action':'update','data':[{'symbol':'XBTUSD','lastPrice':5}]}"));
+        assertNotSame(target.listTicks(), ticks);
+        BitmexTick tick = target.listTicks().stream().filter(t -> "XBTUSD".equals(t.getSymbol())).findAny().get();
+        assertEquals(tick.getLast(), new BigDecimal("5"));
+        assertEquals(tick.getAsk(), new BigDecimal("2"));
+
+        // Insert & Delete
+        assertTrue(apply("{'table':'instrument','action':'insert','data':[{'symbol':'XBTH18','lastPrice':6}]}"));
+        assertTrue(apply("{'table':'instrument','action':'delete','data':[{'symbol':'XBTZ17'}]}"));
+        assertEquals(target.listTicks().size(), 2);
+        assertTrue(target.listTicks().stream().anyMatch(t -> "XBTH18".equals(t.getSymbol())));
+        assertTrue(target.listTicks().stream().noneMatch(t -> "XBTZ17".equals(t.getSymbol())));
+
+        // Clear
+        target.clear();
+        assertNull(target.listTicks());
+
+    }
+
+    @Test
+    public void testBooks() throws Exception {
+
+        // Not synchronized
+        assertFalse(apply("{'table':'orderBookL2_25','action':'insert','data':["
+                + "{'symbol':'XBTUSD','id':1,'side':'Sell','size':1,'price':101}]}"));
+        assertNull(target.listBooks("XBTUSD"));
+
+        // Partial (Empty)
+        assertTrue(apply("{'table':'orderBookL2_25','action':'partial','filter':{'symbol':'XBTUSD'},'data':[]}"));
+        assertEquals(target.listBooks("XBTUSD").size(), 0);
+
+        // Partial
+        assertTrue(apply("{'table':'orderBookL2_25','action':'partial','filter':{'symbol':'XBTUSD'},'data':["
+                + "{'symbol':'XBTUSD','id':1,'side':'Sell','size':1,'price':101},"
+                + "{'symbol':'XBTUSD','id':2,'side':'Sell','size':2,'price':102},"
+                + "{'symbol':'XBTUSD','id':3,'side':'Buy','size':3,'price':99}]}"));
+        List<BitmexBook> books = target.listBooks("XBTUSD");
+        assertEquals(books.size(), 3);
+        assertEquals(books.get(0).getPrice(), new BigDecimal("102"));
+        assertEquals(books.get(1).getPrice(), new BigDecimal("101"));
+        assertEquals(books.get(2).getPrice(), new BigDecimal("99"));
+        assertSame(target.listBooks("XBTUSD"), books);
+        assertNull(target.listBooks("XBTZ17"));
+
+        // Update, Insert & Delete
+        assertTrue(apply("{'table':'orderBookL2_25','action':'update','data':["
+                + "{'symbol':'XBTUSD','id':3,'side':'Buy','size':5},{'symbol':'XBTUSD','id':9,'side':'Buy','size':9}]}"));
+        assertTrue(apply("{'table':'orderBookL2_25','action':'insert','data':["
+                + "{'symbol':'XBTUSD','id':4,'side':'Buy','size':4,'price':98}]}"));
+        assertTrue(apply("{'table':'orderBookL2_25','action':'delete','data':["
+                + "{'symbol':'XBTUSD','id':2,'side':'Sell'}]}"));
+        books = target.listBooks("XBTUSD");
+        assertEquals(books.size(), 3);
+        assertEquals(books.get(0).getPrice(), new BigDecimal("101"));
+        assertEquals(books.get(0).getSize(), new BigDecimal("1"));
+        assertEquals(books.get(1).getPrice(), new BigDecimal("99"));
+        assertEquals(books.get(1).getSize(), new BigDecimal("5"));
+        assertEquals(books.get(1).getSide(), "Buy");
+        assertEquals(books.get(2).getPrice(), new BigDecimal("98"));
+        assertEquals(books.get(2).getSize(), new BigDecimal("4"));
+
+        // Clear
+        target.clear();
+        assertNull(target.listBooks("XBTUSD"));
+
+    }
+
+    @Test
+    public void testTrades() throws Exception {
+
+        Instant t0 = Instant.parse("2017-11-01T20:00:00.000Z");
+
+        // Not synchronized
+        assertFalse(apply("{'table':'trade','action':'insert','data':["
+                + "{'symbol':'XBTUSD','timestamp':'2017-11-01T20:00:00.000Z','size':1,'price':100}]}"));
+        assertNull(target.listTrades("XBTUSD", t0));
+
+        // Partial
+        assertTrue(apply("{'table':'trade','action':'partial','filter':{'symbol':'XBTUSD'},'data':["
+                + "{'symbol':'XBTUSD','timestamp':'2017-11-01T20:00:00.000Z','size':1,'price':100}]}"));
+        assertEquals(target.listTrades("XBTUSD", t0).size(), 1);
+        assertNull(target.listTrades("XBTUSD", t0.minusMillis(1)));
+        assertNull(target.listTrades("XBTUSD", null));
+        assertNull(target.listTrades("XBTZ17", t0));
+
+        // Insert
+        assertTrue(apply("{'table':'trade','action':'insert','data':["
+                + "{'symbol':'XBTUSD','timestamp':'2017-11-01T20:30:00.000Z','size':2,'price':101},"
+                + "{'symbol':'XBTUSD','timestamp':'2017-11-01T20:45:00.000Z','size':3,'price':102}]}"));
+        List<BitmexTrade> trades = target.listTrades("XBTUSD", t0);
+        assertEquals(trades.size(), 3);
+        assertEquals(trades.get(0).getPrice(), new BigDecimal("102"));
+        assertEquals(trades.get(1).getPrice(), new BigDecimal("101"));
+        assertEquals(trades.get(2).getPrice(), new BigDecimal("100"));
+        assertEquals(target.listTrades("XBTUSD", t0.plusSeconds(1800)).size(), 2);
+
+        // Trimmed
+        assertTrue(apply("{'table':'trade','action':'insert','data':["
+                + "{'symbol':'XBTUSD','timestamp':'2017-11-01T21:15:00.000Z','size':4,'price':103}]}"));
+        assertNull(target.listTrades("XBTUSD", t0));
+        trades = target.listTrades("XBTUSD", t0.plusSeconds(900));
+        assertEquals(trades.size(), 3);
+        assertEquals(trades.get(2).getPrice(), new BigDecimal("101"));
+
+        // Ignored
+        assertFalse(apply("{'table':'trade','action':'update','data':[]}"));
+        assertFalse(apply("{'table':'unknown','action':'partial','data':[]}"));
+        assertFalse(apply("{'success':true,'subscribe':'trade:XBTUSD'}"));
+        assertFalse(target.apply(null));
+
+        // Clear
+        target.clear();
+        assertNull(target.listTrades("XBTUSD", t0.plusSeconds(900)));
+
+    }
+
+    @Test
+    public void testOrders() throws Exception {
+
+        // Not synchronized
+        assertFalse(apply("{'table':'order','action':'insert','data':[{'orderID':'o1','clOrdID':'c1','symbol':'XBTUSD'}]}"));
+        assertFalse(target.isSynchronized("order"));
+        assertNull(target.findOrder("o1"));
+        assertNull(target.listOrders("XBTUSD"));
+
+        // Partial
+        assertTrue(apply("{'table':'order','action':'partial','data':["
+                + "{'orderID':'o1','clOrdID':'c1','symbol':'XBTUSD','side':'Buy','workingIndicator':true,'orderQty':3,'leavesQty':3},"
+                + "{'orderID':'o2','clOrdID':'','symbol':'XBTZ17','workingIndicator':true}]}"));
+        assertTrue(target.isSynchronized("order"));
+        assertSame(target.findOrder("o1"), target.findOrder("c1"));
+        assertEquals(target.findOrder("o2").getOrderId(), "o2");
+        assertNull(target.findOrder(""));
+        assertNull(target.findOrder("o3"));
+        assertNull(target.findOrder(null));
+        assertEquals(target.listOrders("XBTUSD").size(), 1);
+        assertEquals(target.listOrders("XBTZ17").size(), 1);
+        assertEquals(target.listOrders("XBTH18").size(), 0);
+
+        // Ack & Fill
+        assertTrue(apply("{'table':'order','action':'insert','data':["
+                + "{'orderID':'o3','clOrdID':'c3','symbol':'XBTUSD','workingIndicator':true}]}"));
+        assertTrue(apply("{'table':'order','action':'update','data':["
+                + "{'orderID':'o1','workingIndicator':false,'leavesQty':0,'cumQty':3}]}"));
+        assertEquals(target.findOrder("c3").getOrderId(), "o3");
+        BitmexOrder order = target.findOrder("c1");
+        assertEquals(order.getActive(), Boolean.FALSE);
+        assertEquals(order.getOrderQuantity(), new BigDecimal("3"));
+        assertEquals(order.getFilledQuantity(), new BigDecimal("3"));
+        assertEquals(order.getRemainingQuantity(), new BigDecimal("0"));
+        assertEquals(target.listOrders("XBTUSD").size(), 2);
+        assertEquals(target.countOrderIds(), 2);
+
+        // Delete
+        assertTrue(apply("{'table':'order','action':'delete','data':[{'orderID':'o3'}]}"));
+        assertNull(target.findOrder("c3"));
+        assertEquals(target.countOrderIds(), 1);
+
+        // Evicted beyond the limit, inactive first.
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(apply("{'table':'order','action':'insert','data':["
+                    + "{'orderID':'x" + i + "','clOrdID':'y" + i + "','symbol':'XBTUSD','workingIndicator':true}]}"));
+        }
+        assertNull(target.findOrder("c1"));
+        assertEquals(target.findOrder("y0").getOrderId(), "x0");
+        assertEquals(target.countOrderIds(), 1024);
+
+        // Clear
+        target.clear();
+        assertFalse(target.isSynchronized("order"));
+        assertNull(target.findOrder("o1"));
+
+    }
+
+    @Test
+    public void testExecutions() throws Exception {
+
+        // Not synchronized
+        assertFalse(apply("{'table':'execution','action':'insert','data':[]}"));
+        assertFalse(target.isSynchronized("execution"));
+        assertNull(target.listExecutions("XBTUSD"));
+
+        // Partial
+        assertTrue(apply("{'table':'execution','action':'partial','data':["
+                + "{'execID':'e1','symbol':'XBTUSD','execType':'Trade','lastPx':100,'lastQty':1},"
+                + "{'execID':'e2','symbol':'XBTUSD','execType':'New'}]}"));
+        assertTrue(target.isSynchronized("execution"));
+        assertEquals(target.listExecutions("XBTUSD").size(), 1);
+        assertEquals(target.listExecutions("XBTZ17").size(), 0);
+
+        // Insert
+        assertTrue(apply("{'table':'execution','action':'insert','data':["
+                + "{'execID':'e3','symbol':'XBTUSD','execType':'Trade','lastPx':101,'lastQty':2}]}"));
+        assertFalse(apply("{'table':'execution','action':'update','data':[]}"));
+        List<BitmexExecution> executions = target.listExecutions("XBTUSD");
+        assertEquals(executions.size(), 2);
+        assertEquals(executions.get(0).getId(), "e3");
+        assertEquals(executions.get(1).getId(), "e1");
+
+    }
+
+    @Test
+    public void testPositionsAndMargins() throws Exception {
+
+        assertNull(target.listPositions());
+        assertNull(target.listMargins());
+        assertFalse(target.isSynchronized("position"));
+        assertFalse(target.isSynchronized("margin"));
+        assertFalse(target.isSynchronized("unknown"));
+
+        assertTrue(apply("{'table':'position','action':'partial','data':[{'symbol':'XBTUSD','currentQty':1}]}"));
+        assertTrue(apply("{'table':'position','action':'update','data':[{'symbol':'XBTUSD','currentQty':-2}]}"));
+        assertEquals(target.listPositions().size(), 1);
+        assertEquals(target.listPositions().get(0).getQuantity(), new BigDecimal("-2"));
+
+        assertTrue(apply("{'table':'margin','action':'partial','data':[{'currency':'XBt','excessMargin':1}]}"));
+        assertTrue(apply("{'table':'margin','action':'update','data':[{'currency':'XBt','marginBalance':2}]}"));
+        assertEquals(target.listMargins().size(), 1);
+        assertEquals(target.listMargins().get(0).getExcess(), new BigDecimal("1"));
+        assertEquals(target.listMargins().get(0).getMarginBalance(), new BigDecimal("2"));
+
+        target.clear();
+        assertNull(target.listPositions());
+        assertNull(target.listMargins());
+
+    }
+
+}
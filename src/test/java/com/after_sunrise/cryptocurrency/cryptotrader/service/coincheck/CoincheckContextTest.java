@@ -603,7 +603,11 @@ public class CoincheckContextTest {
     public void testListExecutions() throws Exception {
 
         String data = Resources.toString(getResource("json/coincheck_transaction.json"), UTF_8);
-        doReturn(data).when(target).executePrivate(GET, "https://coincheck.com/api/exchange/orders/transactions", null, null);
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("limit", "100");
+        parameters.put("order", "desc");
+        String url = "https://coincheck.com/api/exchange/orders/transactions_pagination";
+        doReturn(data).when(target).executePrivate(GET, url, parameters, null);
 
         // Found
         List<Order.Execution> executions = target.listExecutions(Key.builder().instrument(BTC_JPY.name()).build());
@@ -623,6 +627,14 @@ public class CoincheckContextTest {
         doReturn(null).when(target).executePrivate(any(), any(), any(), any());
         List<Order.Execution> cached = target.listExecutions(Key.builder().instrument(BTC_JPY.name()).build());
         assertEquals(cached, executions);
+
+        // Incremental, newer than the latest journaled.
+        Map<String, String> incremental = new LinkedHashMap<>(parameters);
+        incremental.put("ending_before", "38");
+        doReturn("{\"success\":true,\"data\":[]}").when(target).executePrivate(GET, url, incremental, null);
+        Key next = Key.builder().instrument(BTC_JPY.name()).timestamp(Instant.now()).build();
+        assertEquals(target.listExecutions(next), executions);
+        verify(target).executePrivate(GET, url, incremental, null);
     }
 
 }
@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key.from;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 
@@ -41,7 +42,7 @@ public class DepthEstimatorTest {
         Runnable initializer = () -> {
 
             doReturn(new BigDecimal("0.1")).when(target).calculateDeviation(context, request);
-            doReturn(new BigDecimal("200")).when(context).getMidPrice(from(request));
+            doReturn(completedFuture(new BigDecimal("200"))).when(context).getMidPriceAsync(from(request));
 
             Map<BigDecimal, BigDecimal> asks = new HashMap<>();
             asks.put(null, new BigDecimal("01")); // Exclude
@@ -51,7 +52,7 @@ public class DepthEstimatorTest {
             asks.put(new BigDecimal("219"), new BigDecimal("87"));
             asks.put(new BigDecimal("218"), new BigDecimal("90"));
             asks.put(new BigDecimal("217"), null); // Exclude
-            doReturn(asks).when(context).getAskPrices(from(request));
+            doReturn(completedFuture(asks)).when(context).getAskPricesAsync(from(request));
 
             Map<BigDecimal, BigDecimal> bids = new HashMap<>();
             bids.put(new BigDecimal("183"), null); // Exclude
@@ -61,7 +62,7 @@ public class DepthEstimatorTest {
             bids.put(new BigDecimal("179"), new BigDecimal("87")); // Exclude
             bids.put(new BigDecimal("178"), new BigDecimal("90")); // Exclude
             bids.put(null, new BigDecimal("01")); // Exclude
-            doReturn(bids).when(context).getBidPrices(from(request));
+            doReturn(completedFuture(bids)).when(context).getBidPricesAsync(from(request));
 
         };
 
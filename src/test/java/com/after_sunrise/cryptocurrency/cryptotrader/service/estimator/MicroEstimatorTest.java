@@ -10,6 +10,7 @@ import org.testng.annotations.Test;
 import java.math.BigDecimal;
 
 import static java.math.BigDecimal.ZERO;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 
@@ -45,10 +46,10 @@ public class MicroEstimatorTest {
 
         Runnable initializer = () -> {
             reset(context);
-            when(context.getBestAskPrice(key)).thenReturn(new BigDecimal("500000"));
-            when(context.getBestBidPrice(key)).thenReturn(new BigDecimal("400000"));
-            when(context.getBestAskSize(key)).thenReturn(new BigDecimal("100"));
-            when(context.getBestBidSize(key)).thenReturn(new BigDecimal("400"));
+            when(context.getBestAskPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("500000")));
+            when(context.getBestBidPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("400000")));
+            when(context.getBestAskSizeAsync(key)).thenReturn(completedFuture(new BigDecimal("100")));
+            when(context.getBestBidSizeAsync(key)).thenReturn(completedFuture(new BigDecimal("400")));
         };
 
         // No prices
@@ -59,35 +60,35 @@ public class MicroEstimatorTest {
 
         // No Ask Price
         initializer.run();
-        when(context.getBestAskPrice(key)).thenReturn(null);
+        when(context.getBestAskPriceAsync(key)).thenReturn(completedFuture(null));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), null);
         assertEquals(result.getConfidence(), ZERO);
 
         // No Bid Price
         initializer.run();
-        when(context.getBestBidPrice(key)).thenReturn(null);
+        when(context.getBestBidPriceAsync(key)).thenReturn(completedFuture(null));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), null);
         assertEquals(result.getConfidence(), ZERO);
 
         // No Ask Size
         initializer.run();
-        when(context.getBestAskSize(key)).thenReturn(null);
+        when(context.getBestAskSizeAsync(key)).thenReturn(completedFuture(null));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), null);
         assertEquals(result.getConfidence(), ZERO);
 
         // No Bid Size
         initializer.run();
-        when(context.getBestBidSize(key)).thenReturn(null);
+        when(context.getBestBidSizeAsync(key)).thenReturn(completedFuture(null));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), null);
         assertEquals(result.getConfidence(), ZERO);
 
         // Zero Size
         initializer.run();
-        when(context.getBestBidSize(key)).thenReturn(new BigDecimal("-100"));
+        when(context.getBestBidSizeAsync(key)).thenReturn(completedFuture(new BigDecimal("-100")));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), null);
         assertEquals(result.getConfidence(), ZERO);
@@ -100,22 +101,22 @@ public class MicroEstimatorTest {
 
         // Inverse Price
         initializer.run();
-        when(context.getBestAskPrice(key)).thenReturn(new BigDecimal("300000"));
+        when(context.getBestAskPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("300000")));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), new BigDecimal("380000.0000000000"));
         assertEquals(result.getConfidence(), new BigDecimal("0.36842105265"));
 
         // Equilibrium
         initializer.run();
-        when(context.getBestAskPrice(key)).thenReturn(new BigDecimal("400000"));
+        when(context.getBestAskPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("400000")));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), new BigDecimal("400000.0000000000"));
         assertEquals(result.getConfidence(), new BigDecimal("0.50000000000"));
 
         // Zero Price
         initializer.run();
-        when(context.getBestAskPrice(key)).thenReturn(new BigDecimal("+400000"));
-        when(context.getBestBidPrice(key)).thenReturn(new BigDecimal("-100000"));
+        when(context.getBestAskPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("+400000")));
+        when(context.getBestBidPriceAsync(key)).thenReturn(completedFuture(new BigDecimal("-100000")));
         result = target.estimate(context, request);
         assertEquals(result.getPrice(), new BigDecimal("0.0000000000"));
         assertEquals(result.getConfidence(), new BigDecimal("0.5"));
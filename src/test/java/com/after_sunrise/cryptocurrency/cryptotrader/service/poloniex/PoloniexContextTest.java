@@ -1,6 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.poloniex;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.google.common.io.Resources;
 import org.testng.annotations.AfterMethod;
@@ -8,6 +9,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
@@ -37,6 +39,8 @@ public class PoloniexContextTest {
 
         doReturn(null).when(target).request(any(), any(), any(), any());
 
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+
     }
 
     @AfterMethod
@@ -49,6 +53,8 @@ public class PoloniexContextTest {
 
         doCallRealMethod().when(target).request(any(), any(), any(), any());
 
+        doCallRealMethod().when(target).request(any(), any(), any(), any(), any());
+
         Key key = Key.builder().instrument("BTC_ETH").build();
 
         System.out.println("ASK : " + target.getBestAskPrice(key));
@@ -65,10 +71,12 @@ public class PoloniexContextTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testQueryTick() throws Exception {
 
         String data = Resources.toString(getResource("json/poloniex_ticker.json"), UTF_8);
-        doReturn(data).when(target).request(GET, URL_TICKER, null, null);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data)))
+                .when(target).request(eq(GET), eq(URL_TICKER), eq(null), eq(null), any());
 
         // Found
         PoloniexTick tick = target.queryTick(Key.builder().instrument("BTC_ETH").build()).get();
@@ -80,7 +88,7 @@ public class PoloniexContextTest {
         assertFalse(target.queryTick(Key.builder().instrument("FOO_BAR").build()).isPresent());
 
         // Cached
-        doReturn(null).when(target).request(any(), any(), any(), any());
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
         PoloniexTick cached = target.queryTick(Key.builder().instrument("BTC_ETH").build()).get();
         assertSame(cached, tick);
 
@@ -0,0 +1,121 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateAdapterTest {
+
+    private static class TestAdapter extends TemplateAdapter<Map<String, Object>, Map<String, Object>> {
+
+        @Override
+        protected Map<String, Object> create() {
+            return new HashMap<>();
+        }
+
+        @Override
+        protected boolean read(JsonReader in, String name, Map<String, Object> builder) throws IOException {
+
+            switch (name) {
+                case "s":
+                    builder.put(name, nextString(in));
+                    return true;
+                case "d":
+                    builder.put(name, nextDecimal(in));
+                    return true;
+                case "l":
+                    builder.put(name, nextLong(in));
+                    return true;
+                case "t":
+                    builder.put(name, nextInstant(in, Instant::parse));
+                    return true;
+                default:
+                    return false;
+            }
+
+        }
+
+        @Override
+        protected Map<String, Object> build(Map<String, Object> builder) {
+            return builder;
+        }
+
+    }
+
+    private TestAdapter target;
+
+    @BeforeMethod
+    public void setUp() {
+        target = new TestAdapter();
+    }
+
+    private JsonReader reader(String json) {
+
+        JsonReader reader = new JsonReader(new StringReader(json));
+
+        reader.setLenient(true);
+
+        return reader;
+
+    }
+
+    @Test
+    public void testRead() throws IOException {
+
+        Map<String, Object> value = target.read(reader("{" +
+                "'s':'foo','d':1.20,'l':123,'t':'2017-11-01T22:15:47.303Z','x':{'y':[1,2,3]}}"
+        ));
+        assertEquals(value.size(), 4);
+        assertEquals(value.get("s"), "foo");
+        assertEquals(value.get("d"), new BigDecimal("1.20"));
+        assertEquals(value.get("l"), 123L);
+        assertEquals(value.get("t"), Instant.parse("2017-11-01T22:15:47.303Z"));
+
+        value = target.read(reader("{'s':null,'d':null,'l':null,'t':null}"));
+        assertEquals(value.size(), 4);
+        assertTrue(value.values().stream().allMatch(v -> v == null));
+
+        assertNull(target.read(reader("null")));
+
+    }
+
+    @Test
+    public void testReadList() throws IOException {
+
+        List<Map<String, Object>> values = TemplateAdapter.readList(reader(
+                "[{'s':'foo'},null,{'s':'bar'},{'s':'foo','l':1}]"
+        ), target, v -> v != null && "foo".equals(v.get("s")));
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).get("l"), null);
+        assertEquals(values.get(1).get("l"), 1L);
+
+        values = TemplateAdapter.readList(reader("[{},null]"), target, null);
+        assertEquals(values.size(), 2);
+        assertNull(values.get(1));
+
+        assertNull(TemplateAdapter.readList(reader("null"), target, null));
+
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testWrite() throws IOException {
+        target.write(new JsonWriter(new StringWriter()), new HashMap<>());
+    }
+
+}
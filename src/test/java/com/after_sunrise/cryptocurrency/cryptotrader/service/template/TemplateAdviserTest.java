@@ -22,7 +22,9 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Service.CurrencyType.*;
@@ -151,6 +153,59 @@ public class TemplateAdviserTest {
 
     }
 
+    @Test
+    public void testEvaluate() throws Exception {
+
+        Request request = rBuilder.build();
+        Estimation estimation = eBuilder.build();
+        AtomicInteger count = new AtomicInteger();
+        Supplier<BigDecimal> supplier = () -> count.incrementAndGet() == 1 ? null : ONE;
+
+        // Computed each time, outside of the advice.
+        assertNull(target.evaluate(request, "n", supplier));
+        assertEquals(target.evaluate(request, "n", supplier), ONE);
+        assertEquals(count.get(), 2);
+
+        // Computed once, within the advice.
+        count.set(0);
+        doAnswer(i -> {
+            assertNull(target.evaluate(request, "n", supplier));
+            assertNull(target.evaluate(request, "n", supplier));
+            assertEquals(target.evaluate(request, "m", supplier), ONE);
+            assertEquals(target.evaluate(request, "m", supplier), ONE);
+            return null;
+        }).when(target).calculateWeighedPrice(context, request, estimation);
+        doReturn(ONE).when(target).calculateBasis(context, request, estimation);
+        target.advise(context, request, estimation);
+        assertEquals(count.get(), 2);
+
+        // Shared by both sides.
+        verify(target, times(2)).calculatePositionRatio(context, request);
+        verify(context, times(1)).getFundingPosition(Key.from(request));
+
+        // Released after the advice.
+        assertEquals(target.evaluate(request, "n", supplier), ONE);
+        assertEquals(count.get(), 3);
+
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+
+        Request request = rBuilder.build();
+        Key key = Key.from(request);
+
+        target.prefetch(context, request);
+        verify(context).getBestAskPriceAsync(key);
+        verify(context).getBestBidPriceAsync(key);
+        verify(context).getMidPriceAsync(key);
+
+        // Invalid Request
+        target.prefetch(context, Request.builder().build());
+        verifyNoMoreInteractions(context);
+
+    }
+
     @Test
     public void testCalculateBasis() {
 
@@ -2,31 +2,46 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.TEN;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toSet;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertNull;
+import static org.testng.Assert.*;
 
 /**
  * @author takanori.takase
@@ -63,6 +78,7 @@ public class TemplateAgentTest {
         CancelInstruction i6 = CancelInstruction.builder().id("i6").build();
         Instruction i7 = mock(Instruction.class);
         Instruction i8 = mock(Instruction.class);
+        AmendInstruction i9 = AmendInstruction.builder().id("i9").build();
         Request request = Request.builder().build();
 
         when(context.createOrders(any(), any())).thenAnswer(invocation -> {
@@ -79,28 +95,273 @@ public class TemplateAgentTest {
             return results;
         });
 
+        when(context.amendOrders(any(), any())).thenAnswer(invocation -> {
+            Map<AmendInstruction, String> results = new IdentityHashMap<>();
+            Set<?> instructions = invocation.getArgumentAt(1, Set.class);
+            instructions.stream().map(AmendInstruction.class::cast).forEach(i -> results.put(i, i.getId()));
+            return results;
+        });
+
         // Invoke
-        List<Instruction> values = asList(i1, i3, i5, i7, null, i2, i4, i6, i8);
+        List<Instruction> values = asList(i1, i3, i5, i7, null, i2, i4, i9, i6, i8);
         Map<Instruction, String> results = target.manage(context, request, values);
-        assertEquals(results.size(), 3 + 3); // Mocks are ignored.
+        assertEquals(results.size(), 3 + 3 + 1); // Mocks are ignored.
 
-        // Cancels are processed first. Unknowns are last.
+        // Cancels are processed first, then amends. Unknowns are last.
         InOrder inOrder = inOrder(context);
         inOrder.verify(context).cancelOrders(any(), eq(Sets.newHashSet(i4, i5, i6)));
+        inOrder.verify(context).amendOrders(any(), eq(Sets.newHashSet(i9)));
         inOrder.verify(context).createOrders(any(), eq(Sets.newHashSet(i1, i2, i3)));
         inOrder.verifyNoMoreInteractions();
 
-        // Abort if invalid response.
+        // Abort creates if invalid response, but not the amends.
         doReturn(singletonMap(i4, null)).when(context).cancelOrders(any(), any());
         results = target.manage(context, request, values);
-        assertEquals(results.size(), 1);
+        assertEquals(results.size(), 2);
         assertEquals(results.get(i4), null);
+        assertEquals(results.get(i9), "i9");
+
+        // No amends
+        reset(context);
+        target.manage(context, request, asList(i1, i4));
+        verify(context, never()).amendOrders(any(), any());
 
         // No input
         assertEquals(target.manage(context, request, null).size(), 0);
 
     }
 
+    @Test(timeOut = 5000L)
+    public void testManage_Overlapped() throws Exception {
+
+        CreateInstruction buy1 = CreateInstruction.builder().price(ONE).size(ONE).build();
+        CreateInstruction buy2 = CreateInstruction.builder().price(ONE).size(TEN).build();
+        CreateInstruction sell = CreateInstruction.builder().price(TEN).size(ONE.negate()).build();
+        CancelInstruction cancel1 = CancelInstruction.builder().id("o1").build();
+        CancelInstruction cancel2 = CancelInstruction.builder().id("o2").build();
+        Request request = Request.builder().tradingExposure(ONE).build();
+
+        Order o1 = mock(Order.class);
+        Order o2 = mock(Order.class);
+        when(o1.getId()).thenReturn("o1");
+        when(o2.getId()).thenReturn("o2");
+        when(o1.getOrderPrice()).thenReturn(ONE);
+        when(o2.getOrderPrice()).thenReturn(TEN);
+        when(o1.getRemainingQuantity()).thenReturn(ONE);
+        when(o2.getRemainingQuantity()).thenReturn(ONE.negate());
+        when(context.listActiveOrders(any())).thenReturn(asList(o1, o2, null));
+        when(context.getFundingPosition(any())).thenReturn(TEN);
+        when(context.getInstrumentPosition(any())).thenReturn(TEN);
+        when(context.getConversionPrice(any(), any())).thenReturn(ONE);
+
+        // Creates in flight while cancelling.
+        CountDownLatch latch = new CountDownLatch(1);
+        when(context.cancelOrders(any(), any())).thenAnswer(invocation -> {
+            latch.await();
+            Map<CancelInstruction, String> results = new IdentityHashMap<>();
+            results.put(cancel1, null);
+            results.put(cancel2, "o2");
+            return results;
+        });
+        when(context.createOrders(any(), any())).thenAnswer(invocation -> {
+            latch.countDown();
+            Map<CreateInstruction, String> results = new IdentityHashMap<>();
+            Set<?> instructions = invocation.getArgumentAt(1, Set.class);
+            instructions.stream().map(CreateInstruction.class::cast).forEach(i -> results.put(i, i.getUid()));
+            return results;
+        });
+
+        List<Instruction> values = asList(buy1, sell, cancel1, cancel2);
+        target.setConfiguration(new MapConfiguration(singletonMap(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAgent.overlap", "true"
+        )));
+
+        // Buy (1 + 1 <= 10) and sell (1 + 1 <= 10) within the exposure.
+        Map<Instruction, String> results = target.manage(context, request, values);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(buy1), buy1.getUid());
+        assertEquals(results.get(sell), sell.getUid());
+        assertEquals(results.get(cancel1), null);
+        assertEquals(results.get(cancel2), "o2");
+        verify(context).createOrders(any(), eq(Sets.newHashSet(buy1, sell)));
+
+        // Buy (1 + 10 > 10) gated with the failed buy cancel.
+        reset(context);
+        when(context.listActiveOrders(any())).thenReturn(asList(o1, o2));
+        when(context.getFundingPosition(any())).thenReturn(TEN);
+        when(context.getInstrumentPosition(any())).thenReturn(TEN);
+        when(context.getConversionPrice(any(), any())).thenReturn(ONE);
+        doReturn(singletonMap(cancel1, null)).when(context).cancelOrders(any(), any());
+        doReturn(singletonMap(sell, "s")).when(context).createOrders(any(), any());
+        results = target.manage(context, request, asList(buy2, sell, cancel1));
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(sell), "s");
+        assertEquals(results.get(cancel1), null);
+        verify(context).createOrders(any(), eq(Sets.newHashSet(sell)));
+        verify(context, never()).createOrders(any(), eq(Sets.newHashSet(buy2)));
+
+        // Buy gated, but sent after the cancel accepted.
+        reset(context);
+        when(context.listActiveOrders(any())).thenReturn(asList(o1, o2));
+        when(context.getFundingPosition(any())).thenReturn(TEN);
+        doReturn(singletonMap(cancel1, "o1")).when(context).cancelOrders(any(), any());
+        doReturn(singletonMap(buy2, "b")).when(context).createOrders(any(), any());
+        results = target.manage(context, request, asList(buy2, cancel1));
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(buy2), "b");
+        InOrder inOrder = inOrder(context);
+        inOrder.verify(context).cancelOrders(any(), any());
+        inOrder.verify(context).createOrders(any(), eq(Sets.newHashSet(buy2)));
+
+        // Unknown side of the cancel, gating all.
+        reset(context);
+        doReturn(singletonMap(cancel1, null)).when(context).cancelOrders(any(), any());
+        results = target.manage(context, request, asList(buy1, sell, cancel1));
+        assertEquals(results.size(), 1);
+        verify(context, never()).createOrders(any(), any());
+
+        // Cancel failed after the overlapped creates, which are kept and the rest gated.
+        reset(context);
+        when(context.listActiveOrders(any())).thenReturn(asList(o1, o2));
+        when(context.getFundingPosition(any())).thenReturn(TEN);
+        when(context.getInstrumentPosition(any())).thenReturn(TEN);
+        when(context.getConversionPrice(any(), any())).thenReturn(ONE);
+        doThrow(new RuntimeException("test")).when(context).cancelOrders(any(), any());
+        doReturn(singletonMap(sell, "s")).when(context).createOrders(any(), any());
+        results = target.manage(context, request, asList(buy2, sell, cancel1));
+        assertEquals(results.size(), 1);
+        assertEquals(results.get(sell), "s");
+        verify(context).createOrders(any(), eq(Sets.newHashSet(sell)));
+        verify(context, never()).createOrders(any(), eq(Sets.newHashSet(buy2)));
+
+        // Cancel results absent.
+        reset(context);
+        when(context.listActiveOrders(any())).thenReturn(asList(o1, o2));
+        when(context.getFundingPosition(any())).thenReturn(TEN);
+        when(context.getInstrumentPosition(any())).thenReturn(TEN);
+        when(context.getConversionPrice(any(), any())).thenReturn(ONE);
+        doReturn(null).when(context).cancelOrders(any(), any());
+        doReturn(singletonMap(sell, "s")).when(context).createOrders(any(), any());
+        results = target.manage(context, request, asList(buy2, sell, cancel1));
+        assertEquals(results.size(), 1);
+        assertEquals(results.get(sell), "s");
+        verify(context, never()).createOrders(any(), eq(Sets.newHashSet(buy2)));
+
+    }
+
+    @Test
+    public void testIsOverlappable() throws Exception {
+
+        Request request = Request.builder().tradingExposure(new BigDecimal("0.5")).build();
+        CreateInstruction buy = CreateInstruction.builder().price(TEN).size(ONE).build();
+        CreateInstruction sell = CreateInstruction.builder().price(TEN).size(ONE.negate()).build();
+        Order order = mock(Order.class);
+        when(order.getOrderPrice()).thenReturn(TEN);
+        when(order.getRemainingQuantity()).thenReturn(new BigDecimal("2"));
+
+        // No position
+        assertFalse(target.isOverlappable(context, request, singleton(buy), emptyList(), true));
+        assertFalse(target.isOverlappable(context, request, singleton(sell), emptyList(), false));
+
+        // Buy : 10 * 1 + 10 * 2 <= 60 * 0.5
+        when(context.getFundingPosition(any())).thenReturn(new BigDecimal("60"));
+        assertTrue(target.isOverlappable(context, request, singleton(buy), singleton(order), true));
+        when(context.getFundingPosition(any())).thenReturn(new BigDecimal("59"));
+        assertFalse(target.isOverlappable(context, request, singleton(buy), singleton(order), true));
+
+        // Sell : 1 + 2 <= 3 * 2 * 0.5
+        when(context.getInstrumentPosition(any())).thenReturn(new BigDecimal("3"));
+        when(context.getConversionPrice(any(), any())).thenReturn(new BigDecimal("2"));
+        assertTrue(target.isOverlappable(context, request, singleton(sell), singleton(order), false));
+        when(context.getConversionPrice(any(), any())).thenReturn(ONE);
+        assertFalse(target.isOverlappable(context, request, singleton(sell), singleton(order), false));
+
+        // Invalid
+        CreateInstruction invalid = CreateInstruction.builder().price(null).size(ONE).build();
+        assertFalse(target.isOverlappable(context, request, singleton(invalid), emptyList(), true));
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testStartExpiry() throws Exception {
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+
+        doAnswer(i -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+            return null;
+        }).when(target).expire();
+
+        target.startExpiry();
+        latch.await();
+
+        // Not shared with the reconciliation.
+        assertEquals(threads.get(0), "TemplateAgent-expiry");
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testTrack() throws Exception {
+
+        Key key = Key.builder().site("s").instrument("i").timestamp(Instant.now()).build();
+        CreateInstruction create1 = CreateInstruction.builder().timeToLive(Duration.ofMillis(100)).build();
+        CreateInstruction create2 = CreateInstruction.builder().timeToLive(Duration.ofMillis(100)).build();
+        CreateInstruction create3 = CreateInstruction.builder().timeToLive(null).build();
+        CreateInstruction create4 = CreateInstruction.builder().timeToLive(Duration.ofMillis(100)).build();
+        CancelInstruction cancel = CancelInstruction.builder().id("o2").build();
+        AmendInstruction amend = AmendInstruction.builder().id("o4").timeToLive(Duration.ofMillis(300)).build();
+
+        Map<Instruction, String> values = new IdentityHashMap<>();
+        values.put(create1, "o1");
+        values.put(create2, "o2");
+        values.put(create3, "o3");
+        values.put(create4, "o4");
+
+        doReturn(0L).when(target).getNanoTime();
+        doNothing().when(target).startExpiry();
+
+        // Disabled
+        assertSame(target.track(context, key, values), values);
+        doReturn(SECONDS.toNanos(1)).when(target).getNanoTime();
+        target.expire();
+        verifyNoMoreInteractions(context);
+
+        target.setConfiguration(new MapConfiguration(singletonMap(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAgent.expiry", "true"
+        )));
+        doReturn(SECONDS.toNanos(1)).when(target).getNanoTime();
+        target.track(context, key, values);
+        target.track(context, key, singletonMap(cancel, "o2"));
+        target.track(context, key, singletonMap(amend, "o5"));
+        target.track(context, key, singletonMap(create3, null));
+
+        // Expires o1 only, then o5.
+        CountDownLatch latch = new CountDownLatch(2);
+        List<Set<?>> cancelled = new CopyOnWriteArrayList<>();
+        doAnswer(i -> {
+            assertEquals(i.getArgumentAt(0, Key.class).getSite(), "s");
+            assertEquals(i.getArgumentAt(0, Key.class).getInstrument(), "i");
+            Set<?> instructions = i.getArgumentAt(1, Set.class);
+            cancelled.add(instructions.stream()
+                    .map(CancelInstruction.class::cast).map(CancelInstruction::getId).collect(toSet()));
+            latch.countDown();
+            return null;
+        }).when(context).cancelOrders(any(), any());
+
+        doReturn(SECONDS.toNanos(1) + MILLISECONDS.toNanos(100)).when(target).getNanoTime();
+        target.expire();
+        doReturn(SECONDS.toNanos(1) + MILLISECONDS.toNanos(300)).when(target).getNanoTime();
+        target.expire();
+        latch.await();
+
+        assertEquals(cancelled.size(), 2);
+        assertEquals(Sets.newHashSet(cancelled), ImmutableSet.of(singleton("o1"), singleton("o5")));
+        verify(target).startExpiry();
+
+    }
+
     @Test
     public void testReconcile() throws Exception {
 
@@ -122,30 +383,46 @@ public class TemplateAgentTest {
 
         Instant now = Instant.now();
         Request request = Request.builder().site("s").instrument("i")
-                .currentTime(now).targetTime(now.plusSeconds(1)).build();
-        doReturn(Duration.ofMillis(123)).when(target).getInterval();
-        doReturn(Key.from(request)).when(target).nextKey(any(), any());
+                .currentTime(now).targetTime(now).build();
+        doReturn(Duration.ofMillis(50)).when(target).getInterval();
+        doReturn(Duration.ofMillis(10)).when(target).getBackoff();
         doReturn(null).when(context).getState(any());
         doReturn(null).when(context).findOrder(any(), anyString());
+        doReturn(TRUE).when(context).isOrderStreamed(any());
 
-        // No orders
+        // No orders (Streamed)
         Map<Instruction, Boolean> results = target.reconcile(context, request, values);
         assertEquals(results.size(), 4);
         assertEquals(results.get(create1), FALSE);
         assertEquals(results.get(create2), FALSE);
         assertEquals(results.get(cancel1), TRUE);
         assertEquals(results.get(cancel3), TRUE);
-        verify(context, times(18)).findOrder(any(), anyString());
-        verify(context, times(8)).findOrder(any(), eq("i1"));
-        verify(context, times(8)).findOrder(any(), eq("i2"));
+        verify(context, atLeast(3)).findOrder(any(), eq("i1"));
+        verify(context, atLeast(3)).findOrder(any(), eq("i2"));
         verify(context, times(1)).findOrder(any(), eq("i5"));
         verify(context, times(1)).findOrder(any(), eq("i7"));
 
+        // Polled at the times aligned to the interval, for the caches of the context.
+        ArgumentCaptor<Key> keys = ArgumentCaptor.forClass(Key.class);
+        verify(context, atLeast(3)).findOrder(keys.capture(), eq("i1"));
+        assertTrue(keys.getAllValues().stream()
+                .allMatch(k -> Duration.between(now, k.getTimestamp()).toMillis() % 50 == 0), keys.toString());
+
+        // No orders (Polled), once per interval.
+        reset(context);
+        results = target.reconcile(context, request, values);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(create1), FALSE);
+        assertEquals(results.get(cancel1), TRUE);
+        verify(context, times(2)).findOrder(any(), eq("i1"));
+        verify(context, times(1)).findOrder(any(), eq("i5"));
+
         // With orders
         Order o1 = mock(Order.class);
         Order o2 = mock(Order.class);
         when(o1.getActive()).thenReturn(null);
         when(o2.getActive()).thenReturn(TRUE);
+        reset(context);
         when(context.findOrder(any(), eq("i1"))).thenReturn(o1);
         when(context.findOrder(any(), eq("i2"))).thenReturn(o2);
         when(context.findOrder(any(), eq("i5"))).thenReturn(o1);
@@ -156,28 +433,30 @@ public class TemplateAgentTest {
         assertEquals(results.get(create2), TRUE);
         assertEquals(results.get(cancel1), TRUE);
         assertEquals(results.get(cancel3), FALSE);
-        verify(context, times(18 + 11)).findOrder(any(), anyString());
-        verify(context, times(8 + 1)).findOrder(any(), eq("i1"));
-        verify(context, times(8 + 1)).findOrder(any(), eq("i2"));
-        verify(context, times(1 + 1)).findOrder(any(), eq("i5"));
-        verify(context, times(1 + 8)).findOrder(any(), eq("i7"));
+        verify(context, times(1)).findOrder(any(), eq("i1"));
+        verify(context, times(1)).findOrder(any(), eq("i2"));
+        verify(context, times(1)).findOrder(any(), eq("i5"));
+        verify(context, times(2)).findOrder(any(), eq("i7"));
 
-        // All success
-        when(context.findOrder(any(), eq("i1"))).thenReturn(o1);
-        when(context.findOrder(any(), eq("i2"))).thenReturn(o1);
-        when(context.findOrder(any(), eq("i5"))).thenReturn(o1);
-        when(context.findOrder(any(), eq("i7"))).thenReturn(o1);
+        // All success, confirmed immediately.
+        reset(context);
+        when(context.findOrder(any(), anyString())).thenReturn(o1);
         results = target.reconcile(context, request, values);
         assertEquals(results.size(), 4);
         assertEquals(results.get(create1), TRUE);
         assertEquals(results.get(create2), TRUE);
         assertEquals(results.get(cancel1), TRUE);
         assertEquals(results.get(cancel3), TRUE);
-        verify(context, times(18 + 11 + 4)).findOrder(any(), anyString());
-        verify(context, times(8 + 1 + 1)).findOrder(any(), eq("i1"));
-        verify(context, times(8 + 1 + 1)).findOrder(any(), eq("i2"));
-        verify(context, times(1 + 1 + 1)).findOrder(any(), eq("i5"));
-        verify(context, times(1 + 8 + 1)).findOrder(any(), eq("i7"));
+        verify(context, times(4)).findOrder(any(), anyString());
+
+        // Terminated
+        reset(context);
+        when(context.getState(any())).thenReturn(StateType.TERMINATE);
+        results = target.reconcile(context, request, values);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(create1), FALSE);
+        assertEquals(results.get(cancel3), FALSE);
+        verify(context, never()).findOrder(any(), anyString());
 
         // No input
         assertEquals(target.reconcile(context, request, null).size(), 0);
@@ -185,17 +464,69 @@ public class TemplateAgentTest {
     }
 
     @Test
-    public void testNextKey() {
+    public void testReconcile_Amend() throws Exception {
+
+        AmendInstruction amend1 = AmendInstruction.builder().price(TEN).build();
+        AmendInstruction amend2 = AmendInstruction.builder().price(TEN).build();
+        AmendInstruction amend3 = AmendInstruction.builder().build();
+
+        Map<Instruction, String> values = new IdentityHashMap<>();
+        values.put(amend1, "i1");
+        values.put(amend2, "i2");
+        values.put(amend3, "i3");
+
+        Instant now = Instant.now();
+        Request request = Request.builder().site("s").instrument("i")
+                .currentTime(now).targetTime(now).build();
+        doReturn(Duration.ofMillis(50)).when(target).getInterval();
+        doReturn(Duration.ofMillis(10)).when(target).getBackoff();
+
+        // Confirmed with the new price.
+        Order o1 = mock(Order.class);
+        Order o2 = mock(Order.class);
+        when(o1.getOrderPrice()).thenReturn(new BigDecimal("10.0"));
+        when(o2.getOrderPrice()).thenReturn(ONE);
+        when(context.findOrder(any(), eq("i1"))).thenReturn(o1);
+        when(context.findOrder(any(), eq("i2"))).thenReturn(o2);
+        when(context.findOrder(any(), eq("i3"))).thenReturn(o2);
+
+        Map<Instruction, Boolean> results = target.reconcile(context, request, values);
+        assertEquals(results.size(), 3);
+        assertEquals(results.get(amend1), TRUE);
+        assertEquals(results.get(amend2), FALSE);
+        assertEquals(results.get(amend3), TRUE);
+        verify(context, times(1)).findOrder(any(), eq("i1"));
+        verify(context, times(2)).findOrder(any(), eq("i2"));
+        verify(context, times(1)).findOrder(any(), eq("i3"));
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testReconcileAsync() throws Exception {
+
+        CreateInstruction create = CreateInstruction.builder().build();
+        Map<Instruction, String> values = singletonMap(create, "i1");
+
+        Instant now = Instant.now();
+        Request request = Request.builder().site("s").instrument("i")
+                .currentTime(now).targetTime(now.plusSeconds(60)).build();
+        doReturn(Duration.ofMillis(10)).when(target).getBackoff();
+        doReturn(TRUE).when(context).isOrderStreamed(any());
+
+        CountDownLatch latch = new CountDownLatch(1);
+        Order order = mock(Order.class);
+        when(context.findOrder(any(), eq("i1"))).thenAnswer(i -> latch.getCount() == 0 ? order : null);
 
-        Key original = Key.builder().site("s").instrument("i").timestamp(Instant.now()).build();
+        // Returns without waiting for the order.
+        CompletableFuture<Map<Instruction, Boolean>> future = target.reconcileAsync(context, request, values);
+        assertFalse(future.isDone());
 
-        Key result = target.nextKey(original, Duration.ofMillis(100));
-        assertEquals(result.getSite(), original.getSite());
-        assertEquals(result.getInstrument(), original.getInstrument());
-        assertEquals(result.getTimestamp(), original.getTimestamp().plusMillis(100));
+        // Completes once found, within the cycle.
+        latch.countDown();
+        assertEquals(future.get(), singletonMap(create, TRUE));
 
-        Thread.currentThread().interrupt();
-        assertNull(target.nextKey(original, Duration.ofMillis(100)));
+        // Nothing to track
+        assertTrue(target.reconcileAsync(context, request, null).isDone());
 
     }
 
@@ -0,0 +1,119 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateBatcherTest {
+
+    private TemplateBatcher<String> target;
+
+    private List<Map<String, Key>> flushed;
+
+    private Function<Map<String, Key>, Map<String, String>> flusher;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        target = new TemplateBatcher<>();
+
+        flushed = new CopyOnWriteArrayList<>();
+
+        flusher = m -> {
+
+            flushed.add(new HashMap<>(m));
+
+            Map<String, String> results = new IdentityHashMap<>();
+
+            m.keySet().stream().filter(v -> !v.startsWith("x")).forEach(v -> results.put(v, v.toUpperCase()));
+
+            return results;
+
+        };
+
+    }
+
+    @Test
+    public void testSubmit() {
+
+        Key key = Key.builder().instrument("i").build();
+
+        Map<String, String> results = target.submit(key, asList("a", "b", "x", null), null, flusher);
+        assertEquals(results.size(), 3);
+        assertEquals(results.get("a"), "A");
+        assertEquals(results.get("b"), "B");
+        assertEquals(results.get("x"), null);
+        assertEquals(flushed.size(), 1);
+        assertSame(flushed.get(0).get("a"), key);
+
+        // Null results
+        results = target.submit(key, singletonList("c"), Duration.ZERO, m -> null);
+        assertEquals(results.size(), 1);
+        assertEquals(results.get("c"), null);
+
+        // Failure
+        try {
+            target.submit(key, singletonList("d"), Duration.ZERO, m -> {
+                throw new IllegalStateException("test");
+            });
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testSubmit_Batched() throws Exception {
+
+        Key k1 = Key.builder().instrument("i1").build();
+        Key k2 = Key.builder().instrument("i2").build();
+        String a = new String("a");
+        String b = new String("b");
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try {
+
+            CountDownLatch latch = new CountDownLatch(1);
+
+            // Leader waits for the window, while the other joins.
+            Future<Map<String, String>> f1 = executor.submit(() -> {
+                latch.countDown();
+                return target.submit(k1, singletonList(a), Duration.ofMillis(500), flusher);
+            });
+
+            latch.await();
+
+            Thread.sleep(100);
+
+            Future<Map<String, String>> f2 = executor.submit(
+                    () -> target.submit(k2, singletonList(b), Duration.ofMillis(500), flusher)
+            );
+
+            assertEquals(f1.get(), Collections.singletonMap(a, "A"));
+            assertEquals(f2.get(), Collections.singletonMap(b, "B"));
+            assertEquals(flushed.size(), 1);
+            assertSame(flushed.get(0).get("a"), k1);
+            assertSame(flushed.get(0).get("b"), k2);
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+}
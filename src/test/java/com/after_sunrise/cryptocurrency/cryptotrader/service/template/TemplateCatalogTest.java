@@ -0,0 +1,62 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateCatalogTest {
+
+    @Test
+    public void testFind() {
+
+        AtomicInteger count = new AtomicInteger();
+
+        TemplateCatalog<String[]> target = new TemplateCatalog<>(p -> {
+            count.incrementAndGet();
+            return Stream.of(p);
+        });
+
+        String[] p1 = {"BTC_JPY", null};
+        String[] p2 = {"FX_BTC_JPY", ""};
+        String[] p3 = {"BTCJPY29DEC2017", "BTCJPY_MAT3M"};
+        String[] p4 = {"BTCJPY_MAT3M", "BTC_JPY"};
+        List<String[]> products = new ArrayList<>(Arrays.asList(p1, p2, null, p3, p4));
+
+        // Indexed (4) and verified (1).
+        assertSame(target.find(products, "BTC_JPY"), p1);
+        assertEquals(count.get(), 5);
+        assertSame(target.find(products, "FX_BTC_JPY"), p2);
+        assertSame(target.find(products, "BTCJPY29DEC2017"), p3);
+        assertSame(target.find(products, "BTCJPY_MAT3M"), p3);
+        assertNull(target.find(products, "ETH_BTC"));
+        assertNull(target.find(products, ""));
+        assertNull(target.find(products, null));
+        assertNull(target.find(null, "BTC_JPY"));
+        assertEquals(count.get(), 8);
+
+        // Same products refreshed, not indexed again.
+        String[] p1x = p1.clone();
+        List<String[]> updated = new ArrayList<>(Arrays.asList(p1x, p2, null, p3, p4));
+        assertSame(target.find(updated, "BTC_JPY"), p1x);
+        assertSame(target.find(updated, "BTCJPY_MAT3M"), p3);
+        assertEquals(count.get(), 10);
+
+        // Indexed (2) and verified (2) for the moved products.
+        List<String[]> refreshed = Arrays.asList(p4, p1);
+        assertSame(target.find(refreshed, "BTCJPY_MAT3M"), p4);
+        assertSame(target.find(refreshed, "BTC_JPY"), p4);
+        assertEquals(count.get(), 14);
+
+    }
+
+}
@@ -3,29 +3,49 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestPriority;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType;
+import com.google.common.io.CharStreams;
 import org.apache.commons.configuration2.ImmutableConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.jboss.resteasy.plugins.server.undertow.UndertowJaxrsServer;
 import org.jboss.resteasy.test.TestPortProvider;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
+import javax.ws.rs.*;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -45,6 +65,12 @@ public class TemplateContextTest {
     @Produces("application/json")
     public static class TestApplication extends Application {
 
+        private static final AtomicInteger WARM = new AtomicInteger();
+
+        private static final AtomicInteger SLOW = new AtomicInteger();
+
+        private static final AtomicInteger HEDGE = new AtomicInteger();
+
         @Override
         public Set<Object> getSingletons() {
             return Collections.singleton(this);
@@ -56,12 +82,73 @@ public class TemplateContextTest {
             return "{foo:bar}";
         }
 
+        @GET
+        @Path("/empty")
+        public String getEmpty() {
+            return "";
+        }
+
         @GET
         @Path("/bar")
         public String getBar() throws IOException {
             throw new IOException("test");
         }
 
+        @GET
+        @Path("/gzip")
+        public Response getGzip(@HeaderParam("Accept-Encoding") String encoding) throws IOException {
+
+            if (encoding == null || !encoding.contains("gzip")) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write("{foo:gzip}".getBytes(UTF_8));
+            }
+
+            return Response.ok(out.toByteArray()).header("Content-Encoding", "gzip").build();
+
+        }
+
+        @GET
+        @Path("/slow")
+        public String getSlow() throws InterruptedException {
+
+            int count = SLOW.incrementAndGet();
+
+            Thread.sleep(200);
+
+            return "{slow:" + count + "}";
+
+        }
+
+        @GET
+        @Path("/hedge")
+        public String getHedge() throws InterruptedException {
+
+            int count = HEDGE.incrementAndGet();
+
+            // Every other request stalls.
+            if (count % 2 == 1) {
+                Thread.sleep(3000);
+            }
+
+            return "{hedge:" + count + "}";
+
+        }
+
+        @HEAD
+        @Path("/warm")
+        public Response headWarm() {
+
+            WARM.incrementAndGet();
+
+            return Response.ok().build();
+
+        }
+
     }
 
     private TemplateContext target;
@@ -127,7 +214,129 @@ public class TemplateContextTest {
     }
 
     @Test
-    public void testRequest() throws IOException {
+    public void testGetNonce() throws Exception {
+
+        doReturn(Instant.ofEpochMilli(100)).when(target).getNow();
+        assertEquals(target.getNonce(), 100L);
+        assertEquals(target.getNonce(), 101L);
+        assertEquals(target.getNonce(), 102L);
+
+        // Clock going backward
+        doReturn(Instant.ofEpochMilli(50)).when(target).getNow();
+        assertEquals(target.getNonce(), 103L);
+
+        // Clock going forward
+        doReturn(Instant.ofEpochMilli(1000)).when(target).getNow();
+        assertEquals(target.getNonce(), 1000L);
+
+        // Concurrent
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            List<Future<List<Long>>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    List<Long> values = new ArrayList<>();
+                    for (int j = 0; j < 1000; j++) {
+                        values.add(target.getNonce());
+                    }
+                    return values;
+                }));
+            }
+
+            Set<Long> nonces = new HashSet<>();
+
+            for (Future<List<Long>> future : futures) {
+
+                List<Long> values = future.get();
+
+                for (int j = 1; j < values.size(); j++) {
+                    assertTrue(values.get(j - 1) < values.get(j));
+                }
+
+                nonces.addAll(values);
+
+            }
+
+            assertEquals(nonces.size(), 4000);
+
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+    @Test(timeOut = 10000)
+    public void testRequestPrivate() throws Exception {
+
+        doReturn(Instant.ofEpochMilli(100)).when(target).getNow();
+        assertEquals(target.requestPrivate(nonce -> "n" + nonce), "n100");
+        assertEquals(target.requestPrivate(nonce -> "n" + nonce), "n101");
+
+        try {
+            target.requestPrivate(nonce -> {
+                throw new IOException("test");
+            });
+            fail();
+        } catch (IOException e) {
+            // Success
+        }
+
+        assertEquals(target.requestPrivate(nonce -> "n" + nonce), "n103");
+
+    }
+
+    @Test(timeOut = 10000)
+    public void testRequestPrivate_Inflight() throws Exception {
+
+        doReturn(2).when(configuration).getInt(endsWith(".private.inflight"), anyInt());
+
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger maximum = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            List<Future<Long>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> target.requestPrivate(nonce -> {
+                    maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+                    latch.await();
+                    current.decrementAndGet();
+                    return nonce;
+                })));
+            }
+
+            while (current.get() < 2) {
+                Thread.sleep(10);
+            }
+
+            Thread.sleep(100);
+            assertEquals(current.get(), 2);
+            latch.countDown();
+
+            Set<Long> nonces = new HashSet<>();
+
+            for (Future<Long> future : futures) {
+                nonces.add(future.get());
+            }
+
+            assertEquals(nonces.size(), 4);
+            assertEquals(maximum.get(), 2);
+
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+    @Test
+    public void testRequest() throws Exception {
 
         UndertowJaxrsServer server = new UndertowJaxrsServer().start();
 
@@ -146,10 +355,384 @@ public class TemplateContextTest {
                 // Success
             }
 
+            // Compressed
+            assertEquals(target.request(url + "/gzip"), "{foo:gzip}");
+
+            // Streaming
+            RequestType get = RequestType.GET;
+            assertEquals(target.request(get, url + "/foo", null, null, CharStreams::toString), "{foo:bar}");
+            assertEquals(target.request(get, url + "/gzip", null, null, CharStreams::toString), "{foo:gzip}");
+            assertNull(target.request(get, url + "/empty", null, null, CharStreams::toString));
+
+            try {
+                target.request(get, url + "/bar", null, null, CharStreams::toString);
+                fail();
+            } catch (IOException e) {
+                // Success
+            }
+
+            try {
+                target.request(get, url + "/foo", null, null, r -> {
+                    throw new Exception("test");
+                });
+                fail();
+            } catch (IOException e) {
+                assertEquals(e.getCause().getMessage(), "test");
+            }
+
+            // Asynchronous
+            RequestType type = RequestType.GET;
+            assertEquals(target.requestAsync(type, url + "/foo", null, null).get(), "{foo:bar}");
+            assertEquals(target.requestAsync(type, url + "/gzip", null, null).get(), "{foo:gzip}");
+
+            try {
+                target.requestAsync(type, url + "/bar", null, null).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+
+            assertEquals(target.requestAsync(type, url + "/foo", null, null, CharStreams::toString).get(), "{foo:bar}");
+
+            try {
+                target.requestAsync(type, url + "/foo", null, null, r -> {
+                    throw new Exception("test");
+                }).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals(e.getCause().getCause().getMessage(), "test");
+            }
+
         } finally {
             server.stop();
         }
 
+        // Terminated
+        target.close();
+
+        try {
+            target.request("http://localhost");
+            fail();
+        } catch (IOException e) {
+            // Success
+        }
+
+        try {
+            target.requestAsync(RequestType.GET, "http://localhost", null, null).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+    }
+
+    @Test
+    public void testRequest_Coalesce() throws Exception {
+
+        UndertowJaxrsServer server = new UndertowJaxrsServer().start();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try {
+
+            String url = "http://localhost:" + TestPortProvider.getPort() + "/slow";
+
+            server.deploy(TestApplication.class);
+
+            int count = TestApplication.SLOW.get();
+
+            // Shared while in flight.
+            Future<String> f1 = executor.submit(() -> target.request(url));
+            Thread.sleep(50);
+            Future<String> f2 = executor.submit(() -> target.request(url));
+            Future<String> f3 = executor.submit(() -> target.request(RequestType.GET, url, null, null, CharStreams::toString));
+            Future<String> f4 = target.requestAsync(RequestType.GET, url, null, null);
+            Future<String> f5 = executor.submit(() -> target.request(RequestType.GET, url, singletonMap("k", "v"), null));
+            String expect = "{slow:" + (count + 1) + "}";
+            assertEquals(f1.get(), expect);
+            assertEquals(f2.get(), expect);
+            assertEquals(f3.get(), expect);
+            assertEquals(f4.get(), expect);
+            assertEquals(f5.get(), "{slow:" + (count + 2) + "}");
+            assertEquals(TestApplication.SLOW.get(), count + 2);
+
+            // Not shared after completion.
+            assertEquals(target.request(url), "{slow:" + (count + 3) + "}");
+
+            // Shared within the window, from a streamed leader.
+            String key = TestContext.class.getName() + ".coalesce.window";
+            when(configuration.getLong(key, 0L)).thenReturn(60000L);
+            assertEquals(target.request(RequestType.GET, url, null, null, r -> {
+                assertEquals(r.read(), '{');
+                return "partial";
+            }), "partial");
+            expect = "{slow:" + (count + 4) + "}";
+            assertEquals(target.request(url), expect);
+            assertEquals(target.requestAsync(RequestType.GET, url, null, null).get(), expect);
+            assertEquals(target.request(RequestType.GET, url, null, null, CharStreams::toString), expect);
+            assertEquals(TestApplication.SLOW.get(), count + 4);
+
+            // Failures are not retained.
+            String bar = "http://localhost:" + TestPortProvider.getPort() + "/bar";
+            for (int i = 0; i < 2; i++) {
+                try {
+                    target.request(bar);
+                    fail();
+                } catch (IOException e) {
+                    // Success
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+        }
+
+    }
+
+    @Test
+    public void testRequest_Hedge() throws Exception {
+
+        UndertowJaxrsServer server = new UndertowJaxrsServer().start();
+
+        try {
+
+            String url = "http://localhost:" + TestPortProvider.getPort();
+
+            server.deploy(TestApplication.class);
+
+            String prefix = TestContext.class.getName() + ".";
+            when(configuration.getBigDecimal(prefix + "hedge.ratio", null)).thenReturn(ONE);
+            when(configuration.getInt(prefix + "hedge.minimum", 16)).thenReturn(1);
+            TemplateHedger hedger = target.getHedger().get();
+            assertNull(hedger.getDelay());
+
+            // Latency sampled.
+            assertEquals(target.request(url + "/foo"), "{foo:bar}");
+            assertNotNull(hedger.getDelay());
+
+            // Stalled request hedged.
+            int count = TestApplication.HEDGE.get();
+            assertEquals(count % 2, 0);
+            long millis = System.currentTimeMillis();
+            assertEquals(target.request(url + "/hedge"), "{hedge:" + (count + 2) + "}");
+            assertEquals(TestApplication.HEDGE.get(), count + 2);
+            assertTrue(System.currentTimeMillis() - millis < 3000);
+
+            // Budget consumed, hedged from the decoder as well.
+            assertEquals(hedger.getCredits(), 0.0, 0.0);
+            String value = target.request(RequestType.GET, url + "/hedge", null, null, CharStreams::toString);
+            assertEquals(value, "{hedge:" + (count + 4) + "}");
+
+            // Failures are not hedged.
+            try {
+                target.request(url + "/bar");
+                fail();
+            } catch (IOException e) {
+                assertEquals(hedger.getCredits(), 1.0, 0.0);
+            }
+
+            // Signed requests are not hedged.
+            String signed = target.requestPrivate(nonce -> target.request(url + "/hedge"));
+            assertEquals(signed, "{hedge:" + (count + 5) + "}");
+            assertEquals(TestApplication.HEDGE.get(), count + 5);
+            assertEquals(hedger.getCredits(), 1.0, 0.0);
+
+        } finally {
+            server.stop();
+        }
+
+    }
+
+    @Test
+    public void testGetHealth() throws Exception {
+
+        // Not configured
+        assertFalse(target.getHealth().isPresent());
+        assertEquals(target.getState(null), StateType.ACTIVE);
+
+    }
+
+    @Test
+    public void testGetState_Health() throws Exception {
+
+        UndertowJaxrsServer server = new UndertowJaxrsServer().start();
+
+        try {
+
+            String url = "http://localhost:" + TestPortProvider.getPort();
+
+            server.deploy(TestApplication.class);
+
+            String key = TestContext.class.getName() + ".health.suspend";
+            when(configuration.getBigDecimal(key, null)).thenReturn(new BigDecimal("0.5"));
+
+            // Answered, although not found.
+            for (int i = 0; i < 10; i++) {
+                try {
+                    target.request(url + "/missing");
+                    fail();
+                } catch (TemplateContext.StatusException e) {
+                    assertEquals(e.getStatus(), 404);
+                }
+            }
+            assertEquals(target.getState(null), StateType.ACTIVE);
+
+            // Server errors
+            for (int i = 0; i < 10; i++) {
+                try {
+                    target.requestAsync(RequestType.GET, url + "/bar", null, null).get();
+                    fail();
+                } catch (ExecutionException e) {
+                    assertEquals(((TemplateContext.StatusException) e.getCause()).getStatus(), 500);
+                }
+            }
+            assertEquals(target.getState(null), StateType.SUSPEND);
+
+        } finally {
+            server.stop();
+        }
+
+        // Termination prevails.
+        target.close();
+        assertEquals(target.getState(null), StateType.TERMINATE);
+
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+
+        UndertowJaxrsServer server = new UndertowJaxrsServer().start();
+
+        try {
+
+            String url = "http://localhost:" + TestPortProvider.getPort();
+
+            server.deploy(TestApplication.class);
+
+            int count = TestApplication.WARM.get();
+
+            String key = TestContext.class.getName() + ".http.prewarm";
+            when(configuration.getString(key, null)).thenReturn(" ," + url + "/warm");
+            target.setConfiguration(configuration);
+
+            // Blocking and asynchronous pools
+            for (int i = 0; i < 100 && TestApplication.WARM.get() < count + 2; i++) {
+                Thread.sleep(50);
+            }
+
+            assertEquals(TestApplication.WARM.get(), count + 2);
+
+        } finally {
+            server.stop();
+        }
+
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        assertNull(TemplateContext.decode(response));
+
+        response.setEntity(new StringEntity("test"));
+        assertSame(TemplateContext.decode(response), response.getEntity());
+
+        response.setHeader("Content-Encoding", "identity");
+        assertSame(TemplateContext.decode(response), response.getEntity());
+
+        response.setHeader("Content-Encoding", "gzip");
+        assertTrue(TemplateContext.decode(response) instanceof GzipDecompressingEntity);
+
+        response.setHeader("Content-Encoding", "x-gzip");
+        assertTrue(TemplateContext.decode(response) instanceof GzipDecompressingEntity);
+
+        response.setHeader("Content-Encoding", "DEFLATE");
+        assertTrue(TemplateContext.decode(response) instanceof DeflateDecompressingEntity);
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPrioritize() throws Exception {
+
+        String prefix = TestContext.class.getName() + ".limit.";
+        when(configuration.getBigDecimal(prefix + "rate", null)).thenReturn(new BigDecimal("0.001"));
+        when(configuration.getBigDecimal(prefix + "burst", null)).thenReturn(new BigDecimal("2"));
+        when(configuration.getBigDecimal(prefix + "reserve.query", null)).thenReturn(new BigDecimal("0.5"));
+
+        // Not sent to the unknown host, if shed.
+        String url = "http://localhost:0/foo";
+
+        Key key = Key.from(null);
+        Callable<BigDecimal> callable = mock(Callable.class);
+        when(callable.call()).thenReturn(ONE).thenAnswer(i -> new BigDecimal(target.request(url)));
+
+        // Query, leaving the reserve.
+        assertEquals(target.findCached(BigDecimal.class, key, callable), ONE);
+        assertEquals(target.getLimiter().get().getTokens(), 2.0, 0.01);
+        try {
+            target.request(RequestType.GET, url, null, null, r -> null);
+            fail();
+        } catch (TemplateContext.LimitException e) {
+            fail();
+        } catch (IOException e) {
+            // Success (Refused by the unknown host.)
+        }
+        assertEquals(target.getLimiter().get().getTokens(), 1.0, 0.01);
+
+        // Shed, and served from the last value without retries.
+        key = Key.build(key).timestamp(Instant.now()).build();
+        assertEquals(target.findCached(BigDecimal.class, key, callable), ONE);
+        verify(callable, times(2)).call();
+
+        try {
+            target.request(url);
+            fail();
+        } catch (TemplateContext.LimitException e) {
+            // Success
+        }
+
+        try {
+            target.requestAsync(RequestType.GET, url, null, null).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TemplateContext.LimitException);
+        }
+
+        // Cancel takes the reserve, and create times out. (Refused by the unknown host.)
+        assertEquals(target.prioritize(RequestPriority.CANCEL, () -> {
+
+            try {
+                target.request(url);
+                fail();
+            } catch (TemplateContext.LimitException e) {
+                fail();
+            } catch (IOException e) {
+                // Success
+            }
+
+            return "test";
+
+        }), "test");
+        assertEquals(target.getLimiter().get().getTokens(), 0.0, 0.01);
+
+        try {
+            target.prioritize(RequestPriority.CREATE, () -> target.request(url));
+            fail();
+        } catch (TemplateContext.LimitException e) {
+            // Success
+        }
+
+        // Nested in a higher priority.
+        try {
+            target.prioritize(RequestPriority.CANCEL, () ->
+                    target.prioritize(RequestPriority.QUERY, () -> target.request(url)));
+            fail();
+        } catch (TemplateContext.LimitException e) {
+            assertTrue(e.getMessage().startsWith("CANCEL"), e.getMessage());
+        }
+
     }
 
     @Test
@@ -220,6 +803,43 @@ public class TemplateContextTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testListCachedAsync() throws Exception {
+
+        Key key = Key.from(null);
+        CompletableFuture<List<BigDecimal>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("test"));
+        Supplier<CompletableFuture<List<BigDecimal>>> supplier = mock(Supplier.class);
+        when(supplier.get()).thenReturn(
+                CompletableFuture.completedFuture(singletonList(ONE)),
+                CompletableFuture.completedFuture(singletonList(TEN)),
+                failed
+        );
+
+        assertEquals(target.listCachedAsync(BigDecimal.class, key, supplier).get(), singletonList(ONE));
+        assertEquals(target.listCachedAsync(BigDecimal.class, key, supplier).get(), singletonList(ONE));
+        assertEquals(target.listCached(BigDecimal.class, key, () -> null), singletonList(ONE));
+        verify(supplier).get();
+
+        target.clear();
+        assertEquals(target.listCachedAsync(BigDecimal.class, key, supplier).get(), singletonList(TEN));
+        verify(supplier, times(2)).get();
+
+        // Last value on failure, without caching.
+        Key next = Key.build(key).timestamp(Instant.now()).build();
+        assertEquals(target.listCachedAsync(BigDecimal.class, next, supplier).get(), singletonList(TEN));
+        assertEquals(target.listCachedAsync(BigDecimal.class, next, supplier).get(), singletonList(TEN));
+        verify(supplier, times(4)).get();
+
+        target.clear();
+        assertEquals(target.listCachedAsync(BigDecimal.class, key, supplier).get(), null);
+        assertEquals(target.listCachedAsync(null, key, supplier).get(), null);
+        assertEquals(target.listCachedAsync(BigDecimal.class, null, supplier).get(), null);
+        verify(supplier, times(5)).get();
+
+    }
+
     @Test
     public void testRound() {
 
@@ -323,11 +943,99 @@ public class TemplateContextTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCancelAllOrders() {
+
+        Key key = Key.builder().build();
+        Order o1 = mock(Order.class);
+        Order o2 = mock(Order.class);
+        Order o3 = mock(Order.class);
+        when(o1.getId()).thenReturn("o1");
+        when(o2.getId()).thenReturn("o2");
+
+        // Unknown
+        assertNull(target.cancelAllOrders(key));
+
+        // None
+        doReturn(emptyList()).when(target).listActiveOrders(key);
+        assertEquals(target.cancelAllOrders(key), Boolean.TRUE);
+        verify(target, never()).cancelOrders(any(), any());
+
+        doReturn(Arrays.asList(o1, null, o2, o3)).when(target).listActiveOrders(key);
+        doAnswer(i -> {
+            Map<CancelInstruction, String> results = new HashMap<>();
+            Set<CancelInstruction> values = i.getArgumentAt(1, Set.class);
+            assertEquals(values.size(), 2);
+            values.forEach(c -> results.put(c, c.getId()));
+            return results;
+        }).when(target).cancelOrders(any(), any());
+        assertEquals(target.cancelAllOrders(key), Boolean.TRUE);
+
+        // Partial
+        doAnswer(i -> {
+            Map<CancelInstruction, String> results = new HashMap<>();
+            Set<CancelInstruction> values = i.getArgumentAt(1, Set.class);
+            values.forEach(c -> results.put(c, "o1".equals(c.getId()) ? "o1" : null));
+            return results;
+        }).when(target).cancelOrders(any(), any());
+        assertEquals(target.cancelAllOrders(key), Boolean.FALSE);
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAmendOrders() {
+
+        Key key = Key.builder().build();
+        AmendInstruction a1 = AmendInstruction.builder().id("o1").price(TEN).size(ONE).strategy("s").build();
+        AmendInstruction a2 = AmendInstruction.builder().id("o2").price(ONE).size(TEN).build();
+
+        doAnswer(i -> {
+            Map<CancelInstruction, String> results = new HashMap<>();
+            Set<CancelInstruction> values = i.getArgumentAt(1, Set.class);
+            values.forEach(c -> results.put(c, "o1".equals(c.getId()) ? "o1" : null));
+            return results;
+        }).when(target).cancelOrders(any(), any());
+
+        doAnswer(i -> {
+            Map<CreateInstruction, String> results = new HashMap<>();
+            Set<CreateInstruction> values = i.getArgumentAt(1, Set.class);
+            values.forEach(c -> {
+                assertEquals(c.getPrice(), TEN);
+                assertEquals(c.getSize(), ONE);
+                assertEquals(c.getStrategy(), "s");
+                results.put(c, "n1");
+            });
+            return results;
+        }).when(target).createOrders(any(), any());
+
+        Map<AmendInstruction, String> results = target.amendOrders(key, new HashSet<>(Arrays.asList(a1, a2, null)));
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(a1), "n1");
+        assertNull(results.get(a2));
+        verify(target).cancelOrders(same(key), any());
+        verify(target).createOrders(same(key), any());
+
+        // Nothing cancelled, nothing created.
+        reset(target);
+        doReturn(null).when(target).cancelOrders(any(), any());
+        results = target.amendOrders(key, singleton(a1));
+        assertEquals(results.size(), 1);
+        assertNull(results.get(a1));
+        verify(target, never()).createOrders(any(), any());
+
+        // Empty
+        assertEquals(target.amendOrders(key, null), Collections.emptyMap());
+        assertEquals(target.amendOrders(key, Collections.emptySet()), Collections.emptyMap());
+
+    }
+
     @Test
     public void testInterfaceMethods() throws ReflectiveOperationException {
 
         Set<String> ignores = new HashSet<>(Arrays.asList(
-                "getState", "getMidPrice", "getAskPrices", "getBidPrices"
+                "getState", "getMidPrice", "getAskPrices", "getBidPrices", "amendOrders"
         ));
 
         for (Method m : Context.class.getMethods()) {
@@ -336,7 +1044,8 @@ public class TemplateContextTest {
                 continue;
             }
 
-            if (ignores.contains(m.getName())) {
+            // Asynchronous variants adapt the blocking ones.
+            if (ignores.contains(StringUtils.removeEnd(m.getName(), "Async"))) {
                 continue;
             }
 
@@ -344,6 +1053,10 @@ public class TemplateContextTest {
 
             Object result = m.invoke(target, args);
 
+            if (result instanceof CompletableFuture) {
+                result = ((CompletableFuture<?>) result).getNow(null);
+            }
+
             assertNull(result, m.getName());
 
         }
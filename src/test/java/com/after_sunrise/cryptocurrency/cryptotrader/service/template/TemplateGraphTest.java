@@ -0,0 +1,60 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateGraphTest {
+
+    private TemplateGraph target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new TemplateGraph();
+    }
+
+    @Test
+    public void testEvaluate() {
+
+        AtomicInteger count = new AtomicInteger();
+
+        Supplier<Integer> supplier = count::incrementAndGet;
+
+        assertEquals(target.evaluate("a", supplier), (Integer) 1);
+        assertEquals(target.evaluate("a", supplier), (Integer) 1);
+        assertEquals(target.evaluate("b", supplier), (Integer) 2);
+
+        // Null is also computed once.
+        assertNull(target.evaluate("c", () -> count.incrementAndGet() > 0 ? null : 0));
+        assertNull(target.evaluate("c", supplier));
+        assertEquals(count.get(), 3);
+
+        // Nested, completed first.
+        assertEquals(target.evaluate("d", () -> target.evaluate("e", supplier) * 10), (Integer) 40);
+        assertEquals(target.evaluate("e", supplier), (Integer) 4);
+        assertEquals(new ArrayList<>(target.getTimings().keySet()), asList("a", "b", "c", "e", "d"));
+        assertTrue(target.getTimings().values().stream().noneMatch(d -> d.isNegative()));
+
+        // Failure not kept.
+        try {
+            target.evaluate("f", () -> {
+                throw new IllegalStateException("test");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(target.evaluate("f", supplier), (Integer) 5);
+        }
+
+    }
+
+}
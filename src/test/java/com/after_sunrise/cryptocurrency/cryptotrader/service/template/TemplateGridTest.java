@@ -0,0 +1,98 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static java.math.RoundingMode.*;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateGridTest {
+
+    private static BigDecimal reference(BigDecimal value, RoundingMode mode, BigDecimal unit) {
+        return value.divide(unit, 0, mode).multiply(unit);
+    }
+
+    @Test
+    public void testRound() {
+
+        TemplateGrid target = new TemplateGrid(new BigDecimal("0.0003"));
+        BigDecimal value = new BigDecimal("0.0020");
+
+        assertEquals(target.getUnit(), new BigDecimal("0.0003"));
+        assertEquals(target.round(value, UP), new BigDecimal("0.0021"));
+        assertEquals(target.round(value, HALF_UP), new BigDecimal("0.0021"));
+        assertEquals(target.round(value, DOWN), new BigDecimal("0.0018"));
+        assertEquals(target.round(value, HALF_DOWN), new BigDecimal("0.0021"));
+
+        // Finer than the unit
+        target = new TemplateGrid(new BigDecimal("0.5"));
+        assertEquals(target.round(new BigDecimal("6593.85"), DOWN), new BigDecimal("6593.5"));
+        assertEquals(target.round(new BigDecimal("6593.85"), UP), new BigDecimal("6594.0"));
+        assertEquals(target.round(new BigDecimal("-6593.85"), FLOOR), new BigDecimal("-6594.0"));
+        assertEquals(target.round(new BigDecimal("-6593.85"), CEILING), new BigDecimal("-6593.5"));
+        assertEquals(target.round(new BigDecimal("0.1"), DOWN), new BigDecimal("0.0"));
+
+        // Ties
+        target = new TemplateGrid(new BigDecimal("1"));
+        assertEquals(target.round(new BigDecimal("2.5"), HALF_EVEN), new BigDecimal("2"));
+        assertEquals(target.round(new BigDecimal("3.5"), HALF_EVEN), new BigDecimal("4"));
+        assertEquals(target.round(new BigDecimal("-2.5"), HALF_UP), new BigDecimal("-3"));
+        assertEquals(target.round(new BigDecimal("-2.5"), HALF_DOWN), new BigDecimal("-2"));
+
+        // Unnecessary
+        assertEquals(target.round(new BigDecimal("3.0"), UNNECESSARY), new BigDecimal("3"));
+
+        try {
+            target.round(new BigDecimal("3.1"), UNNECESSARY);
+            fail();
+        } catch (ArithmeticException e) {
+            // Success
+        }
+
+    }
+
+    @Test
+    public void testRound_Reference() {
+
+        Random random = new Random(1234L);
+
+        String[] units = {"1", "0.1", "0.5", "0.0003", "25", "1E+1", "1E-12", "0.00000001", "-0.5"};
+
+        String[] values = {"0", "1", "-1", "9223372036854775807", "12345678901234567890.123", "1E+20", "1E-30"};
+
+        for (String u : units) {
+
+            BigDecimal unit = new BigDecimal(u);
+
+            TemplateGrid target = new TemplateGrid(unit);
+
+            for (RoundingMode mode : RoundingMode.values()) {
+
+                if (mode == UNNECESSARY) {
+                    continue;
+                }
+
+                for (String v : values) {
+                    BigDecimal value = new BigDecimal(v);
+                    assertEquals(target.round(value, mode), reference(value, mode, unit), v + " / " + u + " " + mode);
+                }
+
+                for (int i = 0; i < 1000; i++) {
+                    BigDecimal value = BigDecimal.valueOf(random.nextLong() % 100000000L, random.nextInt(10));
+                    assertEquals(target.round(value, mode), reference(value, mode, unit), value + " / " + u + " " + mode);
+                }
+
+            }
+
+        }
+
+    }
+
+}
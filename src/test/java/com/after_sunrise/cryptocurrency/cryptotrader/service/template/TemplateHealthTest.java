@@ -0,0 +1,131 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateHealth.Circuit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateHealth.Outcome.*;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateHealthTest {
+
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private static final Duration SLOW = Duration.ofSeconds(10);
+
+    private static final Duration COOLDOWN = Duration.ofSeconds(30);
+
+    private AtomicLong clock;
+
+    private TemplateHealth target;
+
+    @BeforeMethod
+    public void setUp() {
+
+        clock = new AtomicLong(123);
+
+        // Slow from 1 second, warning at 20%, suspend at 50%, of the 10 recent after 5, and 2 probes.
+        target = new TemplateHealth(clock::get, Duration.ofSeconds(1), 0.2, 0.5, COOLDOWN, 2, 10, 5);
+
+    }
+
+    @Test
+    public void testRecord_Degrade() {
+
+        assertEquals(target.getState(), StateType.ACTIVE);
+
+        // Not evaluated until the minimum.
+        for (int i = 0; i < 4; i++) {
+            target.record(SLOW, SUCCESS);
+        }
+        assertEquals(target.getCircuit(), Circuit.CLOSED);
+
+        target.record(FAST, SUCCESS);
+        assertEquals(target.getCircuit(), Circuit.DEGRADED);
+        assertEquals(target.getState(), StateType.WARNING);
+
+        // Slow ones rolled out. (1 error out of 10)
+        for (int i = 0; i < 9; i++) {
+            target.record(FAST, SUCCESS);
+        }
+        target.record(FAST, ERROR);
+        assertEquals(target.getCircuit(), Circuit.CLOSED);
+        assertEquals(target.getState(), StateType.ACTIVE);
+
+        // 2 errors out of 10
+        target.record(FAST, ERROR);
+        assertEquals(target.getCircuit(), Circuit.DEGRADED);
+
+    }
+
+    @Test
+    public void testRecord_Open() {
+
+        for (int i = 0; i < 5; i++) {
+            target.record(FAST, SUCCESS);
+        }
+        for (int i = 0; i < 4; i++) {
+            target.record(FAST, ERROR);
+        }
+        assertEquals(target.getCircuit(), Circuit.DEGRADED);
+
+        // 5 errors out of 10
+        target.record(FAST, ERROR);
+        assertEquals(target.getCircuit(), Circuit.OPEN);
+        assertEquals(target.getState(), StateType.SUSPEND);
+
+        // Ignored while open.
+        target.record(FAST, SUCCESS);
+        clock.addAndGet(COOLDOWN.toNanos() - 1);
+        assertEquals(target.getCircuit(), Circuit.OPEN);
+
+        // Probing
+        clock.addAndGet(1);
+        assertEquals(target.getCircuit(), Circuit.HALF_OPEN);
+        assertEquals(target.getState(), StateType.WARNING);
+
+        // Slow probe reopens.
+        target.record(FAST, SUCCESS);
+        target.record(SLOW, SUCCESS);
+        assertEquals(target.getCircuit(), Circuit.OPEN);
+
+        // Recovered with the successful probes.
+        clock.addAndGet(COOLDOWN.toNanos());
+        target.record(FAST, SUCCESS);
+        assertEquals(target.getCircuit(), Circuit.HALF_OPEN);
+        target.record(FAST, SUCCESS);
+        assertEquals(target.getCircuit(), Circuit.CLOSED);
+        assertEquals(target.getState(), StateType.ACTIVE);
+
+        // Started over.
+        for (int i = 0; i < 4; i++) {
+            target.record(FAST, ERROR);
+        }
+        assertEquals(target.getCircuit(), Circuit.CLOSED);
+
+    }
+
+    @Test
+    public void testRecord_Timeout() {
+
+        for (int i = 0; i < 8; i++) {
+            target.record(FAST, SUCCESS);
+        }
+        target.record(SLOW, TIMEOUT);
+        assertEquals(target.getCircuit(), Circuit.CLOSED);
+
+        // 2 timeouts out of 10
+        target.record(SLOW, TIMEOUT);
+        assertEquals(target.getCircuit(), Circuit.OPEN);
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateHedgerTest {
+
+    private TemplateHedger target;
+
+    @BeforeMethod
+    public void setUp() {
+
+        // Up to 25% of the requests, 2 at most, after 5 of the 20 latencies.
+        target = new TemplateHedger(0.25, 2, 20, 5);
+
+    }
+
+    @Test
+    public void testGetDelay() {
+
+        for (int i = 1; i <= 4; i++) {
+            target.record(Duration.ofMillis(i));
+            assertNull(target.getDelay());
+        }
+
+        target.record(Duration.ofMillis(5));
+        assertEquals(target.getDelay(), Duration.ofMillis(5));
+
+        for (int i = 6; i <= 20; i++) {
+            target.record(Duration.ofMillis(i));
+        }
+        assertEquals(target.getDelay(), Duration.ofMillis(19));
+
+        // Oldest overwritten.
+        for (int i = 0; i < 18; i++) {
+            target.record(Duration.ofMillis(1));
+        }
+        assertEquals(target.getDelay(), Duration.ofMillis(19));
+
+        target.record(Duration.ofMillis(1));
+        assertEquals(target.getDelay(), Duration.ofMillis(1));
+
+    }
+
+    @Test
+    public void testTryHedge() {
+
+        assertFalse(target.tryHedge());
+
+        for (int i = 0; i < 3; i++) {
+            target.accrue();
+            assertFalse(target.tryHedge());
+        }
+
+        target.accrue();
+        assertTrue(target.tryHedge());
+        assertFalse(target.tryHedge());
+        assertEquals(target.getCredits(), 0.0, 0.0);
+
+        // Capped by the burst.
+        for (int i = 0; i < 100; i++) {
+            target.accrue();
+        }
+        assertEquals(target.getCredits(), 2.0, 0.0);
+        assertTrue(target.tryHedge());
+        assertTrue(target.tryHedge());
+        assertFalse(target.tryHedge());
+
+    }
+
+}
@@ -4,6 +4,7 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.AmendInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -19,11 +20,13 @@ import org.testng.annotations.Test;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
@@ -110,6 +113,52 @@ public class TemplateInstructorTest {
 
     }
 
+    @Test
+    public void testIsEquivalent() throws Exception {
+
+        Request request = Request.builder().tradingSplit(2).build();
+        Advice.AdviceBuilder builder = Advice.builder()
+                .buyLimitPrice(new BigDecimal("100")).buyLimitSize(new BigDecimal("1.0")).buySpread(null)
+                .sellLimitPrice(new BigDecimal("110")).sellLimitSize(ONE).sellSpread(new BigDecimal("0.001"));
+        Advice previous = builder.build();
+        Predicate<Advice> equivalent = a -> target.isEquivalent(context, request, previous, a);
+
+        // No threshold
+        assertTrue(equivalent.test(builder.build()));
+        assertTrue(equivalent.test(builder.buyLimitSize(ONE).build()));
+        assertFalse(equivalent.test(builder.buyLimitPrice(new BigDecimal("100.1")).build()));
+        assertFalse(target.isEquivalent(context, request, null, previous));
+        assertFalse(target.isEquivalent(context, request, previous, null));
+
+        configuration.addProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateInstructor.threshold.price",
+                "0.01"
+        );
+        configuration.addProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateInstructor.threshold.size",
+                "0.1"
+        );
+
+        // Price within the threshold.
+        assertTrue(equivalent.test(builder.buyLimitPrice(new BigDecimal("100.9")).build()));
+        assertFalse(equivalent.test(builder.buyLimitPrice(new BigDecimal("102")).build()));
+        assertFalse(equivalent.test(builder.buyLimitPrice(null).build()));
+        builder.buyLimitPrice(new BigDecimal("100"));
+
+        // Size larger within the threshold, as in the netting.
+        assertTrue(equivalent.test(builder.buyLimitSize(new BigDecimal("1.1")).build()));
+        assertFalse(equivalent.test(builder.buyLimitSize(new BigDecimal("1.2")).build()));
+        assertFalse(equivalent.test(builder.buyLimitSize(new BigDecimal("0.99")).build()));
+        assertFalse(equivalent.test(builder.buyLimitSize(ZERO).build()));
+        builder.buyLimitSize(ONE);
+
+        // Spread within the price threshold per split.
+        assertTrue(equivalent.test(builder.sellSpread(new BigDecimal("0.006")).build()));
+        assertFalse(equivalent.test(builder.sellSpread(new BigDecimal("0.007")).build()));
+        assertTrue(equivalent.test(builder.sellSpread(null).buySpread(ZERO).build()));
+
+    }
+
     @Test
     public void testCreateCancels() throws Exception {
 
@@ -593,4 +642,107 @@ public class TemplateInstructorTest {
 
     }
 
+    @Test
+    public void testMerge_Amend() {
+
+        CreateInstruction new1 = CreateInstruction.builder().price(valueOf(11)).size(valueOf(2))
+                .strategy("s1").timeToLive(Duration.ofSeconds(1)).build();
+        CreateInstruction new2 = CreateInstruction.builder().price(valueOf(19)).size(valueOf(-3)).build();
+        CreateInstruction new3 = CreateInstruction.builder().price(valueOf(0)).size(valueOf(4)).build();
+        CreateInstruction new4 = CreateInstruction.builder().price(valueOf(12)).size(valueOf(5)).build();
+
+        CancelInstruction cancel1 = CancelInstruction.builder().id("c1").build();
+        CancelInstruction cancel2 = CancelInstruction.builder().id("c2").build();
+        CancelInstruction cancel3 = CancelInstruction.builder().id("c3").build();
+
+        Map<CancelInstruction, Order> cancels = new IdentityHashMap<>();
+        cancels.put(cancel1, mock(Order.class));
+        cancels.put(cancel2, mock(Order.class));
+        cancels.put(cancel3, mock(Order.class));
+        when(cancels.get(cancel1).getOrderPrice()).thenReturn(valueOf(8));
+        when(cancels.get(cancel1).getRemainingQuantity()).thenReturn(valueOf(1));
+        when(cancels.get(cancel2).getOrderPrice()).thenReturn(valueOf(10));
+        when(cancels.get(cancel2).getRemainingQuantity()).thenReturn(valueOf(1));
+        when(cancels.get(cancel3).getOrderPrice()).thenReturn(valueOf(20));
+        when(cancels.get(cancel3).getRemainingQuantity()).thenReturn(valueOf(0));
+
+        // Disabled
+        List<Instruction> results = target.merge(asList(new1, new2, new3, new4), cancels);
+        assertEquals(results.size(), 7, StringUtils.join(results, '\n'));
+
+        // Nearest price of the same side.
+        configuration.addProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateInstructor.amend", "true"
+        );
+        results = target.merge(asList(new1, new2, new3, new4), cancels);
+        assertEquals(results.size(), 5, StringUtils.join(results, '\n'));
+        assertTrue(results.contains(cancel3));
+        assertTrue(results.contains(new2));
+        assertTrue(results.contains(new3));
+
+        AmendInstruction amend1 = (AmendInstruction) results.get(0);
+        assertEquals(amend1.getId(), "c2");
+        assertEquals(amend1.getPrice(), new1.getPrice());
+        assertEquals(amend1.getSize(), new1.getSize());
+        assertEquals(amend1.getStrategy(), "s1");
+        assertEquals(amend1.getTimeToLive(), Duration.ofSeconds(1));
+
+        AmendInstruction amend2 = (AmendInstruction) results.get(1);
+        assertEquals(amend2.getId(), "c1");
+        assertEquals(amend2.getPrice(), new4.getPrice());
+        assertEquals(amend2.getSize(), new4.getSize());
+
+    }
+
+    @Test
+    public void testMerge_Ladder() {
+
+        configuration.addProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateInstructor.threshold.price",
+                "0.01"
+        );
+
+        // Nearest level is netted, leaving the other level to be reused.
+        CreateInstruction new1 = CreateInstruction.builder().price(valueOf(100)).size(ONE).build();
+        CreateInstruction new2 = CreateInstruction.builder().price(new BigDecimal("100.5")).size(ONE).build();
+        CancelInstruction cancel1 = CancelInstruction.builder().id("c1").build();
+        CancelInstruction cancel2 = CancelInstruction.builder().id("c2").build();
+        CancelInstruction cancel3 = CancelInstruction.builder().id("c3").build();
+
+        Map<CancelInstruction, Order> cancels = new IdentityHashMap<>();
+        cancels.put(cancel1, mock(Order.class));
+        cancels.put(cancel2, mock(Order.class));
+        cancels.put(cancel3, mock(Order.class));
+        when(cancels.get(cancel1).getOrderPrice()).thenReturn(new BigDecimal("100.5"));
+        when(cancels.get(cancel1).getRemainingQuantity()).thenReturn(ONE);
+        when(cancels.get(cancel2).getOrderPrice()).thenReturn(new BigDecimal("100.1"));
+        when(cancels.get(cancel2).getRemainingQuantity()).thenReturn(ONE);
+        when(cancels.get(cancel3).getOrderPrice()).thenReturn(new BigDecimal("100.1"));
+        when(cancels.get(cancel3).getRemainingQuantity()).thenReturn(ONE.negate());
+
+        List<Instruction> results = target.merge(asList(new1, new2), cancels);
+        assertEquals(results, singletonList(cancel3), StringUtils.join(results, '\n'));
+
+        // Ladder shifted by a level.
+        List<CreateInstruction> creates = new ArrayList<>();
+        cancels.clear();
+
+        for (int i = 0; i < 1000; i++) {
+
+            creates.add(CreateInstruction.builder().price(valueOf(1000 + i * 100)).size(ONE).build());
+
+            Order order = mock(Order.class);
+            when(order.getOrderPrice()).thenReturn(valueOf(1100 + i * 100));
+            when(order.getRemainingQuantity()).thenReturn(ONE);
+            cancels.put(CancelInstruction.builder().id("c" + i).build(), order);
+
+        }
+
+        results = target.merge(creates, cancels);
+        assertEquals(results.size(), 2, StringUtils.join(results, '\n'));
+        assertEquals(((CancelInstruction) results.get(0)).getId(), "c999");
+        assertSame(results.get(1), creates.get(0));
+
+    }
+
 }
@@ -0,0 +1,89 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateJournalTest {
+
+    private TemplateJournal<Order.Execution> target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new TemplateJournal<>(4);
+    }
+
+    private Order.Execution execution(String id, long millis) {
+        Order.Execution execution = mock(Order.Execution.class);
+        when(execution.getId()).thenReturn(id);
+        when(execution.getTime()).thenReturn(Instant.ofEpochMilli(millis));
+        return execution;
+    }
+
+    @Test
+    public void testAppend() {
+
+        Order.Execution e1 = execution("e1", 1);
+        Order.Execution e2 = execution("e2", 2);
+        Order.Execution e3 = execution("e3", 2);
+        Order.Execution e4 = execution("e4", 4);
+        Order.Execution e5 = execution("e5", 5);
+        Order.Execution e6 = execution(null, 6);
+        Order.Execution e7 = mock(Order.Execution.class);
+        when(e7.getId()).thenReturn("e7");
+
+        // Empty
+        assertNull(target.getLatest());
+        assertEquals(target.list(), emptyList());
+        assertEquals(target.append(null), 0);
+
+        // Latest first, in the fetched order within the same time.
+        assertEquals(target.append(asList(e4, e2, e3, e1, null, e6, e7)), 4);
+        assertEquals(target.list(), asList(e4, e2, e3, e1));
+        assertSame(target.getLatest(), e4);
+
+        // Duplicates
+        assertEquals(target.append(asList(e4, e2)), 0);
+        List<Order.Execution> values = target.list();
+        assertSame(target.list(), values);
+
+        // Evicted from the oldest.
+        assertEquals(target.append(asList(e5, e4)), 1);
+        assertEquals(target.list(), asList(e5, e4, e2, e3));
+        assertSame(target.getLatest(), e5);
+        assertNotSame(target.list(), values);
+
+        // Evicted ones are new again.
+        assertEquals(target.append(asList(e1)), 1);
+        assertEquals(target.list(), asList(e5, e4, e2, e3));
+
+    }
+
+    @Test
+    public void testList() {
+
+        Order.Execution e1 = execution("e1", 1);
+        Order.Execution e2 = execution("e2", 2);
+        Order.Execution e3 = execution("e3", 3);
+        target.append(asList(e1, e2, e3));
+
+        assertEquals(target.list(Instant.ofEpochMilli(0)), asList(e3, e2, e1));
+        assertEquals(target.list(Instant.ofEpochMilli(1)), asList(e3, e2));
+        assertEquals(target.list(Instant.ofEpochMilli(3)), emptyList());
+
+    }
+
+}
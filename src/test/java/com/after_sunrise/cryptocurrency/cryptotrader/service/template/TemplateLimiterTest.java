@@ -0,0 +1,98 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestPriority;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestPriority.*;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateLimiterTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private AtomicLong clock;
+
+    private TemplateLimiter target;
+
+    @BeforeMethod
+    public void setUp() {
+
+        clock = new AtomicLong(123);
+
+        Map<RequestPriority, Double> reserves = new EnumMap<>(RequestPriority.class);
+        reserves.put(CREATE, 0.2);
+        reserves.put(QUERY, 0.5);
+
+        // 10 tokens, refilled 2 per second. (Thresholds : cancel=1, create=3, query=6)
+        target = new TemplateLimiter(clock::get, 2, 10, reserves);
+
+    }
+
+    @Test
+    public void testTryAcquire() {
+
+        assertEquals(target.getTokens(), 10.0, 0.0);
+
+        // Query until the reserve.
+        for (int i = 0; i < 5; i++) {
+            assertEquals(target.tryAcquire(QUERY), 0L);
+        }
+        assertEquals(target.getTokens(), 5.0, 0.0);
+        assertEquals(target.tryAcquire(QUERY), SECOND / 2);
+
+        // Create until the reserve.
+        assertEquals(target.tryAcquire(CREATE), 0L);
+        assertEquals(target.tryAcquire(CREATE), 0L);
+        assertEquals(target.tryAcquire(CREATE), 0L);
+        assertEquals(target.tryAcquire(CREATE), SECOND / 2);
+
+        // Cancel until empty.
+        assertEquals(target.tryAcquire(CANCEL), 0L);
+        assertEquals(target.tryAcquire(CANCEL), 0L);
+        assertEquals(target.tryAcquire(CANCEL), SECOND / 2);
+        assertEquals(target.getTokens(), 0.0, 0.0);
+
+        // Refill
+        clock.addAndGet(SECOND);
+        assertEquals(target.tryAcquire(CREATE), SECOND / 2);
+        assertEquals(target.tryAcquire(CANCEL), 0L);
+        assertEquals(target.tryAcquire(QUERY), SECOND * 5 / 2);
+
+        // Capped by the burst.
+        clock.addAndGet(SECOND * 60);
+        assertEquals(target.tryAcquire(QUERY), 0L);
+        assertEquals(target.getTokens(), 9.0, 0.0);
+
+    }
+
+    @Test
+    public void testAcquire() throws InterruptedException {
+
+        target = new TemplateLimiter(10, 1, new EnumMap<>(RequestPriority.class));
+
+        assertTrue(target.acquire(CANCEL, Duration.ZERO));
+
+        // Shed without waiting.
+        assertFalse(target.acquire(QUERY, Duration.ofSeconds(1)));
+
+        // Wait for the refill.
+        assertTrue(target.acquire(CREATE, Duration.ofSeconds(1)));
+
+        // Timeout
+        target = new TemplateLimiter(0.001, 1, new EnumMap<>(RequestPriority.class));
+        assertTrue(target.acquire(CREATE, Duration.ZERO));
+        assertFalse(target.acquire(CREATE, Duration.ofMillis(10)));
+
+    }
+
+}
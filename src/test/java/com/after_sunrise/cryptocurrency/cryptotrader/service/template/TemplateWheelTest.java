@@ -0,0 +1,81 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateWheelTest {
+
+    private static final long TICK = Duration.ofMillis(100).toNanos();
+
+    private TemplateWheel<String, String> target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new TemplateWheel<>(Duration.ofMillis(100), 4);
+    }
+
+    @Test
+    public void testExpire() {
+
+        long origin = 1000;
+
+        // Not started
+        assertEquals(target.expire(origin), emptyList());
+
+        target.put("k1", "v1", origin, Duration.ofMillis(150)); // Rounded up to 2 ticks.
+        target.put("k2", "v2", origin, Duration.ofMillis(200));
+        target.put("k3", "v3", origin, Duration.ofMillis(1000)); // Beyond a round.
+        target.put("k4", "v4", origin, Duration.ofMillis(50));
+        target.put("k4", "v5", origin, Duration.ofMillis(300)); // Replaced
+        assertEquals(target.size(), 4);
+
+        assertEquals(target.expire(origin + TICK), emptyList());
+        assertEquals(target.expire(origin + TICK * 2), asList("v1", "v2"));
+        assertEquals(target.expire(origin + TICK * 2), emptyList());
+        assertEquals(target.size(), 2);
+
+        // Removed
+        assertEquals(target.remove("k4"), "v5");
+        assertNull(target.remove("k4"));
+        assertEquals(target.expire(origin + TICK * 3), emptyList());
+
+        // Same slot in the next round.
+        assertEquals(target.expire(origin + TICK * 6), emptyList());
+        assertEquals(target.expire(origin + TICK * 10), singletonList("v3"));
+        assertEquals(target.size(), 0);
+
+    }
+
+    @Test
+    public void testExpire_Behind() {
+
+        long origin = 1000;
+
+        target.put("k1", "v1", origin, Duration.ofMillis(100));
+        target.put("k2", "v2", origin, Duration.ofMillis(500));
+        target.put("k3", "v3", origin, Duration.ofMillis(2000));
+
+        // Advanced more than a round at once.
+        assertEquals(target.expire(origin + TICK * 9), asList("v1", "v2"));
+        assertEquals(target.expire(origin + TICK * 20), singletonList("v3"));
+
+        // Not in the past.
+        target.put("k4", "v4", origin, Duration.ZERO);
+        assertEquals(target.expire(origin + TICK * 20), emptyList());
+        assertEquals(target.expire(origin + TICK * 21), singletonList("v4"));
+
+    }
+
+}
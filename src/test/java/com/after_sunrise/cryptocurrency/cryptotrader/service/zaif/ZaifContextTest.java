@@ -1,7 +1,9 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.zaif;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order.Execution;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.google.common.collect.Sets;
 import com.google.common.io.Resources;
@@ -13,6 +15,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,14 +25,17 @@ import java.util.concurrent.TimeUnit;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Service.CurrencyType.*;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifContext.URL_DEPTH;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifContext.URL_TRADE;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifService.ID;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifService.ProductType.BTC_JPY;
 import static com.google.common.io.Resources.getResource;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.toSet;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 
 /**
@@ -47,6 +53,8 @@ public class ZaifContextTest {
 
         doReturn(null).when(target).request(any(), any(), any(), any());
 
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+
     }
 
     @AfterMethod
@@ -124,6 +132,27 @@ public class ZaifContextTest {
         assertEquals(target.get(), "zaif");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testQueryDepth() throws Exception {
+
+        String data = Resources.toString(getResource("json/zaif_depth.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data)))
+                .when(target).request(eq(GET), eq(URL_DEPTH + "btc_jpy"), eq(null), eq(null), any());
+
+        ZaifDepth depth = target.queryDepth(Key.builder().instrument("BTC_JPY").build()).get();
+        assertEquals(depth.getAskPrices().size(), 2);
+        assertEquals(depth.getAskPrices().firstKey(), new BigDecimal("134875.0"));
+        assertEquals(depth.getAskPrices().firstEntry().getValue(), new BigDecimal("0.0063"));
+        assertEquals(depth.getBidPrices().size(), 2);
+        assertEquals(depth.getBidPrices().firstKey(), new BigDecimal("134870.0"));
+        assertEquals(depth.getBidPrices().firstEntry().getValue(), new BigDecimal("0.01"));
+
+        // Empty
+        assertFalse(target.queryDepth(Key.builder().instrument("ETH_BTC").build()).isPresent());
+
+    }
+
     @Test
     public void testGetAsk() throws Exception {
 
@@ -198,6 +227,54 @@ public class ZaifContextTest {
 
     }
 
+    @Test
+    public void testListExecutions() throws Exception {
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("currency_pair", "btc_jpy");
+        parameters.put("count", "100");
+        doReturn(completedFuture("{\"success\":1,\"return\":{"
+                + "\"2\":{\"your_action\":\"bid\",\"amount\":1,\"price\":10,\"timestamp\":1505657008},"
+                + "\"1\":{\"your_action\":\"ask\",\"amount\":2,\"price\":11,\"timestamp\":1505657007}}}"
+        )).when(target).postAsync("trade_history", parameters);
+
+        // Initial, from the latest.
+        Key key = Key.builder().instrument("BTC_JPY").timestamp(Instant.ofEpochMilli(1)).build();
+        List<Execution> values = target.listExecutions(key);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getId(), "2");
+        assertEquals(values.get(0).getSize(), new BigDecimal("1"));
+        assertEquals(values.get(1).getId(), "1");
+        assertEquals(values.get(1).getSize(), new BigDecimal("-2"));
+
+        // Full page, followed by the next page.
+        StringBuilder full = new StringBuilder("{\"success\":1,\"return\":{");
+        for (int i = 2; i < 102; i++) {
+            full.append(i == 2 ? "" : ",").append("\"").append(i)
+                    .append("\":{\"your_action\":\"bid\",\"amount\":1,\"timestamp\":")
+                    .append(1505657008 + i).append("}");
+        }
+        Map<String, String> forward = new LinkedHashMap<>(parameters);
+        forward.put("order", "ASC");
+        forward.put("from_id", "2");
+        doReturn(completedFuture(full.append("}}").toString())).when(target).postAsync("trade_history", forward);
+        Map<String, String> paged = new LinkedHashMap<>(forward);
+        paged.put("from_id", "101");
+        doReturn(completedFuture("{\"success\":1,\"return\":{"
+                + "\"101\":{\"your_action\":\"bid\",\"amount\":1,\"timestamp\":1505657109},"
+                + "\"102\":{\"your_action\":\"bid\",\"amount\":1,\"timestamp\":1505657110}}}"
+        )).when(target).postAsync("trade_history", paged);
+
+        values = target.listExecutions(Key.builder().instrument("BTC_JPY").timestamp(Instant.ofEpochMilli(2)).build());
+        assertEquals(values.size(), 102);
+        assertEquals(values.get(0).getId(), "102");
+        verify(target).postAsync("trade_history", paged);
+
+        // Not found
+        assertNull(target.listExecutions(Key.builder().instrument("FOO").build()));
+
+    }
+
     @Test
     public void testFindProduct() {
         assertEquals(target.findProduct(null, BTC, JPY), "BTC_JPY");